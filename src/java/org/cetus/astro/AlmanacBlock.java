@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Daily transit, rise and set of the sun for a range of sites, in columnar
+ * form. Every column holds the events of consecutive days of each site one
+ * after another (index <code>site * days + day</code>) as the fraction of the
+ * day elapsed since 0h UT, a float resolving about 10 milliseconds. The rise
+ * and set columns hold NaN when the sun does not cross the altitude.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class AlmanacBlock {
+
+  private final double startJd;
+  private final int days;
+  private final int firstSite;
+  private final int siteCount;
+  private final float[] transit;
+  private final float[] rise;
+  private final float[] set;
+
+  /**
+   * Creates an empty AlmanacBlock
+   * 
+   * @param startJd
+   *          the Julian Day (UT) of 0h of the first day
+   * @param days
+   *          the number of days
+   * @param firstSite
+   *          the index of the first site of the block
+   * @param siteCount
+   *          the number of sites of the block
+   * @throws IllegalArgumentException
+   *           thrown when the block would hold more than 2^31-1 events per
+   *           column
+   */
+  public AlmanacBlock(double startJd, int days, int firstSite, int siteCount)
+      throws IllegalArgumentException {
+    long size = (long) days * siteCount;
+    if (days < 0 || siteCount < 0 || size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Unsupported block of " + siteCount
+          + " sites and " + days + " days");
+    }
+    this.startJd = startJd;
+    this.days = days;
+    this.firstSite = firstSite;
+    this.siteCount = siteCount;
+    this.transit = new float[(int) size];
+    this.rise = new float[(int) size];
+    this.set = new float[(int) size];
+  }
+
+  /**
+   * Stores the events of a day of a site of the block
+   */
+  void put(int site, int day, SunEvents events) {
+    int i = site * days + day;
+    double day0 = startJd + day;
+    transit[i] = (float) (events.getTransit() - day0);
+    rise[i] = (float) (events.getRise() - day0);
+    set[i] = (float) (events.getSet() - day0);
+  }
+
+  /**
+   * Returns the Julian Day of the transit of a day of a site
+   * 
+   * @param site
+   *          the index of the site within the block
+   * @param day
+   *          the index of the day
+   * @return the Julian Day (UT)
+   */
+  public double getTransit(int site, int day) {
+    return startJd + day + transit[site * days + day];
+  }
+
+  /**
+   * Returns the Julian Day of the rise of a day of a site
+   * 
+   * @param site
+   *          the index of the site within the block
+   * @param day
+   *          the index of the day
+   * @return the Julian Day (UT), NaN if the sun does not rise
+   */
+  public double getRise(int site, int day) {
+    return startJd + day + rise[site * days + day];
+  }
+
+  /**
+   * Returns the Julian Day of the set of a day of a site
+   * 
+   * @param site
+   *          the index of the site within the block
+   * @param day
+   *          the index of the day
+   * @return the Julian Day (UT), NaN if the sun does not set
+   */
+  public double getSet(int site, int day) {
+    return startJd + day + set[site * days + day];
+  }
+
+  /**
+   * @return the Julian Day (UT) of 0h of the first day
+   */
+  public double getStartJd() {
+    return startJd;
+  }
+
+  /**
+   * @return the number of days
+   */
+  public int getDays() {
+    return days;
+  }
+
+  /**
+   * @return the index of the first site of the block among all the sites
+   */
+  public int getFirstSite() {
+    return firstSite;
+  }
+
+  /**
+   * @return the number of sites of the block
+   */
+  public int getSiteCount() {
+    return siteCount;
+  }
+
+  /**
+   * @return the transit column, not copied
+   */
+  public float[] getTransitColumn() {
+    return transit;
+  }
+
+  /**
+   * @return the rise column, not copied
+   */
+  public float[] getRiseColumn() {
+    return rise;
+  }
+
+  /**
+   * @return the set column, not copied
+   */
+  public float[] getSetColumn() {
+    return set;
+  }
+}
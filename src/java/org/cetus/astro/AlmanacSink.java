@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Receiver of the blocks of an almanac generated by {@link BulkAlmanac}.
+ * Blocks are handed over as soon as they are completed, by the worker threads
+ * that computed them, so implementations must be thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public interface AlmanacSink {
+
+  /**
+   * Receives a completed block. The block is not used by the generator
+   * afterwards.
+   * 
+   * @param block
+   *          the daily events of a range of sites
+   */
+  void accept(AlmanacBlock block);
+}
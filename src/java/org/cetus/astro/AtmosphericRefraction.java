@@ -17,6 +17,8 @@
  */
 package org.cetus.astro;
 
+import org.cetus.astro.util.Trigonometry;
+
 /**
  * @author Inaki Ortiz de Landaluce Saiz
  * 
@@ -27,6 +29,7 @@ public class AtmosphericRefraction {
   private double temperatureKelvin;
   private double trueAltitudeDegrees;
   private double refractionArcmin;
+  private Trigonometry trigonometry;
 
   /**
    * Creates an instance of AtomsphericRefraction for a given altitude,
@@ -41,9 +44,29 @@ public class AtmosphericRefraction {
    */
   public AtmosphericRefraction(double altitude, double pressure,
       double temperature) {
+    this(altitude, pressure, temperature, Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates an instance of AtomsphericRefraction for a given altitude,
+   * atmospheric pressure and air temperature, evaluated with the given
+   * trigonometric functions
+   * 
+   * @param altitude
+   *          the true altitude in degrees
+   * @param pressure
+   *          the atmospheric pressure in millibars
+   * @param temperature
+   *          the air temperature in Kelvin
+   * @param trigonometry
+   *          the trigonometric functions to use
+   */
+  public AtmosphericRefraction(double altitude, double pressure,
+      double temperature, Trigonometry trigonometry) {
     this.trueAltitudeDegrees = altitude;
     this.pressureMillibars = pressure;
     this.temperatureKelvin = temperature;
+    this.trigonometry = trigonometry;
     this.refractionArcmin = calculateRefraction();
   }
 
@@ -77,11 +100,54 @@ public class AtmosphericRefraction {
     return this.refractionArcmin;
   }
 
-  private double calculateRefraction() {
-    double r = 1.02 / Math.tan(Math.toRadians(trueAltitudeDegrees + 10.3
-        / (trueAltitudeDegrees + 5.11)));
+  /**
+   * Calculates the refraction correction for a given altitude, atmospheric
+   * pressure and air temperature without creating an instance
+   * 
+   * @param altitude
+   *          the true altitude in degrees
+   * @param pressure
+   *          the atmospheric pressure in millibars
+   * @param temperature
+   *          the air temperature in Kelvin
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @return the refraction correction in arcminutes
+   */
+  public static double calculateRefraction(double altitude, double pressure,
+      double temperature, Trigonometry trigonometry) {
+    double r = 1.02 / trigonometry.tan(Math.toRadians(altitude + 10.3
+        / (altitude + 5.11)));
     // correct from standard conditions of air pressure and temperature
-    r = r * (this.pressureMillibars / 1010) * (283 / this.temperatureKelvin);
+    r = r * (pressure / 1010) * (283 / temperature);
     return r;
   }
+
+  /**
+   * Calculates the derivative of the refraction with respect to the true
+   * altitude, i.e. how much the refraction changes per degree of altitude.
+   * 
+   * @param altitude
+   *          the true altitude in degrees
+   * @param pressure
+   *          the air pressure in millibars
+   * @param temperature
+   *          the air temperature in kelvins
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @return the derivative in arcminutes per degree
+   */
+  public static double calculateRefractionRate(double altitude,
+      double pressure, double temperature, Trigonometry trigonometry) {
+    double x = altitude + 5.11;
+    double sin = trigonometry.sin(Math.toRadians(altitude + 10.3 / x));
+    // d(cot(u))/du = -1/sin(u)^2, with u in radians
+    double r = -1.02 * Math.toRadians(1 - 10.3 / (x * x)) / (sin * sin);
+    return r * (pressure / 1010) * (283 / temperature);
+  }
+
+  private double calculateRefraction() {
+    return calculateRefraction(this.trueAltitudeDegrees,
+        this.pressureMillibars, this.temperatureKelvin, this.trigonometry);
+  }
 }
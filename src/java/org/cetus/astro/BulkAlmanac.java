@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Generates the daily transit, rise and set of the sun for large numbers of
+ * sites.
+ * 
+ * The solar state is shared by every site: a {@link ChebyshevEphemeris}
+ * covering the requested days is fitted once, and every
+ * {@link SunEventSolver} evaluates it in place of the full model. Days of a
+ * site are solved in order, each starting from the events of the previous day
+ * shifted by one day, so that most refinements converge in one or two
+ * iterations. Consecutive days therefore follow the sequence of solar days:
+ * for sites near the date line the transit of a day may fall slightly outside
+ * its UT day, but no transit is skipped or repeated.
+ * 
+ * Sites are split into blocks solved in parallel by a {@link ForkJoinPool}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class BulkAlmanac {
+
+  private static Logger log = Logger.getRootLogger();
+
+  /** Default number of sites of the blocks */
+  public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+  private final ForkJoinPool pool;
+  private final int blockSize;
+
+  /**
+   * Creates a BulkAlmanac running on the common pool with blocks of
+   * {@link #DEFAULT_BLOCK_SIZE} sites.
+   */
+  public BulkAlmanac() {
+    this(ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a BulkAlmanac.
+   * 
+   * @param pool
+   *          the pool the blocks are solved by
+   * @param blockSize
+   *          the number of sites of the blocks
+   * @throws IllegalArgumentException
+   *           thrown when the block size is not positive
+   */
+  public BulkAlmanac(ForkJoinPool pool, int blockSize)
+      throws IllegalArgumentException {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Unsupported block size "
+          + blockSize);
+    }
+    this.pool = pool;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Generates the almanac of the given sites into a single block.
+   * 
+   * @param longitude
+   *          geographical longitudes of the sites in degrees (positive west)
+   * @param latitude
+   *          geographical latitudes of the sites in degrees
+   * @param startJd
+   *          a Julian Day (UT) within the first day
+   * @param days
+   *          the number of days
+   * @param altitude
+   *          the geometric altitude of the rise and set in degrees, e.g.
+   *          {@link SunEventSolver#SUNRISE}
+   * @return the almanac
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length or a latitude is out of
+   *           range
+   */
+  public AlmanacBlock generate(double[] longitude, double[] latitude,
+      double startJd, int days, double altitude)
+      throws IllegalArgumentException {
+    AlmanacBlock almanac = new AlmanacBlock(dayStart(startJd), days, 0,
+        longitude.length);
+    run(longitude, latitude, days, altitude, almanac, null);
+    return almanac;
+  }
+
+  /**
+   * Generates the almanac of the given sites, handing every block to the sink
+   * as soon as it is completed. Only the blocks being solved are kept in
+   * memory.
+   * 
+   * @param longitude
+   *          geographical longitudes of the sites in degrees (positive west)
+   * @param latitude
+   *          geographical latitudes of the sites in degrees
+   * @param startJd
+   *          a Julian Day (UT) within the first day
+   * @param days
+   *          the number of days
+   * @param altitude
+   *          the geometric altitude of the rise and set in degrees
+   * @param sink
+   *          the receiver of the blocks
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length or a latitude is out of
+   *           range
+   */
+  public void generate(double[] longitude, double[] latitude, double startJd,
+      int days, double altitude, AlmanacSink sink)
+      throws IllegalArgumentException {
+    AlmanacBlock template = new AlmanacBlock(dayStart(startJd), days, 0, 0);
+    run(longitude, latitude, days, altitude, template, sink);
+  }
+
+  private void run(double[] longitude, double[] latitude, int days,
+      double altitude, AlmanacBlock target, AlmanacSink sink)
+      throws IllegalArgumentException {
+    if (longitude.length != latitude.length) {
+      throw new IllegalArgumentException("Unsupported arrays. "
+          + longitude.length + " longitudes but " + latitude.length
+          + " latitudes");
+    }
+    if (days <= 0 || longitude.length == 0) {
+      return;
+    }
+    double jd0 = target.getStartJd();
+    // transits and events may lie up to a day away from their UT day
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(jd0 - 2, jd0 + days
+        + 2);
+    long start = System.nanoTime();
+    pool.invoke(new Task(new Job(longitude, latitude, days, altitude,
+        ephemeris, target, sink), 0, longitude.length));
+    log.debug("Generated " + days + " days for " + longitude.length
+        + " sites in " + (System.nanoTime() - start) / 1e6 + " ms");
+  }
+
+  private static double dayStart(double jd) {
+    return Math.floor(jd - 0.5) + 0.5;
+  }
+
+  /**
+   * Parameters shared by all the tasks of a generation
+   */
+  private static final class Job {
+
+    final double[] longitude;
+    final double[] latitude;
+    final int days;
+    final double altitude;
+    final ChebyshevEphemeris ephemeris;
+    final AlmanacBlock target;
+    final AlmanacSink sink;
+
+    Job(double[] longitude, double[] latitude, int days, double altitude,
+        ChebyshevEphemeris ephemeris, AlmanacBlock target, AlmanacSink sink) {
+      this.longitude = longitude;
+      this.latitude = latitude;
+      this.days = days;
+      this.altitude = altitude;
+      this.ephemeris = ephemeris;
+      this.target = target;
+      this.sink = sink;
+    }
+  }
+
+  /**
+   * Solves a range of sites, splitting it in halves down to the block size
+   */
+  private final class Task extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Job job;
+    private final int from;
+    private final int to;
+
+    Task(Job job, int from, int to) {
+      this.job = job;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > blockSize) {
+        int middle = from + (to - from) / 2;
+        invokeAll(new Task(job, from, middle), new Task(job, middle, to));
+        return;
+      }
+      AlmanacBlock block = job.target;
+      int offset = 0;
+      if (job.sink != null) {
+        block = new AlmanacBlock(job.target.getStartJd(), job.days, from, to
+            - from);
+        offset = from;
+      }
+      SunEventSolver solver = new SunEventSolver(job.ephemeris);
+      double jd0 = job.target.getStartJd();
+      for (int site = from; site < to; site++) {
+        Observer observer = new Observer(job.longitude[site],
+            job.latitude[site]);
+        SunEvents events = solver.calculate(observer, jd0, job.altitude);
+        block.put(site - offset, 0, events);
+        for (int day = 1; day < job.days; day++) {
+          // warm start from the previous day
+          events = solver.calculate(observer, events.getTransit() + 1, events
+              .getRise() + 1, events.getSet() + 1, job.altitude);
+          block.put(site - offset, day, events);
+        }
+      }
+      if (job.sink != null) {
+        job.sink.accept(block);
+      }
+    }
+  }
+}
@@ -0,0 +1,374 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.nio.DoubleBuffer;
+
+import org.apache.log4j.Logger;
+import org.cetus.astro.util.AngleUtils;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Precomputed ephemeris of the sun made of Chebyshev polynomials fitted to the
+ * apparent right ascension, apparent declination and apparent sidereal time
+ * at Greenwich computed by {@link SolarState}.
+ * 
+ * The covered period is split into segments of fixed length. For every segment
+ * and quantity the polynomial interpolating the exact model at the Chebyshev
+ * nodes of the segment is kept, so that evaluating the ephemeris at an instant
+ * reduces to finding its segment and summing a short Chebyshev series with the
+ * Clenshaw recurrence. Angles are unwrapped within each segment before fitting,
+ * which lets the sidereal time, that advances a whole turn a day, be fitted as
+ * a smooth function.
+ * 
+ * The maximum error of every quantity with respect to the exact model is
+ * measured while fitting, at the segment boundaries and at points in between
+ * the nodes, and published by {@link #getMaxError(int)}. With daily segments a
+ * degree of 6 is enough to reach the resolution of the Julian Day itself
+ * (about 2e-7 degrees of sidereal time), far inside the 0.01 degrees accuracy
+ * of the algorithm.
+ * 
+ * Coefficients are read from a {@link DoubleBuffer}, which may wrap an array
+ * or a direct or memory-mapped buffer. Instances are immutable and thread safe
+ * as long as the buffer is not modified.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class ChebyshevEphemeris {
+
+  private static Logger log = Logger.getRootLogger();
+
+  /** Index of the apparent right ascension */
+  public static final int RIGHT_ASCENSION = 0;
+  /** Index of the apparent declination */
+  public static final int DECLINATION = 1;
+  /** Index of the apparent sidereal time at Greenwich */
+  public static final int SIDEREAL_TIME = 2;
+  /** Number of fitted quantities */
+  public static final int QUANTITIES = 3;
+
+  /** Default segment length in days */
+  public static final double DEFAULT_SEGMENT_DAYS = 1;
+  /** Default degree of the fitted polynomials */
+  public static final int DEFAULT_DEGREE = 6;
+
+  // mean rates in degrees per day used to unwrap the angles before fitting
+  private static final double[] MEAN_RATES = { 0.9856, 0, 360.9856 };
+  // points per segment the fitted polynomials are checked at
+  private static final int CHECK_POINTS = 8;
+
+  private final double startJd;
+  private final double segmentDays;
+  private final int segmentCount;
+  private final int degree;
+  private final double[] maxErrors;
+  private final DoubleBuffer coefficients;
+
+  /**
+   * Creates a ChebyshevEphemeris from already fitted coefficients.
+   * 
+   * @param startJd
+   *          the Julian Day (UT) the first segment starts at
+   * @param segmentDays
+   *          the length of the segments in days
+   * @param segmentCount
+   *          the number of segments
+   * @param degree
+   *          the degree of the polynomials
+   * @param maxErrors
+   *          the maximum error in degrees of every quantity
+   * @param coefficients
+   *          the coefficients, ordered by segment, quantity and degree
+   * @throws IllegalArgumentException
+   *           thrown when the parameters are inconsistent
+   */
+  public ChebyshevEphemeris(double startJd, double segmentDays,
+      int segmentCount, int degree, double[] maxErrors,
+      DoubleBuffer coefficients) throws IllegalArgumentException {
+    if (!(segmentDays > 0) || segmentCount <= 0 || degree < 0
+        || maxErrors.length != QUANTITIES) {
+      throw new IllegalArgumentException("Unsupported segment length "
+          + segmentDays + ", segment count " + segmentCount + " or degree "
+          + degree);
+    }
+    long required = (long) segmentCount * QUANTITIES * (degree + 1);
+    if (coefficients.remaining() != required) {
+      throw new IllegalArgumentException("Unsupported coefficients. Expected "
+          + required + " but got " + coefficients.remaining());
+    }
+    this.startJd = startJd;
+    this.segmentDays = segmentDays;
+    this.segmentCount = segmentCount;
+    this.degree = degree;
+    this.maxErrors = maxErrors.clone();
+    this.coefficients = coefficients.slice();
+  }
+
+  /**
+   * Fits an ephemeris with daily segments of {@link #DEFAULT_DEGREE} degree
+   * polynomials.
+   * 
+   * @param startJd
+   *          the first Julian Day (UT) covered
+   * @param endJd
+   *          the last Julian Day (UT) covered
+   * @return the fitted ephemeris
+   */
+  public static ChebyshevEphemeris fit(double startJd, double endJd) {
+    return fit(startJd, endJd, DEFAULT_SEGMENT_DAYS, DEFAULT_DEGREE);
+  }
+
+  /**
+   * Fits an ephemeris to the exact model over the given period.
+   * 
+   * @param startJd
+   *          the first Julian Day (UT) covered
+   * @param endJd
+   *          the last Julian Day (UT) covered
+   * @param segmentDays
+   *          the length of the segments in days
+   * @param degree
+   *          the degree of the polynomials
+   * @return the fitted ephemeris
+   * @throws IllegalArgumentException
+   *           thrown when the period is empty, the segment length is not
+   *           positive or the degree is negative
+   */
+  public static ChebyshevEphemeris fit(double startJd, double endJd,
+      double segmentDays, int degree) throws IllegalArgumentException {
+    if (!(endJd > startJd) || !(segmentDays > 0) || degree < 0) {
+      throw new IllegalArgumentException("Unsupported period [" + startJd
+          + ", " + endJd + "], segment length " + segmentDays + " or degree "
+          + degree);
+    }
+    int count = (int) Math.ceil((endJd - startJd) / segmentDays);
+    int n = degree + 1;
+    double[] coefficients = new double[count * QUANTITIES * n];
+    DoubleBuffer buffer = DoubleBuffer.wrap(coefficients);
+    double[] maxErrors = new double[QUANTITIES];
+    double[] values = new double[QUANTITIES * n];
+    double[] exact = new double[QUANTITIES];
+    double[] origin = new double[QUANTITIES];
+    SolarState state = new SolarState();
+    for (int s = 0; s < count; s++) {
+      double segmentStart = startJd + s * segmentDays;
+      // exact values at the Chebyshev nodes, unwrapped from the start
+      state.update(segmentStart);
+      getQuantities(state, origin);
+      for (int k = 0; k < n; k++) {
+        double x = Math.cos(Math.PI * (k + 0.5) / n);
+        double dt = (x + 1) / 2 * segmentDays;
+        state.update(segmentStart + dt);
+        getQuantities(state, exact);
+        for (int q = 0; q < QUANTITIES; q++) {
+          values[q * n + k] = unwrap(exact[q], origin[q] + MEAN_RATES[q] * dt);
+        }
+      }
+      // discrete cosine transform of the values
+      int base = s * QUANTITIES * n;
+      for (int q = 0; q < QUANTITIES; q++) {
+        for (int j = 0; j < n; j++) {
+          double sum = 0;
+          for (int k = 0; k < n; k++) {
+            sum += values[q * n + k] * Math.cos(Math.PI * j * (k + 0.5) / n);
+          }
+          coefficients[base + q * n + j] = (j == 0 ? 1.0 : 2.0) * sum / n;
+        }
+      }
+      // error at the boundaries and in between the nodes
+      for (int p = 0; p <= CHECK_POINTS; p++) {
+        double x = 2.0 * p / CHECK_POINTS - 1;
+        state.update(segmentStart + (x + 1) / 2 * segmentDays);
+        getQuantities(state, exact);
+        for (int q = 0; q < QUANTITIES; q++) {
+          double error = Math.abs(Math.IEEEremainder(clenshaw(buffer, base
+              + q * n, degree, x) - exact[q], 360));
+          maxErrors[q] = Math.max(maxErrors[q], error);
+        }
+      }
+    }
+    log.debug("Fitted " + count + " segments, max errors: RA="
+        + maxErrors[RIGHT_ASCENSION] + " Dec=" + maxErrors[DECLINATION]
+        + " GAST=" + maxErrors[SIDEREAL_TIME]);
+    return new ChebyshevEphemeris(startJd, segmentDays, count, degree,
+        maxErrors, buffer);
+  }
+
+  /**
+   * Evaluates the ephemeris at the given instant.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @param result
+   *          array receiving the apparent right ascension, the apparent
+   *          declination and the apparent sidereal time at Greenwich in
+   *          degrees, at indexes {@link #RIGHT_ASCENSION},
+   *          {@link #DECLINATION} and {@link #SIDEREAL_TIME}. Right ascension
+   *          and sidereal time are within [0, 360)
+   * @throws IllegalArgumentException
+   *           thrown when the instant is not covered by the ephemeris
+   */
+  public void evaluate(double jd, double[] result)
+      throws IllegalArgumentException {
+    int n = degree + 1;
+    int segment = findSegment(jd);
+    double x = 2 * (jd - startJd - segment * segmentDays) / segmentDays - 1;
+    int base = segment * QUANTITIES * n;
+    result[RIGHT_ASCENSION] = AngleUtils.normalizeAngle(clenshaw(coefficients,
+        base, degree, x), 0, 360);
+    result[DECLINATION] = clenshaw(coefficients, base + n, degree, x);
+    result[SIDEREAL_TIME] = AngleUtils.normalizeAngle(clenshaw(coefficients,
+        base + 2 * n, degree, x), 0, 360);
+  }
+
+  /**
+   * Calculates the horizontal coordinates of the sun for the given observer
+   * from the ephemeris, the altitude corrected by atmospheric refraction for
+   * standard conditions as {@link SolarState} does.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @param observer
+   *          the observer's location
+   * @param result
+   *          array receiving the azimuth (measured westwards from the south)
+   *          and the apparent altitude in degrees, at indexes 0 and 1
+   * @throws IllegalArgumentException
+   *           thrown when the instant is not covered by the ephemeris
+   */
+  public void calculateHorizontal(double jd, Observer observer, double[] result)
+      throws IllegalArgumentException {
+    int n = degree + 1;
+    int segment = findSegment(jd);
+    double x = 2 * (jd - startJd - segment * segmentDays) / segmentDays - 1;
+    int base = segment * QUANTITIES * n;
+    double ra = clenshaw(coefficients, base, degree, x);
+    double dec = Math.toRadians(clenshaw(coefficients, base + n, degree, x));
+    double gast = clenshaw(coefficients, base + 2 * n, degree, x);
+    SolarState.calculateHorizontal(gast - observer.getLongitude() - ra, Math
+        .sin(dec), Math.cos(dec), observer.getSinLatitude(), observer
+        .getCosLatitude(), Trigonometry.STANDARD, result);
+  }
+
+  /**
+   * Tells whether the given instant is covered by the ephemeris
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @return true if the ephemeris can be evaluated at the instant
+   */
+  public boolean contains(double jd) {
+    return jd >= startJd && jd <= getEndJd();
+  }
+
+  /**
+   * @return the Julian Day (UT) the ephemeris starts at
+   */
+  public double getStartJd() {
+    return startJd;
+  }
+
+  /**
+   * @return the Julian Day (UT) the ephemeris ends at
+   */
+  public double getEndJd() {
+    return startJd + segmentCount * segmentDays;
+  }
+
+  /**
+   * @return the length of the segments in days
+   */
+  public double getSegmentDays() {
+    return segmentDays;
+  }
+
+  /**
+   * @return the number of segments
+   */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /**
+   * @return the degree of the polynomials
+   */
+  public int getDegree() {
+    return degree;
+  }
+
+  /**
+   * Returns the maximum error of a quantity with respect to the exact model
+   * 
+   * @param quantity
+   *          one of {@link #RIGHT_ASCENSION}, {@link #DECLINATION} or
+   *          {@link #SIDEREAL_TIME}
+   * @return the maximum error in degrees
+   */
+  public double getMaxError(int quantity) {
+    return maxErrors[quantity];
+  }
+
+  /**
+   * Returns a read-only view of the coefficients, ordered by segment, quantity
+   * and degree
+   * 
+   * @return the coefficients
+   */
+  public DoubleBuffer getCoefficients() {
+    return coefficients.asReadOnlyBuffer();
+  }
+
+  private int findSegment(double jd) throws IllegalArgumentException {
+    if (!contains(jd)) {
+      throw new IllegalArgumentException("Unsupported Julian Day " + jd
+          + ". The ephemeris covers [" + startJd + ", " + getEndJd() + "]");
+    }
+    // the end of the period belongs to the last segment
+    return Math.min((int) ((jd - startJd) / segmentDays), segmentCount - 1);
+  }
+
+  private static void getQuantities(SolarState state, double[] result) {
+    result[RIGHT_ASCENSION] = state.getRightAscension();
+    result[DECLINATION] = state.getDeclination();
+    result[SIDEREAL_TIME] = state.getApparentSiderealTime();
+  }
+
+  /**
+   * Returns the angle plus the number of turns that brings it closest to the
+   * predicted value
+   */
+  private static double unwrap(double angle, double predicted) {
+    return angle + 360 * Math.rint((predicted - angle) / 360);
+  }
+
+  /**
+   * Sums a Chebyshev series with the Clenshaw recurrence
+   */
+  private static double clenshaw(DoubleBuffer c, int offset, int degree,
+      double x) {
+    double b1 = 0;
+    double b2 = 0;
+    double x2 = 2 * x;
+    for (int j = degree; j > 0; j--) {
+      double b = x2 * b1 - b2 + c.get(offset + j);
+      b2 = b1;
+      b1 = b;
+    }
+    return x * b1 - b2 + c.get(offset);
+  }
+}
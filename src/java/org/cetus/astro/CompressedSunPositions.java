@@ -0,0 +1,589 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Compressed series of positions of the sun, i.e. azimuths and altitudes
+ * sampled at consecutive instants, typically evenly spaced, for one site.
+ * 
+ * Angles are quantized to a fixed resolution, so that they are decoded with
+ * an error of at most half of it, and every quantized value is predicted by
+ * linear extrapolation of the previous two. Since the sun moves smoothly the
+ * residuals are a few units of the resolution: sampled every minute at the
+ * default resolution of {@link #DEFAULT_RESOLUTION} degrees most of them take
+ * up to three bits, but refraction makes the altitude bend sharply around the
+ * horizon. Azimuths are predicted modulo the full circle, so that the jump of
+ * the azimuth at the north costs nothing.
+ * 
+ * Samples are grouped in blocks of a fixed size, each one starting with the
+ * quantized values of its first sample followed by the residuals of the
+ * azimuths and then of the altitudes. The residuals of each coordinate are
+ * bit-packed with the width that minimizes their size, the few wider ones
+ * being patched afterwards as exceptions made of their index and their high
+ * bits. Blocks can then be decoded independently, and the offsets of the
+ * blocks are kept as an index for random access. Series are immutable.
+ * 
+ * Series are stored in a binary file, little-endian, made of a header of
+ * {@link #HEADER_SIZE} bytes followed by the offsets in bits of the blocks,
+ * as longs, and by the packed blocks, as longs:
+ * 
+ * <pre>
+ * offset  type     field
+ *      0  byte[8]  magic number "CETUSPOS"
+ *      8  int      format version ({@link #VERSION})
+ *     12  int      number of samples per block
+ *     16  double   resolution in degrees
+ *     24  int      number of samples
+ *     28  int      number of longs of the packed blocks
+ *     32  long     CRC-32C of the offsets and the packed blocks
+ * </pre>
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class CompressedSunPositions {
+
+  /** Magic number the files start with */
+  public static final long MAGIC = 0x534F505355544543L; // "CETUSPOS"
+  /** Version of the format */
+  public static final int VERSION = 1;
+  /** Size of the header in bytes */
+  public static final int HEADER_SIZE = 40;
+  /** Default resolution in degrees */
+  public static final double DEFAULT_RESOLUTION = 0.001;
+  /** Default number of samples per block */
+  public static final int DEFAULT_BLOCK_SIZE = 256;
+
+  // bits of the quantized first sample and of the widths of a block
+  private static final int VALUE_BITS = 32;
+  private static final int WIDTH_BITS = 6;
+  private static final double MIN_RESOLUTION = 1e-6;
+  private static final int MAX_BLOCK_SIZE = 1 << 16;
+
+  private final double resolution;
+  private final int blockSize;
+  private final int size;
+  private final long[] offsets;
+  private final long[] words;
+  // quantized full circle
+  private final long circle;
+  // bits of an index within a block
+  private final int indexBits;
+
+  private CompressedSunPositions(double resolution, int blockSize, int size,
+      long[] offsets, long[] words) {
+    this.resolution = resolution;
+    this.blockSize = blockSize;
+    this.size = size;
+    this.offsets = offsets;
+    this.words = words;
+    this.circle = Math.round(360 / resolution);
+    this.indexBits = 32 - Integer.numberOfLeadingZeros(blockSize - 1 | 1);
+  }
+
+  /**
+   * Encodes a series with the default resolution and block size.
+   * 
+   * @param azimuth
+   *          the azimuths in degrees, measured westwards from the south
+   * @param altitude
+   *          the altitudes in degrees
+   * @return the compressed series
+   * @throws IllegalArgumentException
+   *           thrown when an angle is out of range
+   */
+  public static CompressedSunPositions encode(double[] azimuth,
+      double[] altitude) throws IllegalArgumentException {
+    return encode(azimuth, altitude, 0, azimuth.length, DEFAULT_RESOLUTION,
+        DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Encodes a series.
+   * 
+   * @param azimuth
+   *          the azimuths in degrees, measured westwards from the south
+   * @param altitude
+   *          the altitudes in degrees
+   * @param offset
+   *          the index of the first sample
+   * @param length
+   *          the number of samples
+   * @param resolution
+   *          the resolution in degrees, which must divide 360 and be at least
+   *          1e-6
+   * @param blockSize
+   *          the number of samples per block, at most 65536
+   * @return the compressed series
+   * @throws IllegalArgumentException
+   *           thrown when the resolution or the block size are not
+   *           supported, or an angle is out of range
+   */
+  public static CompressedSunPositions encode(double[] azimuth,
+      double[] altitude, int offset, int length, double resolution,
+      int blockSize) throws IllegalArgumentException {
+    double circle = 360 / resolution;
+    if (!(resolution >= MIN_RESOLUTION)
+        || Math.abs(circle - Math.rint(circle)) > 1e-6) {
+      throw new IllegalArgumentException("Unsupported resolution "
+          + resolution + ". Resolution must divide 360 degrees");
+    }
+    if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+      throw new IllegalArgumentException("Unsupported block size "
+          + blockSize);
+    }
+    int blocks = (length + blockSize - 1) / blockSize;
+    long[] offsets = new long[blocks];
+    BitWriter writer = new BitWriter(length);
+    long[] az = new long[blockSize];
+    long[] alt = new long[blockSize];
+    CompressedSunPositions layout = new CompressedSunPositions(resolution,
+        blockSize, length, offsets, null);
+    for (int b = 0; b < blocks; b++) {
+      int start = offset + b * blockSize;
+      int count = Math.min(blockSize, offset + length - start);
+      for (int i = 0; i < count; i++) {
+        az[i] = layout.quantizeAzimuth(azimuth[start + i]);
+        alt[i] = layout.quantizeAltitude(altitude[start + i]);
+      }
+      offsets[b] = writer.position();
+      writer.write(az[0], VALUE_BITS);
+      writer.write(alt[0], VALUE_BITS);
+      // residuals replace the values in place, last first
+      for (int i = count - 1; i > 0; i--) {
+        az[i] = zigzag(layout.wrap(az[i] - predict(az, i)));
+        alt[i] = zigzag(alt[i] - predict(alt, i));
+      }
+      layout.writeColumn(writer, az, count);
+      layout.writeColumn(writer, alt, count);
+    }
+    return new CompressedSunPositions(resolution, blockSize, length, offsets,
+        writer.toArray());
+  }
+
+  /**
+   * Decodes a range of samples, decoding only the blocks it overlaps.
+   * 
+   * @param start
+   *          the index of the first sample to decode
+   * @param azimuth
+   *          array receiving the azimuths in degrees
+   * @param altitude
+   *          array receiving the altitudes in degrees
+   * @param offset
+   *          the index of the arrays receiving the first sample
+   * @param length
+   *          the number of samples to decode
+   * @throws IllegalArgumentException
+   *           thrown when the range is out of the series
+   */
+  public void decode(int start, double[] azimuth, double[] altitude,
+      int offset, int length) throws IllegalArgumentException {
+    if (start < 0 || length < 0 || start > size - length) {
+      throw new IllegalArgumentException("Unsupported range [" + start + ", "
+          + (start + length) + ") of a series of " + size + " samples");
+    }
+    long[] az = new long[blockSize];
+    long[] alt = new long[blockSize];
+    int end = start + length;
+    int i = start;
+    while (i < end) {
+      int block = i / blockSize;
+      int first = block * blockSize;
+      int count = decodeBlock(block, az, alt);
+      int to = Math.min(end - first, count);
+      for (int j = i - first; j < to; j++) {
+        azimuth[offset] = az[j] * resolution;
+        altitude[offset] = alt[j] * resolution;
+        offset++;
+      }
+      i = first + to;
+    }
+  }
+
+  /**
+   * Decodes the whole series.
+   * 
+   * @param azimuth
+   *          array receiving the azimuths in degrees
+   * @param altitude
+   *          array receiving the altitudes in degrees
+   */
+  public void decode(double[] azimuth, double[] altitude) {
+    decode(0, azimuth, altitude, 0, size);
+  }
+
+  /**
+   * Decodes a single sample, which decodes its block up to it.
+   * 
+   * @param index
+   *          the index of the sample
+   * @param result
+   *          array receiving the azimuth and the altitude in degrees, at
+   *          indexes 0 and 1
+   * @throws IllegalArgumentException
+   *           thrown when the index is out of the series
+   */
+  public void getPosition(int index, double[] result)
+      throws IllegalArgumentException {
+    double[] az = new double[1];
+    double[] alt = new double[1];
+    decode(index, az, alt, 0, 1);
+    result[0] = az[0];
+    result[1] = alt[0];
+  }
+
+  /**
+   * Decodes the quantized values of a block
+   * 
+   * @return the number of samples of the block
+   */
+  private int decodeBlock(int block, long[] az, long[] alt) {
+    int count = Math.min(blockSize, size - block * blockSize);
+    BitReader reader = new BitReader(words, offsets[block]);
+    az[0] = (int) reader.read(VALUE_BITS);
+    alt[0] = (int) reader.read(VALUE_BITS);
+    readColumn(reader, az, count);
+    readColumn(reader, alt, count);
+    for (int i = 1; i < count; i++) {
+      az[i] = wrap(predict(az, i) + unzigzag(az[i]));
+      alt[i] = predict(alt, i) + unzigzag(alt[i]);
+    }
+    return count;
+  }
+
+  /**
+   * Packs the residuals of a column of a block, from index 1, choosing the
+   * width that minimizes its size given the exceptions it leaves
+   */
+  private void writeColumn(BitWriter writer, long[] residuals, int count) {
+    int[] histogram = new int[65];
+    for (int i = 1; i < count; i++) {
+      histogram[64 - Long.numberOfLeadingZeros(residuals[i])]++;
+    }
+    int maxWidth = 64;
+    while (maxWidth > 0 && histogram[maxWidth] == 0) {
+      maxWidth--;
+    }
+    // residuals wider than the width are exceptions, costing their index
+    // and their high bits
+    int width = maxWidth;
+    int exceptions = 0;
+    long bestBits = (long) (count - 1) * maxWidth;
+    int wider = 0;
+    for (int w = maxWidth - 1; w >= 0; w--) {
+      wider += histogram[w + 1];
+      long bits = (long) (count - 1) * w + (long) wider
+          * (indexBits + maxWidth - w);
+      if (bits < bestBits) {
+        bestBits = bits;
+        width = w;
+        exceptions = wider;
+      }
+    }
+    writer.write(width, WIDTH_BITS);
+    writer.write(maxWidth - width, WIDTH_BITS);
+    writer.write(exceptions, indexBits);
+    for (int i = 1; i < count; i++) {
+      writer.write(residuals[i], width);
+    }
+    if (exceptions > 0) {
+      for (int i = 1; i < count; i++) {
+        if (residuals[i] >>> width != 0) {
+          writer.write(i, indexBits);
+          writer.write(residuals[i] >>> width, maxWidth - width);
+        }
+      }
+    }
+  }
+
+  /**
+   * Unpacks the residuals of a column of a block, from index 1
+   */
+  private void readColumn(BitReader reader, long[] residuals, int count) {
+    int width = (int) reader.read(WIDTH_BITS);
+    int exceptionWidth = (int) reader.read(WIDTH_BITS);
+    int exceptions = (int) reader.read(indexBits);
+    for (int i = 1; i < count; i++) {
+      residuals[i] = reader.read(width);
+    }
+    for (int e = 0; e < exceptions; e++) {
+      int i = (int) reader.read(indexBits);
+      residuals[i] |= reader.read(exceptionWidth) << width;
+    }
+  }
+
+  /**
+   * Writes the series to a file, replacing it if it already exists.
+   * 
+   * @param path
+   *          the path of the file
+   * @throws IOException
+   *           thrown when the file cannot be written
+   */
+  public void write(Path path) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(
+        HEADER_SIZE + 8 * (offsets.length + words.length)).order(
+        ByteOrder.LITTLE_ENDIAN);
+    buffer.putLong(0, MAGIC);
+    buffer.putInt(8, VERSION);
+    buffer.putInt(12, blockSize);
+    buffer.putDouble(16, resolution);
+    buffer.putInt(24, size);
+    buffer.putInt(28, words.length);
+    buffer.position(HEADER_SIZE);
+    buffer.asLongBuffer().put(offsets).put(words);
+    buffer.putLong(32, checksum(buffer));
+    Path parent = path.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent, path.getFileName().toString(),
+        ".tmp");
+    try {
+      Files.write(temp, buffer.array());
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Reads a series from a file.
+   * 
+   * @param path
+   *          the path of the file
+   * @return the series
+   * @throws IOException
+   *           thrown when the file cannot be read or is not a valid series
+   *           file
+   */
+  public static CompressedSunPositions load(Path path) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(
+        ByteOrder.LITTLE_ENDIAN);
+    if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+      throw new IOException("Unsupported sun position file " + path
+          + ". Wrong magic number");
+    }
+    int version = buffer.getInt(8);
+    if (version != VERSION) {
+      throw new IOException("Unsupported sun position file " + path
+          + ". Unknown version " + version);
+    }
+    int blockSize = buffer.getInt(12);
+    double resolution = buffer.getDouble(16);
+    int size = buffer.getInt(24);
+    int wordCount = buffer.getInt(28);
+    double circle = 360 / resolution;
+    if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE || size < 0
+        || wordCount < 0 || !(resolution >= MIN_RESOLUTION)
+        || Math.abs(circle - Math.rint(circle)) > 1e-6) {
+      throw new IOException("Unsupported sun position file " + path
+          + ". Inconsistent header");
+    }
+    int blocks = (int) (((long) size + blockSize - 1) / blockSize);
+    if (HEADER_SIZE + 8L * (blocks + wordCount) != buffer.capacity()) {
+      throw new IOException("Unsupported sun position file " + path
+          + ". Inconsistent size");
+    }
+    if (buffer.getLong(32) != checksum(buffer)) {
+      throw new IOException("Unsupported sun position file " + path
+          + ". Checksum mismatch");
+    }
+    long[] offsets = new long[blocks];
+    long[] words = new long[wordCount];
+    buffer.position(HEADER_SIZE);
+    buffer.asLongBuffer().get(offsets).get(words);
+    for (int b = 0; b < blocks; b++) {
+      if (offsets[b] < 0 || offsets[b] > 64L * wordCount) {
+        throw new IOException("Unsupported sun position file " + path
+            + ". Block " + b + " out of the file");
+      }
+    }
+    return new CompressedSunPositions(resolution, blockSize, size, offsets,
+        words);
+  }
+
+  /**
+   * @return the number of samples
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the resolution in degrees
+   */
+  public double getResolution() {
+    return resolution;
+  }
+
+  /**
+   * @return the largest error in degrees of the decoded angles, half of the
+   *         resolution
+   */
+  public double getMaxError() {
+    return resolution / 2;
+  }
+
+  /**
+   * @return the number of samples per block
+   */
+  public int getBlockSize() {
+    return blockSize;
+  }
+
+  /**
+   * @return the number of blocks
+   */
+  public int getBlockCount() {
+    return offsets.length;
+  }
+
+  /**
+   * @return the size in bytes of the packed blocks and their index
+   */
+  public long getEncodedSize() {
+    return 8L * (offsets.length + words.length);
+  }
+
+  private long quantizeAzimuth(double azimuth) {
+    if (!(azimuth >= -180 && azimuth <= 180)) {
+      throw new IllegalArgumentException("Unsupported azimuth " + azimuth
+          + ". Azimuth must be within [-180, 180] degrees");
+    }
+    return wrap(Math.round(azimuth / resolution));
+  }
+
+  private long quantizeAltitude(double altitude) {
+    if (!(altitude >= -90 && altitude <= 90)) {
+      throw new IllegalArgumentException("Unsupported altitude " + altitude
+          + ". Altitude must be within [-90, 90] degrees");
+    }
+    return Math.round(altitude / resolution);
+  }
+
+  /**
+   * Reduces a quantized azimuth, or a difference of them, into (-180, 180]
+   */
+  private long wrap(long value) {
+    long reduced = Math.floorMod(value, circle);
+    return 2 * reduced > circle ? reduced - circle : reduced;
+  }
+
+  /**
+   * Predicts a value by linear extrapolation of the previous two, or as the
+   * previous one for the second value of a block
+   */
+  private static long predict(long[] values, int i) {
+    return i == 1 ? values[0] : 2 * values[i - 1] - values[i - 2];
+  }
+
+  private static long zigzag(long value) {
+    return value << 1 ^ value >> 63;
+  }
+
+  private static long unzigzag(long value) {
+    return value >>> 1 ^ -(value & 1);
+  }
+
+  /**
+   * CRC-32C of the offsets and the packed blocks
+   */
+  private static long checksum(ByteBuffer buffer) {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.duplicate().position(HEADER_SIZE));
+    return crc.getValue();
+  }
+
+  /**
+   * Appends values of up to 64 bits to a growing array of longs
+   */
+  private static final class BitWriter {
+
+    private long[] words;
+    private long position;
+
+    BitWriter(int samples) {
+      // about four bits per coordinate
+      words = new long[Math.max(16, samples / 8)];
+    }
+
+    void write(long value, int bits) {
+      if (bits == 0) {
+        return;
+      }
+      int word = (int) (position >>> 6);
+      int shift = (int) (position & 63);
+      if (word + 1 >= words.length) {
+        long[] grown = new long[words.length * 2];
+        System.arraycopy(words, 0, grown, 0, words.length);
+        words = grown;
+      }
+      long masked = bits == 64 ? value : value & (1L << bits) - 1;
+      words[word] |= masked << shift;
+      if (shift + bits > 64) {
+        words[word + 1] = masked >>> 64 - shift;
+      }
+      position += bits;
+    }
+
+    long position() {
+      return position;
+    }
+
+    long[] toArray() {
+      long[] result = new long[(int) ((position + 63) >>> 6)];
+      System.arraycopy(words, 0, result, 0, result.length);
+      return result;
+    }
+  }
+
+  /**
+   * Reads values of up to 64 bits from an array of longs
+   */
+  private static final class BitReader {
+
+    private final long[] words;
+    private long position;
+
+    BitReader(long[] words, long position) {
+      this.words = words;
+      this.position = position;
+    }
+
+    long read(int bits) {
+      if (bits == 0) {
+        return 0;
+      }
+      int word = (int) (position >>> 6);
+      int shift = (int) (position & 63);
+      long value = words[word] >>> shift;
+      if (shift + bits > 64) {
+        value |= words[word + 1] << 64 - shift;
+      }
+      position += bits;
+      return bits == 64 ? value : value & (1L << bits) - 1;
+    }
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.Arrays;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Enriches the records of a large population of fixed devices, each
+ * reporting repeatedly from the same location, with the position of the sun,
+ * keeping a compact state per device.
+ * 
+ * Devices are kept in an open-addressing hash map keyed by their primitive
+ * identifiers, with linear probing and the state of every device stored in
+ * parallel primitive arrays: its location, the sine and cosine of its
+ * latitude, the instant of its last record and the position computed for it.
+ * A record then only costs the conversion of the shared solar state into the
+ * horizontal coordinates of the device, and nothing at all when it repeats
+ * the instant of the previous record. The solar state itself depends only on
+ * the instant, so the states of the last instants seen are kept in a small
+ * direct-mapped cache shared by every device, which pays off when devices
+ * report on aligned ticks.
+ * 
+ * Devices idle since a given instant can be evicted, which removes them from
+ * the map without tombstones (backward shift deletion). A record of an
+ * unknown or evicted device registers it again. Instances are not thread
+ * safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class DeviceEnricher {
+
+  /** Default initial capacity of the map */
+  public static final int DEFAULT_CAPACITY = 1024;
+
+  // number of solar states cached, a power of two
+  private static final int STATE_CACHE_SIZE = 64;
+
+  private final Trigonometry trigonometry;
+  private final SolarState[] states;
+  private final double[] position = new double[2];
+
+  private int mask;
+  private int size;
+  private boolean[] used;
+  private long[] keys;
+  private double[] longitudes;
+  private double[] latitudes;
+  private double[] sinLatitudes;
+  private double[] cosLatitudes;
+  private double[] lastJds;
+  private double[] lastAzimuths;
+  private double[] lastAltitudes;
+
+  private long records;
+  private long repeated;
+  private long stateUpdates;
+
+  /**
+   * Creates a DeviceEnricher with the default initial capacity, evaluated
+   * with full precision trigonometric functions.
+   */
+  public DeviceEnricher() {
+    this(DEFAULT_CAPACITY, Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a DeviceEnricher.
+   * 
+   * @param capacity
+   *          the number of devices the map holds before growing
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @throws IllegalArgumentException
+   *           thrown when the capacity is not positive
+   */
+  public DeviceEnricher(int capacity, Trigonometry trigonometry)
+      throws IllegalArgumentException {
+    if (capacity <= 0 || capacity > 1 << 29) {
+      throw new IllegalArgumentException("Unsupported capacity " + capacity);
+    }
+    this.trigonometry = trigonometry;
+    this.states = new SolarState[STATE_CACHE_SIZE];
+    for (int i = 0; i < states.length; i++) {
+      states[i] = new SolarState(trigonometry);
+    }
+    // keep the load factor at most one half
+    allocate(Integer.highestOneBit(capacity - 1 | 1) << 2);
+  }
+
+  /**
+   * Calculates the position of the sun for a record of a device, registering
+   * the device or updating its location if needed.
+   * 
+   * @param deviceId
+   *          the identifier of the device
+   * @param jd
+   *          the Julian Day (UT) of the record
+   * @param longitude
+   *          geographical longitude in degrees of the device (positive west)
+   * @param latitude
+   *          geographical latitude in degrees of the device
+   * @param result
+   *          array receiving the azimuth (measured westwards from the south)
+   *          and the apparent altitude in degrees, at indexes 0 and 1
+   * @throws IllegalArgumentException
+   *           thrown when the latitude is out of [-90, 90]
+   */
+  public void enrich(long deviceId, double jd, double longitude,
+      double latitude, double[] result) throws IllegalArgumentException {
+    records++;
+    int slot = find(deviceId);
+    if (slot < 0) {
+      slot = insert(deviceId, longitude, latitude);
+    } else if (longitudes[slot] != longitude || latitudes[slot] != latitude) {
+      locate(slot, longitude, latitude);
+    } else if (lastJds[slot] == jd) {
+      repeated++;
+      result[0] = lastAzimuths[slot];
+      result[1] = lastAltitudes[slot];
+      return;
+    }
+    state(jd).calculateHorizontal(longitude, sinLatitudes[slot],
+        cosLatitudes[slot], position);
+    lastJds[slot] = jd;
+    lastAzimuths[slot] = position[0];
+    lastAltitudes[slot] = position[1];
+    result[0] = position[0];
+    result[1] = position[1];
+  }
+
+  /**
+   * Calculates the position of the sun for an array of records.
+   * 
+   * @param deviceId
+   *          the identifiers of the devices
+   * @param jd
+   *          the Julian Days (UT) of the records
+   * @param longitude
+   *          geographical longitudes in degrees of the devices (positive
+   *          west)
+   * @param latitude
+   *          geographical latitudes in degrees of the devices
+   * @param azimuth
+   *          array receiving the azimuths in degrees, measured westwards from
+   *          the south
+   * @param altitude
+   *          array receiving the apparent altitudes in degrees
+   * @throws IllegalArgumentException
+   *           thrown when a latitude is out of [-90, 90]
+   */
+  public void enrich(long[] deviceId, double[] jd, double[] longitude,
+      double[] latitude, double[] azimuth, double[] altitude)
+      throws IllegalArgumentException {
+    double[] result = new double[2];
+    for (int i = 0; i < deviceId.length; i++) {
+      enrich(deviceId[i], jd[i], longitude[i], latitude[i], result);
+      azimuth[i] = result[0];
+      altitude[i] = result[1];
+    }
+  }
+
+  /**
+   * Evicts the devices whose last record is older than the given instant.
+   * 
+   * @param jd
+   *          the Julian Day (UT) before which devices are idle
+   * @return the number of evicted devices
+   */
+  public int evictIdle(double jd) {
+    int evicted = 0;
+    int slot = 0;
+    while (slot < used.length) {
+      if (used[slot] && lastJds[slot] < jd) {
+        // the shift may move an unvisited device into this slot
+        remove(slot);
+        evicted++;
+      } else {
+        slot++;
+      }
+    }
+    return evicted;
+  }
+
+  /**
+   * Tells whether a device is known
+   * 
+   * @param deviceId
+   *          the identifier of the device
+   * @return true if the device has records and has not been evicted
+   */
+  public boolean contains(long deviceId) {
+    return find(deviceId) >= 0;
+  }
+
+  /**
+   * @return the number of known devices
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of records enriched
+   */
+  public long getRecords() {
+    return records;
+  }
+
+  /**
+   * @return the number of records repeating the instant of the previous
+   *         record of their device, answered from its state
+   */
+  public long getRepeatedRecords() {
+    return repeated;
+  }
+
+  /**
+   * @return the number of times the solar state was calculated, i.e. the
+   *         misses of the shared cache of instants
+   */
+  public long getStateUpdates() {
+    return stateUpdates;
+  }
+
+  /**
+   * Returns the cached solar state of an instant, updating it if needed
+   */
+  private SolarState state(double jd) {
+    long bits = Double.doubleToLongBits(jd);
+    SolarState state = states[(int) mix(bits) & (STATE_CACHE_SIZE - 1)];
+    if (Double.doubleToLongBits(state.getJD()) != bits) {
+      stateUpdates++;
+      state.update(jd);
+    }
+    return state;
+  }
+
+  private int find(long key) {
+    int slot = (int) mix(key) & mask;
+    while (used[slot]) {
+      if (keys[slot] == key) {
+        return slot;
+      }
+      slot = slot + 1 & mask;
+    }
+    return -1;
+  }
+
+  private int insert(long key, double longitude, double latitude) {
+    if (2 * (size + 1) > used.length) {
+      grow();
+    }
+    int slot = (int) mix(key) & mask;
+    while (used[slot]) {
+      slot = slot + 1 & mask;
+    }
+    // the slot is only claimed once the location is validated
+    locate(slot, longitude, latitude);
+    used[slot] = true;
+    keys[slot] = key;
+    size++;
+    return slot;
+  }
+
+  private void locate(int slot, double longitude, double latitude) {
+    if (!(latitude >= -90 && latitude <= 90)) {
+      throw new IllegalArgumentException("Unsupported latitude " + latitude
+          + ". Latitude must be within [-90, 90] degrees");
+    }
+    double phi = Math.toRadians(latitude);
+    longitudes[slot] = longitude;
+    latitudes[slot] = latitude;
+    sinLatitudes[slot] = trigonometry.sin(phi);
+    cosLatitudes[slot] = trigonometry.cos(phi);
+    lastJds[slot] = Double.NaN;
+  }
+
+  /**
+   * Removes the device of a slot, shifting back the following devices of
+   * the cluster that would no longer be found
+   */
+  private void remove(int slot) {
+    int hole = slot;
+    int next = slot + 1 & mask;
+    while (used[next]) {
+      int home = (int) mix(keys[next]) & mask;
+      // move the device if its home is not within (hole, next]
+      if ((next - home & mask) >= (next - hole & mask)) {
+        move(next, hole);
+        hole = next;
+      }
+      next = next + 1 & mask;
+    }
+    used[hole] = false;
+    size--;
+  }
+
+  private void move(int from, int to) {
+    used[to] = true;
+    keys[to] = keys[from];
+    longitudes[to] = longitudes[from];
+    latitudes[to] = latitudes[from];
+    sinLatitudes[to] = sinLatitudes[from];
+    cosLatitudes[to] = cosLatitudes[from];
+    lastJds[to] = lastJds[from];
+    lastAzimuths[to] = lastAzimuths[from];
+    lastAltitudes[to] = lastAltitudes[from];
+  }
+
+  private void grow() {
+    boolean[] oldUsed = used;
+    long[] oldKeys = keys;
+    double[] oldLongitudes = longitudes;
+    double[] oldLatitudes = latitudes;
+    double[] oldSin = sinLatitudes;
+    double[] oldCos = cosLatitudes;
+    double[] oldJds = lastJds;
+    double[] oldAzimuths = lastAzimuths;
+    double[] oldAltitudes = lastAltitudes;
+    allocate(oldUsed.length * 2);
+    for (int i = 0; i < oldUsed.length; i++) {
+      if (oldUsed[i]) {
+        int slot = (int) mix(oldKeys[i]) & mask;
+        while (used[slot]) {
+          slot = slot + 1 & mask;
+        }
+        used[slot] = true;
+        keys[slot] = oldKeys[i];
+        longitudes[slot] = oldLongitudes[i];
+        latitudes[slot] = oldLatitudes[i];
+        sinLatitudes[slot] = oldSin[i];
+        cosLatitudes[slot] = oldCos[i];
+        lastJds[slot] = oldJds[i];
+        lastAzimuths[slot] = oldAzimuths[i];
+        lastAltitudes[slot] = oldAltitudes[i];
+      }
+    }
+  }
+
+  private void allocate(int capacity) {
+    mask = capacity - 1;
+    used = new boolean[capacity];
+    keys = new long[capacity];
+    longitudes = new double[capacity];
+    latitudes = new double[capacity];
+    sinLatitudes = new double[capacity];
+    cosLatitudes = new double[capacity];
+    lastJds = new double[capacity];
+    lastAzimuths = new double[capacity];
+    lastAltitudes = new double[capacity];
+    Arrays.fill(lastJds, Double.NaN);
+  }
+
+  /**
+   * Finalizer of MurmurHash3, spreading the bits of a key over the slots
+   */
+  private static long mix(long key) {
+    long h = key;
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.zip.CRC32C;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Binary file format of {@link ChebyshevEphemeris} tables, meant to be
+ * memory-mapped so that every process of a host shares a single page-cached
+ * copy of the coefficients without copying them into the heap.
+ * 
+ * All values are little-endian. The file starts with a header of
+ * {@link #HEADER_SIZE} bytes:
+ * 
+ * <pre>
+ * offset  type       field
+ *      0  byte[8]    magic number "CETUSEPH"
+ *      8  int        format version ({@link #VERSION})
+ *     12  int        header size in bytes
+ *     16  int        number of quantities per segment
+ *     20  int        degree of the polynomials
+ *     24  double     Julian Day the first segment starts at
+ *     32  double     length of the segments in days
+ *     40  int        number of segments
+ *     44  int        reserved, zero
+ *     48  long       offset of the segment index
+ *     56  long       offset of the coefficients
+ *     64  double[3]  maximum errors in degrees of RA, Dec and GAST
+ *     88  long       CRC-32C of the whole file but this field
+ * </pre>
+ * 
+ * The header is followed by the segment index, the starting Julian Day of
+ * every segment as a double, and by the coefficients, ordered by segment,
+ * quantity and degree, aligned to 64 bytes. Segments are evenly spaced in
+ * this version of the format, so the reader checks the index against the
+ * header and locates segments arithmetically.
+ * 
+ * Files are written to a temporary file which is then moved into place, so
+ * processes mapping the file never see it partially written.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class EphemerisFile {
+
+  private static Logger log = Logger.getRootLogger();
+
+  /** Magic number the files start with */
+  public static final long MAGIC = 0x4850455355544543L; // "CETUSEPH"
+  /** Version of the format */
+  public static final int VERSION = 1;
+  /** Size of the header in bytes */
+  public static final int HEADER_SIZE = 96;
+
+  private static final int CHECKSUM_OFFSET = 88;
+  private static final int ALIGNMENT = 64;
+
+  private EphemerisFile() {
+  }
+
+  /**
+   * Writes an ephemeris to a file, replacing it if it already exists.
+   * 
+   * @param ephemeris
+   *          the ephemeris to write
+   * @param path
+   *          the path of the file
+   * @throws IOException
+   *           thrown when the file cannot be written
+   */
+  public static void write(ChebyshevEphemeris ephemeris, Path path)
+      throws IOException {
+    int count = ephemeris.getSegmentCount();
+    long indexOffset = HEADER_SIZE;
+    long coefficientsOffset = align(indexOffset + 8L * count);
+    DoubleBuffer coefficients = ephemeris.getCoefficients();
+    long size = coefficientsOffset + 8L * coefficients.remaining();
+    checkSize(size);
+
+    Path parent = path.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent, path.getFileName().toString(),
+        ".tmp");
+    try {
+      if (Files.getFileStore(temp).supportsFileAttributeView("posix")) {
+        // temporary files are only readable by their owner
+        Files.setPosixFilePermissions(temp, PosixFilePermissions
+            .fromString("rw-r--r--"));
+      }
+      try (FileChannel channel = FileChannel.open(temp,
+          StandardOpenOption.READ, StandardOpenOption.WRITE,
+          StandardOpenOption.TRUNCATE_EXISTING)) {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE,
+            0, size);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(0, MAGIC);
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, HEADER_SIZE);
+        buffer.putInt(16, ChebyshevEphemeris.QUANTITIES);
+        buffer.putInt(20, ephemeris.getDegree());
+        buffer.putDouble(24, ephemeris.getStartJd());
+        buffer.putDouble(32, ephemeris.getSegmentDays());
+        buffer.putInt(40, count);
+        buffer.putInt(44, 0);
+        buffer.putLong(48, indexOffset);
+        buffer.putLong(56, coefficientsOffset);
+        for (int q = 0; q < ChebyshevEphemeris.QUANTITIES; q++) {
+          buffer.putDouble(64 + 8 * q, ephemeris.getMaxError(q));
+        }
+        for (int s = 0; s < count; s++) {
+          buffer.putDouble((int) indexOffset + 8 * s, segmentStart(ephemeris
+              .getStartJd(), ephemeris.getSegmentDays(), s));
+        }
+        buffer.position((int) coefficientsOffset);
+        buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer().put(
+            coefficients);
+        buffer.putLong(CHECKSUM_OFFSET, checksum(buffer));
+        buffer.force();
+      }
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    log.debug("Written " + count + " segments (" + size + " bytes) to "
+        + path);
+  }
+
+  /**
+   * Memory-maps an ephemeris file, verifying its checksum.
+   * 
+   * @param path
+   *          the path of the file
+   * @return the ephemeris, backed by the mapped file
+   * @throws IOException
+   *           thrown when the file cannot be read or is not a valid
+   *           ephemeris file
+   */
+  public static ChebyshevEphemeris map(Path path) throws IOException {
+    return map(path, true);
+  }
+
+  /**
+   * Memory-maps an ephemeris file. The mapping stays valid after the file is
+   * closed, and is released when the returned ephemeris is garbage collected.
+   * 
+   * @param path
+   *          the path of the file
+   * @param verify
+   *          whether the checksum and the segment index must be verified,
+   *          which reads the whole file
+   * @return the ephemeris, backed by the mapped file
+   * @throws IOException
+   *           thrown when the file cannot be read or is not a valid
+   *           ephemeris file
+   */
+  public static ChebyshevEphemeris map(Path path, boolean verify)
+      throws IOException {
+    MappedByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE) {
+        throw new IOException("Unsupported ephemeris file " + path
+            + ". Truncated header");
+      }
+      checkSize(size);
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+    if (buffer.getLong(0) != MAGIC) {
+      throw new IOException("Unsupported ephemeris file " + path
+          + ". Wrong magic number");
+    }
+    int version = buffer.getInt(8);
+    if (version != VERSION || buffer.getInt(12) != HEADER_SIZE
+        || buffer.getInt(16) != ChebyshevEphemeris.QUANTITIES) {
+      throw new IOException("Unsupported ephemeris file " + path
+          + ". Unknown version " + version);
+    }
+    int degree = buffer.getInt(20);
+    double startJd = buffer.getDouble(24);
+    double segmentDays = buffer.getDouble(32);
+    int count = buffer.getInt(40);
+    long indexOffset = buffer.getLong(48);
+    long coefficientsOffset = buffer.getLong(56);
+    double[] maxErrors = new double[ChebyshevEphemeris.QUANTITIES];
+    for (int q = 0; q < maxErrors.length; q++) {
+      maxErrors[q] = buffer.getDouble(64 + 8 * q);
+    }
+    // every segment and every coefficient takes 8 bytes at least, which
+    // bounds the fields of a corrupt header before any arithmetic on them
+    long capacity = buffer.capacity();
+    if (degree < 0 || degree >= capacity / 8 || count <= 0
+        || count > capacity / 8 || indexOffset < HEADER_SIZE
+        || indexOffset > capacity || coefficientsOffset > capacity
+        || coefficientsOffset < indexOffset + 8L * count
+        || coefficientsOffset % 8 != 0
+        || coefficientsOffset + coefficientsBytes(count, degree) != capacity) {
+      throw new IOException("Unsupported ephemeris file " + path
+          + ". Inconsistent layout");
+    }
+    if (verify) {
+      if (buffer.getLong(CHECKSUM_OFFSET) != checksum(buffer)) {
+        throw new IOException("Unsupported ephemeris file " + path
+            + ". Checksum mismatch");
+      }
+      for (int s = 0; s < count; s++) {
+        if (buffer.getDouble((int) indexOffset + 8 * s) != segmentStart(
+            startJd, segmentDays, s)) {
+          throw new IOException("Unsupported ephemeris file " + path
+              + ". Segment " + s + " is not evenly spaced");
+        }
+      }
+    }
+    buffer.position((int) coefficientsOffset);
+    DoubleBuffer coefficients = buffer.slice().order(ByteOrder.LITTLE_ENDIAN)
+        .asDoubleBuffer();
+    log.debug("Mapped " + count + " segments from " + path);
+    return new ChebyshevEphemeris(startJd, segmentDays, count, degree,
+        maxErrors, coefficients);
+  }
+
+  /**
+   * Writes an ephemeris file covering the given period. Usage:
+   * <code>EphemerisFile file startJd endJd [segmentDays [degree]]</code>
+   * 
+   * @param args
+   *          command line arguments
+   * @throws IOException
+   *           thrown when the file cannot be written
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 3 || args.length > 5) {
+      System.err.println("Usage: EphemerisFile file startJd endJd"
+          + " [segmentDays [degree]]");
+      System.exit(1);
+    }
+    double segmentDays = args.length > 3 ? Double.parseDouble(args[3])
+        : ChebyshevEphemeris.DEFAULT_SEGMENT_DAYS;
+    int degree = args.length > 4 ? Integer.parseInt(args[4])
+        : ChebyshevEphemeris.DEFAULT_DEGREE;
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(Double
+        .parseDouble(args[1]), Double.parseDouble(args[2]), segmentDays,
+        degree);
+    write(ephemeris, Path.of(args[0]));
+    System.out.printf("%d segments, max errors RA %.2e Dec %.2e GAST %.2e"
+        + " degrees%n", ephemeris.getSegmentCount(), ephemeris
+        .getMaxError(ChebyshevEphemeris.RIGHT_ASCENSION), ephemeris
+        .getMaxError(ChebyshevEphemeris.DECLINATION), ephemeris
+        .getMaxError(ChebyshevEphemeris.SIDEREAL_TIME));
+  }
+
+  private static double segmentStart(double startJd, double segmentDays,
+      int segment) {
+    return startJd + segment * segmentDays;
+  }
+
+  private static long align(long offset) {
+    return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+  }
+
+  /**
+   * Size in bytes of the coefficients of the given layout, or -1 if it does
+   * not fit in a long
+   */
+  private static long coefficientsBytes(int count, int degree) {
+    try {
+      return Math.multiplyExact(Math.multiplyExact((long) count,
+          (long) ChebyshevEphemeris.QUANTITIES * (degree + 1)), 8L);
+    } catch (ArithmeticException e) {
+      return -1;
+    }
+  }
+
+  private static void checkSize(long size) throws IOException {
+    if (size > Integer.MAX_VALUE) {
+      throw new IOException("Unsupported ephemeris size " + size
+          + ". Files are limited to 2 GB");
+    }
+  }
+
+  /**
+   * CRC-32C of the whole buffer but the checksum field
+   */
+  private static long checksum(ByteBuffer buffer) {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.duplicate().position(0).limit(CHECKSUM_OFFSET));
+    crc.update(buffer.duplicate().position(CHECKSUM_OFFSET + 8));
+    return crc.getValue();
+  }
+}
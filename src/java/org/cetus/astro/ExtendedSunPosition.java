@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Sun position that, besides the horizontal coordinates, gives access to the
+ * equatorial coordinates, the apparent sidereal time, the hour angle, the
+ * equation of time, the distance and the intermediates of the calculation.
+ * 
+ * Everything the algorithm computes on the way to the horizontal coordinates
+ * is kept in a {@link SolarState} of its own, so those values are returned as
+ * they are, while the ones the position does not need (hour angle, radius
+ * vector, equation of time) are only calculated the first time they are
+ * requested. Callers that only need the azimuth and the altitude should use
+ * {@link SunPositionAlgorithm#calculateSunPosition()} instead.
+ * 
+ * Unlike the horizontal coordinates, the extended values cannot be changed.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class ExtendedSunPosition extends SunPosition {
+
+  /** Length of the astronomical unit in kilometers */
+  public static final double ASTRONOMICAL_UNIT = 149597870.7;
+
+  private final SolarState state;
+  private final double longitude;
+  private final double latitude;
+
+  // calculated on first request
+  private double hourAngle = Double.NaN;
+  private double radiusVector = Double.NaN;
+  private double equationOfTime = Double.NaN;
+
+  /**
+   * Creates an instance of ExtendedSunPosition. The state is owned by the new
+   * instance and must not be updated afterwards.
+   * 
+   * @param state
+   *          the state of the sun at the instant of the position
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @param latitude
+   *          geographical latitude in degrees of the observer's location
+   * @param azimuth
+   *          azimuth in degrees
+   * @param altitude
+   *          altitude in degrees
+   * @param azimuthRate
+   *          rate of the azimuth in degrees per day, NaN if not calculated
+   * @param altitudeRate
+   *          rate of the altitude in degrees per day, NaN if not calculated
+   */
+  ExtendedSunPosition(SolarState state, double longitude, double latitude,
+      double azimuth, double altitude, double azimuthRate,
+      double altitudeRate) {
+    super(azimuth, altitude, azimuthRate, altitudeRate);
+    this.state = state;
+    this.longitude = longitude;
+    this.latitude = latitude;
+  }
+
+  /**
+   * @return the Julian Day (UT) of the position
+   */
+  public double getJD() {
+    return state.getJD();
+  }
+
+  /**
+   * @return the geographical longitude in degrees of the observer's location
+   *         (positive west)
+   */
+  public double getLongitude() {
+    return longitude;
+  }
+
+  /**
+   * @return the geographical latitude in degrees of the observer's location
+   */
+  public double getLatitude() {
+    return latitude;
+  }
+
+  /**
+   * @return the apparent right ascension in degrees within [0, 360)
+   */
+  public double getRightAscension() {
+    return state.getRightAscension();
+  }
+
+  /**
+   * @return the apparent declination in degrees
+   */
+  public double getDeclination() {
+    return state.getDeclination();
+  }
+
+  /**
+   * @return the apparent sidereal time at Greenwich in degrees within
+   *         [0, 360)
+   */
+  public double getApparentSiderealTime() {
+    return state.getApparentSiderealTime();
+  }
+
+  /**
+   * @return the local hour angle of the sun in degrees within [0, 360)
+   */
+  public double getHourAngle() {
+    if (Double.isNaN(hourAngle)) {
+      hourAngle = state.calculateHourAngle(longitude);
+    }
+    return hourAngle;
+  }
+
+  /**
+   * @return the equation of time in minutes, positive when the sun transits
+   *         before the mean noon
+   */
+  public double getEquationOfTime() {
+    if (Double.isNaN(equationOfTime)) {
+      equationOfTime = state.calculateEquationOfTime();
+    }
+    return equationOfTime;
+  }
+
+  /**
+   * @return the distance between the Earth and the sun in astronomical units
+   */
+  public double getRadiusVector() {
+    if (Double.isNaN(radiusVector)) {
+      radiusVector = state.calculateRadiusVector();
+    }
+    return radiusVector;
+  }
+
+  /**
+   * @return the distance between the Earth and the sun in kilometers
+   */
+  public double getDistance() {
+    return getRadiusVector() * ASTRONOMICAL_UNIT;
+  }
+
+  /**
+   * @return the geometric mean longitude of the sun in degrees
+   */
+  public double getMeanLongitude() {
+    return state.getMeanLongitude();
+  }
+
+  /**
+   * @return the mean anomaly of the sun in degrees
+   */
+  public double getMeanAnomaly() {
+    return state.getMeanAnomaly();
+  }
+
+  /**
+   * @return the sun's equation of the center in degrees
+   */
+  public double getEquationOfCenter() {
+    return state.getEquationOfCenter();
+  }
+
+  /**
+   * @return the true anomaly of the sun in degrees
+   */
+  public double getTrueAnomaly() {
+    return state.getTrueAnomaly();
+  }
+
+  /**
+   * @return the true geometric longitude of the sun in degrees
+   */
+  public double getTrueLongitude() {
+    return state.getTrueLongitude();
+  }
+
+  /**
+   * @return the apparent longitude of the sun in degrees
+   */
+  public double getApparentLongitude() {
+    return state.getApparentLongitude();
+  }
+
+  /**
+   * @return the true obliquity of the ecliptic in degrees
+   */
+  public double getObliquity() {
+    return state.getObliquity();
+  }
+
+  /**
+   * @return the nutation in longitude in arcseconds
+   */
+  public double getNutationLongitude() {
+    return state.getNutationLongitude();
+  }
+
+  /**
+   * @return the nutation in obliquity in arcseconds
+   */
+  public double getNutationObliquity() {
+    return state.getNutationObliquity();
+  }
+}
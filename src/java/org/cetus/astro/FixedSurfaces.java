@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Geometry of a set of fixed tilted surfaces, such as the arrays of PV plants,
+ * for {@link PlaneOfArray}. The unit normal of every surface is computed once
+ * on creation and kept in primitive arrays in the east-north-up frame of
+ * {@link SunVector}. Instances are immutable.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class FixedSurfaces {
+
+  final double[] normalX;
+  final double[] normalY;
+  final double[] normalZ;
+
+  /**
+   * Creates the geometry of a set of surfaces.
+   * 
+   * @param tilt
+   *          the tilts of the surfaces from the horizontal in degrees
+   * @param azimuth
+   *          the azimuths the surfaces face in degrees, measured westwards
+   *          from the south
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length or a tilt is out of
+   *           [0, 180]
+   */
+  public FixedSurfaces(double[] tilt, double[] azimuth)
+      throws IllegalArgumentException {
+    if (tilt.length != azimuth.length) {
+      throw new IllegalArgumentException("Unsupported geometry of "
+          + tilt.length + " tilts and " + azimuth.length + " azimuths");
+    }
+    int n = tilt.length;
+    this.normalX = new double[n];
+    this.normalY = new double[n];
+    this.normalZ = new double[n];
+    double[] normal = new double[3];
+    for (int i = 0; i < n; i++) {
+      if (!(tilt[i] >= 0 && tilt[i] <= 180)) {
+        throw new IllegalArgumentException("Unsupported tilt " + tilt[i]
+            + ". Tilt must be within [0, 180] degrees");
+      }
+      // the normal points at the altitude 90 - tilt
+      SunVector.fromHorizontal(azimuth[i], 90 - tilt[i], normal);
+      normalX[i] = normal[0];
+      normalY[i] = normal[1];
+      normalZ[i] = normal[2];
+    }
+  }
+
+  /**
+   * @return the number of surfaces
+   */
+  public int size() {
+    return normalX.length;
+  }
+}
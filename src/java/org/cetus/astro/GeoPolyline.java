@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.Arrays;
+
+/**
+ * Polyline over the surface of the earth, as the geographical longitudes and
+ * latitudes in degrees of its vertices. Longitudes are positive west, as
+ * everywhere else in the library, and continuous along the polyline, i.e.
+ * consecutive vertices differ by less than 180 degrees, so that longitudes
+ * may run out of [-180, 180] and polylines crossing the antimeridian are
+ * split by the client if needed. Closed polylines repeat their first vertex
+ * last. Polylines are immutable.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class GeoPolyline {
+
+  private final double[] longitudes;
+  private final double[] latitudes;
+
+  /**
+   * Creates a GeoPolyline.
+   * 
+   * @param longitudes
+   *          the geographical longitudes in degrees of the vertices (positive
+   *          west), copied
+   * @param latitudes
+   *          the geographical latitudes in degrees of the vertices, copied
+   * @throws IllegalArgumentException
+   *           thrown when the arrays have different lengths
+   */
+  public GeoPolyline(double[] longitudes, double[] latitudes)
+      throws IllegalArgumentException {
+    this(longitudes, latitudes, longitudes.length);
+  }
+
+  /**
+   * Creates a GeoPolyline from the first vertices of the given arrays.
+   */
+  GeoPolyline(double[] longitudes, double[] latitudes, int size)
+      throws IllegalArgumentException {
+    if (longitudes.length < size || latitudes.length < size
+        || (size == longitudes.length && size != latitudes.length)) {
+      throw new IllegalArgumentException("Unsupported polyline of "
+          + longitudes.length + " longitudes and " + latitudes.length
+          + " latitudes");
+    }
+    this.longitudes = Arrays.copyOf(longitudes, size);
+    this.latitudes = Arrays.copyOf(latitudes, size);
+  }
+
+  /**
+   * @return the number of vertices
+   */
+  public int size() {
+    return longitudes.length;
+  }
+
+  /**
+   * Returns the longitude of a vertex
+   * 
+   * @param index
+   *          the index of the vertex
+   * @return the geographical longitude in degrees (positive west)
+   */
+  public double getLongitude(int index) {
+    return longitudes[index];
+  }
+
+  /**
+   * Returns the latitude of a vertex
+   * 
+   * @param index
+   *          the index of the vertex
+   * @return the geographical latitude in degrees
+   */
+  public double getLatitude(int index) {
+    return latitudes[index];
+  }
+
+  /**
+   * @return a copy of the longitudes of the vertices
+   */
+  public double[] getLongitudes() {
+    return longitudes.clone();
+  }
+
+  /**
+   * @return a copy of the latitudes of the vertices
+   */
+  public double[] getLatitudes() {
+    return latitudes.clone();
+  }
+
+  /**
+   * @return true if the last vertex repeats the first one
+   */
+  public boolean isClosed() {
+    int last = longitudes.length - 1;
+    return last > 0 && longitudes[0] == longitudes[last]
+        && latitudes[0] == latitudes[last];
+  }
+
+  @Override
+  public String toString() {
+    return "GeoPolyline[" + longitudes.length + " vertices]";
+  }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.Arrays;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Aims the heliostats of a solar field at their receivers.
+ * 
+ * To reflect the sun onto its target, the mirror of a heliostat must face the
+ * bisector of the directions from the heliostat to the sun and to the target.
+ * Positions of the heliostats and of their targets are given in meters in the
+ * east-north-up frame of {@link SunVector} centered at the site, and the unit
+ * vectors from every heliostat to its target are computed once on creation
+ * and kept in primitive arrays. Each aiming then calculates the position of
+ * the sun once for the whole field, and the normals of all the mirrors in a
+ * loop over those arrays free of branches and calls, which the JIT compiler
+ * can vectorize; the drive angles, which need inverse trigonometric
+ * functions, are calculated in a separate loop and only when requested. Those
+ * functions dominate the cost of the angles, which is much lower with
+ * {@link Trigonometry#FAST}.
+ * 
+ * The field is immutable; aiming is not thread safe, since the position of
+ * the sun is kept in a reused {@link SolarState}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class HeliostatField {
+
+  private final Observer site;
+  private final double[] targetX;
+  private final double[] targetY;
+  private final double[] targetZ;
+  private final Trigonometry trigonometry;
+  private final SolarState state;
+  private final double[] position = new double[2];
+  private final double[] sun = new double[3];
+
+  /**
+   * Creates a field whose heliostats all aim at the same receiver.
+   * 
+   * @param site
+   *          the location of the field
+   * @param x
+   *          the east coordinates of the heliostats in meters
+   * @param y
+   *          the north coordinates of the heliostats in meters
+   * @param z
+   *          the heights of the heliostats in meters
+   * @param receiverX
+   *          the east coordinate of the receiver in meters
+   * @param receiverY
+   *          the north coordinate of the receiver in meters
+   * @param receiverZ
+   *          the height of the receiver in meters
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length or a heliostat is at
+   *           the receiver
+   */
+  public HeliostatField(Observer site, double[] x, double[] y, double[] z,
+      double receiverX, double receiverY, double receiverZ)
+      throws IllegalArgumentException {
+    this(site, x, y, z, fill(x.length, receiverX), fill(x.length, receiverY),
+        fill(x.length, receiverZ));
+  }
+
+  /**
+   * Creates a field whose heliostats aim at their own targets.
+   * 
+   * @param site
+   *          the location of the field
+   * @param x
+   *          the east coordinates of the heliostats in meters
+   * @param y
+   *          the north coordinates of the heliostats in meters
+   * @param z
+   *          the heights of the heliostats in meters
+   * @param targetX
+   *          the east coordinates of the targets in meters
+   * @param targetY
+   *          the north coordinates of the targets in meters
+   * @param targetZ
+   *          the heights of the targets in meters
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length or a heliostat is at
+   *           its target
+   */
+  public HeliostatField(Observer site, double[] x, double[] y, double[] z,
+      double[] targetX, double[] targetY, double[] targetZ)
+      throws IllegalArgumentException {
+    this(site, x, y, z, targetX, targetY, targetZ, Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a field whose heliostats aim at their own targets, evaluated
+   * with the given trigonometric functions.
+   * 
+   * @param site
+   *          the location of the field
+   * @param x
+   *          the east coordinates of the heliostats in meters
+   * @param y
+   *          the north coordinates of the heliostats in meters
+   * @param z
+   *          the heights of the heliostats in meters
+   * @param targetX
+   *          the east coordinates of the targets in meters
+   * @param targetY
+   *          the north coordinates of the targets in meters
+   * @param targetZ
+   *          the heights of the targets in meters
+   * @param trigonometry
+   *          the trigonometric functions to use for the position of the sun
+   *          and the drive angles
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length or a heliostat is at
+   *           its target
+   */
+  public HeliostatField(Observer site, double[] x, double[] y, double[] z,
+      double[] targetX, double[] targetY, double[] targetZ,
+      Trigonometry trigonometry) throws IllegalArgumentException {
+    int n = x.length;
+    if (y.length != n || z.length != n || targetX.length != n
+        || targetY.length != n || targetZ.length != n) {
+      throw new IllegalArgumentException("Unsupported field of " + n
+          + " heliostats with arrays of different lengths");
+    }
+    this.site = site;
+    this.targetX = new double[n];
+    this.targetY = new double[n];
+    this.targetZ = new double[n];
+    for (int i = 0; i < n; i++) {
+      double dx = targetX[i] - x[i];
+      double dy = targetY[i] - y[i];
+      double dz = targetZ[i] - z[i];
+      double norm = Math.sqrt(dx * dx + dy * dy + dz * dz);
+      if (!(norm > 0)) {
+        throw new IllegalArgumentException("Unsupported heliostat " + i
+            + " at its own target");
+      }
+      this.targetX[i] = dx / norm;
+      this.targetY[i] = dy / norm;
+      this.targetZ[i] = dz / norm;
+    }
+    this.trigonometry = trigonometry;
+    this.state = new SolarState(trigonometry);
+  }
+
+  /**
+   * Aims the field at the position of the sun at the given instant, with
+   * the altitude corrected by atmospheric refraction for standard
+   * conditions.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @param normalX
+   *          array receiving the east components of the mirror normals
+   * @param normalY
+   *          array receiving the north components of the mirror normals
+   * @param normalZ
+   *          array receiving the up components of the mirror normals
+   * @param elevation
+   *          array receiving the elevations of the mirror normals in
+   *          degrees, null if not needed
+   * @param azimuth
+   *          array receiving the azimuths of the mirror normals in degrees,
+   *          measured westwards from the south, null if not needed
+   * @throws IllegalArgumentException
+   *           thrown when an array is shorter than the number of heliostats
+   */
+  public void aim(double jd, double[] normalX, double[] normalY,
+      double[] normalZ, double[] elevation, double[] azimuth)
+      throws IllegalArgumentException {
+    state.update(jd).calculateHorizontal(site, position);
+    aim(position[0], position[1], normalX, normalY, normalZ, elevation,
+        azimuth);
+  }
+
+  /**
+   * Aims the field at the given position of the sun.
+   * 
+   * @param sunAzimuth
+   *          the azimuth of the sun in degrees, measured westwards from the
+   *          south
+   * @param sunAltitude
+   *          the altitude of the sun in degrees
+   * @param normalX
+   *          array receiving the east components of the mirror normals
+   * @param normalY
+   *          array receiving the north components of the mirror normals
+   * @param normalZ
+   *          array receiving the up components of the mirror normals
+   * @param elevation
+   *          array receiving the elevations of the mirror normals in
+   *          degrees, null if not needed
+   * @param azimuth
+   *          array receiving the azimuths of the mirror normals in degrees,
+   *          measured westwards from the south, null if not needed
+   * @throws IllegalArgumentException
+   *           thrown when an array is shorter than the number of heliostats
+   */
+  public void aim(double sunAzimuth, double sunAltitude, double[] normalX,
+      double[] normalY, double[] normalZ, double[] elevation,
+      double[] azimuth) throws IllegalArgumentException {
+    int n = targetX.length;
+    // checked up front, so that no normal is written on failure
+    if (normalX.length < n || normalY.length < n || normalZ.length < n
+        || elevation != null && elevation.length < n || azimuth != null
+        && azimuth.length < n) {
+      throw new IllegalArgumentException("Unsupported output arrays for "
+          + n + " heliostats");
+    }
+    SunVector.fromHorizontal(sunAzimuth, sunAltitude, sun);
+    double sx = sun[0];
+    double sy = sun[1];
+    double sz = sun[2];
+    for (int i = 0; i < n; i++) {
+      double bx = sx + targetX[i];
+      double by = sy + targetY[i];
+      double bz = sz + targetZ[i];
+      double inverse = 1 / Math.sqrt(bx * bx + by * by + bz * bz);
+      normalX[i] = bx * inverse;
+      normalY[i] = by * inverse;
+      normalZ[i] = bz * inverse;
+    }
+    Trigonometry trig = trigonometry;
+    if (elevation != null) {
+      for (int i = 0; i < n; i++) {
+        elevation[i] = Math.toDegrees(trig.asin(normalZ[i]));
+      }
+    }
+    if (azimuth != null) {
+      for (int i = 0; i < n; i++) {
+        azimuth[i] = Math.toDegrees(trig.atan2(-normalX[i], -normalY[i]));
+      }
+    }
+  }
+
+  /**
+   * @return the number of heliostats
+   */
+  public int size() {
+    return targetX.length;
+  }
+
+  /**
+   * @return the location of the field
+   */
+  public Observer getSite() {
+    return site;
+  }
+
+  private static double[] fill(int n, double value) {
+    double[] array = new double[n];
+    Arrays.fill(array, value);
+    return array;
+  }
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32C;
+
+/**
+ * Elevation of the local horizon (terrain, buildings, vegetation) as a
+ * function of the azimuth, used to tell whether the sun is visible from an
+ * {@link Observer}.
+ * 
+ * The profile is stored as evenly spaced elevations in a float array, the
+ * first one at azimuth 0 (south) and the following ones westwards, and is
+ * interpolated linearly in between, wrapping around the north. The largest
+ * change of elevation per degree of azimuth between samples is kept as the
+ * Lipschitz constant of the profile, so that {@link SunPredicate#aboveMask}
+ * can be searched for by {@link SunIntervalSearch}. Masks are immutable.
+ * 
+ * Masks are stored in a small binary file, little-endian, made of a header of
+ * {@link #HEADER_SIZE} bytes followed by the elevations as floats:
+ * 
+ * <pre>
+ * offset  type     field
+ *      0  byte[8]  magic number "CETUSHZN"
+ *      8  int      format version ({@link #VERSION})
+ *     12  int      number of elevations
+ *     16  long     CRC-32C of the elevations
+ * </pre>
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class HorizonMask {
+
+  /** Magic number the files start with */
+  public static final long MAGIC = 0x4E5A485355544543L; // "CETUSHZN"
+  /** Version of the format */
+  public static final int VERSION = 1;
+  /** Size of the header in bytes */
+  public static final int HEADER_SIZE = 24;
+
+  private final float[] elevations;
+  private final double step;
+  private final double maxSlope;
+  private final double minElevation;
+  private final double maxElevation;
+
+  /**
+   * Creates a HorizonMask from evenly spaced elevations, the first one at
+   * azimuth 0 (south) and the following ones westwards.
+   * 
+   * @param elevations
+   *          the elevations of the horizon in degrees, copied
+   * @throws IllegalArgumentException
+   *           thrown when there are no elevations or any of them is out of
+   *           [-90, 90]
+   */
+  public HorizonMask(float[] elevations) throws IllegalArgumentException {
+    if (elevations.length == 0) {
+      throw new IllegalArgumentException("Unsupported empty horizon mask");
+    }
+    this.elevations = elevations.clone();
+    this.step = 360.0 / elevations.length;
+    double slope = 0;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < elevations.length; i++) {
+      float e = elevations[i];
+      if (!(e >= -90 && e <= 90)) {
+        throw new IllegalArgumentException("Unsupported elevation " + e
+            + " at azimuth " + i * step
+            + ". Elevations must be within [-90, 90] degrees");
+      }
+      slope = Math.max(slope, Math.abs(elevations[(i + 1)
+          % elevations.length]
+          - e));
+      min = Math.min(min, e);
+      max = Math.max(max, e);
+    }
+    this.maxSlope = slope / step;
+    this.minElevation = min;
+    this.maxElevation = max;
+  }
+
+  /**
+   * Returns the elevation of the horizon at the given azimuth
+   * 
+   * @param azimuth
+   *          the azimuth in degrees, measured westwards from the south
+   * @return the elevation in degrees
+   */
+  public double getElevation(double azimuth) {
+    double x = azimuth % 360 / step;
+    if (x < 0) {
+      x += elevations.length;
+    }
+    int i = (int) x;
+    if (i >= elevations.length) {
+      i = 0;
+      x = 0;
+    }
+    double e0 = elevations[i];
+    return e0 + (elevations[i + 1 == elevations.length ? 0 : i + 1] - e0)
+        * (x - i);
+  }
+
+  /**
+   * @return the number of elevations of the profile
+   */
+  public int getSize() {
+    return elevations.length;
+  }
+
+  /**
+   * @return the largest change of elevation per degree of azimuth
+   */
+  public double getMaxSlope() {
+    return maxSlope;
+  }
+
+  /**
+   * @return the lowest elevation of the horizon in degrees
+   */
+  public double getMinElevation() {
+    return minElevation;
+  }
+
+  /**
+   * @return the highest elevation of the horizon in degrees
+   */
+  public double getMaxElevation() {
+    return maxElevation;
+  }
+
+  /**
+   * Writes the mask to a file, replacing it if it already exists.
+   * 
+   * @param path
+   *          the path of the file
+   * @throws IOException
+   *           thrown when the file cannot be written
+   */
+  public void write(Path path) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4
+        * elevations.length).order(ByteOrder.LITTLE_ENDIAN);
+    buffer.putLong(0, MAGIC);
+    buffer.putInt(8, VERSION);
+    buffer.putInt(12, elevations.length);
+    buffer.position(HEADER_SIZE);
+    buffer.asFloatBuffer().put(elevations);
+    buffer.putLong(16, checksum(buffer));
+    Path parent = path.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(parent, path.getFileName().toString(),
+        ".tmp");
+    try {
+      Files.write(temp, buffer.array());
+      Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Reads a mask from a file.
+   * 
+   * @param path
+   *          the path of the file
+   * @return the mask
+   * @throws IOException
+   *           thrown when the file cannot be read or is not a valid horizon
+   *           mask file
+   */
+  public static HorizonMask load(Path path) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(
+        ByteOrder.LITTLE_ENDIAN);
+    if (buffer.capacity() < HEADER_SIZE || buffer.getLong(0) != MAGIC) {
+      throw new IOException("Unsupported horizon mask file " + path
+          + ". Wrong magic number");
+    }
+    int version = buffer.getInt(8);
+    if (version != VERSION) {
+      throw new IOException("Unsupported horizon mask file " + path
+          + ". Unknown version " + version);
+    }
+    int count = buffer.getInt(12);
+    if (count <= 0 || HEADER_SIZE + 4L * count != buffer.capacity()) {
+      throw new IOException("Unsupported horizon mask file " + path
+          + ". Inconsistent size");
+    }
+    if (buffer.getLong(16) != checksum(buffer)) {
+      throw new IOException("Unsupported horizon mask file " + path
+          + ". Checksum mismatch");
+    }
+    float[] elevations = new float[count];
+    buffer.position(HEADER_SIZE);
+    buffer.asFloatBuffer().get(elevations);
+    try {
+      return new HorizonMask(elevations);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Unsupported horizon mask file " + path + ". "
+          + e.getMessage());
+    }
+  }
+
+  /**
+   * CRC-32C of the elevations
+   */
+  private static long checksum(ByteBuffer buffer) {
+    CRC32C crc = new CRC32C();
+    crc.update(buffer.duplicate().position(HEADER_SIZE));
+    return crc.getValue();
+  }
+}
@@ -18,6 +18,7 @@
 package org.cetus.astro;
 
 import org.apache.log4j.Logger;
+import org.cetus.astro.util.Trigonometry;
 
 /**
  * @author Inaki Ortiz de Landaluce Saiz
@@ -41,7 +42,7 @@ public class Nutation {
   public Nutation(JulianDay jd) {
     // calculate time measured in Julian centuries of 36525 ephemeris days from
     // the epoch J2000.0
-    calculateNutation(jd.getTimeFromJ2000());
+    calculateNutation(jd.getTimeFromJ2000(), Trigonometry.STANDARD);
   }
 
   /**
@@ -52,7 +53,21 @@ public class Nutation {
    *          the epoch J2000.0
    */
   public Nutation(double t) {
-    calculateNutation(t);
+    this(t, Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a Nutation instance for a given time, evaluated with the given
+   * trigonometric functions.
+   * 
+   * @param t
+   *          the time measured in Julian centuries of 36525 ephemeris days from
+   *          the epoch J2000.0
+   * @param trigonometry
+   *          the trigonometric functions to use
+   */
+  public Nutation(double t, Trigonometry trigonometry) {
+    calculateNutation(t, trigonometry);
   }
 
   /**
@@ -74,7 +89,7 @@ public class Nutation {
   }
 
   /* Note: This is a low accuracy algorithm */
-  private void calculateNutation(double t) {
+  private void calculateNutation(double t, Trigonometry trig) {
     log.debug("Into Nutation.calculateNutation");
     double t2 = t * t;
     log.debug("Julian centuries since J2000.0=" + t);
@@ -97,12 +112,12 @@ public class Nutation {
         + omega + " degrees");
 
     // set delta longitude and obliquity
-    this.deltaLon = -17.20 * Math.sin(omegaRadians) - 1.32
-        * Math.sin(2 * mlonSunRadians) - 0.23 * Math.sin(2 * mlonMoonRadians)
-        + 0.21 * Math.sin(2 * omegaRadians);
-    this.deltaEps = 9.20 * Math.cos(omegaRadians) + 0.57
-        * Math.cos(2 * mlonSunRadians) + 0.10 * Math.cos(2 * mlonMoonRadians)
-        - 0.09 * Math.cos(2 * omegaRadians);
+    this.deltaLon = -17.20 * trig.sin(omegaRadians) - 1.32
+        * trig.sin(2 * mlonSunRadians) - 0.23 * trig.sin(2 * mlonMoonRadians)
+        + 0.21 * trig.sin(2 * omegaRadians);
+    this.deltaEps = 9.20 * trig.cos(omegaRadians) + 0.57
+        * trig.cos(2 * mlonSunRadians) + 0.10 * trig.cos(2 * mlonMoonRadians)
+        - 0.09 * trig.cos(2 * omegaRadians);
     log.debug("Nutation in longitude=" + deltaLon + " arcseconds");
     log.debug("Nutation in obliquity=" + deltaEps + " arcseconds");
   }
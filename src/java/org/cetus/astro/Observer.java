@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Geographical location of an observer. The trigonometric functions of the
+ * latitude are computed once on creation so they can be reused for every
+ * instant the sun position is calculated for. An observer may carry the
+ * {@link HorizonMask} of its surroundings, used by {@link SunVisibility}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class Observer {
+
+  private final double longitude;
+  private final double latitude;
+  private final double sinLatitude;
+  private final double cosLatitude;
+  private final HorizonMask horizonMask;
+
+  /**
+   * Creates an Observer for the given location.
+   * 
+   * @param longitude
+   *          geographical longitude in degrees (positive west)
+   * @param latitude
+   *          geographical latitude in degrees
+   * @throws IllegalArgumentException
+   *           thrown when the latitude is out of [-90, 90]
+   */
+  public Observer(double longitude, double latitude)
+      throws IllegalArgumentException {
+    this(longitude, latitude, null);
+  }
+
+  /**
+   * Creates an Observer for the given location and horizon.
+   * 
+   * @param longitude
+   *          geographical longitude in degrees (positive west)
+   * @param latitude
+   *          geographical latitude in degrees
+   * @param horizonMask
+   *          the elevation of the local horizon, null if it is flat
+   * @throws IllegalArgumentException
+   *           thrown when the latitude is out of [-90, 90]
+   */
+  public Observer(double longitude, double latitude, HorizonMask horizonMask)
+      throws IllegalArgumentException {
+    if (!(latitude >= -90 && latitude <= 90)) {
+      throw new IllegalArgumentException("Unsupported latitude " + latitude
+          + ". Latitude must be within [-90, 90] degrees");
+    }
+    this.longitude = longitude;
+    this.latitude = latitude;
+    double phi = Math.toRadians(latitude);
+    this.sinLatitude = Math.sin(phi);
+    this.cosLatitude = Math.cos(phi);
+    this.horizonMask = horizonMask;
+  }
+
+  /**
+   * @return the geographical longitude in degrees (positive west)
+   */
+  public double getLongitude() {
+    return longitude;
+  }
+
+  /**
+   * @return the geographical latitude in degrees
+   */
+  public double getLatitude() {
+    return latitude;
+  }
+
+  /**
+   * @return the sine of the geographical latitude
+   */
+  public double getSinLatitude() {
+    return sinLatitude;
+  }
+
+  /**
+   * @return the cosine of the geographical latitude
+   */
+  public double getCosLatitude() {
+    return cosLatitude;
+  }
+
+  /**
+   * @return the elevation of the local horizon, null if it is flat
+   */
+  public HorizonMask getHorizonMask() {
+    return horizonMask;
+  }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Calculates the angle of incidence of the sun on fixed surfaces and the
+ * rotation of single-axis trackers, with or without backtracking, for large
+ * numbers of PV plants.
+ * 
+ * Positions of the sun are taken as they come out of the rest of the library,
+ * e.g. from {@link SunPositionBatch}, either one per plant or a single one for
+ * plants close enough to share it. The geometry of the plants is given by
+ * {@link FixedSurfaces} and {@link SingleAxisTrackers}, whose surface normals
+ * are precomputed, so that every plant only costs a few multiplications and,
+ * for trackers, an arctangent. Nothing is allocated per plant, and plants are
+ * split into blocks processed in parallel by a {@link ForkJoinPool}.
+ * 
+ * Incidence is given as the cosine of the angle between the sun and the
+ * surface normal, negative when the sun is behind the surface. Trackers
+ * follow the sun within their rotation limits while it is above the horizon,
+ * and are stowed at zero rotation otherwise.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class PlaneOfArray {
+
+  /** Default number of plants of the blocks */
+  public static final int DEFAULT_BLOCK_SIZE = 4096;
+
+  private final ForkJoinPool pool;
+  private final int blockSize;
+
+  /**
+   * Creates a PlaneOfArray running on the common pool with blocks of
+   * {@link #DEFAULT_BLOCK_SIZE} plants.
+   */
+  public PlaneOfArray() {
+    this(ForkJoinPool.commonPool(), DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a PlaneOfArray.
+   * 
+   * @param pool
+   *          the pool the blocks are processed by
+   * @param blockSize
+   *          the number of plants of the blocks
+   * @throws IllegalArgumentException
+   *           thrown when the block size is not positive
+   */
+  public PlaneOfArray(ForkJoinPool pool, int blockSize)
+      throws IllegalArgumentException {
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Unsupported block size "
+          + blockSize);
+    }
+    this.pool = pool;
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Calculates the incidence of the sun on every surface, each with its own
+   * position of the sun.
+   * 
+   * @param surfaces
+   *          the geometry of the surfaces
+   * @param azimuth
+   *          the azimuths of the sun in degrees, measured westwards from the
+   *          south
+   * @param altitude
+   *          the altitudes of the sun in degrees
+   * @param cosIncidence
+   *          array receiving the cosines of the angles of incidence
+   */
+  public void calculateIncidence(FixedSurfaces surfaces, double[] azimuth,
+      double[] altitude, double[] cosIncidence) {
+    checkLength(surfaces.size(), azimuth, altitude, cosIncidence);
+    run(new Job(surfaces, null, azimuth, altitude, 0, 0, null, cosIncidence));
+  }
+
+  /**
+   * Calculates the incidence of the sun on every surface, for a single
+   * position of the sun.
+   * 
+   * @param surfaces
+   *          the geometry of the surfaces
+   * @param azimuth
+   *          the azimuth of the sun in degrees, measured westwards from the
+   *          south
+   * @param altitude
+   *          the altitude of the sun in degrees
+   * @param cosIncidence
+   *          array receiving the cosines of the angles of incidence
+   */
+  public void calculateIncidence(FixedSurfaces surfaces, double azimuth,
+      double altitude, double[] cosIncidence) {
+    checkLength(surfaces.size(), cosIncidence);
+    run(new Job(surfaces, null, null, null, azimuth, altitude, null,
+        cosIncidence));
+  }
+
+  /**
+   * Calculates the rotation of every tracker and the incidence of the sun on
+   * its surface, each with its own position of the sun.
+   * 
+   * @param trackers
+   *          the geometry of the trackers
+   * @param azimuth
+   *          the azimuths of the sun in degrees, measured westwards from the
+   *          south
+   * @param altitude
+   *          the altitudes of the sun in degrees
+   * @param rotation
+   *          array receiving the rotations of the trackers in degrees
+   * @param cosIncidence
+   *          array receiving the cosines of the angles of incidence
+   */
+  public void calculateTracking(SingleAxisTrackers trackers,
+      double[] azimuth, double[] altitude, double[] rotation,
+      double[] cosIncidence) {
+    checkLength(trackers.size(), azimuth, altitude, rotation, cosIncidence);
+    run(new Job(null, trackers, azimuth, altitude, 0, 0, rotation,
+        cosIncidence));
+  }
+
+  /**
+   * Calculates the rotation of every tracker and the incidence of the sun on
+   * its surface, for a single position of the sun.
+   * 
+   * @param trackers
+   *          the geometry of the trackers
+   * @param azimuth
+   *          the azimuth of the sun in degrees, measured westwards from the
+   *          south
+   * @param altitude
+   *          the altitude of the sun in degrees
+   * @param rotation
+   *          array receiving the rotations of the trackers in degrees
+   * @param cosIncidence
+   *          array receiving the cosines of the angles of incidence
+   */
+  public void calculateTracking(SingleAxisTrackers trackers, double azimuth,
+      double altitude, double[] rotation, double[] cosIncidence) {
+    checkLength(trackers.size(), rotation, cosIncidence);
+    run(new Job(null, trackers, null, null, azimuth, altitude, rotation,
+        cosIncidence));
+  }
+
+  /**
+   * Calculates the incidence on the surfaces of a range
+   */
+  static void calculateIncidence(FixedSurfaces surfaces, double[] azimuth,
+      double[] altitude, double[] sun, double[] cosIncidence, int from,
+      int to) {
+    for (int i = from; i < to; i++) {
+      if (azimuth != null) {
+        SunVector.fromHorizontal(azimuth[i], altitude[i], sun);
+      }
+      cosIncidence[i] = sun[0] * surfaces.normalX[i] + sun[1]
+          * surfaces.normalY[i] + sun[2] * surfaces.normalZ[i];
+    }
+  }
+
+  /**
+   * Calculates the rotation of and the incidence on the trackers of a range
+   */
+  static void calculateTracking(SingleAxisTrackers trackers,
+      double[] azimuth, double[] altitude, double[] sun, double[] rotation,
+      double[] cosIncidence, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (azimuth != null) {
+        SunVector.fromHorizontal(azimuth[i], altitude[i], sun);
+      }
+      // components of the sun along n0 and n0 x a
+      double up = sun[0] * trackers.zeroX[i] + sun[1] * trackers.zeroY[i]
+          + sun[2] * trackers.zeroZ[i];
+      double side = sun[0] * trackers.sideX[i] + sun[1] * trackers.sideY[i]
+          + sun[2] * trackers.sideZ[i];
+      double angle = 0;
+      if (sun[2] > 0) {
+        // ideal rotation, facing the projection of the sun
+        angle = Math.atan2(side, up);
+        double gcr = trackers.groundCoverage[i];
+        if (gcr > 0) {
+          // backtrack until the shadow of a row ends at the next one
+          double c = Math.cos(angle) / gcr;
+          if (c < 1) {
+            angle -= Math.signum(angle) * Math.acos(c);
+          }
+        }
+        double limit = Math.toRadians(trackers.maxAngle[i]);
+        angle = Math.max(-limit, Math.min(limit, angle));
+      }
+      rotation[i] = Math.toDegrees(angle);
+      cosIncidence[i] = up * Math.cos(angle) + side * Math.sin(angle);
+    }
+  }
+
+  private void run(Job job) {
+    int n = job.surfaces != null ? job.surfaces.size() : job.trackers.size();
+    if (n <= blockSize) {
+      job.run(0, n);
+    } else {
+      pool.invoke(new Task(job, 0, n));
+    }
+  }
+
+  private static void checkLength(int n, double[]... arrays)
+      throws IllegalArgumentException {
+    for (double[] array : arrays) {
+      if (array.length != n) {
+        throw new IllegalArgumentException("Unsupported array of "
+            + array.length + " elements for " + n + " plants");
+      }
+    }
+  }
+
+  /**
+   * Inputs and outputs of a calculation
+   */
+  private static final class Job {
+
+    private final FixedSurfaces surfaces;
+    private final SingleAxisTrackers trackers;
+    private final double[] azimuth;
+    private final double[] altitude;
+    private final double sunAzimuth;
+    private final double sunAltitude;
+    private final double[] rotation;
+    private final double[] cosIncidence;
+
+    Job(FixedSurfaces surfaces, SingleAxisTrackers trackers,
+        double[] azimuth, double[] altitude, double sunAzimuth,
+        double sunAltitude, double[] rotation, double[] cosIncidence) {
+      this.surfaces = surfaces;
+      this.trackers = trackers;
+      this.azimuth = azimuth;
+      this.altitude = altitude;
+      this.sunAzimuth = sunAzimuth;
+      this.sunAltitude = sunAltitude;
+      this.rotation = rotation;
+      this.cosIncidence = cosIncidence;
+    }
+
+    void run(int from, int to) {
+      double[] sun = new double[3];
+      if (azimuth == null) {
+        SunVector.fromHorizontal(sunAzimuth, sunAltitude, sun);
+      }
+      if (surfaces != null) {
+        calculateIncidence(surfaces, azimuth, altitude, sun, cosIncidence,
+            from, to);
+      } else {
+        calculateTracking(trackers, azimuth, altitude, sun, rotation,
+            cosIncidence, from, to);
+      }
+    }
+  }
+
+  /**
+   * Processes a range of plants, splitting it in halves down to the block
+   * size
+   */
+  private final class Task extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Job job;
+    private final int from;
+    private final int to;
+
+    Task(Job job, int from, int to) {
+      this.job = job;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > blockSize) {
+        int middle = from + (to - from) / 2;
+        invokeAll(new Task(job, from, middle), new Task(job, middle, to));
+      } else {
+        job.run(from, to);
+      }
+    }
+  }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Atmospheric refraction interpolated from a table precomputed for standard
+ * conditions, meant for long series of altitudes and weather observations.
+ * 
+ * The table holds the refraction of {@link AtmosphericRefraction} at 1010
+ * millibars and 283 K, together with its derivative, at evenly spaced true
+ * altitudes from {@link #CUTOFF_ALTITUDE} to 90 degrees, and is evaluated by
+ * cubic Hermite interpolation, which matches the formula to 1e-6 arcminutes
+ * with the default spacing. Other conditions are obtained by the usual scaling
+ * by the pressure and the inverse of the temperature. Evaluating the table
+ * neither allocates nor calls any trigonometric function.
+ * 
+ * The formula is singular near -5.11 degrees, well below the horizon, where it
+ * returns meaningless values. Below {@link #CUTOFF_ALTITUDE} the table instead
+ * tapers the refraction linearly down to zero at {@link #ZERO_ALTITUDE}, so
+ * that it stays continuous, bounded and the apparent altitude keeps growing
+ * with the true altitude. Altitudes above 90 degrees are taken as 90.
+ * 
+ * Tables are immutable and thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class RefractionTable {
+
+  /** Lowest true altitude in degrees the formula is tabulated at */
+  public static final double CUTOFF_ALTITUDE = -1;
+  /** True altitude in degrees below which the refraction is zero */
+  public static final double ZERO_ALTITUDE = -5;
+  /** Default spacing of the table in degrees */
+  public static final double DEFAULT_STEP = 1.0 / 32;
+
+  /** Table with the default spacing */
+  public static final RefractionTable DEFAULT = new RefractionTable(
+      DEFAULT_STEP);
+
+  private static final double STANDARD_PRESSURE = 1010;
+  private static final double STANDARD_TEMPERATURE = 283;
+
+  private final double step;
+  private final double inverseStep;
+  private final double[] values;
+  private final double[] slopes;
+  private final double cutoffRefraction;
+  private final double maxRate;
+
+  /**
+   * Creates a RefractionTable.
+   * 
+   * @param step
+   *          the spacing of the table in degrees
+   * @throws IllegalArgumentException
+   *           thrown when the spacing is not within (0, 1]
+   */
+  public RefractionTable(double step) throws IllegalArgumentException {
+    if (!(step > 0 && step <= 1)) {
+      throw new IllegalArgumentException("Unsupported step " + step
+          + ". Step must be within (0, 1] degrees");
+    }
+    int intervals = (int) Math.ceil((90 - CUTOFF_ALTITUDE) / step);
+    this.step = step;
+    this.inverseStep = 1 / step;
+    this.values = new double[intervals + 2];
+    this.slopes = new double[intervals + 2];
+    for (int i = 0; i < values.length; i++) {
+      double altitude = CUTOFF_ALTITUDE + i * step;
+      values[i] = AtmosphericRefraction.calculateRefraction(altitude,
+          STANDARD_PRESSURE, STANDARD_TEMPERATURE, Trigonometry.STANDARD);
+      // derivative per interval of the table
+      slopes[i] = AtmosphericRefraction.calculateRefractionRate(altitude,
+          STANDARD_PRESSURE, STANDARD_TEMPERATURE, Trigonometry.STANDARD)
+          * step;
+    }
+    this.cutoffRefraction = values[0];
+    // the taper rises towards the cutoff, the formula falls above it
+    double rate = cutoffRefraction / (CUTOFF_ALTITUDE - ZERO_ALTITUDE);
+    for (int i = 0; i < slopes.length; i++) {
+      rate = Math.max(rate, slopes[i] * inverseStep);
+    }
+    this.maxRate = rate;
+  }
+
+  /**
+   * Calculates the refraction for standard conditions, 1010 millibars and
+   * 283 K.
+   * 
+   * @param altitude
+   *          the true altitude in degrees
+   * @return the refraction correction in arcminutes
+   */
+  public double calculateRefraction(double altitude) {
+    if (altitude < CUTOFF_ALTITUDE) {
+      return altitude > ZERO_ALTITUDE ? cutoffRefraction
+          * (altitude - ZERO_ALTITUDE) / (CUTOFF_ALTITUDE - ZERO_ALTITUDE) : 0;
+    }
+    double x = (Math.min(altitude, 90) - CUTOFF_ALTITUDE) * inverseStep;
+    int i = (int) x;
+    double s = x - i;
+    double s2 = s * s;
+    double s3 = s2 * s;
+    return (2 * s3 - 3 * s2 + 1) * values[i] + (s3 - 2 * s2 + s) * slopes[i]
+        + (3 * s2 - 2 * s3) * values[i + 1] + (s3 - s2) * slopes[i + 1];
+  }
+
+  /**
+   * Calculates the refraction for the given conditions.
+   * 
+   * @param altitude
+   *          the true altitude in degrees
+   * @param pressure
+   *          the atmospheric pressure in millibars
+   * @param temperature
+   *          the air temperature in Kelvin
+   * @return the refraction correction in arcminutes
+   */
+  public double calculateRefraction(double altitude, double pressure,
+      double temperature) {
+    return calculateRefraction(altitude) * scale(pressure, temperature);
+  }
+
+  /**
+   * Calculates the apparent altitude for the given conditions.
+   * 
+   * @param altitude
+   *          the true altitude in degrees
+   * @param pressure
+   *          the atmospheric pressure in millibars
+   * @param temperature
+   *          the air temperature in Kelvin
+   * @return the apparent altitude in degrees
+   */
+  public double calculateApparentAltitude(double altitude, double pressure,
+      double temperature) {
+    return altitude + calculateRefraction(altitude, pressure, temperature)
+        / 60;
+  }
+
+  /**
+   * Calculates the apparent altitudes of an array of true altitudes, all for
+   * the same conditions.
+   * 
+   * @param altitude
+   *          the true altitudes in degrees
+   * @param pressure
+   *          the atmospheric pressure in millibars
+   * @param temperature
+   *          the air temperature in Kelvin
+   * @param result
+   *          array receiving the apparent altitudes in degrees, which may be
+   *          the array of true altitudes
+   */
+  public void calculateApparentAltitudes(double[] altitude, double pressure,
+      double temperature, double[] result) {
+    double scale = scale(pressure, temperature) / 60;
+    for (int i = 0; i < altitude.length; i++) {
+      result[i] = altitude[i] + calculateRefraction(altitude[i]) * scale;
+    }
+  }
+
+  /**
+   * Calculates the apparent altitudes of an array of true altitudes, each
+   * for its own conditions, e.g. from a weather station feed.
+   * 
+   * @param altitude
+   *          the true altitudes in degrees
+   * @param pressure
+   *          the atmospheric pressures in millibars
+   * @param temperature
+   *          the air temperatures in Kelvin
+   * @param result
+   *          array receiving the apparent altitudes in degrees, which may be
+   *          the array of true altitudes
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length
+   */
+  public void calculateApparentAltitudes(double[] altitude, double[] pressure,
+      double[] temperature, double[] result) throws IllegalArgumentException {
+    if (pressure.length != altitude.length
+        || temperature.length != altitude.length) {
+      throw new IllegalArgumentException("Unsupported weather arrays of "
+          + pressure.length + " and " + temperature.length + " samples for "
+          + altitude.length + " altitudes");
+    }
+    for (int i = 0; i < altitude.length; i++) {
+      result[i] = altitude[i] + calculateRefraction(altitude[i])
+          * scale(pressure[i], temperature[i]) / 60;
+    }
+  }
+
+  /**
+   * Returns the largest rate of change of the refraction for standard
+   * conditions with the true altitude, reached by the taper below
+   * {@link #CUTOFF_ALTITUDE}, so that the apparent altitude grows at most by
+   * <code>1 + rate / 60</code> degrees per degree of true altitude.
+   * 
+   * @return the rate in arcminutes per degree
+   */
+  public double getMaxRefractionRate() {
+    return maxRate;
+  }
+
+  /**
+   * @return the spacing of the table in degrees
+   */
+  public double getStep() {
+    return step;
+  }
+
+  private static double scale(double pressure, double temperature) {
+    return pressure / STANDARD_PRESSURE * (STANDARD_TEMPERATURE / temperature);
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Scalar implementation of {@link SunPositionKernel}, evaluating one
+ * {@link SolarState} per element. Available on every JVM.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class ScalarSunPositionKernel implements SunPositionKernel {
+
+  @Override
+  public void calculate(double[] jd, double[] longitude, double[] latitude,
+      double[] azimuth, double[] altitude, int offset, int length) {
+    SolarState state = new SolarState();
+    double[] position = new double[2];
+    for (int i = offset; i < offset + length; i++) {
+      state.update(jd[i]).calculateHorizontal(longitude[i], latitude[i],
+          position);
+      azimuth[i] = position[0];
+      altitude[i] = position[1];
+    }
+  }
+}
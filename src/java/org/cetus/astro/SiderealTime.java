@@ -19,6 +19,7 @@ package org.cetus.astro;
 
 import org.apache.log4j.Logger;
 import org.cetus.astro.util.AngleUtils;
+import org.cetus.astro.util.Trigonometry;
 
 /**
  * @author Inaki Ortiz de Landaluce Saiz
@@ -61,6 +62,33 @@ public class SiderealTime {
    */
   public static double calculateApparentSiderealTime(JulianDay jd,
       double deltaLongitude, double deltaObliquity) {
+    return calculateApparentSiderealTime(jd, deltaLongitude, deltaObliquity,
+        Trigonometry.STANDARD);
+  }
+
+  /**
+   * Calculates the apparent sidereal time for the given julian day, evaluated
+   * with the given trigonometric functions. The correction for nutation is
+   * taken into account.
+   * 
+   * @param jd
+   *          the julian day
+   * 
+   * @param deltaLongitude
+   *          the delta component along the ecliptic due to nutation in
+   *          arcseconds
+   * 
+   * @param deltaObliquity
+   *          the delta component perpendicular to the ecliptic due to nutation
+   *          in arcseconds
+   * 
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * 
+   * @return the apparent sidereal time in degrees
+   */
+  public static double calculateApparentSiderealTime(JulianDay jd,
+      double deltaLongitude, double deltaObliquity, Trigonometry trigonometry) {
     log.debug("Into SiderealTime.calculateApparentSiderealTime");
     double deltaPsi = deltaLongitude / 3600; // degrees
     log.debug("Nutation in longitude = " + deltaPsi + " degrees");
@@ -68,7 +96,7 @@ public class SiderealTime {
         jd.getTimeFromJ2000(), deltaObliquity);
     log.debug("Ecliptic obliquity = " + eps + " degrees");
     double ast = calculateMeanSiderealTime(jd)
-        + (Math.cos(Math.toRadians(eps)) * deltaPsi);
+        + (trigonometry.cos(Math.toRadians(eps)) * deltaPsi);
     log.debug("Apparent Sidereal Time "
         + AngleUtils.formatDegToHms(ast, 0, 360));
     log.debug("Exit SiderealTime.calculateApparentSiderealTime");
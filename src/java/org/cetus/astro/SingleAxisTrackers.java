@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Geometry of a set of single-axis trackers for {@link PlaneOfArray}.
+ * 
+ * Every tracker rotates its surface about an axis pointing at the given
+ * azimuth and raised by the given tilt towards it, e.g. a north-south axis
+ * raised towards the north has azimuth 180 and a positive tilt. At zero
+ * rotation the surface normal <i>n0</i> is the upward direction perpendicular
+ * to the axis <i>a</i>, and positive rotations turn it towards <i>n0 x a</i>,
+ * i.e. westwards for an axis pointing to the north. Both vectors are computed
+ * once on creation and kept in primitive arrays, in the east-north-up frame
+ * of {@link SunVector}. Instances are immutable.
+ * 
+ * Rows of trackers may backtrack, i.e. turn away from the sun when it is low
+ * so that they do not shade each other, given their ground coverage ratio,
+ * the width of the surfaces over the spacing of the rows, on flat ground.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SingleAxisTrackers {
+
+  final double[] zeroX;
+  final double[] zeroY;
+  final double[] zeroZ;
+  final double[] sideX;
+  final double[] sideY;
+  final double[] sideZ;
+  final double[] maxAngle;
+  final double[] groundCoverage;
+
+  /**
+   * Creates the geometry of a set of trackers.
+   * 
+   * @param axisTilt
+   *          the tilts of the axes from the horizontal in degrees, within
+   *          [0, 90)
+   * @param axisAzimuth
+   *          the azimuths the axes point at in degrees, measured westwards
+   *          from the south
+   * @param maxAngle
+   *          the largest rotations of the trackers either way in degrees
+   * @param groundCoverage
+   *          the ground coverage ratios of the rows within (0, 1], or 0 for
+   *          trackers that do not backtrack
+   * @throws IllegalArgumentException
+   *           thrown when the arrays differ in length or any value is out of
+   *           range
+   */
+  public SingleAxisTrackers(double[] axisTilt, double[] axisAzimuth,
+      double[] maxAngle, double[] groundCoverage)
+      throws IllegalArgumentException {
+    int n = axisTilt.length;
+    if (axisAzimuth.length != n || maxAngle.length != n
+        || groundCoverage.length != n) {
+      throw new IllegalArgumentException("Unsupported geometry of " + n
+          + " tilts, " + axisAzimuth.length + " azimuths, "
+          + maxAngle.length + " angles and " + groundCoverage.length
+          + " ratios");
+    }
+    this.zeroX = new double[n];
+    this.zeroY = new double[n];
+    this.zeroZ = new double[n];
+    this.sideX = new double[n];
+    this.sideY = new double[n];
+    this.sideZ = new double[n];
+    this.maxAngle = maxAngle.clone();
+    this.groundCoverage = groundCoverage.clone();
+    double[] axis = new double[3];
+    for (int i = 0; i < n; i++) {
+      if (!(axisTilt[i] >= 0 && axisTilt[i] < 90)) {
+        throw new IllegalArgumentException("Unsupported axis tilt "
+            + axisTilt[i] + ". Tilt must be within [0, 90) degrees");
+      }
+      if (!(maxAngle[i] >= 0 && maxAngle[i] <= 180)) {
+        throw new IllegalArgumentException("Unsupported rotation limit "
+            + maxAngle[i] + ". Limit must be within [0, 180] degrees");
+      }
+      if (!(groundCoverage[i] >= 0 && groundCoverage[i] <= 1)) {
+        throw new IllegalArgumentException("Unsupported ground coverage "
+            + groundCoverage[i] + ". Ratio must be within [0, 1]");
+      }
+      SunVector.fromHorizontal(axisAzimuth[i], axisTilt[i], axis);
+      // n0 is the zenith minus its projection on the axis, normalized
+      double cosTilt = Math.cos(Math.toRadians(axisTilt[i]));
+      zeroX[i] = -axis[2] * axis[0] / cosTilt;
+      zeroY[i] = -axis[2] * axis[1] / cosTilt;
+      zeroZ[i] = (1 - axis[2] * axis[2]) / cosTilt;
+      // n0 x a
+      sideX[i] = zeroY[i] * axis[2] - zeroZ[i] * axis[1];
+      sideY[i] = zeroZ[i] * axis[0] - zeroX[i] * axis[2];
+      sideZ[i] = zeroX[i] * axis[1] - zeroY[i] * axis[0];
+    }
+  }
+
+  /**
+   * @return the number of trackers
+   */
+  public int size() {
+    return zeroX.length;
+  }
+}
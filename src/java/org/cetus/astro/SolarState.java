@@ -0,0 +1,580 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import org.cetus.astro.util.AngleUtils;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Geocentric state of the sun at a given instant as computed by the low
+ * accuracy algorithm of {@link SunPositionAlgorithmLowRes}: mean elements,
+ * nutation, obliquity, apparent equatorial coordinates and apparent sidereal
+ * time. Everything that does not depend on the observer's location is
+ * computed once by {@link #update(double)}, so the same state can be converted
+ * into horizontal coordinates for any number of locations. The analytic time
+ * derivatives of the coordinates are only calculated when first requested
+ * after an update.
+ * 
+ * Unlike the algorithm classes, a SolarState is evaluated on primitives
+ * without logging nor allocating, and may be reused for successive instants.
+ * It is not thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SolarState {
+
+  /** Epoch J2000.0 as a Julian Day */
+  public static final double J2000 = 2451545.0;
+
+  private static final double ABERRATION = -0.00569;
+
+  private final Trigonometry trigonometry;
+
+  private double jd;
+  private double t;
+  private double meanLongitude;
+  private double meanAnomaly;
+  private double center;
+  private double nutationLongitude;
+  private double nutationObliquity;
+  private double obliquity;
+  private double apparentLongitude;
+  private double rightAscension;
+  private double declination;
+  private double siderealTime;
+  private double sinDec;
+  private double cosDec;
+  private boolean ratesValid;
+  private double rightAscensionRate;
+  private double declinationRate;
+
+  /**
+   * Creates a SolarState evaluated with full precision trigonometric
+   * functions. The state must be updated before use.
+   */
+  public SolarState() {
+    this(Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a SolarState evaluated with the given trigonometric functions. The
+   * state must be updated before use.
+   * 
+   * @param trigonometry
+   *          the trigonometric functions to use
+   */
+  public SolarState(Trigonometry trigonometry) {
+    this.trigonometry = trigonometry;
+  }
+
+  /**
+   * Updates the state for the given instant.
+   * 
+   * @param julianDay
+   *          the Julian Day (UT)
+   * @return this state
+   */
+  public SolarState update(double julianDay) {
+    Trigonometry trig = this.trigonometry;
+    this.jd = julianDay;
+    this.t = (julianDay - J2000) / 36525;
+    double t2 = t * t;
+
+    // geometric mean longitude and mean anomaly of the Sun
+    meanLongitude = AngleUtils.normalizeAngle(280.46646 + 36000.76983 * t
+        + 0.0003032 * t2, 0, 360);
+    meanAnomaly = AngleUtils.normalizeAngle(357.52911 + 35999.05029 * t
+        - 0.0001537 * t2, 0, 360);
+    double m = Math.toRadians(meanAnomaly);
+
+    // equation of the center
+    center = (1.914602 - 0.004817 * t - 0.000014 * t2) * trig.sin(m)
+        + (0.019993 - 0.000101 * t) * trig.sin(2 * m) + 0.000289
+        * trig.sin(3 * m);
+
+    // nutation in longitude and obliquity (low accuracy, as in Nutation)
+    double lonSun = Math.toRadians(280.4665 + 36000.7698 * t);
+    double lonMoon = Math.toRadians(218.3165 + 481267.8813 * t);
+    double omega = Math.toRadians(125.04452 - 1934.136261 * t + 0.0020708
+        * t2 + t * t2 / 450000);
+    nutationLongitude = -17.20 * trig.sin(omega) - 1.32 * trig.sin(2 * lonSun)
+        - 0.23 * trig.sin(2 * lonMoon) + 0.21 * trig.sin(2 * omega);
+    nutationObliquity = 9.20 * trig.cos(omega) + 0.57 * trig.cos(2 * lonSun)
+        + 0.10 * trig.cos(2 * lonMoon) - 0.09 * trig.cos(2 * omega);
+
+    // apparent longitude and true obliquity
+    double deltaPsi = nutationLongitude / 3600;
+    apparentLongitude = AngleUtils.normalizeAngle(meanLongitude + center, 0,
+        360) + ABERRATION + deltaPsi;
+    obliquity = EclipticObliquity.calculateTrueObliquity(t, nutationObliquity);
+    double lambda = Math.toRadians(apparentLongitude);
+    double epsilon = Math.toRadians(obliquity);
+    double sinLambda = trig.sin(lambda);
+    double cosEpsilon = trig.cos(epsilon);
+
+    // equatorial coordinates assuming the ecliptic latitude is zero
+    rightAscension = AngleUtils.normalizeAngle(Math.toDegrees(trig.atan2(
+        sinLambda * cosEpsilon, trig.cos(lambda))), 0, 360);
+    double decRadians = trig.asin(trig.sin(epsilon) * sinLambda);
+    declination = Math.toDegrees(decRadians);
+    sinDec = trig.sin(decRadians);
+    cosDec = trig.cos(decRadians);
+
+    // apparent sidereal time at Greenwich
+    double mst = AngleUtils.normalizeAngle(280.46061837 + 360.98564736629
+        * (julianDay - J2000) + 0.000387933 * t2 - t * t2 / 38710000, 0, 360);
+    siderealTime = AngleUtils.normalizeAngle(mst + cosEpsilon * deltaPsi, 0,
+        360);
+    ratesValid = false;
+    return this;
+  }
+
+  /**
+   * Calculates the rates of the equatorial coordinates from the rate of the
+   * apparent longitude, the first time they are requested for an instant
+   */
+  private void calculateRates() {
+    if (!ratesValid) {
+      double lambdaRate = calculateLongitudeRate(t, meanAnomaly, trigonometry);
+      double lambda = Math.toRadians(apparentLongitude);
+      double epsilon = Math.toRadians(obliquity);
+      rightAscensionRate = trigonometry.cos(epsilon) / (cosDec * cosDec)
+          * lambdaRate;
+      declinationRate = trigonometry.sin(epsilon) * trigonometry.cos(lambda)
+          / cosDec * lambdaRate;
+      ratesValid = true;
+    }
+  }
+
+  /**
+   * Calculates the local hour angle of the sun.
+   * 
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @return the hour angle in degrees within [0, 360)
+   */
+  public double calculateHourAngle(double longitude) {
+    return AngleUtils.normalizeAngle(siderealTime - longitude
+        - rightAscension, 0, 360);
+  }
+
+  /**
+   * Calculates the horizontal coordinates of the sun for the given location,
+   * the altitude corrected by atmospheric refraction for standard conditions
+   * exactly as {@link SunPositionAlgorithmLowRes#calculateSunPosition()}.
+   * 
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @param latitude
+   *          geographical latitude in degrees of the observer's location
+   * @param result
+   *          array receiving the azimuth (measured westwards from the south)
+   *          and the apparent altitude in degrees, at indexes 0 and 1
+   */
+  public void calculateHorizontal(double longitude, double latitude,
+      double[] result) {
+    double phi = Math.toRadians(latitude);
+    calculateHorizontal(longitude, trigonometry.sin(phi),
+        trigonometry.cos(phi), result);
+  }
+
+  /**
+   * Calculates the horizontal coordinates of the sun for the given observer,
+   * the altitude corrected by atmospheric refraction for standard conditions.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param result
+   *          array receiving the azimuth (measured westwards from the south)
+   *          and the apparent altitude in degrees, at indexes 0 and 1
+   */
+  public void calculateHorizontal(Observer observer, double[] result) {
+    calculateHorizontal(observer.getLongitude(), observer.getSinLatitude(),
+        observer.getCosLatitude(), result);
+  }
+
+  /**
+   * Calculates the horizontal coordinates of the sun for a location whose
+   * latitude trigonometric functions are already known.
+   * 
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @param sinLatitude
+   *          sine of the geographical latitude
+   * @param cosLatitude
+   *          cosine of the geographical latitude
+   * @param result
+   *          array receiving the azimuth and the apparent altitude in degrees
+   */
+  void calculateHorizontal(double longitude, double sinLatitude,
+      double cosLatitude, double[] result) {
+    calculateHorizontal(calculateHourAngle(longitude), sinDec, cosDec,
+        sinLatitude, cosLatitude, trigonometry, result);
+  }
+
+  /**
+   * Converts the local hour angle and declination of the sun into horizontal
+   * coordinates, correcting the altitude by atmospheric refraction for
+   * standard conditions.
+   * 
+   * @param hourAngle
+   *          the local hour angle in degrees
+   * @param sinDec
+   *          sine of the declination
+   * @param cosDec
+   *          cosine of the declination
+   * @param sinLatitude
+   *          sine of the geographical latitude
+   * @param cosLatitude
+   *          cosine of the geographical latitude
+   * @param trig
+   *          the trigonometric functions to use
+   * @param result
+   *          array receiving the azimuth and the apparent altitude in degrees
+   */
+  static void calculateHorizontal(double hourAngle, double sinDec,
+      double cosDec, double sinLatitude, double cosLatitude, Trigonometry trig,
+      double[] result) {
+    calculateGeometricHorizontal(hourAngle, sinDec, cosDec, sinLatitude,
+        cosLatitude, trig, result);
+    result[1] += AtmosphericRefraction.calculateRefraction(result[1], 1010,
+        283, trig) / 60;
+  }
+
+  /**
+   * Calculates the horizontal coordinates of the sun for the given observer
+   * together with their analytic time derivatives, the altitude corrected by
+   * atmospheric refraction for standard conditions.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param result
+   *          array receiving the azimuth (measured westwards from the south),
+   *          the apparent altitude, both in degrees, and their rates in
+   *          degrees per day, at indexes 0 to 3
+   */
+  public void calculateHorizontalWithRates(Observer observer, double[] result) {
+    calculateRates();
+    calculateHorizontalWithRates(calculateHourAngle(observer.getLongitude()),
+        getHourAngleRate(), sinDec, cosDec, declinationRate, observer
+            .getSinLatitude(), observer.getCosLatitude(), trigonometry, result);
+  }
+
+  /**
+   * Converts the local hour angle and declination of the sun, and their
+   * rates, into horizontal coordinates and their rates, correcting the
+   * altitude by atmospheric refraction for standard conditions. The rates are
+   * undefined at the zenith.
+   * 
+   * @param hourAngle
+   *          the local hour angle in degrees
+   * @param hourAngleRate
+   *          the rate of the hour angle in degrees per day
+   * @param sinDec
+   *          sine of the declination
+   * @param cosDec
+   *          cosine of the declination
+   * @param decRate
+   *          the rate of the declination in degrees per day
+   * @param sinLatitude
+   *          sine of the geographical latitude
+   * @param cosLatitude
+   *          cosine of the geographical latitude
+   * @param trig
+   *          the trigonometric functions to use
+   * @param result
+   *          array receiving the azimuth, the apparent altitude and their
+   *          rates
+   */
+  static void calculateHorizontalWithRates(double hourAngle,
+      double hourAngleRate, double sinDec, double cosDec, double decRate,
+      double sinLatitude, double cosLatitude, Trigonometry trig,
+      double[] result) {
+    double h = Math.toRadians(hourAngle);
+    double sinH = trig.sin(h);
+    double cosH = trig.cos(h);
+    double x = cosH * sinLatitude - sinDec / cosDec * cosLatitude;
+    double sinAlt = sinLatitude * sinDec + cosLatitude * cosDec * cosH;
+    double altitude = Math.toDegrees(trig.asin(sinAlt));
+    // d(sin alt) = cos(alt) d(alt)
+    double altitudeRate = ((sinLatitude * cosDec - cosLatitude * sinDec
+        * cosH)
+        * decRate - cosLatitude * cosDec * sinH * hourAngleRate)
+        / Math.sqrt((1 - sinAlt) * (1 + sinAlt));
+    // d(atan2(y, x)) = (x dy - y dx) / (x^2 + y^2), with y = sin(H)
+    double dx = -sinH * sinLatitude * hourAngleRate - cosLatitude
+        / (cosDec * cosDec) * decRate;
+    double dy = cosH * hourAngleRate;
+    result[0] = Math.toDegrees(trig.atan2(sinH, x));
+    result[1] = altitude
+        + AtmosphericRefraction.calculateRefraction(altitude, 1010, 283, trig)
+        / 60;
+    result[2] = (x * dy - sinH * dx) / (x * x + sinH * sinH);
+    result[3] = altitudeRate
+        * (1 + AtmosphericRefraction.calculateRefractionRate(altitude, 1010,
+            283, trig) / 60);
+  }
+
+  /**
+   * Calculates the rate of the apparent longitude of the sun, neglecting the
+   * rate of the nutation (below 2e-5 of the total).
+   * 
+   * @param t
+   *          the time in Julian centuries from the epoch J2000.0
+   * @param meanAnomaly
+   *          the mean anomaly of the sun in degrees
+   * @param trig
+   *          the trigonometric functions to use
+   * @return the rate in degrees per day
+   */
+  static double calculateLongitudeRate(double t, double meanAnomaly,
+      Trigonometry trig) {
+    double m = Math.toRadians(meanAnomaly);
+    // rate of the mean anomaly in radians per day
+    double mRate = Math.toRadians((35999.05029 - 0.0003074 * t) / 36525);
+    double centerRate = ((1.914602 - 0.004817 * t - 0.000014 * t * t)
+        * trig.cos(m) + 2 * (0.019993 - 0.000101 * t) * trig.cos(2 * m) + 3
+        * 0.000289 * trig.cos(3 * m))
+        * mRate;
+    return (36000.76983 + 0.0006064 * t) / 36525 + centerRate;
+  }
+
+  /**
+   * Calculates the rate of the sidereal time.
+   * 
+   * @param t
+   *          the time in Julian centuries from the epoch J2000.0
+   * @return the rate in degrees per day
+   */
+  static double calculateSiderealTimeRate(double t) {
+    return 360.98564736629 + (0.000775866 * t - 3 * t * t / 38710000) / 36525;
+  }
+
+  /**
+   * Calculates the horizontal coordinates of the sun for the given observer
+   * without atmospheric refraction.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param result
+   *          array receiving the azimuth (measured westwards from the south)
+   *          and the geometric altitude in degrees, at indexes 0 and 1
+   */
+  public void calculateGeometricHorizontal(Observer observer, double[] result) {
+    calculateGeometricHorizontal(calculateHourAngle(observer.getLongitude()),
+        sinDec, cosDec, observer.getSinLatitude(), observer.getCosLatitude(),
+        trigonometry, result);
+  }
+
+  /**
+   * Converts the local hour angle and declination of the sun into horizontal
+   * coordinates without atmospheric refraction.
+   */
+  static void calculateGeometricHorizontal(double hourAngle, double sinDec,
+      double cosDec, double sinLatitude, double cosLatitude, Trigonometry trig,
+      double[] result) {
+    double h = Math.toRadians(hourAngle);
+    double sinH = trig.sin(h);
+    double cosH = trig.cos(h);
+    result[0] = Math.toDegrees(trig.atan2(sinH, cosH * sinLatitude - sinDec
+        / cosDec * cosLatitude));
+    result[1] = Math.toDegrees(trig.asin(sinLatitude * sinDec + cosLatitude
+        * cosDec * cosH));
+  }
+
+  /**
+   * @return the Julian Day (UT) of the state
+   */
+  public double getJD() {
+    return jd;
+  }
+
+  /**
+   * @return the time measured in Julian centuries of 36525 ephemeris days from
+   *         the epoch J2000.0
+   */
+  public double getTimeFromJ2000() {
+    return t;
+  }
+
+  /**
+   * @return the geometric mean longitude of the sun in degrees
+   */
+  public double getMeanLongitude() {
+    return meanLongitude;
+  }
+
+  /**
+   * @return the mean anomaly of the sun in degrees
+   */
+  public double getMeanAnomaly() {
+    return meanAnomaly;
+  }
+
+  /**
+   * @return the sun's equation of the center in degrees
+   */
+  public double getEquationOfCenter() {
+    return center;
+  }
+
+  /**
+   * @return the true anomaly of the sun in degrees
+   */
+  public double getTrueAnomaly() {
+    return meanAnomaly + center;
+  }
+
+  /**
+   * @return the true geometric longitude of the sun in degrees within
+   *         [0, 360)
+   */
+  public double getTrueLongitude() {
+    return AngleUtils.normalizeAngle(meanLongitude + center, 0, 360);
+  }
+
+  /**
+   * @return the eccentricity of the Earth's orbit
+   */
+  public double getEccentricity() {
+    return 0.016708634 - 0.000042037 * t - 0.0000001267 * t * t;
+  }
+
+  /**
+   * Calculates the distance between the centers of the Earth and the sun
+   * (Meeus 25.5).
+   * 
+   * @return the radius vector in astronomical units
+   */
+  public double calculateRadiusVector() {
+    double e = getEccentricity();
+    return 1.000001018 * (1 - e * e)
+        / (1 + e * trigonometry.cos(Math.toRadians(getTrueAnomaly())));
+  }
+
+  /**
+   * Calculates the equation of time, the difference between the apparent and
+   * the mean solar time (Meeus 28.3).
+   * 
+   * @return the equation of time in minutes, positive when the sun transits
+   *         before the mean noon
+   */
+  public double calculateEquationOfTime() {
+    double epsilon = Math.toRadians(obliquity);
+    double e = meanLongitude - 0.0057183 - rightAscension + nutationLongitude
+        / 3600 * trigonometry.cos(epsilon);
+    return AngleUtils.normalizeAngle(e, -180, 180) * 4;
+  }
+
+  /**
+   * @return the nutation in longitude in arcseconds
+   */
+  public double getNutationLongitude() {
+    return nutationLongitude;
+  }
+
+  /**
+   * @return the nutation in obliquity in arcseconds
+   */
+  public double getNutationObliquity() {
+    return nutationObliquity;
+  }
+
+  /**
+   * @return the true obliquity of the ecliptic in degrees
+   */
+  public double getObliquity() {
+    return obliquity;
+  }
+
+  /**
+   * @return the apparent longitude of the sun in degrees
+   */
+  public double getApparentLongitude() {
+    return apparentLongitude;
+  }
+
+  /**
+   * @return the apparent right ascension in degrees within [0, 360)
+   */
+  public double getRightAscension() {
+    return rightAscension;
+  }
+
+  /**
+   * @return the apparent declination in degrees
+   */
+  public double getDeclination() {
+    return declination;
+  }
+
+  /**
+   * @return the rate of the apparent right ascension in degrees per day
+   */
+  public double getRightAscensionRate() {
+    calculateRates();
+    return rightAscensionRate;
+  }
+
+  /**
+   * @return the rate of the apparent declination in degrees per day
+   */
+  public double getDeclinationRate() {
+    calculateRates();
+    return declinationRate;
+  }
+
+  /**
+   * @return the rate of the hour angle of the sun in degrees per day
+   */
+  public double getHourAngleRate() {
+    calculateRates();
+    return calculateSiderealTimeRate(t) - rightAscensionRate;
+  }
+
+  /**
+   * @return the apparent sidereal time at Greenwich in degrees within [0, 360)
+   */
+  public double getApparentSiderealTime() {
+    return siderealTime;
+  }
+
+  /**
+   * @return the sine of the apparent declination
+   */
+  public double getSinDeclination() {
+    return sinDec;
+  }
+
+  /**
+   * @return the cosine of the apparent declination
+   */
+  public double getCosDeclination() {
+    return cosDec;
+  }
+
+  /**
+   * @return the trigonometric functions the state is evaluated with
+   */
+  public Trigonometry getTrigonometry() {
+    return trigonometry;
+  }
+}
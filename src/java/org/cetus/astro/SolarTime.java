@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.Arrays;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Calculates the equation of time, the instant of the local apparent noon and
+ * the true (apparent) solar time, for single instants or for whole arrays of
+ * them.
+ * 
+ * The equation of time is calculated by {@link SolarState} from the mean
+ * longitude, the apparent right ascension and the nutation (Meeus 28.3) at 0h
+ * UT of every day, and interpolated linearly in between, which is accurate to
+ * a fraction of a second since the equation of time changes by at most half a
+ * minute a day. Values for the days in use are kept in a small direct-mapped
+ * cache, so converting series of instants costs a handful of arithmetic
+ * operations per instant, whatever their order.
+ * 
+ * The true solar time is the mean solar time of the observer's meridian
+ * corrected by the equation of time, i.e. the hour angle of the sun plus 12
+ * hours. Instances are not thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SolarTime {
+
+  /** Default number of days kept in the cache */
+  public static final int DEFAULT_CACHE_SIZE = 512;
+
+  // Julian Day of the Unix epoch and length of a day in milliseconds
+  private static final double EPOCH_JD = 2440587.5;
+  private static final long DAY_MILLIS = 86400000L;
+
+  private final SolarState state;
+  private final long[] cachedDays;
+  private final double[] cachedValues;
+  private final int mask;
+  private long misses;
+
+  /**
+   * Creates a SolarTime with a cache of {@link #DEFAULT_CACHE_SIZE} days,
+   * evaluated with full precision trigonometric functions.
+   */
+  public SolarTime() {
+    this(DEFAULT_CACHE_SIZE, Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a SolarTime.
+   * 
+   * @param cacheSize
+   *          the number of days kept in the cache, rounded up to a power of
+   *          two
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @throws IllegalArgumentException
+   *           thrown when the cache size is not positive
+   */
+  public SolarTime(int cacheSize, Trigonometry trigonometry)
+      throws IllegalArgumentException {
+    if (cacheSize <= 0 || cacheSize > 1 << 30) {
+      throw new IllegalArgumentException("Unsupported cache size "
+          + cacheSize);
+    }
+    int size = Integer.highestOneBit(cacheSize);
+    if (size < cacheSize) {
+      size <<= 1;
+    }
+    this.state = new SolarState(trigonometry);
+    this.cachedDays = new long[size];
+    this.cachedValues = new double[size];
+    this.mask = size - 1;
+    Arrays.fill(cachedDays, Long.MIN_VALUE);
+  }
+
+  /**
+   * Calculates the equation of time.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @return the equation of time in minutes, positive when the sun transits
+   *         before the mean noon
+   */
+  public double calculateEquationOfTime(double jd) {
+    double day = Math.floor(jd + 0.5);
+    return interpolate((long) day, jd + 0.5 - day);
+  }
+
+  /**
+   * Calculates the equation of time for an array of instants.
+   * 
+   * @param jd
+   *          the Julian Days (UT)
+   * @param result
+   *          array receiving the equations of time in minutes
+   */
+  public void calculateEquationOfTime(double[] jd, double[] result) {
+    for (int i = 0; i < jd.length; i++) {
+      result[i] = calculateEquationOfTime(jd[i]);
+    }
+  }
+
+  /**
+   * Calculates the instant of the local apparent noon, when the sun transits
+   * the meridian of the observer, within the given day.
+   * 
+   * @param jd
+   *          a Julian Day (UT) within the day, which starts at 0h UT
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @return the Julian Day (UT) of the noon
+   */
+  public double calculateSolarNoon(double jd, double longitude) {
+    double day = Math.floor(jd + 0.5);
+    double noon = 0.5 + longitude / 360;
+    // the equation of time at the noon, which hardly moves it
+    for (int i = 0; i < 2; i++) {
+      noon = 0.5 + longitude / 360 - interpolate((long) day, noon) / 1440;
+    }
+    return day - 0.5 + noon;
+  }
+
+  /**
+   * Calculates the true solar time.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @return the true solar time in hours within [0, 24)
+   */
+  public double calculateTrueSolarTime(double jd, double longitude) {
+    double day = Math.floor(jd + 0.5);
+    double fraction = jd + 0.5 - day;
+    return toTrueSolarTime(fraction * 24, fraction, (long) day, longitude);
+  }
+
+  /**
+   * Calculates the true solar time for an array of instants.
+   * 
+   * @param jd
+   *          the Julian Days (UT)
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @param result
+   *          array receiving the true solar times in hours within [0, 24)
+   */
+  public void calculateTrueSolarTime(double[] jd, double longitude,
+      double[] result) {
+    for (int i = 0; i < jd.length; i++) {
+      result[i] = calculateTrueSolarTime(jd[i], longitude);
+    }
+  }
+
+  /**
+   * Calculates the true solar time for an array of UTC timestamps. The time
+   * of the day is taken from the timestamps as they are, so its precision is
+   * not limited by that of a Julian Day.
+   * 
+   * @param millis
+   *          the timestamps, in milliseconds since 1970-01-01T00:00:00Z
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @param result
+   *          array receiving the true solar times in hours within [0, 24)
+   */
+  public void calculateTrueSolarTime(long[] millis, double longitude,
+      double[] result) {
+    calculateTrueSolarTime(millis, 0, longitude, result, 0, millis.length);
+  }
+
+  /**
+   * Calculates the true solar time for a range of an array of UTC
+   * timestamps.
+   * 
+   * @param millis
+   *          the timestamps, in milliseconds since 1970-01-01T00:00:00Z
+   * @param offset
+   *          index of the first timestamp
+   * @param longitude
+   *          geographical longitude in degrees of the observer's location
+   *          (positive west)
+   * @param result
+   *          array receiving the true solar times in hours within [0, 24)
+   * @param resultOffset
+   *          index the first result is stored at
+   * @param length
+   *          number of timestamps to convert
+   */
+  public void calculateTrueSolarTime(long[] millis, int offset,
+      double longitude, double[] result, int resultOffset, int length) {
+    long epochDay = Math.round(EPOCH_JD + 0.5);
+    for (int i = 0; i < length; i++) {
+      long t = millis[offset + i];
+      long dayMillis = Math.floorMod(t, DAY_MILLIS);
+      long day = Math.floorDiv(t, DAY_MILLIS) + epochDay;
+      result[resultOffset + i] = toTrueSolarTime(dayMillis / 3600000.0,
+          dayMillis / (double) DAY_MILLIS, day, longitude);
+    }
+  }
+
+  /**
+   * Returns the number of days the equation of time has been calculated for,
+   * i.e. the misses of the cache
+   * 
+   * @return the number of calculated days
+   */
+  public long getCalculatedDays() {
+    return misses;
+  }
+
+  private double toTrueSolarTime(double hours, double fraction, long day,
+      double longitude) {
+    double tst = hours - longitude / 15 + interpolate(day, fraction) / 60;
+    tst %= 24;
+    return tst < 0 ? tst + 24 : tst;
+  }
+
+  /**
+   * Interpolates the equation of time at a fraction of a day, identified by
+   * the Julian Day of its noon
+   */
+  private double interpolate(long day, double fraction) {
+    double e0 = equationOfTime(day);
+    return e0 + (equationOfTime(day + 1) - e0) * fraction;
+  }
+
+  /**
+   * Returns the equation of time at 0h UT of a day, identified by the Julian
+   * Day of its noon
+   */
+  private double equationOfTime(long day) {
+    int slot = (int) day & mask;
+    if (cachedDays[slot] != day) {
+      misses++;
+      cachedValues[slot] = state.update(day - 0.5).calculateEquationOfTime();
+      cachedDays[slot] = day;
+    }
+    return cachedValues[slot];
+  }
+}
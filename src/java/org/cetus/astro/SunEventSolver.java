@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import org.cetus.astro.util.AngleUtils;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Calculates the instants the sun transits the meridian and crosses a given
+ * altitude (sunrise, sunset, twilights) without sampling the day.
+ * 
+ * The approximate times of Meeus (Astronomical Algorithms, chapter 15) are
+ * used as starting points: the transit from the hour angle at 0h UT, the rise
+ * and the set from the hour angle the sun reaches the altitude at, given the
+ * declination at the transit. They are then refined on the exact model of
+ * {@link SolarState}: the upper and lower transits by Newton iterations on
+ * the hour angle, and every crossing by Newton iterations on the sine of the
+ * altitude safeguarded by bisection, within the bracket formed by the transit
+ * and the adjacent lower transit. Since the altitude is maximum at the transit
+ * and minimum at the lower transits, the bracket also tells whether the sun
+ * crosses the altitude at all, which handles polar day and polar night. Every
+ * event takes a handful of evaluations of the model and is accurate to well
+ * under a second. The model may be replaced by a {@link ChebyshevEphemeris},
+ * which is cheaper to evaluate.
+ * 
+ * Altitudes are geometric, i.e. refer to the center of the sun without
+ * atmospheric refraction. {@link #SUNRISE} accounts for the standard
+ * refraction at the horizon and the semi-diameter of the sun.
+ * 
+ * Instances are not thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunEventSolver {
+
+  /**
+   * Geometric altitude in degrees of the center of the sun at sunrise and
+   * sunset (upper limb on the horizon with 34' of refraction)
+   */
+  public static final double SUNRISE = -0.8333;
+  /** Geometric altitude in degrees of the sun at civil twilight */
+  public static final double CIVIL_TWILIGHT = -6;
+  /** Geometric altitude in degrees of the sun at nautical twilight */
+  public static final double NAUTICAL_TWILIGHT = -12;
+  /** Geometric altitude in degrees of the sun at astronomical twilight */
+  public static final double ASTRONOMICAL_TWILIGHT = -18;
+
+  // mean rate of the sun's hour angle, in degrees per day
+  private static final double HOUR_ANGLE_RATE = 360.0;
+  // convergence tolerance of the refinements, in days (about 9 ms)
+  private static final double TIME_TOLERANCE = 1e-7;
+  private static final int MAX_ITERATIONS = 60;
+
+  private final SolarState state;
+  private final ChebyshevEphemeris ephemeris;
+  private final Trigonometry trigonometry;
+  private final double[] equatorial;
+  private long evaluations;
+
+  // Greenwich hour angle and declination from the last update
+  private double greenwichHourAngle;
+  private double sinDeclination;
+  private double cosDeclination;
+  // sine of the altitude and its time derivative from the last evaluation
+  private double sinAltitude;
+  private double sinAltitudeRate;
+
+  /**
+   * Creates a SunEventSolver evaluated with full precision trigonometric
+   * functions.
+   */
+  public SunEventSolver() {
+    this(Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a SunEventSolver evaluated with the given trigonometric functions.
+   * 
+   * @param trigonometry
+   *          the trigonometric functions to use
+   */
+  public SunEventSolver(Trigonometry trigonometry) {
+    this.trigonometry = trigonometry;
+    this.state = new SolarState(trigonometry);
+    this.ephemeris = null;
+    this.equatorial = null;
+  }
+
+  /**
+   * Creates a SunEventSolver evaluating the given ephemeris in place of the
+   * model. Events can only be calculated within the period it covers.
+   * 
+   * @param ephemeris
+   *          the ephemeris to evaluate
+   */
+  public SunEventSolver(ChebyshevEphemeris ephemeris) {
+    this.trigonometry = Trigonometry.STANDARD;
+    this.state = null;
+    this.ephemeris = ephemeris;
+    this.equatorial = new double[ChebyshevEphemeris.QUANTITIES];
+  }
+
+  /**
+   * Calculates the transit of the sun within the given day and the instants
+   * the sun crosses the given altitude before and after it.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param jd
+   *          a Julian Day (UT) within the day, which starts at 0h UT
+   * @param altitude
+   *          the geometric altitude of the events in degrees, e.g.
+   *          {@link #SUNRISE} or {@link #CIVIL_TWILIGHT}
+   * @return the events
+   * @throws IllegalArgumentException
+   *           thrown when the altitude is out of [-90, 90], or the day is not
+   *           covered by the ephemeris of the solver
+   */
+  public SunEvents calculate(Observer observer, double jd, double altitude)
+      throws IllegalArgumentException {
+    double jd0 = Math.floor(jd - 0.5) + 0.5;
+    // Meeus 15.2: fraction of the day of the transit
+    update(jd0);
+    double m0 = (360 - hourAngle(observer)) / 360 % 1.0;
+    return calculate(observer, jd0 + m0, Double.NaN, Double.NaN, altitude);
+  }
+
+  /**
+   * Calculates the events around the transit closest to the given estimate,
+   * starting the crossings from the given estimates if they are not NaN.
+   */
+  SunEvents calculate(Observer observer, double transitEstimate,
+      double riseEstimate, double setEstimate, double altitude)
+      throws IllegalArgumentException {
+    if (!(altitude >= -90 && altitude <= 90)) {
+      throw new IllegalArgumentException("Unsupported altitude " + altitude
+          + ". Altitude must be within [-90, 90] degrees");
+    }
+    double transit = refineTransit(observer, transitEstimate, 0);
+    double lowerBefore = refineTransit(observer, transit - 0.5, 180);
+    double lowerAfter = refineTransit(observer, transit + 0.5, 180);
+
+    double target = trigonometry.sin(Math.toRadians(altitude));
+    evaluate(observer, transit);
+    double sinTransit = sinAltitude;
+    double fTransit = sinTransit - target;
+    double rise = Double.NaN;
+    double set = Double.NaN;
+    if (fTransit > 0) {
+      // Meeus 15.1: hour angle the altitude is crossed at
+      double cosH0 = (target - observer.getSinLatitude() * sinDeclination)
+          / (observer.getCosLatitude() * cosDeclination);
+      double h0 = Math.toDegrees(Math.acos(Math.max(-1, Math.min(1, cosH0))));
+      double fBefore = evaluate(observer, lowerBefore) - target;
+      if (fBefore <= 0) {
+        rise = crossing(observer, target, lowerBefore, fBefore, transit,
+            fTransit, Double.isNaN(riseEstimate) ? transit - h0
+                / HOUR_ANGLE_RATE : riseEstimate);
+      }
+      double fAfter = evaluate(observer, lowerAfter) - target;
+      if (fAfter <= 0) {
+        set = crossing(observer, target, transit, fTransit, lowerAfter,
+            fAfter, Double.isNaN(setEstimate) ? transit + h0
+                / HOUR_ANGLE_RATE : setEstimate);
+      }
+    }
+    double transitAltitude = Math.toDegrees(trigonometry.asin(Math.max(-1,
+        Math.min(1, sinTransit))));
+    return new SunEvents(altitude, transit, transitAltitude, rise, set);
+  }
+
+  /**
+   * Returns the number of evaluations of the model done by the solver since
+   * it was created
+   * 
+   * @return the number of evaluations
+   */
+  public long getEvaluations() {
+    return evaluations;
+  }
+
+  /**
+   * Refines the instant the local hour angle of the sun equals the target
+   * (0 for the transit, 180 for the lower transit)
+   */
+  private double refineTransit(Observer observer, double t, double target) {
+    for (int i = 0; i < MAX_ITERATIONS; i++) {
+      update(t);
+      double step = Math.IEEEremainder(hourAngle(observer) - target, 360)
+          / HOUR_ANGLE_RATE;
+      t -= step;
+      if (Math.abs(step) < TIME_TOLERANCE) {
+        break;
+      }
+    }
+    return t;
+  }
+
+  /**
+   * Refines the instant the sine of the altitude equals the target within the
+   * bracket [a, b], where fa and fb have opposite signs
+   */
+  private double crossing(Observer observer, double target, double a,
+      double fa, double b, double fb, double estimate) {
+    double t = estimate > a && estimate < b ? estimate : (a + b) / 2;
+    for (int i = 0; i < MAX_ITERATIONS; i++) {
+      double f = evaluate(observer, t) - target;
+      if (f == 0) {
+        return t;
+      }
+      if ((f < 0) == (fa < 0)) {
+        a = t;
+        fa = f;
+      } else {
+        b = t;
+      }
+      double next = t - f / sinAltitudeRate;
+      if (!(next > a && next < b)) {
+        // Newton step out of the bracket, bisect
+        next = (a + b) / 2;
+      }
+      if (Math.abs(next - t) < TIME_TOLERANCE) {
+        return next;
+      }
+      t = next;
+    }
+    return t;
+  }
+
+  /**
+   * Evaluates the sine of the geometric altitude and its rate at an instant
+   */
+  private double evaluate(Observer observer, double t) {
+    update(t);
+    double h = Math.toRadians(hourAngle(observer));
+    double cosLatCosDec = observer.getCosLatitude() * cosDeclination;
+    sinAltitude = observer.getSinLatitude() * sinDeclination + cosLatCosDec
+        * trigonometry.cos(h);
+    // the change of the declination is neglected
+    sinAltitudeRate = -cosLatCosDec * trigonometry.sin(h)
+        * Math.toRadians(HOUR_ANGLE_RATE);
+    return sinAltitude;
+  }
+
+  /**
+   * Updates the Greenwich hour angle and the declination of the sun
+   */
+  private void update(double t) {
+    evaluations++;
+    if (ephemeris == null) {
+      state.update(t);
+      greenwichHourAngle = state.calculateHourAngle(0);
+      sinDeclination = state.getSinDeclination();
+      cosDeclination = state.getCosDeclination();
+    } else {
+      ephemeris.evaluate(t, equatorial);
+      greenwichHourAngle = equatorial[ChebyshevEphemeris.SIDEREAL_TIME]
+          - equatorial[ChebyshevEphemeris.RIGHT_ASCENSION];
+      double dec = Math.toRadians(equatorial[ChebyshevEphemeris.DECLINATION]);
+      sinDeclination = trigonometry.sin(dec);
+      cosDeclination = trigonometry.cos(dec);
+    }
+  }
+
+  /**
+   * Returns the local hour angle of the last update within [0, 360)
+   */
+  private double hourAngle(Observer observer) {
+    return AngleUtils.normalizeAngle(greenwichHourAngle
+        - observer.getLongitude(), 0, 360);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Rise, transit and set of the sun for an observer and a given altitude, as
+ * calculated by {@link SunEventSolver}. Instants are Julian Days (UT). The
+ * rise and the set are those preceding and following the transit, and are
+ * NaN when the sun does not cross the altitude in between the transit and the
+ * adjacent lower transits.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunEvents {
+
+  private final double altitude;
+  private final double transit;
+  private final double transitAltitude;
+  private final double rise;
+  private final double set;
+
+  /**
+   * Creates a new instance of SunEvents
+   * 
+   * @param altitude
+   *          the geometric altitude of the events in degrees
+   * @param transit
+   *          the Julian Day of the transit
+   * @param transitAltitude
+   *          the geometric altitude of the sun at the transit in degrees
+   * @param rise
+   *          the Julian Day of the rise, NaN if the sun does not rise
+   * @param set
+   *          the Julian Day of the set, NaN if the sun does not set
+   */
+  public SunEvents(double altitude, double transit, double transitAltitude,
+      double rise, double set) {
+    this.altitude = altitude;
+    this.transit = transit;
+    this.transitAltitude = transitAltitude;
+    this.rise = rise;
+    this.set = set;
+  }
+
+  /**
+   * @return the geometric altitude of the events in degrees
+   */
+  public double getAltitude() {
+    return altitude;
+  }
+
+  /**
+   * @return the Julian Day (UT) of the transit
+   */
+  public double getTransit() {
+    return transit;
+  }
+
+  /**
+   * @return the geometric altitude of the sun at the transit in degrees
+   */
+  public double getTransitAltitude() {
+    return transitAltitude;
+  }
+
+  /**
+   * @return the Julian Day (UT) the sun rises above the altitude at, NaN if
+   *         it does not
+   */
+  public double getRise() {
+    return rise;
+  }
+
+  /**
+   * @return the Julian Day (UT) the sun sets below the altitude at, NaN if it
+   *         does not
+   */
+  public double getSet() {
+    return set;
+  }
+
+  /**
+   * @return true if the sun rises above the altitude before the transit
+   */
+  public boolean hasRise() {
+    return !Double.isNaN(rise);
+  }
+
+  /**
+   * @return true if the sun sets below the altitude after the transit
+   */
+  public boolean hasSet() {
+    return !Double.isNaN(set);
+  }
+
+  /**
+   * @return true if the sun stays above the altitude from the lower transit
+   *         before the transit to the one after it (polar day)
+   */
+  public boolean isAlwaysAbove() {
+    return !hasRise() && !hasSet() && transitAltitude > altitude;
+  }
+
+  /**
+   * @return true if the sun does not reach the altitude at the transit (polar
+   *         night)
+   */
+  public boolean isAlwaysBelow() {
+    return transitAltitude <= altitude;
+  }
+
+  @Override
+  public String toString() {
+    return "SunEvents[altitude=" + altitude + ", rise=" + rise + ", transit="
+        + transit + ", set=" + set + ", transitAltitude=" + transitAltitude
+        + "]";
+  }
+}
@@ -0,0 +1,308 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Calculates the position of the sun over a grid of locations, made of rows
+ * of a given latitude and columns of a given longitude, at an instant.
+ * 
+ * At a given instant the position of the sun at a location only depends on
+ * its latitude and on its local hour angle, i.e. the Greenwich hour angle
+ * minus its longitude, while the declination is shared by every location.
+ * The sine of the altitude and the arguments of the arctangent giving the
+ * azimuth then factor into a term of the row, computed once per row since the
+ * latitudes are fixed, and a term of the column, computed once per instant
+ * from the hour angle of the column:
+ * 
+ * <pre>
+ * sin(alt) = sin(lat) sin(dec) + cos(lat) C
+ * tan(az)  = S / (C sin(lat) - cos(lat) sin(dec))
+ * </pre>
+ * 
+ * where <code>C = cos(dec) cos(H)</code> and <code>S = cos(dec) sin(H)</code>,
+ * so that every cell only costs a couple of multiply-adds, plus an arcsine
+ * and an arctangent when the angles themselves are required. The rows are
+ * split into blocks processed in parallel by a {@link ForkJoinPool}.
+ * 
+ * Latitudes and longitudes are arbitrary, e.g. evenly spaced for a global
+ * raster or following the Web Mercator projection for map tiles. Results are
+ * floats stored by rows, the cell of row <code>r</code> and column
+ * <code>c</code> at index <code>r * columns + c</code>. Grids are immutable
+ * and may be used concurrently.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunGrid {
+
+  /** Default number of cells of the blocks */
+  public static final int DEFAULT_BLOCK_SIZE = 65536;
+
+  private final double[] longitudes;
+  private final double[] sinLatitudes;
+  private final double[] cosLatitudes;
+  private final Trigonometry trigonometry;
+  private final ForkJoinPool pool;
+  private final int blockRows;
+
+  /**
+   * Creates a SunGrid evaluated with full precision trigonometric functions,
+   * running on the common pool with blocks of {@link #DEFAULT_BLOCK_SIZE}
+   * cells.
+   * 
+   * @param longitudes
+   *          the geographical longitudes in degrees of the columns (positive
+   *          west)
+   * @param latitudes
+   *          the geographical latitudes in degrees of the rows
+   * @throws IllegalArgumentException
+   *           thrown when there are no rows or columns, or a latitude is out
+   *           of [-90, 90]
+   */
+  public SunGrid(double[] longitudes, double[] latitudes)
+      throws IllegalArgumentException {
+    this(longitudes, latitudes, Trigonometry.STANDARD, ForkJoinPool
+        .commonPool(), DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Creates a SunGrid.
+   * 
+   * @param longitudes
+   *          the geographical longitudes in degrees of the columns (positive
+   *          west)
+   * @param latitudes
+   *          the geographical latitudes in degrees of the rows
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @param pool
+   *          the pool the blocks are processed by
+   * @param blockSize
+   *          the number of cells of the blocks, rounded up to whole rows
+   * @throws IllegalArgumentException
+   *           thrown when there are no rows or columns, a latitude is out of
+   *           [-90, 90] or the block size is not positive
+   */
+  public SunGrid(double[] longitudes, double[] latitudes,
+      Trigonometry trigonometry, ForkJoinPool pool, int blockSize)
+      throws IllegalArgumentException {
+    if (longitudes.length == 0 || latitudes.length == 0) {
+      throw new IllegalArgumentException("Unsupported empty grid");
+    }
+    if (blockSize <= 0) {
+      throw new IllegalArgumentException("Unsupported block size "
+          + blockSize);
+    }
+    this.longitudes = longitudes.clone();
+    this.sinLatitudes = new double[latitudes.length];
+    this.cosLatitudes = new double[latitudes.length];
+    for (int r = 0; r < latitudes.length; r++) {
+      if (!(latitudes[r] >= -90 && latitudes[r] <= 90)) {
+        throw new IllegalArgumentException("Unsupported latitude "
+            + latitudes[r] + ". Latitude must be within [-90, 90] degrees");
+      }
+      double phi = Math.toRadians(latitudes[r]);
+      sinLatitudes[r] = trigonometry.sin(phi);
+      cosLatitudes[r] = trigonometry.cos(phi);
+    }
+    this.trigonometry = trigonometry;
+    this.pool = pool;
+    this.blockRows = Math.max(1, (blockSize + longitudes.length - 1)
+        / longitudes.length);
+  }
+
+  /**
+   * Calculates the sine of the geometric altitude of the sun at every cell,
+   * which takes a multiply-add per cell. Enough to tell day from night or the
+   * twilights apart by comparing with the sines of their altitudes.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @param sinAltitude
+   *          array receiving the sines of the altitudes, by rows
+   * @throws IllegalArgumentException
+   *           thrown when the array is smaller than the grid
+   */
+  public void calculateSinAltitudes(double jd, float[] sinAltitude)
+      throws IllegalArgumentException {
+    checkLength(sinAltitude);
+    run(new Job(new SolarState(trigonometry).update(jd), sinAltitude, null,
+        null));
+  }
+
+  /**
+   * Calculates the horizontal coordinates of the sun at every cell, the
+   * altitude corrected by atmospheric refraction for standard conditions as
+   * given by {@link RefractionTable#DEFAULT}.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @param altitude
+   *          array receiving the apparent altitudes in degrees, by rows
+   * @param azimuth
+   *          array receiving the azimuths in degrees, measured westwards from
+   *          the south, by rows. May be null if they are not required
+   * @throws IllegalArgumentException
+   *           thrown when an array is smaller than the grid
+   */
+  public void calculateHorizontal(double jd, float[] altitude,
+      float[] azimuth) throws IllegalArgumentException {
+    checkLength(altitude);
+    if (azimuth != null) {
+      checkLength(azimuth);
+    }
+    run(new Job(new SolarState(trigonometry).update(jd), null, altitude,
+        azimuth));
+  }
+
+  /**
+   * @return the number of columns
+   */
+  public int getColumns() {
+    return longitudes.length;
+  }
+
+  /**
+   * @return the number of rows
+   */
+  public int getRows() {
+    return sinLatitudes.length;
+  }
+
+  /**
+   * @return the number of cells
+   */
+  public int size() {
+    return longitudes.length * sinLatitudes.length;
+  }
+
+  private void checkLength(float[] array) throws IllegalArgumentException {
+    if (array.length < (long) longitudes.length * sinLatitudes.length) {
+      throw new IllegalArgumentException("Unsupported array of "
+          + array.length + " elements for a grid of " + sinLatitudes.length
+          + " x " + longitudes.length);
+    }
+  }
+
+  private void run(Job job) {
+    int rows = sinLatitudes.length;
+    if (rows <= blockRows) {
+      job.run(0, rows);
+    } else {
+      pool.invoke(new Task(job, 0, rows));
+    }
+  }
+
+  /**
+   * Terms of the columns at an instant, and the outputs of a calculation
+   */
+  private final class Job {
+
+    private final double sinDec;
+    private final double cosDec;
+    // cos(dec) cos(H) and cos(dec) sin(H) of every column
+    private final double[] columnCos;
+    private final double[] columnSin;
+    private final float[] sinAltitude;
+    private final float[] altitude;
+    private final float[] azimuth;
+
+    Job(SolarState state, float[] sinAltitude, float[] altitude,
+        float[] azimuth) {
+      this.sinDec = state.getSinDeclination();
+      this.cosDec = state.getCosDeclination();
+      int columns = longitudes.length;
+      this.columnCos = new double[columns];
+      this.columnSin = azimuth != null ? new double[columns] : null;
+      double greenwichHourAngle = state.calculateHourAngle(0);
+      for (int c = 0; c < columns; c++) {
+        double h = Math.toRadians(greenwichHourAngle - longitudes[c]);
+        columnCos[c] = cosDec * trigonometry.cos(h);
+        if (columnSin != null) {
+          columnSin[c] = cosDec * trigonometry.sin(h);
+        }
+      }
+      this.sinAltitude = sinAltitude;
+      this.altitude = altitude;
+      this.azimuth = azimuth;
+    }
+
+    void run(int fromRow, int toRow) {
+      int columns = columnCos.length;
+      for (int r = fromRow; r < toRow; r++) {
+        double sinLat = sinLatitudes[r];
+        double cosLat = cosLatitudes[r];
+        double rowSin = sinLat * sinDec;
+        int offset = r * columns;
+        if (sinAltitude != null) {
+          for (int c = 0; c < columns; c++) {
+            sinAltitude[offset + c] = (float) (rowSin + cosLat
+                * columnCos[c]);
+          }
+          continue;
+        }
+        for (int c = 0; c < columns; c++) {
+          double s = rowSin + cosLat * columnCos[c];
+          double alt = Math.toDegrees(trigonometry.asin(Math.max(-1, Math
+              .min(1, s))));
+          altitude[offset + c] = (float) (alt + RefractionTable.DEFAULT
+              .calculateRefraction(alt) / 60);
+        }
+        if (azimuth != null) {
+          double rowCos = cosLat * sinDec;
+          for (int c = 0; c < columns; c++) {
+            azimuth[offset + c] = (float) Math.toDegrees(trigonometry.atan2(
+                columnSin[c], columnCos[c] * sinLat - rowCos));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Processes a range of rows, splitting it in halves down to the block size
+   */
+  private final class Task extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Job job;
+    private final int from;
+    private final int to;
+
+    Task(Job job, int from, int to) {
+      this.job = job;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > blockRows) {
+        int middle = from + (to - from) / 2;
+        invokeAll(new Task(job, from, middle), new Task(job, middle, to));
+      } else {
+        job.run(from, to);
+      }
+    }
+  }
+}
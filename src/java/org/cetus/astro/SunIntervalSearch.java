@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Finds the intervals of time a {@link SunPredicate} holds for an observer.
+ * 
+ * Instead of sampling at the required resolution, the search steps over time
+ * using bounds of how fast the sun moves: the altitude changes at most by the
+ * rate of the hour angle times the cosine of the latitude, and the azimuth by
+ * that rate times <code>|sin(lat)| + cos(lat) tan(alt)</code>, where the
+ * altitude is bounded by the current one plus the most it may rise over the
+ * step, and by the culminations of the day. Together with the
+ * Lipschitz constants of the predicate they bound the rate of change of its
+ * margin, so that the condition cannot change for as long as the margin takes
+ * to vanish at that rate. Whole spans far from satisfying the predicate, or
+ * deep inside it, are skipped in a few steps, and only the boundaries are
+ * refined, by bisection down to the resolution. The cost grows with the
+ * number of boundaries, not with the length of the period over the
+ * resolution. Intervals, or gaps between them, shorter than the resolution
+ * may be missed.
+ * 
+ * Altitudes are geometric, i.e. without atmospheric refraction, as in
+ * {@link SunEventSolver}. Instances are not thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunIntervalSearch {
+
+  /** Default resolution of the boundaries in seconds */
+  public static final double DEFAULT_RESOLUTION = 1;
+
+  // bound of the rate of the hour angle and the declination, degrees per day
+  private static final double HOUR_ANGLE_RATE = 361;
+  private static final double DECLINATION_RATE = 0.5;
+  // longest step, so that the culmination bound stays valid
+  private static final double MAX_STEP = 1;
+  // times the rise of the altitude over a step is halved to shorten it
+  private static final int MAX_HALVINGS = 12;
+
+  private final Observer observer;
+  private final double resolution;
+  private final SolarState state;
+  private final double[] position = new double[2];
+  private long evaluations;
+
+  /**
+   * Creates a SunIntervalSearch for the given observer with a resolution of
+   * {@link #DEFAULT_RESOLUTION} seconds.
+   * 
+   * @param observer
+   *          the observer's location
+   */
+  public SunIntervalSearch(Observer observer) {
+    this(observer, DEFAULT_RESOLUTION, Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a SunIntervalSearch.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param resolution
+   *          the resolution of the boundaries in seconds
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @throws IllegalArgumentException
+   *           thrown when the resolution is not positive
+   */
+  public SunIntervalSearch(Observer observer, double resolution,
+      Trigonometry trigonometry) throws IllegalArgumentException {
+    if (!(resolution > 0)) {
+      throw new IllegalArgumentException("Unsupported resolution "
+          + resolution);
+    }
+    this.observer = observer;
+    this.resolution = resolution / 86400;
+    this.state = new SolarState(trigonometry);
+  }
+
+  /**
+   * Finds the intervals within the given period the predicate holds.
+   * 
+   * @param predicate
+   *          the condition on the position of the sun
+   * @param startJd
+   *          the Julian Day (UT) the period starts at
+   * @param endJd
+   *          the Julian Day (UT) the period ends at
+   * @return the intervals in chronological order, clipped to the period
+   * @throws IllegalArgumentException
+   *           thrown when the period ends before it starts
+   */
+  public List<TimeInterval> find(SunPredicate predicate, double startJd,
+      double endJd) throws IllegalArgumentException {
+    if (!(endJd >= startJd)) {
+      throw new IllegalArgumentException("Unsupported period [" + startJd
+          + ", " + endJd + "]");
+    }
+    List<TimeInterval> intervals = new ArrayList<TimeInterval>();
+    double t = startJd;
+    double margin = margin(predicate, t);
+    double altitude = position[1];
+    double declination = state.getDeclination();
+    double intervalStart = margin >= 0 ? t : Double.NaN;
+    while (t < endJd) {
+      double next = Math.min(t + step(predicate, margin, altitude,
+          declination), endJd);
+      double nextMargin = margin(predicate, next);
+      altitude = position[1];
+      declination = state.getDeclination();
+      if ((nextMargin >= 0) != (margin >= 0)) {
+        double boundary = refine(predicate, t, next, margin >= 0);
+        if (nextMargin >= 0) {
+          intervalStart = boundary;
+        } else {
+          intervals.add(new TimeInterval(intervalStart, boundary));
+          intervalStart = Double.NaN;
+        }
+      }
+      t = next;
+      margin = nextMargin;
+    }
+    if (!Double.isNaN(intervalStart)) {
+      intervals.add(new TimeInterval(intervalStart, endJd));
+    }
+    return intervals;
+  }
+
+  /**
+   * Returns the number of positions evaluated since the search was created
+   * 
+   * @return the number of evaluations
+   */
+  public long getEvaluations() {
+    return evaluations;
+  }
+
+  /**
+   * @return the observer's location
+   */
+  public Observer getObserver() {
+    return observer;
+  }
+
+  /**
+   * Evaluates the margin of the predicate at an instant
+   */
+  private double margin(SunPredicate predicate, double jd) {
+    evaluations++;
+    state.update(jd).calculateGeometricHorizontal(observer, position);
+    return predicate.margin(position[0], position[1]);
+  }
+
+  /**
+   * Longest step the condition cannot change over, from an instant the
+   * margin, the altitude and the declination of the sun are known at
+   */
+  private double step(SunPredicate predicate, double margin,
+      double altitude, double declination) {
+    double distance = Math.abs(margin);
+    // farthest from the horizon the sun may get before the next update, at
+    // the upper or the lower culmination
+    double culmination = Math.min(90 - Math.abs(Math.abs(observer
+        .getLatitude()) - Math.abs(declination)) + DECLINATION_RATE
+        * MAX_STEP, 90);
+    double step = distance / rateBound(predicate, culmination);
+    // shorter steps keep the sun closer to its current altitude, with a lower
+    // bound of the rate; the rise is halved until it no longer pays
+    double altitudeRate = HOUR_ANGLE_RATE * observer.getCosLatitude()
+        + DECLINATION_RATE;
+    double current = Math.min(Math.abs(altitude), culmination);
+    double rise = predicate.getAzimuthSlope() > 0 ? culmination - current : 0;
+    for (int i = 0; i < MAX_HALVINGS && rise / altitudeRate > step; i++) {
+      rise /= 2;
+      step = Math.max(step, Math.min(distance
+          / rateBound(predicate, current + rise), rise / altitudeRate));
+    }
+    return Math.max(Math.min(step, MAX_STEP), resolution);
+  }
+
+  /**
+   * Bound of the rate of change of the margin, in degrees per day, while the
+   * altitude of the sun stays within the given one in absolute value
+   */
+  private double rateBound(SunPredicate predicate, double altitude) {
+    double cosLat = observer.getCosLatitude();
+    double bound = predicate.getAltitudeSlope()
+        * (HOUR_ANGLE_RATE * cosLat + DECLINATION_RATE);
+    if (predicate.getAzimuthSlope() > 0) {
+      double cosAlt = Math.cos(Math.toRadians(altitude));
+      double tanAlt = Math.sqrt(1 - cosAlt * cosAlt) / cosAlt;
+      bound += predicate.getAzimuthSlope()
+          * (HOUR_ANGLE_RATE * (Math.abs(observer.getSinLatitude()) + cosLat
+              * tanAlt) + DECLINATION_RATE / cosAlt);
+    }
+    return bound;
+  }
+
+  /**
+   * Bisects the boundary of the predicate within [a, b]
+   */
+  private double refine(SunPredicate predicate, double a, double b,
+      boolean holdsAtA) {
+    while (b - a > resolution) {
+      double middle = (a + b) / 2;
+      if ((margin(predicate, middle) >= 0) == holdsAtA) {
+        a = middle;
+      } else {
+        b = middle;
+      }
+    }
+    return (a + b) / 2;
+  }
+}
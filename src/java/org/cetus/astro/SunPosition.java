@@ -25,6 +25,8 @@ public class SunPosition {
 
   private double altitude;
   private double azimuth;
+  private double altitudeRate = Double.NaN;
+  private double azimuthRate = Double.NaN;
 
   /**
    * Creates an instance of SunPosition for the given horizontal coordinates,
@@ -40,6 +42,26 @@ public class SunPosition {
     this.altitude = altitude;
   }
 
+  /**
+   * Creates an instance of SunPosition for the given horizontal coordinates,
+   * measured in degrees, and their rates of change, in degrees per day.
+   * 
+   * @param azimuth
+   *          azimuth in degrees
+   * @param altitude
+   *          altitude in degrees
+   * @param azimuthRate
+   *          rate of the azimuth in degrees per day
+   * @param altitudeRate
+   *          rate of the altitude in degrees per day
+   */
+  public SunPosition(double azimuth, double altitude, double azimuthRate,
+      double altitudeRate) {
+    this(azimuth, altitude);
+    this.azimuthRate = azimuthRate;
+    this.altitudeRate = altitudeRate;
+  }
+
   /**
    * @return the altitude in degrees
    */
@@ -69,4 +91,36 @@ public class SunPosition {
   public void setAzimuth(double azimuth) {
     this.azimuth = azimuth;
   }
+
+  /**
+   * @return the rate of the altitude in degrees per day, NaN if it was not
+   *         calculated
+   */
+  public double getAltitudeRate() {
+    return altitudeRate;
+  }
+
+  /**
+   * @return the rate of the azimuth in degrees per day, NaN if it was not
+   *         calculated
+   */
+  public double getAzimuthRate() {
+    return azimuthRate;
+  }
+
+  /**
+   * @param altitudeRate
+   *          the rate of the altitude to set (degrees per day)
+   */
+  public void setAltitudeRate(double altitudeRate) {
+    this.altitudeRate = altitudeRate;
+  }
+
+  /**
+   * @param azimuthRate
+   *          the rate of the azimuth to set (degrees per day)
+   */
+  public void setAzimuthRate(double azimuthRate) {
+    this.azimuthRate = azimuthRate;
+  }
 }
\ No newline at end of file
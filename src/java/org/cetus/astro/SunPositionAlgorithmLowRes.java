@@ -25,6 +25,8 @@ import org.cetus.astro.coords.EquatorialCoordinates;
 import org.cetus.astro.coords.HorizontalCoordinates;
 import org.cetus.astro.util.AngleUtils;
 import org.cetus.astro.util.DateTimeUtils;
+import org.cetus.astro.util.FastMath;
+import org.cetus.astro.util.Trigonometry;
 
 /**
  * Implementation of a low accuracy algorithm to calculate the sun position as
@@ -39,12 +41,30 @@ import org.cetus.astro.util.DateTimeUtils;
  * This leads to an accuracy of 0.01 degree, approximately fifty times smaller
  * than the sun diameter (~0.5416 degrees).
  * 
+ * As full precision trigonometric functions are not required to reach such
+ * accuracy, an opt-in fast math mode evaluates the whole algorithm (refraction
+ * included) with the bounded-error approximations of {@link FastMath}. The
+ * resulting positions differ from the full precision ones by less than 1e-5
+ * degrees. Only below one degree under the horizon, where the refraction
+ * formula approaches its singularity at -5.11 degrees and amplifies any
+ * rounding difference, the apparent altitudes may differ further.
+ * 
+ * When rates are enabled, the analytic time derivatives of the azimuth and the
+ * apparent altitude are calculated in the same pass, from the derivatives of
+ * the apparent longitude and of the sidereal time (the slow change of the
+ * nutation is neglected), and returned along with the position in degrees per
+ * day. They are undefined at the zenith.
+ * 
  * @author Inaki Ortiz de Landaluce Saiz
  */
 public class SunPositionAlgorithmLowRes extends SunPositionAlgorithm {
 
   private Logger log = Logger.getRootLogger();
 
+  private Trigonometry trigonometry = Trigonometry.STANDARD;
+
+  private boolean ratesEnabled;
+
   /**
    * Creates an instance of a SunPositionAlgorithm to calculate the sun position
    * for a given date and assuming calendar is Gregorian.
@@ -99,6 +119,78 @@ public class SunPositionAlgorithmLowRes extends SunPositionAlgorithm {
     super(year, month, day, hour, minute, second, longitude, latitude);
   }
 
+  /**
+   * Returns whether the fast math mode is enabled
+   * 
+   * @return true if the algorithm is evaluated with bounded-error
+   *         approximations of the trigonometric functions, false otherwise
+   */
+  public boolean isFastMath() {
+    return this.trigonometry == Trigonometry.FAST;
+  }
+
+  /**
+   * Enables or disables the fast math mode, disabled by default.
+   * 
+   * @param fastMath
+   *          true to evaluate the algorithm with bounded-error approximations
+   *          of the trigonometric functions, false to use full precision ones
+   */
+  public void setFastMath(boolean fastMath) {
+    this.trigonometry = fastMath ? Trigonometry.FAST : Trigonometry.STANDARD;
+  }
+
+  /**
+   * Returns whether the rates of change are calculated along with positions
+   * 
+   * @return true if the rates are calculated, false otherwise
+   */
+  public boolean isRatesEnabled() {
+    return ratesEnabled;
+  }
+
+  /**
+   * Enables or disables the calculation of the rates of change of the
+   * azimuth and the altitude, disabled by default.
+   * 
+   * @param ratesEnabled
+   *          true to return the rates along with the positions, false to
+   *          leave them NaN
+   */
+  public void setRatesEnabled(boolean ratesEnabled) {
+    this.ratesEnabled = ratesEnabled;
+  }
+
+  /**
+   * Calculates the sun position for the given date along with the equatorial
+   * coordinates, sidereal time, hour angle, equation of time, distance and
+   * the intermediates of the algorithm, the less common of which are only
+   * calculated when requested. The rates are calculated if enabled.
+   * 
+   * @return the extended sun position
+   * @throws IllegalArgumentException
+   *           thrown when the latitude is out of [-90, 90]
+   */
+  public ExtendedSunPosition calculateExtendedSunPosition()
+      throws IllegalArgumentException {
+    // validates the location whether the rates are enabled or not
+    Observer observer = new Observer(longitudeInDegrees, latitudeInDegrees);
+    Calendar calendar = DateTimeUtils.parseCalendar(this.year, this.month,
+        this.day, this.hour, this.minute, this.second, 0, this.timeZone);
+    SolarState state = new SolarState(trigonometry).update(new JulianDay(
+        calendar).getJD());
+    double[] result = new double[4];
+    if (ratesEnabled) {
+      state.calculateHorizontalWithRates(observer, result);
+    } else {
+      state.calculateHorizontal(longitudeInDegrees, latitudeInDegrees, result);
+      result[2] = Double.NaN;
+      result[3] = Double.NaN;
+    }
+    return new ExtendedSunPosition(state, longitudeInDegrees,
+        latitudeInDegrees, result[0], result[1], result[2], result[3]);
+  }
+
   /**
    * Calculates the sun position for the given date assuming purely elliptical
    * motion of the Earth.
@@ -133,8 +225,9 @@ public class SunPositionAlgorithmLowRes extends SunPositionAlgorithm {
 
     // use sun's equation of the center to calculate true geometric longitude
     double c = (1.914602 - 0.004817 * t - 0.000014 * t2)
-        * Math.sin(manoRadians) + (0.019993 - 0.000101 * t)
-        * Math.sin(2 * manoRadians) + 0.000289 * Math.sin(3 * manoRadians);
+        * trigonometry.sin(manoRadians) + (0.019993 - 0.000101 * t)
+        * trigonometry.sin(2 * manoRadians) + 0.000289
+        * trigonometry.sin(3 * manoRadians);
     log.debug("Center=" + c + " degrees");
     double tlon = mlon + c;
     tlon = AngleUtils.normalizeAngle(tlon, 0, 360);
@@ -142,7 +235,7 @@ public class SunPositionAlgorithmLowRes extends SunPositionAlgorithm {
 
     // calculate the apparent longitude, taking nutation in longitude and
     // aberration into account
-    Nutation nutation = new Nutation(t);
+    Nutation nutation = new Nutation(t, trigonometry);
     double aberration = -0.00569;
     double nutationLon = nutation.getDeltaLongitude() / 3600;
     double lambda = tlon + aberration + nutationLon;
@@ -157,11 +250,11 @@ public class SunPositionAlgorithmLowRes extends SunPositionAlgorithm {
 
     // convert from ecliptic to equatorial assuming sun's ecliptic latitude is
     // zero (valid for low accuracy calculation only)
-    double rasRadians = Math.atan2(
-        (Math.sin(lambdaRadians) * Math.cos(epsilonRadians)),
-        Math.cos(lambdaRadians));
-    double decRadians = Math.asin(Math.sin(epsilonRadians)
-        * Math.sin(lambdaRadians));
+    double rasRadians = trigonometry.atan2(
+        (trigonometry.sin(lambdaRadians) * trigonometry.cos(epsilonRadians)),
+        trigonometry.cos(lambdaRadians));
+    double decRadians = trigonometry.asin(trigonometry.sin(epsilonRadians)
+        * trigonometry.sin(lambdaRadians));
     log.info("Ras=" + Math.toDegrees(rasRadians) + " degrees" + " = "
         + AngleUtils.formatDegToHms(Math.toDegrees(rasRadians), 0, 360));
     log.info("Dec=" + Math.toDegrees(decRadians) + " degrees" + " = "
@@ -171,9 +264,11 @@ public class SunPositionAlgorithmLowRes extends SunPositionAlgorithm {
     double rasHours = Math.toDegrees(rasRadians) / 15.0;
     double decDegrees = Math.toDegrees(decRadians);
     double sTime = SiderealTime.calculateApparentSiderealTime(jd,
-        nutation.getDeltaLongitude(), nutation.getDeltaObliquity());
+        nutation.getDeltaLongitude(), nutation.getDeltaObliquity(),
+        trigonometry);
     HorizontalCoordinates h = new EquatorialCoordinates(rasHours, decDegrees)
-        .toHorizontal(sTime, longitudeInDegrees, latitudeInDegrees);
+        .toHorizontal(sTime, longitudeInDegrees, latitudeInDegrees,
+            trigonometry);
     double azimuthDegrees = h.getAzimuth();
     double altitudeDegrees = h.getAltitude();
     log.info("Azimuth=" + azimuthDegrees + " degrees" + " = "
@@ -182,9 +277,32 @@ public class SunPositionAlgorithmLowRes extends SunPositionAlgorithm {
         + AngleUtils.formatDegToDms(altitudeDegrees, -180, 180));
 
     // correct altitude from atmospheric refraction
-    double altitudeCorrectedDegrees = new AtmosphericRefraction(altitudeDegrees)
-        .getApparentAltitude();
+    double altitudeCorrectedDegrees = new AtmosphericRefraction(
+        altitudeDegrees, 1010, 283, trigonometry).getApparentAltitude();
+
+    if (!ratesEnabled) {
+      return new SunPosition(azimuthDegrees, altitudeCorrectedDegrees);
+    }
 
-    return new SunPosition(azimuthDegrees, altitudeCorrectedDegrees);
+    // differentiate the apparent longitude, the equatorial coordinates and
+    // the hour angle with respect to time, then the horizontal coordinates
+    double lambdaRate = SolarState.calculateLongitudeRate(t, mano,
+        trigonometry);
+    double cosDec = trigonometry.cos(decRadians);
+    double rasRate = trigonometry.cos(epsilonRadians) / (cosDec * cosDec)
+        * lambdaRate;
+    double decRate = trigonometry.sin(epsilonRadians)
+        * trigonometry.cos(lambdaRadians) / cosDec * lambdaRate;
+    double hourAngleRate = SolarState.calculateSiderealTimeRate(t) - rasRate;
+    double latitudeRadians = Math.toRadians(latitudeInDegrees);
+    double[] rates = new double[4];
+    SolarState.calculateHorizontalWithRates(sTime - longitudeInDegrees
+        - Math.toDegrees(rasRadians), hourAngleRate, trigonometry
+        .sin(decRadians), cosDec, decRate, trigonometry.sin(latitudeRadians),
+        trigonometry.cos(latitudeRadians), trigonometry, rates);
+    log.debug("Azimuth rate=" + rates[2] + " degrees/day");
+    log.debug("Altitude rate=" + rates[3] + " degrees/day");
+    return new SunPosition(azimuthDegrees, altitudeCorrectedDegrees,
+        rates[2], rates[3]);
   }
 }
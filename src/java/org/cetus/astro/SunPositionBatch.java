@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Calculates sun positions for arrays of instants and locations with the low
+ * accuracy algorithm of {@link SunPositionAlgorithmLowRes}.
+ * 
+ * The work is delegated to a vectorized kernel based on the incubating Java
+ * Vector API whenever the JVM resolves the <code>jdk.incubator.vector</code>
+ * module (i.e. it is started with
+ * <code>--add-modules jdk.incubator.vector</code>), and to a scalar kernel
+ * otherwise. The vectorized kernel may be disabled by setting the system
+ * property <code>org.cetus.astro.vector</code> to <code>false</code>.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class SunPositionBatch {
+
+  private static Logger log = Logger.getRootLogger();
+
+  private static final String VECTOR_KERNEL = "org.cetus.astro.vector.VectorSunPositionKernel";
+
+  private static final SunPositionKernel KERNEL = createKernel();
+
+  private SunPositionBatch() {
+  }
+
+  /**
+   * Calculates the sun position for every instant <code>jd[i]</code> at the
+   * location <code>(longitude[i], latitude[i])</code>.
+   * 
+   * @param jd
+   *          Julian Days (UT)
+   * @param longitude
+   *          geographical longitudes in degrees (positive west)
+   * @param latitude
+   *          geographical latitudes in degrees
+   * @param azimuth
+   *          array receiving the azimuths in degrees, measured westwards from
+   *          the south
+   * @param altitude
+   *          array receiving the altitudes in degrees, corrected by
+   *          atmospheric refraction
+   */
+  public static void calculate(double[] jd, double[] longitude,
+      double[] latitude, double[] azimuth, double[] altitude) {
+    calculate(jd, longitude, latitude, azimuth, altitude, 0, jd.length);
+  }
+
+  /**
+   * Calculates the sun position for the elements of the given range.
+   * 
+   * @param jd
+   *          Julian Days (UT)
+   * @param longitude
+   *          geographical longitudes in degrees (positive west)
+   * @param latitude
+   *          geographical latitudes in degrees
+   * @param azimuth
+   *          array receiving the azimuths in degrees
+   * @param altitude
+   *          array receiving the altitudes in degrees
+   * @param offset
+   *          index of the first element
+   * @param length
+   *          number of elements
+   * @throws IllegalArgumentException
+   *           thrown when the range exceeds any of the arrays
+   */
+  public static void calculate(double[] jd, double[] longitude,
+      double[] latitude, double[] azimuth, double[] altitude, int offset,
+      int length) throws IllegalArgumentException {
+    // written so that offset + length cannot overflow
+    if (offset < 0 || length < 0 || offset > jd.length - length
+        || offset > longitude.length - length
+        || offset > latitude.length - length
+        || offset > azimuth.length - length
+        || offset > altitude.length - length) {
+      throw new IllegalArgumentException("Range of " + length
+          + " elements at " + offset + " exceeds the given arrays");
+    }
+    KERNEL.calculate(jd, longitude, latitude, azimuth, altitude, offset,
+        length);
+  }
+
+  /**
+   * Returns the kernel the calculations are delegated to
+   * 
+   * @return the kernel
+   */
+  public static SunPositionKernel getKernel() {
+    return KERNEL;
+  }
+
+  /**
+   * Returns whether the calculations are vectorized
+   * 
+   * @return true if the Vector API kernel is in use, false otherwise
+   */
+  public static boolean isVectorized() {
+    return !(KERNEL instanceof ScalarSunPositionKernel);
+  }
+
+  private static SunPositionKernel createKernel() {
+    if (Boolean.parseBoolean(System.getProperty("org.cetus.astro.vector",
+        "true"))) {
+      try {
+        SunPositionKernel kernel = (SunPositionKernel) Class
+            .forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        log.debug("Using vectorized sun position kernel");
+        return kernel;
+      } catch (Exception e) {
+        log.debug("Vector API not available: " + e);
+      } catch (LinkageError e) {
+        log.debug("Vector API not available: " + e);
+      }
+    }
+    return new ScalarSunPositionKernel();
+  }
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Off-heap columnar storage of sun positions, for results too large for Java
+ * arrays or the heap. Every column holds one double per position, and may
+ * hold more than 2^31 of them.
+ * 
+ * Columns are split into chunks of a fixed power of two of values, each one
+ * a little-endian {@link DoubleBuffer} over a direct or a memory-mapped
+ * buffer, so that values are addressed by a long index without any limit
+ * but the memory or the disk. The azimuth and the altitude are always
+ * stored, and the right ascension, the declination and the local hour angle
+ * optionally.
+ * 
+ * Mapped columns live in a file that native tools can map in turn, with no
+ * copy of the results. It is made of a header of {@link #HEADER_SIZE} bytes
+ * followed by the columns one after the other, every one starting at an
+ * offset multiple of 64:
+ * 
+ * <pre>
+ * offset  type     field
+ *      0  byte[8]  magic number "CETUSCOL"
+ *      8  int      format version ({@link #VERSION})
+ *     12  int      number of columns
+ *     16  long     number of values per column
+ *     24  long[5]  offsets of the columns, zero for the absent ones
+ * </pre>
+ * 
+ * The file is written in place and has no checksum. Instances may be written
+ * concurrently at distinct indexes.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class SunPositionColumns {
+
+  private static Logger log = Logger.getRootLogger();
+
+  /** Column of the azimuths in degrees, measured westwards from the south */
+  public static final int AZIMUTH = 0;
+  /** Column of the apparent altitudes in degrees */
+  public static final int ALTITUDE = 1;
+  /** Column of the apparent right ascensions in degrees */
+  public static final int RIGHT_ASCENSION = 2;
+  /** Column of the apparent declinations in degrees */
+  public static final int DECLINATION = 3;
+  /** Column of the local hour angles in degrees, within [0, 360) */
+  public static final int HOUR_ANGLE = 4;
+
+  /** Magic number the files start with */
+  public static final long MAGIC = 0x4C4F435355544543L; // "CETUSCOL"
+  /** Version of the format */
+  public static final int VERSION = 1;
+  /** Size of the header in bytes */
+  public static final int HEADER_SIZE = 64;
+  /** Default number of values per chunk (1 GB) */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 27;
+
+  private static final int ALIGNMENT = 64;
+  // number of positions calculated at once on the heap
+  private static final int BATCH_SIZE = 4096;
+
+  private final long size;
+  private final int columnCount;
+  private final int shift;
+  private final int mask;
+  private final DoubleBuffer[][] chunks;
+  // null for direct buffers
+  private final MappedByteBuffer[] mappings;
+
+  private SunPositionColumns(long size, int columnCount, int chunkSize,
+      DoubleBuffer[][] chunks, MappedByteBuffer[] mappings) {
+    this.size = size;
+    this.columnCount = columnCount;
+    this.shift = Integer.numberOfTrailingZeros(chunkSize);
+    this.mask = chunkSize - 1;
+    this.chunks = chunks;
+    this.mappings = mappings;
+  }
+
+  /**
+   * Allocates columns in direct buffers, out of the heap.
+   * 
+   * @param size
+   *          the number of positions
+   * @param equatorial
+   *          whether the right ascension, the declination and the hour angle
+   *          are stored as well
+   * @return the columns, filled with zeros
+   * @throws IllegalArgumentException
+   *           thrown when the size is negative
+   */
+  public static SunPositionColumns allocate(long size, boolean equatorial)
+      throws IllegalArgumentException {
+    return allocate(size, equatorial, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Allocates columns in direct buffers of the given number of values.
+   */
+  static SunPositionColumns allocate(long size, boolean equatorial,
+      int chunkSize) throws IllegalArgumentException {
+    checkSize(size, chunkSize);
+    int columnCount = equatorial ? 5 : 2;
+    int chunkCount = chunkCount(size, chunkSize);
+    DoubleBuffer[][] chunks = new DoubleBuffer[columnCount][chunkCount];
+    for (int c = 0; c < columnCount; c++) {
+      for (int k = 0; k < chunkCount; k++) {
+        int length = chunkLength(size, chunkSize, k);
+        chunks[c][k] = ByteBuffer.allocateDirect(8 * length).order(
+            ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+      }
+    }
+    return new SunPositionColumns(size, columnCount, chunkSize, chunks, null);
+  }
+
+  /**
+   * Creates a file holding the columns and maps it, replacing the file if it
+   * already exists.
+   * 
+   * @param path
+   *          the path of the file
+   * @param size
+   *          the number of positions
+   * @param equatorial
+   *          whether the right ascension, the declination and the hour angle
+   *          are stored as well
+   * @return the columns, backed by the mapped file and filled with zeros
+   * @throws IOException
+   *           thrown when the file cannot be created
+   * @throws IllegalArgumentException
+   *           thrown when the size is negative
+   */
+  public static SunPositionColumns create(Path path, long size,
+      boolean equatorial) throws IOException, IllegalArgumentException {
+    return create(path, size, equatorial, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Creates a file holding the columns, mapped in chunks of the given number
+   * of values.
+   */
+  static SunPositionColumns create(Path path, long size, boolean equatorial,
+      int chunkSize) throws IOException, IllegalArgumentException {
+    checkSize(size, chunkSize);
+    int columnCount = equatorial ? 5 : 2;
+    long[] offsets = columnOffsets(size, columnCount);
+    try (FileChannel channel = FileChannel.open(path,
+        StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+          ByteOrder.LITTLE_ENDIAN);
+      header.putLong(0, MAGIC);
+      header.putInt(8, VERSION);
+      header.putInt(12, columnCount);
+      header.putLong(16, size);
+      for (int c = 0; c < columnCount; c++) {
+        header.putLong(24 + 8 * c, offsets[c]);
+      }
+      channel.write(header, 0);
+      // the file grows sparse up to its last byte
+      long end = offsets[columnCount - 1] + 8 * size;
+      if (end > HEADER_SIZE) {
+        channel.write(ByteBuffer.allocate(1), end - 1);
+      }
+      log.debug("Created " + columnCount + " columns of " + size
+          + " values in " + path);
+      return map(channel, FileChannel.MapMode.READ_WRITE, size, columnCount,
+          offsets, chunkSize);
+    }
+  }
+
+  /**
+   * Maps an existing file of columns.
+   * 
+   * @param path
+   *          the path of the file
+   * @param writable
+   *          whether the columns may be written
+   * @return the columns, backed by the mapped file
+   * @throws IOException
+   *           thrown when the file cannot be read or is not a valid file of
+   *           columns
+   */
+  public static SunPositionColumns map(Path path, boolean writable)
+      throws IOException {
+    return map(path, writable, DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Maps an existing file of columns in chunks of the given number of values.
+   */
+  static SunPositionColumns map(Path path, boolean writable, int chunkSize)
+      throws IOException {
+    try (FileChannel channel = writable ? FileChannel.open(path,
+        StandardOpenOption.READ, StandardOpenOption.WRITE) : FileChannel
+        .open(path, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(
+          ByteOrder.LITTLE_ENDIAN);
+      if (channel.read(header, 0) != HEADER_SIZE
+          || header.getLong(0) != MAGIC) {
+        throw new IOException("Unsupported column file " + path
+            + ". Wrong magic number");
+      }
+      int version = header.getInt(8);
+      if (version != VERSION) {
+        throw new IOException("Unsupported column file " + path
+            + ". Unknown version " + version);
+      }
+      int columnCount = header.getInt(12);
+      long size = header.getLong(16);
+      if ((columnCount != 2 && columnCount != 5) || size < 0) {
+        throw new IOException("Unsupported column file " + path
+            + ". Inconsistent header");
+      }
+      long[] offsets = columnOffsets(size, columnCount);
+      for (int c = 0; c < columnCount; c++) {
+        if (header.getLong(24 + 8 * c) != offsets[c]) {
+          throw new IOException("Unsupported column file " + path
+              + ". Inconsistent layout");
+        }
+      }
+      if (channel.size() < offsets[columnCount - 1] + 8 * size) {
+        throw new IOException("Unsupported column file " + path
+            + ". Truncated columns");
+      }
+      return map(channel, writable ? FileChannel.MapMode.READ_WRITE
+          : FileChannel.MapMode.READ_ONLY, size, columnCount, offsets,
+          chunkSize);
+    }
+  }
+
+  private static SunPositionColumns map(FileChannel channel,
+      FileChannel.MapMode mode, long size, int columnCount, long[] offsets,
+      int chunkSize) throws IOException {
+    int chunkCount = chunkCount(size, chunkSize);
+    DoubleBuffer[][] chunks = new DoubleBuffer[columnCount][chunkCount];
+    MappedByteBuffer[] mappings = new MappedByteBuffer[columnCount
+        * chunkCount];
+    for (int c = 0; c < columnCount; c++) {
+      for (int k = 0; k < chunkCount; k++) {
+        int length = chunkLength(size, chunkSize, k);
+        MappedByteBuffer mapping = channel.map(mode, offsets[c] + 8L
+            * chunkSize * k, 8L * length);
+        mappings[c * chunkCount + k] = mapping;
+        chunks[c][k] = mapping.order(ByteOrder.LITTLE_ENDIAN)
+            .asDoubleBuffer();
+      }
+    }
+    return new SunPositionColumns(size, columnCount, chunkSize, chunks,
+        mappings);
+  }
+
+  /**
+   * Calculates the sun positions for every instant <code>jd[i]</code> at the
+   * location <code>(longitude[i], latitude[i])</code> of the given range, and
+   * stores them from the given index. The equatorial coordinates are stored
+   * as well when the columns hold them.
+   * 
+   * @param index
+   *          the index of the first position stored
+   * @param jd
+   *          Julian Days (UT)
+   * @param longitude
+   *          geographical longitudes in degrees (positive west)
+   * @param latitude
+   *          geographical latitudes in degrees
+   * @param offset
+   *          index of the first element of the arrays
+   * @param length
+   *          number of elements
+   * @throws IllegalArgumentException
+   *           thrown when the range exceeds the arrays or the columns
+   */
+  public void calculate(long index, double[] jd, double[] longitude,
+      double[] latitude, int offset, int length)
+      throws IllegalArgumentException {
+    checkRange(index, length);
+    int end = offset + length;
+    if (offset < 0 || end > jd.length || end > longitude.length
+        || end > latitude.length) {
+      throw new IllegalArgumentException("Range [" + offset + ", " + end
+          + ") exceeds the given arrays");
+    }
+    int batch = Math.min(length, BATCH_SIZE);
+    // the kernel writes at the offset of its inputs, so they are copied
+    double[] t = new double[batch];
+    double[] lon = new double[batch];
+    double[] lat = new double[batch];
+    double[] first = new double[batch];
+    double[] second = new double[batch];
+    double[] third = new double[batch];
+    SolarState state = columnCount > 2 ? new SolarState() : null;
+    for (int i = 0; i < length; i += batch) {
+      int count = Math.min(batch, length - i);
+      System.arraycopy(jd, offset + i, t, 0, count);
+      System.arraycopy(longitude, offset + i, lon, 0, count);
+      System.arraycopy(latitude, offset + i, lat, 0, count);
+      SunPositionBatch.calculate(t, lon, lat, first, second, 0, count);
+      put(AZIMUTH, index + i, first, 0, count);
+      put(ALTITUDE, index + i, second, 0, count);
+      if (state != null) {
+        for (int j = 0; j < count; j++) {
+          if (state.getJD() != t[j]) {
+            state.update(t[j]);
+          }
+          first[j] = state.getRightAscension();
+          second[j] = state.getDeclination();
+          third[j] = state.calculateHourAngle(lon[j]);
+        }
+        put(RIGHT_ASCENSION, index + i, first, 0, count);
+        put(DECLINATION, index + i, second, 0, count);
+        put(HOUR_ANGLE, index + i, third, 0, count);
+      }
+    }
+  }
+
+  /**
+   * Returns a value of a column
+   * 
+   * @param column
+   *          the column, e.g. {@link #ALTITUDE}
+   * @param index
+   *          the index of the position
+   * @return the value
+   */
+  public double get(int column, long index) {
+    return chunks[column][(int) (index >>> shift)].get((int) index & mask);
+  }
+
+  /**
+   * Sets a value of a column
+   * 
+   * @param column
+   *          the column, e.g. {@link #ALTITUDE}
+   * @param index
+   *          the index of the position
+   * @param value
+   *          the value
+   */
+  public void set(int column, long index, double value) {
+    chunks[column][(int) (index >>> shift)].put((int) index & mask, value);
+  }
+
+  /**
+   * Copies values of a column into an array.
+   * 
+   * @param column
+   *          the column, e.g. {@link #ALTITUDE}
+   * @param index
+   *          the index of the first position
+   * @param values
+   *          array receiving the values
+   * @param offset
+   *          index of the array receiving the first value
+   * @param length
+   *          number of values
+   * @throws IllegalArgumentException
+   *           thrown when the range exceeds the column
+   */
+  public void get(int column, long index, double[] values, int offset,
+      int length) throws IllegalArgumentException {
+    checkRange(index, length);
+    while (length > 0) {
+      DoubleBuffer chunk = chunks[column][(int) (index >>> shift)];
+      int position = (int) index & mask;
+      int count = Math.min(length, chunk.capacity() - position);
+      chunk.get(position, values, offset, count);
+      index += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * Copies values of an array into a column.
+   * 
+   * @param column
+   *          the column, e.g. {@link #ALTITUDE}
+   * @param index
+   *          the index of the first position
+   * @param values
+   *          the values
+   * @param offset
+   *          index of the first value of the array
+   * @param length
+   *          number of values
+   * @throws IllegalArgumentException
+   *           thrown when the range exceeds the column
+   */
+  public void put(int column, long index, double[] values, int offset,
+      int length) throws IllegalArgumentException {
+    checkRange(index, length);
+    while (length > 0) {
+      DoubleBuffer chunk = chunks[column][(int) (index >>> shift)];
+      int position = (int) index & mask;
+      int count = Math.min(length, chunk.capacity() - position);
+      chunk.put(position, values, offset, count);
+      index += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * Returns a chunk of a column, sharing its contents, e.g. to hand it to
+   * native code through its address.
+   * 
+   * @param column
+   *          the column, e.g. {@link #ALTITUDE}
+   * @param chunk
+   *          the index of the chunk, holding the positions from
+   *          <code>chunk * getChunkSize()</code>
+   * @return the values of the chunk
+   */
+  public DoubleBuffer getChunk(int column, int chunk) {
+    return chunks[column][chunk].duplicate();
+  }
+
+  /**
+   * Writes the changes of mapped columns to the file. Does nothing for
+   * direct buffers.
+   */
+  public void force() {
+    if (mappings == null) {
+      return;
+    }
+    for (MappedByteBuffer mapping : mappings) {
+      if (!mapping.isReadOnly()) {
+        mapping.force();
+      }
+    }
+  }
+
+  /**
+   * @return the number of positions
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return the number of columns, 2 or 5 when the equatorial coordinates
+   *         are stored
+   */
+  public int getColumnCount() {
+    return columnCount;
+  }
+
+  /**
+   * @return the number of values per chunk
+   */
+  public int getChunkSize() {
+    return mask + 1;
+  }
+
+  /**
+   * @return the number of chunks per column
+   */
+  public int getChunkCount() {
+    return chunks[0].length;
+  }
+
+  /**
+   * @return true if the columns are backed by a mapped file
+   */
+  public boolean isMapped() {
+    return mappings != null;
+  }
+
+  private void checkRange(long index, int length) {
+    if (index < 0 || length < 0 || index > size - length) {
+      throw new IllegalArgumentException("Range [" + index + ", "
+          + (index + length) + ") exceeds the " + size + " positions");
+    }
+  }
+
+  private static void checkSize(long size, int chunkSize) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Unsupported size " + size);
+    }
+    if (chunkSize <= 0 || Integer.bitCount(chunkSize) != 1
+        || chunkSize > DEFAULT_CHUNK_SIZE) {
+      throw new IllegalArgumentException("Unsupported chunk size "
+          + chunkSize);
+    }
+  }
+
+  private static int chunkCount(long size, int chunkSize) {
+    return (int) ((size + chunkSize - 1) / chunkSize);
+  }
+
+  private static int chunkLength(long size, int chunkSize, int chunk) {
+    return (int) Math.min(chunkSize, size - (long) chunkSize * chunk);
+  }
+
+  private static long[] columnOffsets(long size, int columnCount) {
+    long[] offsets = new long[columnCount];
+    long offset = HEADER_SIZE;
+    for (int c = 0; c < columnCount; c++) {
+      offsets[c] = offset;
+      offset = (offset + 8 * size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+    return offsets;
+  }
+}
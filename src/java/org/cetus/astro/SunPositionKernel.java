@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Evaluates the low accuracy sun position algorithm over arrays of instants
+ * and locations.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public interface SunPositionKernel {
+
+  /**
+   * Calculates the sun position for each element of the given range, i.e. for
+   * the instant <code>jd[i]</code> and the location
+   * <code>(longitude[i], latitude[i])</code>.
+   * 
+   * @param jd
+   *          Julian Days (UT)
+   * @param longitude
+   *          geographical longitudes in degrees (positive west)
+   * @param latitude
+   *          geographical latitudes in degrees
+   * @param azimuth
+   *          array receiving the azimuths in degrees, measured westwards from
+   *          the south
+   * @param altitude
+   *          array receiving the altitudes in degrees, corrected by
+   *          atmospheric refraction
+   * @param offset
+   *          index of the first element
+   * @param length
+   *          number of elements
+   */
+  void calculate(double[] jd, double[] longitude, double[] latitude,
+      double[] azimuth, double[] altitude, int offset, int length);
+}
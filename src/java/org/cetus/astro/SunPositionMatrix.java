@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Calculates the position of the sun for every instant of a time axis at
+ * every one of a fixed set of sites, e.g. every site every five minutes of a
+ * day.
+ * 
+ * The trigonometric functions of the latitudes and longitudes of the sites
+ * are calculated once, when the matrix is created, and the solar state of
+ * every instant once per calculation: its declination and the sine and
+ * cosine of its Greenwich hour angle. The local hour angle of a cell then
+ * follows from the angle difference identities, so that every cell costs a
+ * few multiply-adds, an arcsine, an arctangent and a lookup of the
+ * refraction in {@link RefractionTable#DEFAULT}, the cost of the transform
+ * into horizontal coordinates alone.
+ * 
+ * The product of the instants and the sites is tiled into blocks of a few
+ * instants by a few thousand sites, whose inputs stay in the cache while the
+ * block is processed, and the blocks are processed in parallel by a
+ * {@link ForkJoinPool}. Results are stored time-major, the cell of instant
+ * <code>t</code> and site <code>s</code> at index
+ * <code>t * sites + s</code>, or site-major, at index
+ * <code>s * instants + t</code>, and blocks are traversed in the order of
+ * the output. Matrices are immutable and may be used concurrently.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunPositionMatrix {
+
+  /** Results stored by instants, all the sites of an instant together */
+  public static final int TIME_MAJOR = 0;
+  /** Results stored by sites, all the instants of a site together */
+  public static final int SITE_MAJOR = 1;
+
+  /** Default number of sites of the blocks */
+  public static final int DEFAULT_BLOCK_SITES = 2048;
+  /** Default number of instants of the blocks */
+  public static final int DEFAULT_BLOCK_INSTANTS = 16;
+
+  private final double[] sinLatitudes;
+  private final double[] cosLatitudes;
+  private final double[] sinLongitudes;
+  private final double[] cosLongitudes;
+  private final Trigonometry trigonometry;
+  private final ForkJoinPool pool;
+  private final int blockSites;
+  private final int blockInstants;
+
+  /**
+   * Creates a SunPositionMatrix for the given sites, evaluated with full
+   * precision trigonometric functions and running on the common pool with
+   * blocks of the default size.
+   * 
+   * @param longitudes
+   *          geographical longitudes in degrees of the sites (positive west)
+   * @param latitudes
+   *          geographical latitudes in degrees of the sites
+   * @throws IllegalArgumentException
+   *           thrown when the arrays have different lengths or a latitude is
+   *           out of [-90, 90]
+   */
+  public SunPositionMatrix(double[] longitudes, double[] latitudes)
+      throws IllegalArgumentException {
+    this(longitudes, latitudes, Trigonometry.STANDARD, ForkJoinPool
+        .commonPool(), DEFAULT_BLOCK_SITES, DEFAULT_BLOCK_INSTANTS);
+  }
+
+  /**
+   * Creates a SunPositionMatrix.
+   * 
+   * @param longitudes
+   *          geographical longitudes in degrees of the sites (positive west)
+   * @param latitudes
+   *          geographical latitudes in degrees of the sites
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @param pool
+   *          the pool the blocks are processed by
+   * @param blockSites
+   *          the number of sites of the blocks
+   * @param blockInstants
+   *          the number of instants of the blocks
+   * @throws IllegalArgumentException
+   *           thrown when the arrays have different lengths, a latitude is
+   *           out of [-90, 90] or the block sizes are not positive
+   */
+  public SunPositionMatrix(double[] longitudes, double[] latitudes,
+      Trigonometry trigonometry, ForkJoinPool pool, int blockSites,
+      int blockInstants) throws IllegalArgumentException {
+    if (longitudes.length != latitudes.length) {
+      throw new IllegalArgumentException("Unsupported sites of "
+          + longitudes.length + " longitudes and " + latitudes.length
+          + " latitudes");
+    }
+    if (blockSites <= 0 || blockInstants <= 0) {
+      throw new IllegalArgumentException("Unsupported block size "
+          + blockInstants + " x " + blockSites);
+    }
+    int n = longitudes.length;
+    this.sinLatitudes = new double[n];
+    this.cosLatitudes = new double[n];
+    this.sinLongitudes = new double[n];
+    this.cosLongitudes = new double[n];
+    for (int s = 0; s < n; s++) {
+      if (!(latitudes[s] >= -90 && latitudes[s] <= 90)) {
+        throw new IllegalArgumentException("Unsupported latitude "
+            + latitudes[s] + ". Latitude must be within [-90, 90] degrees");
+      }
+      double phi = Math.toRadians(latitudes[s]);
+      double lambda = Math.toRadians(longitudes[s]);
+      sinLatitudes[s] = trigonometry.sin(phi);
+      cosLatitudes[s] = trigonometry.cos(phi);
+      sinLongitudes[s] = trigonometry.sin(lambda);
+      cosLongitudes[s] = trigonometry.cos(lambda);
+    }
+    this.trigonometry = trigonometry;
+    this.pool = pool;
+    this.blockSites = blockSites;
+    this.blockInstants = blockInstants;
+  }
+
+  /**
+   * Calculates the position of the sun for every instant at every site.
+   * 
+   * @param jd
+   *          Julian Days (UT) of the instants
+   * @param azimuth
+   *          array receiving the azimuths in degrees, measured westwards from
+   *          the south. May be null if they are not required
+   * @param altitude
+   *          array receiving the altitudes in degrees, corrected by
+   *          atmospheric refraction for standard conditions
+   * @param order
+   *          the order of the results, {@link #TIME_MAJOR} or
+   *          {@link #SITE_MAJOR}
+   * @throws IllegalArgumentException
+   *           thrown when the order is not supported or an array is smaller
+   *           than the matrix
+   */
+  public void calculate(double[] jd, double[] azimuth, double[] altitude,
+      int order) throws IllegalArgumentException {
+    if (order != TIME_MAJOR && order != SITE_MAJOR) {
+      throw new IllegalArgumentException("Unsupported order " + order);
+    }
+    long cells = (long) jd.length * sinLatitudes.length;
+    if (altitude.length < cells
+        || (azimuth != null && azimuth.length < cells)) {
+      throw new IllegalArgumentException("Unsupported arrays for a matrix of "
+          + jd.length + " x " + sinLatitudes.length);
+    }
+    Job job = new Job(jd, azimuth, altitude, order);
+    if (job.blocks <= 1) {
+      job.run(0, job.blocks);
+    } else {
+      pool.invoke(new Task(job, 0, job.blocks));
+    }
+  }
+
+  /**
+   * @return the number of sites
+   */
+  public int getSites() {
+    return sinLatitudes.length;
+  }
+
+  /**
+   * Solar states of the instants, and the outputs of a calculation
+   */
+  private final class Job {
+
+    private final int instants;
+    private final int sites;
+    private final double[] sinDec;
+    private final double[] cosDec;
+    // sine and cosine of the Greenwich hour angles
+    private final double[] sinGha;
+    private final double[] cosGha;
+    private final double[] azimuth;
+    private final double[] altitude;
+    private final int order;
+    private final int timeBlocks;
+    private final int siteBlocks;
+    private final int blocks;
+
+    Job(double[] jd, double[] azimuth, double[] altitude, int order) {
+      this.instants = jd.length;
+      this.sites = sinLatitudes.length;
+      this.sinDec = new double[instants];
+      this.cosDec = new double[instants];
+      this.sinGha = new double[instants];
+      this.cosGha = new double[instants];
+      SolarState state = new SolarState(trigonometry);
+      for (int t = 0; t < instants; t++) {
+        if (state.getJD() != jd[t]) {
+          state.update(jd[t]);
+        }
+        double gha = Math.toRadians(state.calculateHourAngle(0));
+        sinDec[t] = state.getSinDeclination();
+        cosDec[t] = state.getCosDeclination();
+        sinGha[t] = trigonometry.sin(gha);
+        cosGha[t] = trigonometry.cos(gha);
+      }
+      this.azimuth = azimuth;
+      this.altitude = altitude;
+      this.order = order;
+      this.timeBlocks = (instants + blockInstants - 1) / blockInstants;
+      this.siteBlocks = (sites + blockSites - 1) / blockSites;
+      this.blocks = timeBlocks * siteBlocks;
+    }
+
+    /**
+     * Processes the blocks of the given range, numbered in the order of the
+     * output
+     */
+    void run(int fromBlock, int toBlock) {
+      for (int b = fromBlock; b < toBlock; b++) {
+        int timeBlock;
+        int siteBlock;
+        if (order == TIME_MAJOR) {
+          timeBlock = b / siteBlocks;
+          siteBlock = b % siteBlocks;
+        } else {
+          siteBlock = b / timeBlocks;
+          timeBlock = b % timeBlocks;
+        }
+        int t0 = timeBlock * blockInstants;
+        int t1 = Math.min(t0 + blockInstants, instants);
+        int s0 = siteBlock * blockSites;
+        int s1 = Math.min(s0 + blockSites, sites);
+        if (order == TIME_MAJOR) {
+          for (int t = t0; t < t1; t++) {
+            for (int s = s0; s < s1; s++) {
+              cell(t, s, t * sites + s);
+            }
+          }
+        } else {
+          for (int s = s0; s < s1; s++) {
+            for (int t = t0; t < t1; t++) {
+              cell(t, s, s * instants + t);
+            }
+          }
+        }
+      }
+    }
+
+    private void cell(int t, int s, int index) {
+      // H = GHA - longitude
+      double cosH = cosGha[t] * cosLongitudes[s] + sinGha[t] * sinLongitudes[s];
+      double sinH = sinGha[t] * cosLongitudes[s] - cosGha[t] * sinLongitudes[s];
+      double sinLat = sinLatitudes[s];
+      double cosLat = cosLatitudes[s];
+      double c = cosDec[t] * cosH;
+      double alt = Math.toDegrees(trigonometry.asin(Math.max(-1, Math.min(1,
+          sinLat * sinDec[t] + cosLat * c))));
+      altitude[index] = alt + RefractionTable.DEFAULT.calculateRefraction(alt)
+          / 60;
+      if (azimuth != null) {
+        azimuth[index] = Math.toDegrees(trigonometry.atan2(cosDec[t] * sinH, c
+            * sinLat - cosLat * sinDec[t]));
+      }
+    }
+  }
+
+  /**
+   * Processes a range of blocks, splitting it in halves down to single
+   * blocks
+   */
+  private final class Task extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Job job;
+    private final int from;
+    private final int to;
+
+    Task(Job job, int from, int to) {
+      this.job = job;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > 1) {
+        int middle = from + (to - from) / 2;
+        invokeAll(new Task(job, from, middle), new Task(job, middle, to));
+      } else {
+        job.run(from, to);
+      }
+    }
+  }
+}
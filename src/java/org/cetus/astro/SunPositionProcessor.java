@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reactive stage enriching a stream of {@link SunPositionQuery} with the
+ * position of the sun, as a {@link Flow.Processor}.
+ * 
+ * Queries are gathered into micro-batches evaluated at once by
+ * {@link SunPositionBatch}: a batch is evaluated as soon as it is full, or
+ * when its oldest query has waited for the maximum latency, so that a burst of
+ * queries costs one batched evaluation while a trickle is not held back for
+ * long. The results are published in order through the
+ * {@link SubmissionPublisher} this class extends.
+ * 
+ * Backpressure is honoured both ways: no more than one batch of queries is
+ * ever requested from upstream, and the next ones are only requested once the
+ * results of the previous batch have been accepted by the subscribers, which
+ * blocks while their buffers are full. Upstream errors and completion are
+ * forwarded after the pending queries are evaluated. Closing the processor
+ * directly cancels the upstream subscription and drops the pending queries.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunPositionProcessor extends
+    SubmissionPublisher<SunPositionSample> implements
+    Flow.Processor<SunPositionQuery, SunPositionSample> {
+
+  /** Default number of queries of the batches */
+  public static final int DEFAULT_BATCH_SIZE = 256;
+  /** Default maximum latency in milliseconds */
+  public static final long DEFAULT_MAX_LATENCY = 10;
+
+  // time the timer thread outlives its last deadline, in milliseconds
+  private static final long TIMER_KEEP_ALIVE = 1000;
+
+  private final int batchSize;
+  private final long maxLatency;
+  private final ScheduledThreadPoolExecutor timer;
+  // held while publishing a batch, so that batches are published in order
+  private final Object publishing = new Object();
+
+  private final SunPositionQuery[] queries;
+  private final double[] jd;
+  private final double[] longitude;
+  private final double[] latitude;
+  private final double[] azimuth;
+  private final double[] altitude;
+  private int count;
+  private ScheduledFuture<?> deadline;
+  private Flow.Subscription subscription;
+  private volatile long batches;
+  private volatile long samples;
+
+  /**
+   * Creates a SunPositionProcessor with batches of
+   * {@link #DEFAULT_BATCH_SIZE} queries and a maximum latency of
+   * {@link #DEFAULT_MAX_LATENCY} milliseconds, publishing on the common pool.
+   */
+  public SunPositionProcessor() {
+    this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_LATENCY, ForkJoinPool.commonPool(),
+        Flow.defaultBufferSize());
+  }
+
+  /**
+   * Creates a SunPositionProcessor.
+   * 
+   * @param batchSize
+   *          the largest number of queries evaluated at once
+   * @param maxLatency
+   *          the longest time in milliseconds a query waits for its batch to
+   *          fill up
+   * @param executor
+   *          the executor delivering the results to the subscribers
+   * @param bufferCapacity
+   *          the capacity of the buffer of every subscriber
+   * @throws IllegalArgumentException
+   *           thrown when the batch size or the latency are not positive
+   */
+  public SunPositionProcessor(int batchSize, long maxLatency,
+      Executor executor, int bufferCapacity) throws IllegalArgumentException {
+    super(executor, bufferCapacity);
+    if (batchSize <= 0 || maxLatency <= 0) {
+      throw new IllegalArgumentException("Unsupported batches of "
+          + batchSize + " queries within " + maxLatency + " ms");
+    }
+    this.batchSize = batchSize;
+    this.maxLatency = maxLatency;
+    this.queries = new SunPositionQuery[batchSize];
+    this.jd = new double[batchSize];
+    this.longitude = new double[batchSize];
+    this.latitude = new double[batchSize];
+    this.azimuth = new double[batchSize];
+    this.altitude = new double[batchSize];
+    this.timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "sun-position-processor");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    this.timer.setRemoveOnCancelPolicy(true);
+    // the thread is not kept if upstream stops without a terminal signal
+    this.timer.setKeepAliveTime(TIMER_KEEP_ALIVE, TimeUnit.MILLISECONDS);
+    this.timer.allowCoreThreadTimeOut(true);
+  }
+
+  @Override
+  public void onSubscribe(Flow.Subscription subscription) {
+    synchronized (this) {
+      if (this.subscription != null) {
+        subscription.cancel();
+        return;
+      }
+      this.subscription = subscription;
+    }
+    subscription.request(batchSize);
+  }
+
+  @Override
+  public void onNext(SunPositionQuery query) {
+    synchronized (this) {
+      if (isClosed()) {
+        return;
+      }
+      queries[count] = query;
+      jd[count] = query.getJD();
+      longitude[count] = query.getLongitude();
+      latitude[count] = query.getLatitude();
+      count++;
+      if (count == 1) {
+        deadline = timer.schedule(new Runnable() {
+          @Override
+          public void run() {
+            flush();
+          }
+        }, maxLatency, TimeUnit.MILLISECONDS);
+      }
+      if (count < batchSize) {
+        return;
+      }
+    }
+    flush();
+  }
+
+  @Override
+  public void onError(Throwable throwable) {
+    flush();
+    closeExceptionally(throwable);
+  }
+
+  @Override
+  public void onComplete() {
+    flush();
+    close();
+  }
+
+  @Override
+  public void close() {
+    release();
+    super.close();
+  }
+
+  @Override
+  public void closeExceptionally(Throwable error) {
+    release();
+    super.closeExceptionally(error);
+  }
+
+  /**
+   * @return the number of batches evaluated
+   */
+  public long getBatches() {
+    return batches;
+  }
+
+  /**
+   * @return the number of positions evaluated
+   */
+  public long getSamples() {
+    return samples;
+  }
+
+  /**
+   * @return the largest number of queries evaluated at once
+   */
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @return the longest time in milliseconds a query waits for its batch
+   */
+  public long getMaxLatency() {
+    return maxLatency;
+  }
+
+  /**
+   * Evaluates and publishes the pending queries, then requests as many from
+   * upstream. The results are published outside the monitor, so that a slow
+   * subscriber does not hold back the queries arriving meanwhile. Since at
+   * most one batch is requested, a flush only ever waits for another one to
+   * publish when it is triggered by the deadline or by a terminal signal.
+   */
+  private void flush() {
+    synchronized (publishing) {
+      SunPositionSample[] results;
+      Flow.Subscription upstream;
+      synchronized (this) {
+        int n = count;
+        if (n == 0) {
+          return;
+        }
+        if (deadline != null) {
+          deadline.cancel(false);
+          deadline = null;
+        }
+        SunPositionBatch.calculate(jd, longitude, latitude, azimuth,
+            altitude, 0, n);
+        results = new SunPositionSample[n];
+        for (int i = 0; i < n; i++) {
+          results[i] = new SunPositionSample(queries[i], azimuth[i],
+              altitude[i]);
+          queries[i] = null;
+        }
+        count = 0;
+        batches++;
+        samples += n;
+        upstream = subscription;
+      }
+      for (SunPositionSample result : results) {
+        // blocks while a subscriber buffer is full
+        submit(result);
+      }
+      upstream.request(results.length);
+    }
+  }
+
+  /**
+   * Cancels the pending deadline and the upstream subscription, and stops
+   * the timer
+   */
+  private void release() {
+    synchronized (this) {
+      if (deadline != null) {
+        deadline.cancel(false);
+        deadline = null;
+      }
+      if (subscription != null) {
+        // a no-op once upstream has sent its terminal signal
+        subscription.cancel();
+      }
+      for (int i = 0; i < count; i++) {
+        queries[i] = null;
+      }
+      count = 0;
+    }
+    timer.shutdown();
+  }
+}
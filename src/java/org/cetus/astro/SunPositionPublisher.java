@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Publishes the current position of the sun for a set of observers, and a
+ * short look-ahead of future setpoints, recomputed on a fixed tick, so that
+ * any number of threads can read them without computing nor blocking.
+ * 
+ * Every tick the {@link SolarState} is updated once per setpoint and
+ * converted into horizontal coordinates for every registered observer. The
+ * results go into a new immutable snapshot, which then replaces the previous
+ * one through a single volatile write. Readers only do a volatile read of the
+ * current snapshot and an array lookup, so reads take constant time, never
+ * block and always see the values of one tick. Altitudes are corrected by
+ * atmospheric refraction for standard conditions, as in
+ * {@link SunPositionAlgorithmLowRes}.
+ * 
+ * The publisher measures its jitter, the delay between the instant each tick
+ * was due and the instant it actually started, and the time it takes to
+ * compute a snapshot. Ticks can also be driven by the caller through
+ * {@link #tick()} instead of {@link #start()}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunPositionPublisher implements AutoCloseable {
+
+  private static Logger log = Logger.getRootLogger();
+
+  // Julian Day of the Unix epoch and length of a day in milliseconds
+  private static final double EPOCH_JD = 2440587.5;
+  private static final double DAY_MILLIS = 86400000.0;
+
+  private final long tickMillis;
+  private final int lookAhead;
+  private final long stepMillis;
+  private final Clock clock;
+  private final SolarState state;
+  private final double[] position = new double[2];
+
+  // observers registered so far, replaced on every registration
+  private volatile Observer[] observers = new Observer[0];
+  private volatile Snapshot snapshot;
+
+  private ScheduledExecutorService executor;
+  private ScheduledFuture<?> future;
+  private long firstDueNanos;
+  // runs of the schedule since the start, whether they published or not
+  private long slots;
+
+  // metrics, written by the publishing thread only
+  private volatile long ticks;
+  private volatile long maxJitter;
+  private volatile long totalJitter;
+  private volatile long lastComputeTime;
+
+  /**
+   * Creates a SunPositionPublisher without look-ahead, following the system
+   * clock.
+   * 
+   * @param tickMillis
+   *          the period of the ticks in milliseconds
+   */
+  public SunPositionPublisher(long tickMillis) {
+    this(tickMillis, 0, tickMillis, Clock.systemUTC());
+  }
+
+  /**
+   * Creates a SunPositionPublisher.
+   * 
+   * @param tickMillis
+   *          the period of the ticks in milliseconds
+   * @param lookAhead
+   *          the number of future setpoints published besides the current
+   *          position
+   * @param stepMillis
+   *          the time in between setpoints in milliseconds
+   * @param clock
+   *          the clock giving the current instant
+   * @throws IllegalArgumentException
+   *           thrown when the period or the step are not positive, or the
+   *           look-ahead is negative
+   */
+  public SunPositionPublisher(long tickMillis, int lookAhead,
+      long stepMillis, Clock clock) throws IllegalArgumentException {
+    if (tickMillis <= 0 || stepMillis <= 0 || lookAhead < 0) {
+      throw new IllegalArgumentException("Unsupported tick " + tickMillis
+          + " ms with " + lookAhead + " setpoints every " + stepMillis
+          + " ms");
+    }
+    this.tickMillis = tickMillis;
+    this.lookAhead = lookAhead;
+    this.stepMillis = stepMillis;
+    this.clock = clock;
+    this.state = new SolarState(Trigonometry.STANDARD);
+  }
+
+  /**
+   * Registers an observer, whose positions are published from the next tick
+   * on.
+   * 
+   * @param observer
+   *          the observer's location
+   * @return the handle to read the positions of the observer through
+   */
+  public synchronized Handle register(Observer observer) {
+    Observer[] current = observers;
+    Observer[] next = Arrays.copyOf(current, current.length + 1);
+    next[current.length] = observer;
+    observers = next;
+    return new Handle(observer, current.length);
+  }
+
+  /**
+   * Starts ticking on a background thread, the first tick immediately.
+   * 
+   * @throws IllegalStateException
+   *           thrown when the publisher was already started
+   */
+  public synchronized void start() throws IllegalStateException {
+    if (executor != null) {
+      throw new IllegalStateException("Publisher already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "sun-position-publisher");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    firstDueNanos = System.nanoTime();
+    slots = 0;
+    future = executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        scheduledTick();
+      }
+    }, 0, tickMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops ticking. The last snapshot remains readable.
+   */
+  @Override
+  public synchronized void close() {
+    if (executor != null) {
+      future.cancel(false);
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  /**
+   * Computes and publishes the positions for the current instant of the
+   * clock. Must not be called concurrently with itself nor while started.
+   */
+  public void tick() {
+    long start = System.nanoTime();
+    Observer[] current = observers;
+    int setpoints = lookAhead + 1;
+    long millis = clock.millis();
+    double jd = EPOCH_JD + millis / DAY_MILLIS;
+    double[] azimuths = new double[current.length * setpoints];
+    double[] altitudes = new double[current.length * setpoints];
+    for (int k = 0; k < setpoints; k++) {
+      state.update(EPOCH_JD + (millis + k * stepMillis) / DAY_MILLIS);
+      for (int i = 0; i < current.length; i++) {
+        state.calculateHorizontal(current[i], position);
+        azimuths[i * setpoints + k] = position[0];
+        altitudes[i * setpoints + k] = position[1];
+      }
+    }
+    snapshot = new Snapshot(jd, setpoints, azimuths, altitudes);
+    lastComputeTime = System.nanoTime() - start;
+  }
+
+  /**
+   * @return the number of scheduled ticks published
+   */
+  public long getTicks() {
+    return ticks;
+  }
+
+  /**
+   * @return the largest delay of a scheduled tick in nanoseconds
+   */
+  public long getMaxJitter() {
+    return maxJitter;
+  }
+
+  /**
+   * @return the mean delay of the scheduled ticks in nanoseconds
+   */
+  public double getMeanJitter() {
+    long n = ticks;
+    return n == 0 ? 0 : (double) totalJitter / n;
+  }
+
+  /**
+   * @return the time the last snapshot took to compute in nanoseconds
+   */
+  public long getLastComputeTime() {
+    return lastComputeTime;
+  }
+
+  /**
+   * @return the number of future setpoints published besides the current
+   *         position
+   */
+  public int getLookAhead() {
+    return lookAhead;
+  }
+
+  private void scheduledTick() {
+    try {
+      long due = firstDueNanos + slots++ * tickMillis * 1000000L;
+      long jitter = Math.max(0, System.nanoTime() - due);
+      tick();
+      totalJitter += jitter;
+      maxJitter = Math.max(maxJitter, jitter);
+      ticks++;
+    } catch (RuntimeException e) {
+      // an exception would silently cancel every further tick
+      log.error("Sun position tick failed", e);
+    }
+  }
+
+  /**
+   * Positions of every observer for every setpoint of a tick
+   */
+  private static final class Snapshot {
+
+    private final double jd;
+    private final int setpoints;
+    private final double[] azimuths;
+    private final double[] altitudes;
+
+    Snapshot(double jd, int setpoints, double[] azimuths, double[] altitudes) {
+      this.jd = jd;
+      this.setpoints = setpoints;
+      this.azimuths = azimuths;
+      this.altitudes = altitudes;
+    }
+
+    boolean contains(int index) {
+      return index * setpoints < azimuths.length;
+    }
+  }
+
+  /**
+   * Access to the published positions of a registered observer. Handles may
+   * be shared by any number of threads.
+   */
+  public final class Handle {
+
+    private final Observer observer;
+    private final int index;
+
+    private Handle(Observer observer, int index) {
+      this.observer = observer;
+      this.index = index;
+    }
+
+    /**
+     * Reads the current position.
+     * 
+     * @param result
+     *          array receiving the Julian Day (UT) of the position, the
+     *          azimuth (measured westwards from the south) and the apparent
+     *          altitude in degrees, at indexes 0 to 2
+     * @return false if no position has been published yet for the observer,
+     *         in which case the result is left untouched
+     */
+    public boolean read(double[] result) {
+      Snapshot s = snapshot;
+      if (s == null || !s.contains(index)) {
+        return false;
+      }
+      int i = index * s.setpoints;
+      result[0] = s.jd;
+      result[1] = s.azimuths[i];
+      result[2] = s.altitudes[i];
+      return true;
+    }
+
+    /**
+     * Reads the current position and the future setpoints, all from the
+     * same tick.
+     * 
+     * @param azimuths
+     *          array receiving the azimuths in degrees, the current one first
+     * @param altitudes
+     *          array receiving the apparent altitudes in degrees, the
+     *          current one first
+     * @return the Julian Day (UT) of the current position, NaN if no position
+     *         has been published yet for the observer
+     */
+    public double readSetpoints(double[] azimuths, double[] altitudes) {
+      Snapshot s = snapshot;
+      if (s == null || !s.contains(index)) {
+        return Double.NaN;
+      }
+      int i = index * s.setpoints;
+      System.arraycopy(s.azimuths, i, azimuths, 0, s.setpoints);
+      System.arraycopy(s.altitudes, i, altitudes, 0, s.setpoints);
+      return s.jd;
+    }
+
+    /**
+     * Returns the current position
+     * 
+     * @return the position, null if no position has been published yet for
+     *         the observer
+     */
+    public SunPosition getPosition() {
+      Snapshot s = snapshot;
+      if (s == null || !s.contains(index)) {
+        return null;
+      }
+      int i = index * s.setpoints;
+      return new SunPosition(s.azimuths[i], s.altitudes[i]);
+    }
+
+    /**
+     * @return the observer's location
+     */
+    public Observer getObserver() {
+      return observer;
+    }
+  }
+}
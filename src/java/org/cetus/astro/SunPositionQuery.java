@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Instant and location a sun position is requested for, as consumed by
+ * {@link SunPositionProcessor}. Instances are immutable.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunPositionQuery {
+
+  // Julian Day of the Unix epoch and length of a day in milliseconds
+  private static final double EPOCH_JD = 2440587.5;
+  private static final double DAY_MILLIS = 86400000.0;
+
+  private final double jd;
+  private final double longitude;
+  private final double latitude;
+
+  /**
+   * Creates a new instance of SunPositionQuery
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @param longitude
+   *          geographical longitude in degrees (positive west)
+   * @param latitude
+   *          geographical latitude in degrees
+   */
+  public SunPositionQuery(double jd, double longitude, double latitude) {
+    this.jd = jd;
+    this.longitude = longitude;
+    this.latitude = latitude;
+  }
+
+  /**
+   * Creates a query for a UTC timestamp
+   * 
+   * @param millis
+   *          the timestamp, in milliseconds since 1970-01-01T00:00:00Z
+   * @param longitude
+   *          geographical longitude in degrees (positive west)
+   * @param latitude
+   *          geographical latitude in degrees
+   * @return the query
+   */
+  public static SunPositionQuery ofEpochMillis(long millis, double longitude,
+      double latitude) {
+    return new SunPositionQuery(EPOCH_JD + millis / DAY_MILLIS, longitude,
+        latitude);
+  }
+
+  /**
+   * @return the Julian Day (UT)
+   */
+  public double getJD() {
+    return jd;
+  }
+
+  /**
+   * @return the geographical longitude in degrees (positive west)
+   */
+  public double getLongitude() {
+    return longitude;
+  }
+
+  /**
+   * @return the geographical latitude in degrees
+   */
+  public double getLatitude() {
+    return latitude;
+  }
+
+  @Override
+  public String toString() {
+    return "SunPositionQuery[jd=" + jd + ", longitude=" + longitude
+        + ", latitude=" + latitude + "]";
+  }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Sun position together with the query it answers, as emitted by
+ * {@link SunPositionProcessor}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunPositionSample extends SunPosition {
+
+  private final SunPositionQuery query;
+
+  /**
+   * Creates a new instance of SunPositionSample
+   * 
+   * @param query
+   *          the instant and location of the position
+   * @param azimuth
+   *          azimuth in degrees
+   * @param altitude
+   *          altitude in degrees
+   */
+  public SunPositionSample(SunPositionQuery query, double azimuth,
+      double altitude) {
+    super(azimuth, altitude);
+    this.query = query;
+  }
+
+  /**
+   * @return the instant and location of the position
+   */
+  public SunPositionQuery getQuery() {
+    return query;
+  }
+}
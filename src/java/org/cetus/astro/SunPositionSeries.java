@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Calculates dense time series of sun positions by interpolation.
+ * 
+ * The sun's Greenwich hour angle (apparent sidereal time minus right
+ * ascension) and declination do not depend on the observer and are very
+ * smooth functions of time. They are evaluated exactly, with the algorithm of
+ * {@link SunPositionAlgorithmLowRes}, only at knots evenly spaced in time and
+ * interpolated in between by cubic Hermite polynomials. Only the conversion
+ * into horizontal coordinates is computed for every sample.
+ * 
+ * Knots lie on a fixed grid of power of two fractions (or multiples) of a day,
+ * aligned to Julian Day zero, so that overlapping or repeated windows, at the
+ * same or at different locations, reuse the knots kept by a bounded cache. The
+ * knot spacing is chosen from the tolerance: an a priori bound of the error of
+ * the interpolation gives the initial spacing, and every interpolation segment
+ * is checked against the exact model at its midpoint when first used, halving
+ * the spacing whenever the check fails.
+ * 
+ * The equatorial coordinates are interpolated within a hundredth of the
+ * tolerance, which keeps the altitude error, and the azimuth error for
+ * altitudes below 88.8 degrees, under the tolerance. Closer to the zenith the
+ * azimuth itself is ill-conditioned. Tolerances much below 1e-5 degrees are
+ * not meaningful: a Julian Day held in a double only resolves about 40
+ * microseconds, i.e. 2e-7 degrees of hour angle, which limits the exact
+ * algorithm as well.
+ * 
+ * Instances are thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunPositionSeries {
+
+  private static Logger log = Logger.getRootLogger();
+
+  /** Default maximum number of cached knots */
+  public static final int DEFAULT_CACHE_SIZE = 4096;
+
+  /**
+   * Bound, with some margin, of the fourth time derivative of the Greenwich
+   * hour angle and declination in degrees per day^4. It is dominated by the
+   * semiannual terms of the equation of time and the fortnightly nutation.
+   */
+  private static final double FOURTH_DERIVATIVE_BOUND = 2e-5;
+  // knots every 8 days at most, every ~1.3 seconds at least
+  private static final int MIN_LEVEL = -3;
+  private static final int MAX_LEVEL = 16;
+  // time step of the central differences giving the knot rates, in days
+  private static final double RATE_STEP = 0.01;
+
+  private final double tolerance;
+  private final double knotTolerance;
+  private final Trigonometry trigonometry;
+  private final Map<Long, Knot> knots;
+
+  private int level;
+
+  /**
+   * Creates a SunPositionSeries evaluated with full precision trigonometric
+   * functions and a cache of {@link #DEFAULT_CACHE_SIZE} knots.
+   * 
+   * @param tolerance
+   *          the maximum error in degrees of the interpolated positions
+   */
+  public SunPositionSeries(double tolerance) {
+    this(tolerance, Trigonometry.STANDARD, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Creates a SunPositionSeries.
+   * 
+   * @param tolerance
+   *          the maximum error in degrees of the interpolated positions
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @param cacheSize
+   *          the maximum number of cached knots
+   * @throws IllegalArgumentException
+   *           thrown when the tolerance or the cache size are not positive
+   */
+  public SunPositionSeries(double tolerance, Trigonometry trigonometry,
+      final int cacheSize) throws IllegalArgumentException {
+    if (!(tolerance > 0) || cacheSize < 2) {
+      throw new IllegalArgumentException("Unsupported tolerance " + tolerance
+          + " or cache size " + cacheSize);
+    }
+    this.tolerance = tolerance;
+    this.knotTolerance = tolerance / 100;
+    this.trigonometry = trigonometry;
+    this.knots = new LinkedHashMap<Long, Knot>(64, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, Knot> eldest) {
+        return size() > cacheSize;
+      }
+    };
+    // a priori spacing from the bound of the cubic Hermite error, h^4/384 f''''
+    double spacing = Math.pow(knotTolerance * 384 / FOURTH_DERIVATIVE_BOUND,
+        0.25);
+    this.level = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL,
+        (int) Math.ceil(-Math.log(spacing) / Math.log(2))));
+    log.debug("Initial knot spacing=" + getKnotSpacing() + " days");
+  }
+
+  /**
+   * Calculates the sun position at the given observer's location for
+   * <code>count</code> instants evenly spaced from <code>startJd</code>.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param startJd
+   *          the Julian Day (UT) of the first sample
+   * @param stepSeconds
+   *          the time between samples in seconds
+   * @param count
+   *          the number of samples
+   * @param azimuth
+   *          array receiving the azimuths in degrees, measured westwards from
+   *          the south
+   * @param altitude
+   *          array receiving the altitudes in degrees, corrected by
+   *          atmospheric refraction
+   */
+  public void calculate(Observer observer, double startJd, double stepSeconds,
+      int count, double[] azimuth, double[] altitude) {
+    if (count <= 0) {
+      return;
+    }
+    double stepDays = stepSeconds / 86400;
+    SolarState state = new SolarState(trigonometry);
+    int lvl = prepare(Math.min(startJd, startJd + (count - 1) * stepDays),
+        Math.max(startJd, startJd + (count - 1) * stepDays), state);
+    double spacing = Math.scalb(1.0, -lvl);
+
+    double sinLat = observer.getSinLatitude();
+    double cosLat = observer.getCosLatitude();
+    double longitude = observer.getLongitude();
+    double[] position = new double[2];
+    long segment = Long.MIN_VALUE;
+    double segmentStart = 0;
+    double gha0 = 0, gha1 = 0, ghaRate0 = 0, ghaRate1 = 0;
+    double dec0 = 0, dec1 = 0, decRate0 = 0, decRate1 = 0;
+    for (int i = 0; i < count; i++) {
+      double jd = startJd + i * stepDays;
+      long s = (long) Math.floor(jd / spacing);
+      if (s != segment) {
+        Knot k0 = getKnot(lvl, s, state);
+        Knot k1 = getKnot(lvl, s + 1, state);
+        segment = s;
+        segmentStart = s * spacing;
+        gha0 = k0.gha;
+        ghaRate0 = k0.ghaRate * spacing;
+        gha1 = unwrap(k0, k1, spacing);
+        ghaRate1 = k1.ghaRate * spacing;
+        dec0 = k0.dec;
+        decRate0 = k0.decRate * spacing;
+        dec1 = k1.dec;
+        decRate1 = k1.decRate * spacing;
+      }
+      double u = (jd - segmentStart) / spacing;
+      double gha = hermite(u, gha0, ghaRate0, gha1, ghaRate1);
+      double dec = Math.toRadians(hermite(u, dec0, decRate0, dec1, decRate1));
+      SolarState.calculateHorizontal(gha - longitude, trigonometry.sin(dec),
+          trigonometry.cos(dec), sinLat, cosLat, trigonometry, position);
+      azimuth[i] = position[0];
+      altitude[i] = position[1];
+    }
+  }
+
+  /**
+   * Returns the maximum error of the interpolated positions
+   * 
+   * @return the tolerance in degrees
+   */
+  public double getTolerance() {
+    return tolerance;
+  }
+
+  /**
+   * Returns the current spacing of the knots
+   * 
+   * @return the time between knots in days
+   */
+  public synchronized double getKnotSpacing() {
+    return Math.scalb(1.0, -level);
+  }
+
+  /**
+   * Returns the number of knots kept by the cache
+   * 
+   * @return the number of cached knots
+   */
+  public synchronized int getCachedKnots() {
+    return knots.size();
+  }
+
+  /**
+   * Makes sure every segment of the given period is checked at the current
+   * level, refining the level if needed.
+   * 
+   * @return the level to interpolate the period with
+   */
+  private synchronized int prepare(double startJd, double endJd,
+      SolarState state) {
+    while (true) {
+      double spacing = Math.scalb(1.0, -level);
+      long first = (long) Math.floor(startJd / spacing);
+      long last = (long) Math.floor(endJd / spacing);
+      boolean valid = true;
+      for (long s = first; s <= last && valid; s++) {
+        valid = checkSegment(s, spacing, state);
+      }
+      if (valid || level == MAX_LEVEL) {
+        return level;
+      }
+      level++;
+      knots.clear();
+      log.debug("Knot spacing refined to " + getKnotSpacing() + " days");
+    }
+  }
+
+  private boolean checkSegment(long s, double spacing, SolarState state) {
+    Knot k0 = getKnot(level, s, state);
+    if (k0.checked) {
+      return true;
+    }
+    Knot k1 = getKnot(level, s + 1, state);
+    double gha = hermite(0.5, k0.gha, k0.ghaRate * spacing,
+        unwrap(k0, k1, spacing), k1.ghaRate * spacing);
+    double dec = hermite(0.5, k0.dec, k0.decRate * spacing, k1.dec,
+        k1.decRate * spacing);
+    state.update((s + 0.5) * spacing);
+    double ghaError = Math.abs(Math.IEEEremainder(gha
+        - state.calculateHourAngle(0), 360));
+    double decError = Math.abs(dec - state.getDeclination());
+    k0.checked = ghaError <= knotTolerance && decError <= knotTolerance;
+    return k0.checked;
+  }
+
+  private synchronized Knot getKnot(int lvl, long index, SolarState state) {
+    // the level is kept in the lowest bits of the key
+    Long key = Long.valueOf((index << 5) | (lvl - MIN_LEVEL));
+    Knot knot = knots.get(key);
+    if (knot == null) {
+      double jd = index * Math.scalb(1.0, -lvl);
+      state.update(jd - RATE_STEP);
+      double ghaBefore = state.calculateHourAngle(0);
+      double decBefore = state.getDeclination();
+      state.update(jd + RATE_STEP);
+      double ghaAfter = state.calculateHourAngle(0);
+      double decAfter = state.getDeclination();
+      state.update(jd);
+      knot = new Knot(state.calculateHourAngle(0), Math.IEEEremainder(
+          ghaAfter - ghaBefore, 360) / (2 * RATE_STEP), state.getDeclination(),
+          (decAfter - decBefore) / (2 * RATE_STEP));
+      knots.put(key, knot);
+    }
+    return knot;
+  }
+
+  /**
+   * Returns the hour angle of the second knot unwrapped with respect to the
+   * first one
+   */
+  private static double unwrap(Knot k0, Knot k1, double spacing) {
+    double predicted = k0.gha + spacing * (k0.ghaRate + k1.ghaRate) / 2;
+    return k1.gha + 360 * Math.rint((predicted - k1.gha) / 360);
+  }
+
+  private static double hermite(double u, double y0, double m0, double y1,
+      double m1) {
+    double u2 = u * u;
+    double u3 = u2 * u;
+    return (2 * u3 - 3 * u2 + 1) * y0 + (u3 - 2 * u2 + u) * m0
+        + (3 * u2 - 2 * u3) * y1 + (u3 - u2) * m1;
+  }
+
+  /**
+   * Exact Greenwich hour angle and declination, with their rates, at a knot
+   */
+  private static final class Knot {
+
+    final double gha;
+    final double ghaRate;
+    final double dec;
+    final double decRate;
+    volatile boolean checked;
+
+    Knot(double gha, double ghaRate, double dec, double decRate) {
+      this.gha = gha;
+      this.ghaRate = ghaRate;
+      this.dec = dec;
+      this.decRate = decRate;
+    }
+  }
+}
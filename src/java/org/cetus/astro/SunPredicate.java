@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Condition on the horizontal coordinates of the sun, searched for by
+ * {@link SunIntervalSearch}.
+ * 
+ * A predicate is defined by a margin, a continuous function of the azimuth
+ * and the altitude that is positive or zero where the condition holds and
+ * negative elsewhere, and by the Lipschitz constants of the margin with
+ * respect to each coordinate, i.e. bounds of how fast the margin may change
+ * with the azimuth and with the altitude. The margin of the predicates built
+ * by this class is the distance in degrees to the boundary of the region, so
+ * their constants are one (zero for coordinates they do not depend on).
+ * 
+ * Azimuths are measured westwards from the south within (-180, 180], as
+ * everywhere else in this library.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public abstract class SunPredicate {
+
+  /**
+   * Returns the margin of the condition
+   * 
+   * @param azimuth
+   *          the azimuth of the sun in degrees
+   * @param altitude
+   *          the altitude of the sun in degrees
+   * @return a value positive or zero if the condition holds, negative
+   *         otherwise
+   */
+  public abstract double margin(double azimuth, double altitude);
+
+  /**
+   * @return the bound of the change of the margin per degree of azimuth
+   */
+  public abstract double getAzimuthSlope();
+
+  /**
+   * @return the bound of the change of the margin per degree of altitude
+   */
+  public abstract double getAltitudeSlope();
+
+  /**
+   * Tells whether the condition holds
+   * 
+   * @param azimuth
+   *          the azimuth of the sun in degrees
+   * @param altitude
+   *          the altitude of the sun in degrees
+   * @return true if the condition holds
+   */
+  public boolean test(double azimuth, double altitude) {
+    return margin(azimuth, altitude) >= 0;
+  }
+
+  /**
+   * Returns a predicate holding when the altitude is within the given range
+   * 
+   * @param min
+   *          the minimum altitude in degrees
+   * @param max
+   *          the maximum altitude in degrees
+   * @return the predicate
+   */
+  public static SunPredicate altitudeBetween(final double min,
+      final double max) {
+    return new SunPredicate() {
+      @Override
+      public double margin(double azimuth, double altitude) {
+        return Math.min(altitude - min, max - altitude);
+      }
+
+      @Override
+      public double getAzimuthSlope() {
+        return 0;
+      }
+
+      @Override
+      public double getAltitudeSlope() {
+        return 1;
+      }
+    };
+  }
+
+  /**
+   * Returns a predicate holding when the altitude is at least the given one
+   * 
+   * @param min
+   *          the minimum altitude in degrees
+   * @return the predicate
+   */
+  public static SunPredicate altitudeAbove(double min) {
+    return altitudeBetween(min, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Returns a predicate holding when the altitude is at most the given one
+   * 
+   * @param max
+   *          the maximum altitude in degrees
+   * @return the predicate
+   */
+  public static SunPredicate altitudeBelow(double max) {
+    return altitudeBetween(Double.NEGATIVE_INFINITY, max);
+  }
+
+  /**
+   * Returns a predicate holding when the azimuth is within the range going
+   * westwards from <code>from</code> to <code>to</code>, which may contain
+   * the north (e.g. from 150 to -150).
+   * 
+   * @param from
+   *          the first azimuth of the range in degrees
+   * @param to
+   *          the last azimuth of the range in degrees
+   * @return the predicate
+   */
+  public static SunPredicate azimuthBetween(final double from,
+      final double to) {
+    final double width = normalize(to - from);
+    return new SunPredicate() {
+      @Override
+      public double margin(double azimuth, double altitude) {
+        double d = normalize(azimuth - from);
+        if (d <= width) {
+          return Math.min(d, width - d);
+        }
+        return -Math.min(d - width, 360 - d);
+      }
+
+      @Override
+      public double getAzimuthSlope() {
+        return 1;
+      }
+
+      @Override
+      public double getAltitudeSlope() {
+        return 0;
+      }
+    };
+  }
+
+  /**
+   * Returns a predicate holding when the center of the sun is above the
+   * horizon described by the mask. The altitude of the sun is corrected by
+   * the refraction for standard conditions of {@link RefractionTable} before
+   * being compared with the elevation of the horizon. The refraction lowers
+   * the Lipschitz constant of the altitude above the horizon, but raises it
+   * over the taper of the table below, which bounds it.
+   * 
+   * @param mask
+   *          the elevation of the horizon
+   * @return the predicate
+   */
+  public static SunPredicate aboveMask(final HorizonMask mask) {
+    final RefractionTable refraction = RefractionTable.DEFAULT;
+    return new SunPredicate() {
+      @Override
+      public double margin(double azimuth, double altitude) {
+        return altitude + refraction.calculateRefraction(altitude) / 60
+            - mask.getElevation(azimuth);
+      }
+
+      @Override
+      public double getAzimuthSlope() {
+        return mask.getMaxSlope();
+      }
+
+      @Override
+      public double getAltitudeSlope() {
+        return 1 + refraction.getMaxRefractionRate() / 60;
+      }
+    };
+  }
+
+  /**
+   * Returns a predicate holding when every given predicate holds
+   * 
+   * @param predicates
+   *          the predicates
+   * @return the predicate
+   */
+  public static SunPredicate and(final SunPredicate... predicates) {
+    return new Combination(predicates) {
+      @Override
+      public double margin(double azimuth, double altitude) {
+        double margin = Double.POSITIVE_INFINITY;
+        for (SunPredicate predicate : predicates) {
+          margin = Math.min(margin, predicate.margin(azimuth, altitude));
+        }
+        return margin;
+      }
+    };
+  }
+
+  /**
+   * Returns a predicate holding when any of the given predicates holds
+   * 
+   * @param predicates
+   *          the predicates
+   * @return the predicate
+   */
+  public static SunPredicate or(final SunPredicate... predicates) {
+    return new Combination(predicates) {
+      @Override
+      public double margin(double azimuth, double altitude) {
+        double margin = Double.NEGATIVE_INFINITY;
+        for (SunPredicate predicate : predicates) {
+          margin = Math.max(margin, predicate.margin(azimuth, altitude));
+        }
+        return margin;
+      }
+    };
+  }
+
+  /**
+   * Returns a predicate holding when this one does not
+   * 
+   * @return the predicate
+   */
+  public SunPredicate negate() {
+    final SunPredicate predicate = this;
+    return new SunPredicate() {
+      @Override
+      public double margin(double azimuth, double altitude) {
+        // the boundary itself belongs to both predicates
+        return -predicate.margin(azimuth, altitude);
+      }
+
+      @Override
+      public double getAzimuthSlope() {
+        return predicate.getAzimuthSlope();
+      }
+
+      @Override
+      public double getAltitudeSlope() {
+        return predicate.getAltitudeSlope();
+      }
+    };
+  }
+
+  private static double normalize(double angle) {
+    double a = angle % 360;
+    return a < 0 ? a + 360 : a;
+  }
+
+  /**
+   * Predicate combining others, whose slopes are the largest of theirs
+   */
+  private abstract static class Combination extends SunPredicate {
+
+    private final double azimuthSlope;
+    private final double altitudeSlope;
+
+    Combination(SunPredicate[] predicates) {
+      double az = 0;
+      double alt = 0;
+      for (SunPredicate predicate : predicates) {
+        az = Math.max(az, predicate.getAzimuthSlope());
+        alt = Math.max(alt, predicate.getAltitudeSlope());
+      }
+      this.azimuthSlope = az;
+      this.altitudeSlope = alt;
+    }
+
+    @Override
+    public double getAzimuthSlope() {
+      return azimuthSlope;
+    }
+
+    @Override
+    public double getAltitudeSlope() {
+      return altitudeSlope;
+    }
+  }
+}
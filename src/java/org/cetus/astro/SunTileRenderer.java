@@ -0,0 +1,482 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Renders Web Mercator map tiles, addressed by zoom, column and row as in
+ * slippy maps, of the elevation of the sun or of the daylight and twilight
+ * classes, as PNG images of {@link #TILE_SIZE} pixels.
+ * 
+ * Every tile is a {@link SunGrid} of the longitudes of its pixel columns and
+ * the latitudes of its pixel rows, whose rows are calculated in parallel. Only
+ * the sine of the geometric altitude is calculated per pixel, which is
+ * mapped to a color through a table, so that no pixel costs a trigonometric
+ * function.
+ * 
+ * Time is divided into buckets of a fixed length, and the tiles of a bucket
+ * are rendered at its start. Encoded tiles are cached, keyed by layer, time
+ * bucket and tile, in a least recently used cache bounded by the bytes of the
+ * images. Tiles of a single color, such as those within the polar night or
+ * far from the terminator, are the same image at every bucket: they are
+ * encoded once per color and kept apart from that cache, at no cost to its
+ * bound. Whether a tile is of a single color is told before rendering it from
+ * the distance of the tile to the subsolar point, which bounds the altitudes
+ * of the sun over the tile, so that those tiles are not rendered at all; the
+ * pixels of every other tile are calculated once per bucket. Instances may
+ * be used concurrently.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunTileRenderer {
+
+  /** Layer of the elevation of the sun, from night blue to daylight yellow */
+  public static final int ELEVATION = 0;
+  /**
+   * Layer of the daylight classes: transparent by day, and increasingly dark
+   * at civil, nautical and astronomical twilight and at night
+   */
+  public static final int DAYLIGHT = 1;
+
+  /** Width and height of the tiles in pixels */
+  public static final int TILE_SIZE = 256;
+  /** Default length of the time buckets in seconds */
+  public static final double DEFAULT_BUCKET_SECONDS = 300;
+  /** Default size of the cache in bytes */
+  public static final long DEFAULT_CACHE_BYTES = 64L << 20;
+  /** Largest zoom level supported */
+  public static final int MAX_ZOOM = 22;
+
+  // rows of the tiles per block processed in parallel
+  private static final int BLOCK_ROWS = 16;
+  // entries of the color tables, indexed by the sine of the altitude
+  private static final int TABLE_SIZE = 4096;
+  // Julian Day of the Unix epoch
+  private static final double EPOCH_JD = 2440587.5;
+  // degrees added to the bound of the altitudes over a tile for rounding
+  private static final double ALTITUDE_MARGIN = 0.01;
+
+  private static final int[][] COLORS = { elevationColors(), daylightColors() };
+
+  private final double bucketDays;
+  private final long maxBytes;
+  private final ForkJoinPool pool;
+  private final Trigonometry trigonometry;
+  private final LinkedHashMap<TileKey, byte[]> cache;
+  // images of the tiles of a single color, by color
+  private final Map<Integer, byte[]> uniform;
+  private long bytes;
+  private long renders;
+  private long hits;
+
+  /**
+   * Creates a SunTileRenderer with buckets of
+   * {@link #DEFAULT_BUCKET_SECONDS}, a cache of
+   * {@link #DEFAULT_CACHE_BYTES} running on the common pool.
+   */
+  public SunTileRenderer() {
+    this(DEFAULT_BUCKET_SECONDS, DEFAULT_CACHE_BYTES,
+        ForkJoinPool.commonPool(), Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a SunTileRenderer.
+   * 
+   * @param bucketSeconds
+   *          the length of the time buckets in seconds
+   * @param maxBytes
+   *          the largest size of the cached images in bytes
+   * @param pool
+   *          the pool the rows of the tiles are processed by
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @throws IllegalArgumentException
+   *           thrown when the length of the buckets or the size of the cache
+   *           is not positive
+   */
+  public SunTileRenderer(double bucketSeconds, long maxBytes,
+      ForkJoinPool pool, Trigonometry trigonometry)
+      throws IllegalArgumentException {
+    if (!(bucketSeconds > 0)) {
+      throw new IllegalArgumentException("Unsupported bucket length "
+          + bucketSeconds);
+    }
+    if (maxBytes <= 0) {
+      throw new IllegalArgumentException("Unsupported cache size "
+          + maxBytes);
+    }
+    this.bucketDays = bucketSeconds / 86400;
+    this.maxBytes = maxBytes;
+    this.pool = pool;
+    this.trigonometry = trigonometry;
+    this.cache = new LinkedHashMap<TileKey, byte[]>(256, 0.75f, true);
+    this.uniform = new HashMap<Integer, byte[]>();
+  }
+
+  /**
+   * Returns a tile as a PNG image, rendering it unless it is cached.
+   * 
+   * @param layer
+   *          the layer, {@link #ELEVATION} or {@link #DAYLIGHT}
+   * @param jd
+   *          the Julian Day (UT), rendered at the start of its bucket
+   * @param zoom
+   *          the zoom level, within [0, {@link #MAX_ZOOM}]
+   * @param x
+   *          the column of the tile, within [0, 2^zoom)
+   * @param y
+   *          the row of the tile from the north, within [0, 2^zoom)
+   * @return the PNG image
+   * @throws IOException
+   *           thrown when the image cannot be encoded
+   * @throws IllegalArgumentException
+   *           thrown when the layer or the tile are not supported
+   */
+  public byte[] getTile(int layer, double jd, int zoom, int x, int y)
+      throws IOException, IllegalArgumentException {
+    checkTile(layer, zoom, x, y);
+    // instants at the start of a bucket, up to the rounding of the Julian
+    // Day, belong to it
+    long bucket = (long) Math.floor((jd - EPOCH_JD) / bucketDays + 1e-6);
+    TileKey key = new TileKey(layer, bucket, zoom, x, y);
+    synchronized (this) {
+      byte[] image = cache.get(key);
+      if (image != null) {
+        hits++;
+        return image;
+      }
+    }
+    double start = EPOCH_JD + bucket * bucketDays;
+    int index = uniformIndex(layer, start, zoom, x, y);
+    if (index >= 0) {
+      synchronized (this) {
+        hits++;
+      }
+      return uniformImage(COLORS[layer][index]);
+    }
+    int[] pixels = render(layer, start, zoom, x, y);
+    boolean single = true;
+    for (int i = 1; i < pixels.length && single; i++) {
+      single = pixels[i] == pixels[0];
+    }
+    if (single) {
+      synchronized (this) {
+        renders++;
+      }
+      return uniformImage(pixels[0]);
+    }
+    byte[] image = encode(pixels);
+    synchronized (this) {
+      renders++;
+      byte[] previous = cache.put(key, image);
+      bytes += image.length - (previous != null ? previous.length : 0);
+      Iterator<byte[]> eldest = cache.values().iterator();
+      while (bytes > maxBytes && eldest.hasNext()) {
+        bytes -= eldest.next().length;
+        eldest.remove();
+      }
+    }
+    return image;
+  }
+
+  /**
+   * Renders the pixels of a tile at an instant, by rows from the north.
+   * 
+   * @param layer
+   *          the layer, {@link #ELEVATION} or {@link #DAYLIGHT}
+   * @param jd
+   *          the Julian Day (UT)
+   * @param zoom
+   *          the zoom level, within [0, {@link #MAX_ZOOM}]
+   * @param x
+   *          the column of the tile, within [0, 2^zoom)
+   * @param y
+   *          the row of the tile from the north, within [0, 2^zoom)
+   * @return the ARGB colors of the pixels
+   * @throws IllegalArgumentException
+   *           thrown when the layer or the tile are not supported
+   */
+  public int[] render(int layer, double jd, int zoom, int x, int y)
+      throws IllegalArgumentException {
+    checkTile(layer, zoom, x, y);
+    double pixels = (double) TILE_SIZE * (1L << zoom);
+    double[] longitudes = new double[TILE_SIZE];
+    double[] latitudes = new double[TILE_SIZE];
+    for (int i = 0; i < TILE_SIZE; i++) {
+      // centers of the pixels, longitudes positive west
+      longitudes[i] = 180 - 360 * ((double) x * TILE_SIZE + i + 0.5) / pixels;
+      latitudes[i] = mercatorLatitude(((double) y * TILE_SIZE + i + 0.5)
+          / pixels);
+    }
+    SunGrid grid = new SunGrid(longitudes, latitudes, trigonometry, pool,
+        BLOCK_ROWS * TILE_SIZE);
+    float[] sinAltitude = new float[TILE_SIZE * TILE_SIZE];
+    grid.calculateSinAltitudes(jd, sinAltitude);
+    int[] colors = COLORS[layer];
+    int[] argb = new int[sinAltitude.length];
+    for (int i = 0; i < argb.length; i++) {
+      int index = (int) ((sinAltitude[i] + 1) * 0.5f * (TABLE_SIZE - 1)
+          + 0.5f);
+      argb[i] = colors[Math.max(0, Math.min(TABLE_SIZE - 1, index))];
+    }
+    return argb;
+  }
+
+  /**
+   * @return the number of tiles rendered, i.e. the misses of the cache
+   */
+  public synchronized long getRenders() {
+    return renders;
+  }
+
+  /**
+   * @return the number of tiles returned without rendering them, from the
+   *         cache or found to be of a single color
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of cached tiles
+   */
+  public synchronized int getCachedTiles() {
+    return cache.size();
+  }
+
+  /**
+   * @return the size of the cached images in bytes
+   */
+  public synchronized long getCachedBytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns the index in the color table of the layer of the color of every
+   * pixel of a tile, or -1 if the tile may have several colors.
+   * 
+   * The distance from the center of the tile to any of its points is at most
+   * its half height plus its half width along the parallel closest to the
+   * equator, so that the altitude of the sun over the tile is within that
+   * distance of the altitude at the center.
+   */
+  private int uniformIndex(int layer, double jd, int zoom, int x, int y) {
+    double tiles = 1L << zoom;
+    double north = mercatorLatitude(y / tiles);
+    double south = mercatorLatitude((y + 1) / tiles);
+    double halfWidth = 180 / tiles;
+    double cosLat = north >= 0 && south <= 0 ? 1 : Math.cos(Math
+        .toRadians(Math.min(Math.abs(north), Math.abs(south))));
+    double radius = (north - south) / 2 + halfWidth * cosLat
+        + ALTITUDE_MARGIN;
+    Terminator terminator = new Terminator(trigonometry).update(jd);
+    double altitude = terminator.calculateAltitude(180 - 360 * (x + 0.5)
+        / tiles, (north + south) / 2);
+    int[] colors = COLORS[layer];
+    // one more entry each way for the rounding of the pixels
+    int from = Math.max(0, tableIndex(altitude - radius) - 1);
+    int to = Math.min(TABLE_SIZE - 1, tableIndex(altitude + radius) + 1);
+    for (int i = from + 1; i <= to; i++) {
+      if (colors[i] != colors[from]) {
+        return -1;
+      }
+    }
+    return from;
+  }
+
+  /**
+   * Returns the shared image of the tiles of a single color, encoding it the
+   * first time
+   */
+  private byte[] uniformImage(int color) throws IOException {
+    synchronized (this) {
+      byte[] image = uniform.get(color);
+      if (image != null) {
+        return image;
+      }
+    }
+    int[] argb = new int[TILE_SIZE * TILE_SIZE];
+    Arrays.fill(argb, color);
+    byte[] png = encode(argb);
+    synchronized (this) {
+      byte[] image = uniform.get(color);
+      if (image != null) {
+        return image;
+      }
+      uniform.put(color, png);
+    }
+    return png;
+  }
+
+  /**
+   * Encodes the pixels of a tile as a PNG image
+   */
+  private static byte[] encode(int[] argb) throws IOException {
+    BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE,
+        BufferedImage.TYPE_INT_ARGB);
+    image.setRGB(0, 0, TILE_SIZE, TILE_SIZE, argb, 0, TILE_SIZE);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (!ImageIO.write(image, "png", out)) {
+      throw new IOException("No PNG writer available");
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * Latitude in degrees of a fraction of the height of the map from the
+   * north
+   */
+  private static double mercatorLatitude(double y) {
+    return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+  }
+
+  /**
+   * Index of the entry of the color tables of an altitude in degrees, as the
+   * pixels are mapped
+   */
+  private static int tableIndex(double altitude) {
+    double sin = Math.sin(Math.toRadians(Math.max(-90, Math.min(90,
+        altitude))));
+    return (int) ((sin + 1) * 0.5 * (TABLE_SIZE - 1) + 0.5);
+  }
+
+  private static void checkTile(int layer, int zoom, int x, int y)
+      throws IllegalArgumentException {
+    if (layer != ELEVATION && layer != DAYLIGHT) {
+      throw new IllegalArgumentException("Unsupported layer " + layer);
+    }
+    if (zoom < 0 || zoom > MAX_ZOOM || x < 0 || y < 0 || x >= 1 << zoom
+        || y >= 1 << zoom) {
+      throw new IllegalArgumentException("Unsupported tile " + zoom + "/"
+          + x + "/" + y);
+    }
+  }
+
+  /**
+   * Table of the elevation colors: dark blue up to the astronomical
+   * twilight, through violet and orange at the horizon to pale yellow at the
+   * zenith
+   */
+  private static int[] elevationColors() {
+    double[] altitudes = { -90, -18, -6, 0, 10, 90 };
+    int[] rgb = { 0x000010, 0x000010, 0x302060, 0xE07020, 0xF0C040,
+        0xFFFFD0 };
+    int[] colors = new int[TABLE_SIZE];
+    for (int i = 0; i < TABLE_SIZE; i++) {
+      double altitude = altitude(i);
+      int k = 1;
+      while (k < altitudes.length - 1 && altitude > altitudes[k]) {
+        k++;
+      }
+      double f = Math.max(0, Math.min(1, (altitude - altitudes[k - 1])
+          / (altitudes[k] - altitudes[k - 1])));
+      int color = 0xFF000000;
+      for (int shift = 0; shift < 24; shift += 8) {
+        int a = rgb[k - 1] >> shift & 0xFF;
+        int b = rgb[k] >> shift & 0xFF;
+        color |= (int) Math.round(a + f * (b - a)) << shift;
+      }
+      colors[i] = color;
+    }
+    return colors;
+  }
+
+  /**
+   * Table of the daylight classes
+   */
+  private static int[] daylightColors() {
+    int[] colors = new int[TABLE_SIZE];
+    for (int i = 0; i < TABLE_SIZE; i++) {
+      double altitude = altitude(i);
+      int alpha;
+      if (altitude >= SunEventSolver.SUNRISE) {
+        alpha = 0;
+      } else if (altitude >= SunEventSolver.CIVIL_TWILIGHT) {
+        alpha = 0x40;
+      } else if (altitude >= SunEventSolver.NAUTICAL_TWILIGHT) {
+        alpha = 0x70;
+      } else if (altitude >= SunEventSolver.ASTRONOMICAL_TWILIGHT) {
+        alpha = 0x98;
+      } else {
+        alpha = 0xB8;
+      }
+      colors[i] = alpha << 24 | 0x000020;
+    }
+    return colors;
+  }
+
+  /**
+   * Altitude in degrees of an entry of the color tables
+   */
+  private static double altitude(int index) {
+    double sin = 2.0 * index / (TABLE_SIZE - 1) - 1;
+    return Math.toDegrees(Math.asin(Math.max(-1, Math.min(1, sin))));
+  }
+
+  /**
+   * Key of a cached tile
+   */
+  private static final class TileKey {
+
+    private final int layer;
+    private final long bucket;
+    private final int zoom;
+    private final int x;
+    private final int y;
+
+    TileKey(int layer, long bucket, int zoom, int x, int y) {
+      this.layer = layer;
+      this.bucket = bucket;
+      this.zoom = zoom;
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof TileKey)) {
+        return false;
+      }
+      TileKey other = (TileKey) obj;
+      return layer == other.layer && bucket == other.bucket
+          && zoom == other.zoom && x == other.x && y == other.y;
+    }
+
+    @Override
+    public int hashCode() {
+      long h = bucket * 31 + layer;
+      h = h * 31 + zoom;
+      h = h * 1000003 + x;
+      h = h * 1000003 + y;
+      return (int) (h ^ h >>> 32);
+    }
+  }
+}
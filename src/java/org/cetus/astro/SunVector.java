@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Conversions between horizontal coordinates and unit vectors of the local
+ * east-north-up frame of an observer, where the x axis points to the east,
+ * the y axis to the north and the z axis to the zenith.
+ * 
+ * Azimuths are measured westwards from the south, as everywhere else in this
+ * library.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class SunVector {
+
+  private SunVector() {
+  }
+
+  /**
+   * Converts horizontal coordinates into a unit vector.
+   * 
+   * @param azimuth
+   *          the azimuth in degrees
+   * @param altitude
+   *          the altitude in degrees
+   * @param result
+   *          array receiving the east, north and up components
+   */
+  public static void fromHorizontal(double azimuth, double altitude,
+      double[] result) {
+    double a = Math.toRadians(azimuth);
+    double h = Math.toRadians(altitude);
+    double cosH = Math.cos(h);
+    result[0] = -cosH * Math.sin(a);
+    result[1] = -cosH * Math.cos(a);
+    result[2] = Math.sin(h);
+  }
+
+  /**
+   * Converts a vector into horizontal coordinates.
+   * 
+   * @param x
+   *          the east component
+   * @param y
+   *          the north component
+   * @param z
+   *          the up component
+   * @param result
+   *          array receiving the azimuth within (-180, 180] and the altitude
+   *          in degrees
+   */
+  public static void toHorizontal(double x, double y, double z,
+      double[] result) {
+    result[0] = Math.toDegrees(Math.atan2(-x, -y));
+    result[1] = Math.toDegrees(Math.atan2(z, Math.sqrt(x * x + y * y)));
+  }
+}
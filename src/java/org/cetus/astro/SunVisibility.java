@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.List;
+
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Tells whether the sun is visible from an observer, given the horizon mask
+ * of its surroundings, at single instants, over arrays of instants or as the
+ * intervals it is visible within a period.
+ * 
+ * The sun is taken as visible, or the site sunlit, when the apparent altitude
+ * of its center is above the elevation of the horizon in its direction (see
+ * {@link SunPredicate#aboveMask(HorizonMask)}). Observers without a mask have
+ * a flat horizon at zero elevation. Intervals are found by
+ * {@link SunIntervalSearch}, which brackets the instants the sun crosses the
+ * profile and steps over the nights and the stretches the sun stays behind
+ * an obstruction in a few evaluations.
+ * 
+ * Instances are not thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class SunVisibility {
+
+  private final Observer observer;
+  private final SunPredicate predicate;
+  private final SunIntervalSearch search;
+  private final SolarState state;
+  private final double[] position = new double[2];
+
+  /**
+   * Creates a SunVisibility for the given observer with a resolution of
+   * {@link SunIntervalSearch#DEFAULT_RESOLUTION} seconds.
+   * 
+   * @param observer
+   *          the observer's location and horizon
+   */
+  public SunVisibility(Observer observer) {
+    this(observer, SunIntervalSearch.DEFAULT_RESOLUTION,
+        Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a SunVisibility.
+   * 
+   * @param observer
+   *          the observer's location and horizon
+   * @param resolution
+   *          the resolution of the interval boundaries in seconds
+   * @param trigonometry
+   *          the trigonometric functions to use
+   * @throws IllegalArgumentException
+   *           thrown when the resolution is not positive
+   */
+  public SunVisibility(Observer observer, double resolution,
+      Trigonometry trigonometry) throws IllegalArgumentException {
+    HorizonMask mask = observer.getHorizonMask();
+    this.observer = observer;
+    this.predicate = SunPredicate.aboveMask(mask != null ? mask
+        : new HorizonMask(new float[] { 0 }));
+    this.search = new SunIntervalSearch(observer, resolution, trigonometry);
+    this.state = new SolarState(trigonometry);
+  }
+
+  /**
+   * Tells whether the sun is visible at an instant
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @return true if the sun is above the horizon
+   */
+  public boolean isSunlit(double jd) {
+    state.update(jd).calculateGeometricHorizontal(observer, position);
+    return predicate.test(position[0], position[1]);
+  }
+
+  /**
+   * Tells whether the sun is visible at every instant of an array
+   * 
+   * @param jd
+   *          the Julian Days (UT)
+   * @param result
+   *          array receiving true where the sun is above the horizon
+   */
+  public void calculateSunlit(double[] jd, boolean[] result) {
+    for (int i = 0; i < jd.length; i++) {
+      result[i] = isSunlit(jd[i]);
+    }
+  }
+
+  /**
+   * Finds the intervals within the given period the sun is visible.
+   * 
+   * @param startJd
+   *          the Julian Day (UT) the period starts at
+   * @param endJd
+   *          the Julian Day (UT) the period ends at
+   * @return the intervals in chronological order, clipped to the period
+   * @throws IllegalArgumentException
+   *           thrown when the period ends before it starts
+   */
+  public List<TimeInterval> findSunlitIntervals(double startJd, double endJd)
+      throws IllegalArgumentException {
+    return search.find(predicate, startJd, endJd);
+  }
+
+  /**
+   * Returns the number of positions evaluated by the interval searches
+   * 
+   * @return the number of evaluations
+   */
+  public long getEvaluations() {
+    return search.getEvaluations();
+  }
+
+  /**
+   * @return the observer's location and horizon
+   */
+  public Observer getObserver() {
+    return observer;
+  }
+}
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import org.cetus.astro.util.AngleUtils;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Subsolar point and terminator, i.e. the line the sun is seen at a given
+ * altitude from, over the whole earth at an instant.
+ * 
+ * The subsolar point is where the sun is at the zenith: its latitude is the
+ * apparent declination of the sun and its longitude the Greenwich hour angle,
+ * the apparent sidereal time minus the apparent right ascension. The sine of
+ * the geometric altitude of the sun at any location is then the dot product
+ * of the unit vectors of the location and of the subsolar point.
+ * 
+ * The locations the sun is below an altitude <code>h</code> form a spherical
+ * cap centered at the antisolar point with an angular radius of
+ * <code>90 + h</code> degrees, so that the terminator is a small circle which
+ * is generated analytically from the bearing around the antisolar point. The
+ * bearings are subdivided recursively until the polyline departs from the
+ * circle by less than a tolerance in degrees of longitude and latitude, so
+ * that vertices concentrate where the line bends on the map, close to the
+ * poles and around the equinoxes. Altitudes are geometric, e.g.
+ * {@link SunEventSolver#SUNRISE} or the twilights of {@link SunEventSolver};
+ * twilight bands are drawn by stacking the shadows of decreasing altitudes.
+ * 
+ * Instances are not thread safe.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class Terminator {
+
+  /** Default tolerance of the polylines in degrees */
+  public static final double DEFAULT_TOLERANCE = 0.05;
+
+  // initial number of segments and maximum depth of the subdivisions
+  private static final int SEGMENTS = 16;
+  private static final int MAX_DEPTH = 12;
+
+  private final SolarState state;
+  private final Trigonometry trigonometry;
+
+  private double subsolarLongitude;
+  private double subsolarLatitude;
+  private double sinDec;
+  private double cosDec;
+
+  // cap of the polyline being generated and its vertices
+  private double capSinLat;
+  private double capCosLat;
+  private double capLongitude;
+  private double sinRadius;
+  private double cosRadius;
+  private double[] longitudes;
+  private double[] latitudes;
+  private int size;
+
+  /**
+   * Creates a Terminator evaluated with full precision trigonometric
+   * functions.
+   */
+  public Terminator() {
+    this(Trigonometry.STANDARD);
+  }
+
+  /**
+   * Creates a Terminator evaluated with the given trigonometric functions.
+   * 
+   * @param trigonometry
+   *          the trigonometric functions to use
+   */
+  public Terminator(Trigonometry trigonometry) {
+    this.trigonometry = trigonometry;
+    this.state = new SolarState(trigonometry);
+  }
+
+  /**
+   * Updates the subsolar point to the given instant.
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @return this instance
+   */
+  public Terminator update(double jd) {
+    state.update(jd);
+    subsolarLatitude = state.getDeclination();
+    subsolarLongitude = AngleUtils.normalizeAngle(state.calculateHourAngle(0),
+        -180, 180);
+    sinDec = state.getSinDeclination();
+    cosDec = state.getCosDeclination();
+    return this;
+  }
+
+  /**
+   * @return the Julian Day (UT) of the last update
+   */
+  public double getJD() {
+    return state.getJD();
+  }
+
+  /**
+   * @return the geographical longitude in degrees of the subsolar point
+   *         (positive west)
+   */
+  public double getSubsolarLongitude() {
+    return subsolarLongitude;
+  }
+
+  /**
+   * @return the geographical latitude in degrees of the subsolar point
+   */
+  public double getSubsolarLatitude() {
+    return subsolarLatitude;
+  }
+
+  /**
+   * Returns the unit vector of the subsolar point, in the frame whose x axis
+   * points to latitude 0 and longitude 0, the y axis to longitude 90 degrees
+   * east and the z axis to the north pole.
+   * 
+   * @param result
+   *          array receiving the x, y and z components
+   */
+  public void getSubsolarVector(double[] result) {
+    double lambda = Math.toRadians(subsolarLongitude);
+    result[0] = cosDec * trigonometry.cos(lambda);
+    result[1] = -cosDec * trigonometry.sin(lambda);
+    result[2] = sinDec;
+  }
+
+  /**
+   * Calculates the sine of the geometric altitude of the sun at a location,
+   * the dot product of its unit vector and the one of the subsolar point.
+   * 
+   * @param longitude
+   *          geographical longitude in degrees (positive west)
+   * @param latitude
+   *          geographical latitude in degrees
+   * @return the sine of the altitude
+   */
+  public double calculateSinAltitude(double longitude, double latitude) {
+    double phi = Math.toRadians(latitude);
+    double h = Math.toRadians(subsolarLongitude - longitude);
+    return trigonometry.sin(phi) * sinDec + trigonometry.cos(phi) * cosDec
+        * trigonometry.cos(h);
+  }
+
+  /**
+   * Calculates the geometric altitude of the sun at a location.
+   * 
+   * @param longitude
+   *          geographical longitude in degrees (positive west)
+   * @param latitude
+   *          geographical latitude in degrees
+   * @return the altitude in degrees
+   */
+  public double calculateAltitude(double longitude, double latitude) {
+    return Math.toDegrees(trigonometry.asin(Math.max(-1, Math.min(1,
+        calculateSinAltitude(longitude, latitude)))));
+  }
+
+  /**
+   * Calculates the line the sun is seen at the given altitude from, as a
+   * closed polyline around the antisolar point. When the line runs around the
+   * globe, enclosing a pole, its last vertex is its first one a turn of
+   * longitude apart.
+   * 
+   * @param altitude
+   *          the geometric altitude in degrees, within (-90, 90)
+   * @param tolerance
+   *          the largest distance in degrees of longitude or latitude from
+   *          the polyline to the line
+   * @return the polyline
+   * @throws IllegalArgumentException
+   *           thrown when the altitude is out of (-90, 90) or the tolerance
+   *           is not positive
+   */
+  public GeoPolyline calculateTerminator(double altitude, double tolerance)
+      throws IllegalArgumentException {
+    generate(altitude, tolerance);
+    return new GeoPolyline(longitudes, latitudes, size);
+  }
+
+  /**
+   * Calculates the region of the map the sun is below the given altitude at,
+   * as a closed polygon in longitude and latitude. When the region contains a
+   * pole, the terminator runs once around the globe and the polygon is closed
+   * along the edge of the map at the pole.
+   * 
+   * @param altitude
+   *          the geometric altitude in degrees, within (-90, 0]
+   * @param tolerance
+   *          the largest distance in degrees of longitude or latitude from
+   *          the polygon to the terminator
+   * @return the polygon
+   * @throws IllegalArgumentException
+   *           thrown when the altitude is out of (-90, 0] or the tolerance is
+   *           not positive
+   */
+  public GeoPolyline calculateShadow(double altitude, double tolerance)
+      throws IllegalArgumentException {
+    if (!(altitude <= 0)) {
+      throw new IllegalArgumentException("Unsupported altitude " + altitude
+          + ". Shadows are limited to altitudes within (-90, 0] degrees");
+    }
+    generate(altitude, tolerance);
+    double turn = longitudes[size - 1] - longitudes[0];
+    if (Math.abs(turn) > 180) {
+      // the sun is below the altitude at the pole opposite to it
+      double pole = subsolarLatitude > 0 ? -90 : 90;
+      ensureCapacity(size + 2);
+      longitudes[size] = longitudes[size - 1];
+      latitudes[size++] = pole;
+      longitudes[size] = longitudes[0];
+      latitudes[size++] = pole;
+      ensureCapacity(size + 1);
+      longitudes[size] = longitudes[0];
+      latitudes[size++] = latitudes[0];
+    }
+    return new GeoPolyline(longitudes, latitudes, size);
+  }
+
+  /**
+   * Generates the vertices of the circle of the given altitude, from bearing
+   * 0 to 360 degrees around the antisolar point, with continuous longitudes
+   */
+  private void generate(double altitude, double tolerance)
+      throws IllegalArgumentException {
+    if (!(altitude > -90 && altitude < 90)) {
+      throw new IllegalArgumentException("Unsupported altitude " + altitude
+          + ". Altitude must be within (-90, 90) degrees");
+    }
+    if (!(tolerance > 0)) {
+      throw new IllegalArgumentException("Unsupported tolerance "
+          + tolerance);
+    }
+    capSinLat = -sinDec;
+    capCosLat = cosDec;
+    capLongitude = subsolarLongitude + 180;
+    double radius = Math.toRadians(90 + altitude);
+    sinRadius = trigonometry.sin(radius);
+    cosRadius = trigonometry.cos(radius);
+    longitudes = new double[64];
+    latitudes = new double[64];
+    size = 0;
+    double[] a = new double[2];
+    double[] b = new double[2];
+    vertex(0, a, capLongitude);
+    append(a);
+    double step = 2 * Math.PI / SEGMENTS;
+    for (int s = 1; s <= SEGMENTS; s++) {
+      vertex(s * step, b, a[0]);
+      subdivide((s - 1) * step, a, s * step, b, tolerance, 0);
+      append(b);
+      a[0] = b[0];
+      a[1] = b[1];
+    }
+    // closed on the first vertex, which may be a turn of longitude apart
+    longitudes[size - 1] = longitudes[0] + 360 * Math.rint(
+        (longitudes[size - 1] - longitudes[0]) / 360);
+    latitudes[size - 1] = latitudes[0];
+  }
+
+  /**
+   * Appends the vertices strictly between a and b needed to follow the
+   * circle within the tolerance
+   */
+  private void subdivide(double bearingA, double[] a, double bearingB,
+      double[] b, double tolerance, int depth) {
+    double bearing = (bearingA + bearingB) / 2;
+    double[] middle = new double[2];
+    vertex(bearing, middle, a[0]);
+    if (depth >= MAX_DEPTH
+        || (Math.abs(middle[0] - (a[0] + b[0]) / 2) <= tolerance && Math
+            .abs(middle[1] - (a[1] + b[1]) / 2) <= tolerance)) {
+      return;
+    }
+    subdivide(bearingA, a, bearing, middle, tolerance, depth + 1);
+    append(middle);
+    subdivide(bearing, middle, bearingB, b, tolerance, depth + 1);
+  }
+
+  /**
+   * Calculates the point of the circle at the given bearing from the
+   * antisolar point, its longitude within 180 degrees of the reference
+   */
+  private void vertex(double bearing, double[] result, double reference) {
+    double sinLat = capSinLat * cosRadius + capCosLat * sinRadius
+        * trigonometry.cos(bearing);
+    double east = trigonometry.atan2(trigonometry.sin(bearing) * sinRadius
+        * capCosLat, cosRadius - capSinLat * sinLat);
+    double longitude = capLongitude - Math.toDegrees(east);
+    result[0] = reference + Math.IEEEremainder(longitude - reference, 360);
+    result[1] = Math.toDegrees(trigonometry.asin(Math.max(-1, Math.min(1,
+        sinLat))));
+  }
+
+  private void append(double[] point) {
+    ensureCapacity(size + 1);
+    longitudes[size] = point[0];
+    latitudes[size++] = point[1];
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity > longitudes.length) {
+      int length = Math.max(capacity, 2 * longitudes.length);
+      double[] grown = new double[length];
+      System.arraycopy(longitudes, 0, grown, 0, size);
+      longitudes = grown;
+      grown = new double[length];
+      System.arraycopy(latitudes, 0, grown, 0, size);
+      latitudes = grown;
+    }
+  }
+}
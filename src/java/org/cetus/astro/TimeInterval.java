@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+/**
+ * Closed interval of time between two Julian Days (UT).
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class TimeInterval {
+
+  private final double start;
+  private final double end;
+
+  /**
+   * Creates a new instance of TimeInterval
+   * 
+   * @param start
+   *          the Julian Day the interval starts at
+   * @param end
+   *          the Julian Day the interval ends at
+   * @throws IllegalArgumentException
+   *           thrown when the interval ends before it starts
+   */
+  public TimeInterval(double start, double end)
+      throws IllegalArgumentException {
+    if (!(end >= start)) {
+      throw new IllegalArgumentException("Unsupported interval [" + start
+          + ", " + end + "]");
+    }
+    this.start = start;
+    this.end = end;
+  }
+
+  /**
+   * @return the Julian Day (UT) the interval starts at
+   */
+  public double getStart() {
+    return start;
+  }
+
+  /**
+   * @return the Julian Day (UT) the interval ends at
+   */
+  public double getEnd() {
+    return end;
+  }
+
+  /**
+   * @return the duration of the interval in days
+   */
+  public double getDuration() {
+    return end - start;
+  }
+
+  /**
+   * Tells whether the interval contains an instant
+   * 
+   * @param jd
+   *          the Julian Day (UT)
+   * @return true if the instant is within the interval
+   */
+  public boolean contains(double jd) {
+    return jd >= start && jd <= end;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + start + ", " + end + "]";
+  }
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.DoubleConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Evenly spaced instants from a start, included, to an end, excluded, as
+ * primitive streams and streams of sun positions.
+ * 
+ * Instants are addressed by their index, so that the spliterators of a range
+ * split in halves of exactly known sizes and parallel streams spread the
+ * range evenly over the common pool. Instants are streamed as primitives,
+ * without boxing. The positions of the sun at an {@link Observer} are
+ * computed by every split with its own {@link SolarState}, created once per
+ * split and updated in place, and the trigonometric functions of the
+ * latitude cached by the observer. Ranges are immutable.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class TimeRange {
+
+  // Julian Day of the Unix epoch
+  private static final double EPOCH_JD = 2440587.5;
+  private static final double DAY_MILLIS = 86400000.0;
+  private static final int CHARACTERISTICS = Spliterator.ORDERED
+      | Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.IMMUTABLE
+      | Spliterator.NONNULL;
+
+  private final double startJd;
+  private final double endJd;
+  private final double step;
+  private final long size;
+
+  /**
+   * Creates a TimeRange.
+   * 
+   * @param startJd
+   *          the Julian Day (UT) of the first instant
+   * @param endJd
+   *          the Julian Day (UT) the range ends at, excluded
+   * @param stepSeconds
+   *          the time between consecutive instants in seconds
+   * @throws IllegalArgumentException
+   *           thrown when the step is not positive or the range ends before
+   *           it starts
+   */
+  public TimeRange(double startJd, double endJd, double stepSeconds)
+      throws IllegalArgumentException {
+    if (!(stepSeconds > 0)) {
+      throw new IllegalArgumentException("Unsupported step " + stepSeconds);
+    }
+    if (!(endJd >= startJd)) {
+      throw new IllegalArgumentException("Unsupported range [" + startJd
+          + ", " + endJd + ")");
+    }
+    this.startJd = startJd;
+    this.endJd = endJd;
+    this.step = stepSeconds / 86400;
+    double steps = (endJd - startJd) / step;
+    // an end a whole number of steps away is excluded despite rounding
+    double whole = Math.rint(steps);
+    this.size = (long) (Math.abs(steps - whole) <= 1e-9 * Math.max(1, steps)
+        ? whole : Math.ceil(steps));
+  }
+
+  private TimeRange(double startJd, double endJd, double step, long size) {
+    this.startJd = startJd;
+    this.endJd = endJd;
+    this.step = step;
+    this.size = size;
+  }
+
+  /**
+   * Creates a TimeRange from instants in milliseconds since the epoch
+   * (1970-01-01T00:00:00Z).
+   * 
+   * @param startMillis
+   *          the first instant
+   * @param endMillis
+   *          the instant the range ends at, excluded
+   * @param stepMillis
+   *          the time between consecutive instants in milliseconds
+   * @return the range
+   * @throws IllegalArgumentException
+   *           thrown when the step is not positive or the range ends before
+   *           it starts
+   */
+  public static TimeRange ofEpochMillis(long startMillis, long endMillis,
+      long stepMillis) throws IllegalArgumentException {
+    if (stepMillis <= 0) {
+      throw new IllegalArgumentException("Unsupported step " + stepMillis);
+    }
+    if (endMillis < startMillis) {
+      throw new IllegalArgumentException("Unsupported range [" + startMillis
+          + ", " + endMillis + ")");
+    }
+    return new TimeRange(EPOCH_JD + startMillis / DAY_MILLIS, EPOCH_JD
+        + endMillis / DAY_MILLIS, stepMillis / DAY_MILLIS, (endMillis
+        - startMillis + stepMillis - 1) / stepMillis);
+  }
+
+  /**
+   * Returns the instant of the given index
+   * 
+   * @param index
+   *          the index, within [0, size())
+   * @return the Julian Day (UT)
+   */
+  public double getJD(long index) {
+    return startJd + index * step;
+  }
+
+  /**
+   * Returns the instant of the given index, in milliseconds since the epoch
+   * 
+   * @param index
+   *          the index, within [0, size())
+   * @return the instant, rounded to the millisecond
+   */
+  public long getEpochMillis(long index) {
+    return Math.round((getJD(index) - EPOCH_JD) * DAY_MILLIS);
+  }
+
+  /**
+   * @return the Julian Day (UT) of the first instant
+   */
+  public double getStartJd() {
+    return startJd;
+  }
+
+  /**
+   * @return the Julian Day (UT) the range ends at, excluded
+   */
+  public double getEndJd() {
+    return endJd;
+  }
+
+  /**
+   * @return the time between consecutive instants in seconds
+   */
+  public double getStepSeconds() {
+    return step * 86400;
+  }
+
+  /**
+   * @return the number of instants
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return a spliterator over the Julian Days (UT) of the instants
+   */
+  public Spliterator.OfDouble spliterator() {
+    return new Instants(0, size);
+  }
+
+  /**
+   * @return a spliterator over the instants in milliseconds since the epoch
+   */
+  public Spliterator.OfLong epochMillisSpliterator() {
+    return new EpochMillis(0, size);
+  }
+
+  /**
+   * Returns the Julian Days (UT) of the instants
+   * 
+   * @param parallel
+   *          whether the stream is parallel
+   * @return the stream
+   */
+  public DoubleStream jds(boolean parallel) {
+    return StreamSupport.doubleStream(spliterator(), parallel);
+  }
+
+  /**
+   * Returns the instants in milliseconds since the epoch
+   * 
+   * @param parallel
+   *          whether the stream is parallel
+   * @return the stream
+   */
+  public LongStream epochMillis(boolean parallel) {
+    return StreamSupport.longStream(epochMillisSpliterator(), parallel);
+  }
+
+  /**
+   * Returns the positions of the sun at the instants, the altitude corrected
+   * by atmospheric refraction for standard conditions.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param parallel
+   *          whether the stream is parallel
+   * @return the stream, ordered by instant
+   */
+  public Stream<SunPosition> positions(Observer observer, boolean parallel) {
+    return StreamSupport.stream(new Positions(observer, 0, size), parallel);
+  }
+
+  /**
+   * Returns the apparent altitudes of the sun at the instants, without
+   * creating a position per instant.
+   * 
+   * @param observer
+   *          the observer's location
+   * @param parallel
+   *          whether the stream is parallel
+   * @return the stream, ordered by instant
+   */
+  public DoubleStream altitudes(Observer observer, boolean parallel) {
+    return StreamSupport.doubleStream(new Altitudes(observer, 0, size),
+        parallel);
+  }
+
+  @Override
+  public String toString() {
+    return "TimeRange[start=" + startJd + ", end=" + endJd + ", step="
+        + getStepSeconds() + "s, size=" + size + "]";
+  }
+
+  /**
+   * Spliterator over the indexes [index, end) of the instants, split in
+   * halves
+   */
+  private abstract class IndexSpliterator {
+
+    protected long index;
+    protected final long end;
+
+    IndexSpliterator(long index, long end) {
+      this.index = index;
+      this.end = end;
+    }
+
+    public long estimateSize() {
+      return end - index;
+    }
+
+    public int characteristics() {
+      return CHARACTERISTICS;
+    }
+
+    /**
+     * Returns the first half of the remaining indexes, keeping the second
+     */
+    protected long split() {
+      long middle = (index + end) >>> 1;
+      if (middle <= index) {
+        return -1;
+      }
+      long from = index;
+      index = middle;
+      return from;
+    }
+  }
+
+  private final class Instants extends IndexSpliterator implements
+      Spliterator.OfDouble {
+
+    Instants(long index, long end) {
+      super(index, end);
+    }
+
+    @Override
+    public Spliterator.OfDouble trySplit() {
+      long from = index;
+      return split() < 0 ? null : new Instants(from, index);
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(getJD(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+      for (; index < end; index++) {
+        action.accept(getJD(index));
+      }
+    }
+  }
+
+  private final class EpochMillis extends IndexSpliterator implements
+      Spliterator.OfLong {
+
+    EpochMillis(long index, long end) {
+      super(index, end);
+    }
+
+    @Override
+    public Spliterator.OfLong trySplit() {
+      long from = index;
+      return split() < 0 ? null : new EpochMillis(from, index);
+    }
+
+    @Override
+    public boolean tryAdvance(LongConsumer action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(getEpochMillis(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(LongConsumer action) {
+      for (; index < end; index++) {
+        action.accept(getEpochMillis(index));
+      }
+    }
+  }
+
+  private final class Positions extends IndexSpliterator implements
+      Spliterator<SunPosition> {
+
+    private final Observer observer;
+    // created by the split that traverses, not by the one that splits
+    private SolarState state;
+    private final double[] position = new double[2];
+
+    Positions(Observer observer, long index, long end) {
+      super(index, end);
+      this.observer = observer;
+    }
+
+    @Override
+    public Spliterator<SunPosition> trySplit() {
+      long from = index;
+      return split() < 0 ? null : new Positions(observer, from, index);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super SunPosition> action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(calculate(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super SunPosition> action) {
+      for (; index < end; index++) {
+        action.accept(calculate(index));
+      }
+    }
+
+    private SunPosition calculate(long i) {
+      if (state == null) {
+        state = new SolarState();
+      }
+      state.update(getJD(i)).calculateHorizontal(observer, position);
+      return new SunPosition(position[0], position[1]);
+    }
+  }
+
+  private final class Altitudes extends IndexSpliterator implements
+      Spliterator.OfDouble {
+
+    private final Observer observer;
+    private SolarState state;
+    private final double[] position = new double[2];
+
+    Altitudes(Observer observer, long index, long end) {
+      super(index, end);
+      this.observer = observer;
+    }
+
+    @Override
+    public Spliterator.OfDouble trySplit() {
+      long from = index;
+      return split() < 0 ? null : new Altitudes(observer, from, index);
+    }
+
+    @Override
+    public boolean tryAdvance(DoubleConsumer action) {
+      if (index >= end) {
+        return false;
+      }
+      action.accept(calculate(index++));
+      return true;
+    }
+
+    @Override
+    public void forEachRemaining(DoubleConsumer action) {
+      for (; index < end; index++) {
+        action.accept(calculate(index));
+      }
+    }
+
+    private double calculate(long i) {
+      if (state == null) {
+        state = new SolarState();
+      }
+      state.update(getJD(i)).calculateHorizontal(observer, position);
+      return position[1];
+    }
+  }
+}
@@ -19,6 +19,7 @@ package org.cetus.astro.coords;
 
 import org.apache.log4j.Logger;
 import org.cetus.astro.util.AngleUtils;
+import org.cetus.astro.util.Trigonometry;
 
 /**
  * @author Inaki Ortiz de Landaluce Saiz
@@ -67,6 +68,26 @@ public class EquatorialCoordinates extends SkyCoordinates {
    */
   public HorizontalCoordinates toHorizontal(double siderealTime,
       double geoLongitude, double geoLatitude) {
+    return toHorizontal(siderealTime, geoLongitude, geoLatitude,
+        Trigonometry.STANDARD);
+  }
+
+  /**
+   * Converts equatorial to horizontal coordinates given the sidereal time and
+   * the geographical observer's location, evaluated with the given
+   * trigonometric functions.
+   * 
+   * @param siderealTime sidereal time in degrees
+   * @param geoLongitude
+   *          geographical longitude in degrees of the observer's location
+   * @param geoLatitude
+   *          geographical latitude in degrees of the observer's location
+   * @param trig
+   *          the trigonometric functions to use
+   * @return
+   */
+  public HorizontalCoordinates toHorizontal(double siderealTime,
+      double geoLongitude, double geoLatitude, Trigonometry trig) {
     double hourAngle = AngleUtils.normalizeAngle(siderealTime - geoLongitude
         - getLongitude(AngleUnit.DEGREES), 0 , 360);
     log.debug("Hour angle " + hourAngle + " degrees");
@@ -74,13 +95,13 @@ public class EquatorialCoordinates extends SkyCoordinates {
     double geoLatRadians = Math.toRadians(geoLatitude);
     double decRadians = getLatitude(AngleUnit.RADIANS);
 
-    double azimuthRadians = Math.atan2(
-        Math.sin(hourAngleRadians),
-        (Math.cos(hourAngleRadians) * Math.sin(geoLatRadians) - Math
-            .tan(decRadians) * Math.cos(geoLatRadians)));
-    double altRadians = Math.asin(Math.sin(geoLatRadians)
-        * Math.sin(decRadians) + Math.cos(geoLatRadians) * Math.cos(decRadians)
-        * Math.cos(hourAngleRadians));
+    double azimuthRadians = trig.atan2(
+        trig.sin(hourAngleRadians),
+        (trig.cos(hourAngleRadians) * trig.sin(geoLatRadians) - trig
+            .tan(decRadians) * trig.cos(geoLatRadians)));
+    double altRadians = trig.asin(trig.sin(geoLatRadians)
+        * trig.sin(decRadians) + trig.cos(geoLatRadians) * trig.cos(decRadians)
+        * trig.cos(hourAngleRadians));
 
     return new HorizontalCoordinates(Math.toDegrees(azimuthRadians),
         Math.toDegrees(altRadians));
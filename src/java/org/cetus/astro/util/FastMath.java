@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro.util;
+
+/**
+ * Bounded-error approximations of the trigonometric functions used by the low
+ * accuracy sun position algorithm.
+ * 
+ * Sine and cosine reduce the argument to [-pi/4, pi/4] (Cody-Waite reduction
+ * with a two-part pi/2) and evaluate near-minimax polynomials obtained by
+ * Chebyshev interpolation. The arc tangent reduces its argument to
+ * [-tan(pi/8), tan(pi/8)] and evaluates a near-minimax odd polynomial. The
+ * remaining functions are derived from those.
+ * 
+ * The absolute error is below {@link #MAX_ERROR} radians (about 6e-7 degrees)
+ * for every function and every argument up to {@link #MAX_REDUCIBLE} radians,
+ * i.e. more than four orders of magnitude inside the 0.01 degree accuracy of
+ * {@link org.cetus.astro.SunPositionAlgorithmLowRes}. The tangent bound is
+ * relative, as the function has poles. Arguments out of the reducible range,
+ * infinities and NaN are delegated to {@link Math}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public final class FastMath {
+
+  /**
+   * Maximum absolute error in radians of the approximations (relative error
+   * for the tangent)
+   */
+  public static final double MAX_ERROR = 1e-8;
+
+  /**
+   * Largest absolute argument in radians for which sine, cosine and tangent
+   * are approximated
+   */
+  public static final double MAX_REDUCIBLE = 1e6;
+
+  private static final double PI_2 = Math.PI / 2;
+  private static final double PI_4 = Math.PI / 4;
+  private static final double TWO_OVER_PI = 2 / Math.PI;
+  // first 33 bits of pi/2 (so that k * PIO2_HI is exact) and the remainder
+  private static final double PIO2_HI = 1.57079632673412561417e+00;
+  private static final double PIO2_LO = 6.07710050650619224932e-11;
+  private static final double TAN_PI_8 = 0.41421356237309503;
+
+  // sin(x) = x * P(x^2) on [-pi/4, pi/4], error < 2.5e-9
+  private static final double S0 = 0.9999999969177037;
+  private static final double S1 = -0.16666650673997216;
+  private static final double S2 = 0.008332035785619729;
+  private static final double S3 = -0.00019503904253466602;
+
+  // cos(x) = Q(x^2) on [-pi/4, pi/4], error < 5e-11
+  private static final double C0 = 0.999999999952489;
+  private static final double C1 = -0.49999999614856644;
+  private static final double C2 = 0.0416666166924646;
+  private static final double C3 = -0.0013886617997978538;
+  private static final double C4 = 2.437983111940991e-05;
+
+  // atan(x) = x * R(x^2) on [-tan(pi/8), tan(pi/8)], error < 6.8e-9
+  private static final double A0 = 0.9999999812646112;
+  private static final double A1 = -0.3333278577192368;
+  private static final double A2 = 0.19974082415475963;
+  private static final double A3 = -0.13848490211960995;
+  private static final double A4 = 0.0797629180586244;
+
+  private FastMath() {
+  }
+
+  /**
+   * Returns the approximate sine of an angle
+   * 
+   * @param a
+   *          the angle in radians
+   * @return the sine of the angle
+   */
+  public static double sin(double a) {
+    if (!(Math.abs(a) <= MAX_REDUCIBLE)) {
+      return Math.sin(a);
+    }
+    double k = Math.rint(a * TWO_OVER_PI);
+    double r = (a - k * PIO2_HI) - k * PIO2_LO;
+    switch ((int) k & 3) {
+    case 0:
+      return sinReduced(r);
+    case 1:
+      return cosReduced(r);
+    case 2:
+      return -sinReduced(r);
+    default:
+      return -cosReduced(r);
+    }
+  }
+
+  /**
+   * Returns the approximate cosine of an angle
+   * 
+   * @param a
+   *          the angle in radians
+   * @return the cosine of the angle
+   */
+  public static double cos(double a) {
+    if (!(Math.abs(a) <= MAX_REDUCIBLE)) {
+      return Math.cos(a);
+    }
+    double k = Math.rint(a * TWO_OVER_PI);
+    double r = (a - k * PIO2_HI) - k * PIO2_LO;
+    switch ((int) k & 3) {
+    case 0:
+      return cosReduced(r);
+    case 1:
+      return -sinReduced(r);
+    case 2:
+      return -cosReduced(r);
+    default:
+      return sinReduced(r);
+    }
+  }
+
+  /**
+   * Returns the approximate tangent of an angle
+   * 
+   * @param a
+   *          the angle in radians
+   * @return the tangent of the angle
+   */
+  public static double tan(double a) {
+    if (!(Math.abs(a) <= MAX_REDUCIBLE)) {
+      return Math.tan(a);
+    }
+    double k = Math.rint(a * TWO_OVER_PI);
+    double r = (a - k * PIO2_HI) - k * PIO2_LO;
+    if (((int) k & 1) == 0) {
+      return sinReduced(r) / cosReduced(r);
+    }
+    return -cosReduced(r) / sinReduced(r);
+  }
+
+  /**
+   * Returns the approximate arc tangent of a value, in the range -pi/2 through
+   * pi/2
+   * 
+   * @param x
+   *          the value
+   * @return the arc tangent in radians
+   */
+  public static double atan(double x) {
+    double ax = Math.abs(x);
+    boolean inverted = ax > 1;
+    if (inverted) {
+      ax = 1 / ax;
+    }
+    double r;
+    if (ax > TAN_PI_8) {
+      // atan(x) = pi/4 + atan((x - 1) / (x + 1))
+      r = PI_4 + atanReduced((ax - 1) / (ax + 1));
+    } else {
+      r = atanReduced(ax);
+    }
+    if (inverted) {
+      r = PI_2 - r;
+    }
+    return x < 0 ? -r : r;
+  }
+
+  /**
+   * Returns the approximate angle theta from the conversion of rectangular
+   * coordinates (x, y) to polar coordinates (r, theta), in the range -pi
+   * through pi
+   * 
+   * @param y
+   *          the ordinate coordinate
+   * @param x
+   *          the abscissa coordinate
+   * @return the angle theta in radians
+   */
+  public static double atan2(double y, double x) {
+    if (x > 0) {
+      return atan(y / x);
+    }
+    if (x < 0) {
+      return y >= 0 ? atan(y / x) + Math.PI : atan(y / x) - Math.PI;
+    }
+    // zeros and NaN
+    return Math.atan2(y, x);
+  }
+
+  /**
+   * Returns the approximate arc sine of a value, in the range -pi/2 through
+   * pi/2
+   * 
+   * @param x
+   *          the value
+   * @return the arc sine in radians, NaN if the absolute value of the argument
+   *         is greater than one
+   */
+  public static double asin(double x) {
+    return atan2(x, Math.sqrt((1 - x) * (1 + x)));
+  }
+
+  /**
+   * Returns the approximate arc cosine of a value, in the range 0 through pi
+   * 
+   * @param x
+   *          the value
+   * @return the arc cosine in radians, NaN if the absolute value of the
+   *         argument is greater than one
+   */
+  public static double acos(double x) {
+    return atan2(Math.sqrt((1 - x) * (1 + x)), x);
+  }
+
+  private static double sinReduced(double r) {
+    double z = r * r;
+    return r * (S0 + z * (S1 + z * (S2 + z * S3)));
+  }
+
+  private static double cosReduced(double r) {
+    double z = r * r;
+    return C0 + z * (C1 + z * (C2 + z * (C3 + z * C4)));
+  }
+
+  private static double atanReduced(double r) {
+    double z = r * r;
+    return r * (A0 + z * (A1 + z * (A2 + z * (A3 + z * A4))));
+  }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro.util;
+
+/**
+ * Set of trigonometric functions the algorithms are evaluated with. Two sets
+ * are provided: {@link #STANDARD}, based on {@link Math}, and {@link #FAST},
+ * based on the bounded-error approximations of {@link FastMath}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public abstract class Trigonometry {
+
+  /**
+   * Full precision trigonometric functions of {@link Math}
+   */
+  public static final Trigonometry STANDARD = new StandardTrigonometry();
+
+  /**
+   * Bounded-error approximations of {@link FastMath}
+   */
+  public static final Trigonometry FAST = new FastTrigonometry();
+
+  /**
+   * Creates a new instance of Trigonometry
+   */
+  protected Trigonometry() {
+  }
+
+  /**
+   * @param a
+   *          an angle in radians
+   * @return the sine of the angle
+   */
+  public abstract double sin(double a);
+
+  /**
+   * @param a
+   *          an angle in radians
+   * @return the cosine of the angle
+   */
+  public abstract double cos(double a);
+
+  /**
+   * @param a
+   *          an angle in radians
+   * @return the tangent of the angle
+   */
+  public abstract double tan(double a);
+
+  /**
+   * @param x
+   *          the value whose arc sine is to be returned
+   * @return the arc sine in radians, in the range -pi/2 through pi/2
+   */
+  public abstract double asin(double x);
+
+  /**
+   * @param y
+   *          the ordinate coordinate
+   * @param x
+   *          the abscissa coordinate
+   * @return the angle theta in radians of the polar coordinates (r, theta), in
+   *         the range -pi through pi
+   */
+  public abstract double atan2(double y, double x);
+
+  private static class StandardTrigonometry extends Trigonometry {
+
+    @Override
+    public double sin(double a) {
+      return Math.sin(a);
+    }
+
+    @Override
+    public double cos(double a) {
+      return Math.cos(a);
+    }
+
+    @Override
+    public double tan(double a) {
+      return Math.tan(a);
+    }
+
+    @Override
+    public double asin(double x) {
+      return Math.asin(x);
+    }
+
+    @Override
+    public double atan2(double y, double x) {
+      return Math.atan2(y, x);
+    }
+  }
+
+  private static class FastTrigonometry extends Trigonometry {
+
+    @Override
+    public double sin(double a) {
+      return FastMath.sin(a);
+    }
+
+    @Override
+    public double cos(double a) {
+      return FastMath.cos(a);
+    }
+
+    @Override
+    public double tan(double a) {
+      return FastMath.tan(a);
+    }
+
+    @Override
+    public double asin(double x) {
+      return FastMath.asin(x);
+    }
+
+    @Override
+    public double atan2(double y, double x) {
+      return FastMath.atan2(y, x);
+    }
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2011-2012 Inaki Ortiz de Landaluce Saiz
+ * 
+ * This program is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License 
+ * as published by the Free Software Foundation, either 
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be
+ * useful, but WITHOUT ANY WARRANTY; without even the implied warranty
+ * of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public 
+ * License along with this program. If not, see 
+ * <http://www.gnu.org/licenses/>
+ */
+package org.cetus.astro.vector;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import org.cetus.astro.EclipticObliquity;
+import org.cetus.astro.ScalarSunPositionKernel;
+import org.cetus.astro.SolarState;
+import org.cetus.astro.SunPositionKernel;
+
+/**
+ * Implementation of {@link SunPositionKernel} based on the incubating Java
+ * Vector API. The low accuracy algorithm (time from J2000.0, mean longitude
+ * and anomaly, equation of the center, nutation, obliquity, equatorial
+ * coordinates, apparent sidereal time, hour angle, horizontal coordinates and
+ * refraction) is evaluated for as many elements at once as lanes the preferred
+ * species of the platform has. The remaining elements are evaluated by
+ * {@link ScalarSunPositionKernel}.
+ * 
+ * This class can only be loaded when the <code>jdk.incubator.vector</code>
+ * module is resolved, which is why it is instantiated reflectively by
+ * {@link org.cetus.astro.SunPositionBatch}.
+ * 
+ * @author Inaki Ortiz de Landaluce Saiz
+ */
+public class VectorSunPositionKernel implements SunPositionKernel {
+
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  private static final double DEG = Math.PI / 180;
+  private static final double RAD = 180 / Math.PI;
+  // mean obliquity o(t^4), in degrees (see EclipticObliquity)
+  private static final double EPS0 = EclipticObliquity
+      .calculateMeanObliquity(0);
+  private static final double EPS1 = -46.8150 / 3600;
+  private static final double EPS2 = -0.00059 / 3600;
+  private static final double EPS3 = 0.001813 / 3600;
+
+  private final SunPositionKernel scalar = new ScalarSunPositionKernel();
+
+  @Override
+  public void calculate(double[] jd, double[] longitude, double[] latitude,
+      double[] azimuth, double[] altitude, int offset, int length) {
+    int lanes = SPECIES.length();
+    int bound = offset + SPECIES.loopBound(length);
+    int i = offset;
+    for (; i < bound; i += lanes) {
+      DoubleVector d = DoubleVector.fromArray(SPECIES, jd, i);
+      DoubleVector t = d.sub(SolarState.J2000).div(36525);
+      DoubleVector t2 = t.mul(t);
+      DoubleVector t3 = t2.mul(t);
+
+      // mean longitude and anomaly of the Sun
+      DoubleVector mlon = normalize(t.mul(36000.76983).add(280.46646)
+          .add(t2.mul(0.0003032)));
+      DoubleVector mano = normalize(t.mul(35999.05029).add(357.52911)
+          .sub(t2.mul(0.0001537)));
+      DoubleVector m = mano.mul(DEG);
+
+      // equation of the center
+      DoubleVector c = t.mul(-0.004817).add(1.914602).sub(t2.mul(0.000014))
+          .mul(sin(m))
+          .add(t.mul(-0.000101).add(0.019993).mul(sin(m.mul(2))))
+          .add(sin(m.mul(3)).mul(0.000289));
+
+      // nutation
+      DoubleVector lonSun = t.mul(36000.7698).add(280.4665).mul(DEG * 2);
+      DoubleVector lonMoon = t.mul(481267.8813).add(218.3165).mul(DEG * 2);
+      DoubleVector omega = t.mul(-1934.136261).add(125.04452)
+          .add(t2.mul(0.0020708)).add(t3.div(450000)).mul(DEG);
+      DoubleVector omega2 = omega.mul(2);
+      DoubleVector nutLon = sin(omega).mul(-17.20)
+          .sub(sin(lonSun).mul(1.32)).sub(sin(lonMoon).mul(0.23))
+          .add(sin(omega2).mul(0.21));
+      DoubleVector nutObl = cos(omega).mul(9.20).add(cos(lonSun).mul(0.57))
+          .add(cos(lonMoon).mul(0.10)).sub(cos(omega2).mul(0.09));
+
+      // apparent longitude and true obliquity
+      DoubleVector deltaPsi = nutLon.div(3600);
+      DoubleVector lambda = normalize(mlon.add(c)).add(-0.00569)
+          .add(deltaPsi).mul(DEG);
+      DoubleVector eps = t.mul(EPS1).add(EPS0).add(t2.mul(EPS2))
+          .add(t3.mul(EPS3)).add(nutObl.div(3600)).mul(DEG);
+      DoubleVector sinLambda = sin(lambda);
+      DoubleVector cosEps = cos(eps);
+
+      // equatorial coordinates
+      DoubleVector ra = sinLambda.mul(cosEps)
+          .lanewise(VectorOperators.ATAN2, cos(lambda)).mul(RAD);
+      DoubleVector dec = sin(eps).mul(sinLambda)
+          .lanewise(VectorOperators.ASIN);
+      DoubleVector sinDec = sin(dec);
+      DoubleVector cosDec = cos(dec);
+
+      // apparent sidereal time and hour angle
+      DoubleVector mst = normalize(d.sub(SolarState.J2000)
+          .mul(360.98564736629).add(280.46061837).add(t2.mul(0.000387933))
+          .sub(t3.div(38710000)));
+      DoubleVector gast = mst.add(cosEps.mul(deltaPsi));
+      DoubleVector h = normalize(gast
+          .sub(DoubleVector.fromArray(SPECIES, longitude, i)).sub(ra))
+          .mul(DEG);
+
+      // horizontal coordinates
+      DoubleVector phi = DoubleVector.fromArray(SPECIES, latitude, i).mul(DEG);
+      DoubleVector sinPhi = sin(phi);
+      DoubleVector cosPhi = cos(phi);
+      DoubleVector cosH = cos(h);
+      DoubleVector az = sin(h).lanewise(VectorOperators.ATAN2,
+          cosH.mul(sinPhi).sub(sinDec.div(cosDec).mul(cosPhi))).mul(RAD);
+      DoubleVector alt = sinPhi.mul(sinDec).add(cosPhi.mul(cosDec).mul(cosH))
+          .lanewise(VectorOperators.ASIN).mul(RAD);
+
+      // refraction for standard conditions, in arcminutes
+      DoubleVector refraction = DoubleVector.broadcast(SPECIES, 1.02).div(
+          alt.add(DoubleVector.broadcast(SPECIES, 10.3).div(alt.add(5.11)))
+              .mul(DEG).lanewise(VectorOperators.TAN));
+
+      az.intoArray(azimuth, i);
+      alt.add(refraction.div(60)).intoArray(altitude, i);
+    }
+    scalar.calculate(jd, longitude, latitude, azimuth, altitude, i, offset
+        + length - i);
+  }
+
+  private static DoubleVector sin(DoubleVector v) {
+    return v.lanewise(VectorOperators.SIN);
+  }
+
+  private static DoubleVector cos(DoubleVector v) {
+    return v.lanewise(VectorOperators.COS);
+  }
+
+  /**
+   * Normalizes angles in degrees within [0, 360)
+   */
+  private static DoubleVector normalize(DoubleVector v) {
+    DoubleVector turns = (DoubleVector) v.div(360)
+        .convert(VectorOperators.D2L, 0).convert(VectorOperators.L2D, 0);
+    DoubleVector r = v.sub(turns.mul(360));
+    VectorMask<Double> negative = r.compare(VectorOperators.LT, 0);
+    return r.add(360, negative);
+  }
+}
@@ -2,6 +2,7 @@ package org.cetus.astro;
 
 import static org.junit.Assert.*;
 
+import org.cetus.astro.util.Trigonometry;
 import org.junit.Test;
 
 public class AtmosphericRefractionTest {
@@ -14,4 +15,18 @@ public class AtmosphericRefractionTest {
         new AtmosphericRefraction(0.5541).getApparentAltitude(), 0.001);
   }
 
+  @Test
+  public final void testRefractionRate() {
+    double h = 1e-5;
+    for (double altitude = -2; altitude <= 90; altitude += 0.5) {
+      double expected = (AtmosphericRefraction.calculateRefraction(altitude
+          + h, 1000, 290, Trigonometry.STANDARD) - AtmosphericRefraction
+          .calculateRefraction(altitude - h, 1000, 290, Trigonometry.STANDARD))
+          / (2 * h);
+      assertEquals(expected, AtmosphericRefraction.calculateRefractionRate(
+          altitude, 1000, 290, Trigonometry.STANDARD), 1e-5 * Math.max(1,
+          Math.abs(expected)));
+    }
+  }
+
 }
@@ -0,0 +1,53 @@
+package org.cetus.astro;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Throughput of the bulk almanac against solving every site-day
+ * independently with the full model. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.BulkAlmanacBenchmark</code>
+ */
+public class BulkAlmanacBenchmark {
+
+  private static final int SITES = 20000;
+  private static final int INDEPENDENT_SITES = 1000;
+  private static final int DAYS = 365;
+  private static final double START = 2461041.5;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    double[] lon = new double[SITES];
+    double[] lat = new double[SITES];
+    for (int i = 0; i < SITES; i++) {
+      lon[i] = (i * 0.6180339887 % 1.0) * 360 - 180;
+      lat[i] = (i * 0.7548776662 % 1.0) * 120 - 60;
+    }
+    BulkAlmanac almanac = new BulkAlmanac();
+    double bulkNs = 0;
+    double independentNs = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      // first pass warms up
+      long start = System.nanoTime();
+      almanac.generate(lon, lat, START, DAYS, SunEventSolver.SUNRISE);
+      bulkNs = (System.nanoTime() - start) / ((double) SITES * DAYS);
+      SunEventSolver solver = new SunEventSolver();
+      start = System.nanoTime();
+      for (int i = 0; i < INDEPENDENT_SITES; i++) {
+        Observer observer = new Observer(lon[i], lat[i]);
+        for (int day = 0; day < DAYS; day++) {
+          solver.calculate(observer, START + day, SunEventSolver.SUNRISE);
+        }
+      }
+      independentNs = (System.nanoTime() - start)
+          / ((double) INDEPENDENT_SITES * DAYS);
+    }
+    System.out.println("Processors: "
+        + Runtime.getRuntime().availableProcessors());
+    System.out.printf("independent %8.0f ns/site-day  %6.1f h for 3M sites"
+        + " x 365 days%n", independentNs, independentNs * 3e6 * DAYS / 3.6e12);
+    System.out.printf("bulk        %8.0f ns/site-day  %6.1f h for 3M sites"
+        + " x 365 days  x%.2f%n", bulkNs, bulkNs * 3e6 * DAYS / 3.6e12,
+        independentNs / bulkNs);
+  }
+}
@@ -0,0 +1,78 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class BulkAlmanacTest {
+
+  private static final double SECOND = 1.0 / 86400;
+  private static final double START = 2457023.5;
+
+  @Test
+  public final void testGenerate() {
+    int sites = 40;
+    double[] lon = new double[sites];
+    double[] lat = new double[sites];
+    for (int i = 0; i < sites; i++) {
+      lon[i] = (i * 0.6180339887 % 1.0) * 360 - 180;
+      lat[i] = (i * 0.7548776662 % 1.0) * 180 - 90;
+    }
+    AlmanacBlock almanac = new BulkAlmanac().generate(lon, lat, START + 0.7,
+        366, SunEventSolver.SUNRISE);
+    assertEquals(START, almanac.getStartJd(), 0);
+    assertEquals(sites, almanac.getSiteCount());
+    SunEventSolver solver = new SunEventSolver();
+    for (int i = 0; i < sites; i++) {
+      Observer observer = new Observer(lon[i], lat[i]);
+      for (int day = 0; day < 366; day++) {
+        double transit = almanac.getTransit(i, day);
+        assertEquals(START + day + 0.5, transit, 0.55);
+        SunEvents events = solver.calculate(observer, transit, Double.NaN,
+            Double.NaN, SunEventSolver.SUNRISE);
+        assertEquals(events.getTransit(), transit, SECOND);
+        assertEquals(events.getRise(), almanac.getRise(i, day), SECOND);
+        assertEquals(events.getSet(), almanac.getSet(i, day), SECOND);
+      }
+    }
+  }
+
+  @Test
+  public final void testGenerateIntoSink() {
+    int sites = 1000;
+    double[] lon = new double[sites];
+    double[] lat = new double[sites];
+    for (int i = 0; i < sites; i++) {
+      lon[i] = i * 0.36 - 180;
+      lat[i] = i * 0.17 - 85;
+    }
+    final List<AlmanacBlock> blocks = Collections
+        .synchronizedList(new ArrayList<AlmanacBlock>());
+    new BulkAlmanac(new ForkJoinPool(2), 64).generate(lon, lat, START, 7,
+        SunEventSolver.CIVIL_TWILIGHT, new AlmanacSink() {
+          public void accept(AlmanacBlock block) {
+            blocks.add(block);
+          }
+        });
+    AlmanacBlock all = new BulkAlmanac().generate(lon, lat, START, 7,
+        SunEventSolver.CIVIL_TWILIGHT);
+    int covered = 0;
+    for (AlmanacBlock block : blocks) {
+      assertTrue(block.getSiteCount() <= 64);
+      covered += block.getSiteCount();
+      for (int i = 0; i < block.getSiteCount(); i++) {
+        for (int day = 0; day < 7; day++) {
+          int site = block.getFirstSite() + i;
+          assertEquals(all.getTransit(site, day), block.getTransit(i, day), 0);
+          assertEquals(all.getSet(site, day), block.getSet(i, day), 0);
+        }
+      }
+    }
+    assertEquals(sites, covered);
+  }
+}
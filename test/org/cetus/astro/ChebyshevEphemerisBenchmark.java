@@ -0,0 +1,71 @@
+package org.cetus.astro;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Fitting time, maximum errors and evaluation cost of a 1950-2100 Chebyshev
+ * ephemeris against the exact model. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.ChebyshevEphemerisBenchmark</code>
+ */
+public class ChebyshevEphemerisBenchmark {
+
+  private static final double START = 2433282.5;
+  private static final double END = 2488069.5;
+  private static final int N = 1 << 20;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    long start = System.nanoTime();
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(START, END);
+    System.out.printf("fit %d segments in %.2f s%n", ephemeris
+        .getSegmentCount(), (System.nanoTime() - start) / 1e9);
+    System.out.printf("max errors RA %.2e Dec %.2e GAST %.2e degrees%n",
+        ephemeris.getMaxError(ChebyshevEphemeris.RIGHT_ASCENSION), ephemeris
+            .getMaxError(ChebyshevEphemeris.DECLINATION), ephemeris
+            .getMaxError(ChebyshevEphemeris.SIDEREAL_TIME));
+    double[] jd = new double[N];
+    for (int i = 0; i < N; i++) {
+      jd[i] = START + (END - START) * ((i * 0.6180339887) % 1.0);
+    }
+    Observer observer = new Observer(104.7416667, 40.6027778);
+    double exactNs = 0;
+    double ephemerisNs = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      // first pass warms up
+      exactNs = runExact(jd, observer);
+      ephemerisNs = runEphemeris(ephemeris, jd, observer);
+    }
+    System.out.printf("exact     %8.2f ns/position%n", exactNs);
+    System.out.printf("ephemeris %8.2f ns/position  x%.2f%n", ephemerisNs,
+        exactNs / ephemerisNs);
+  }
+
+  private static double runExact(double[] jd, Observer observer) {
+    SolarState state = new SolarState();
+    double[] position = new double[2];
+    double sum = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < N; i++) {
+      state.update(jd[i]).calculateHorizontal(observer, position);
+      sum += position[1];
+    }
+    long time = System.nanoTime() - start;
+    System.out.print(sum == 0 ? " " : "");
+    return time / (double) N;
+  }
+
+  private static double runEphemeris(ChebyshevEphemeris ephemeris,
+      double[] jd, Observer observer) {
+    double[] position = new double[2];
+    double sum = 0;
+    long start = System.nanoTime();
+    for (int i = 0; i < N; i++) {
+      ephemeris.calculateHorizontal(jd[i], observer, position);
+      sum += position[1];
+    }
+    long time = System.nanoTime() - start;
+    System.out.print(sum == 0 ? " " : "");
+    return time / (double) N;
+  }
+}
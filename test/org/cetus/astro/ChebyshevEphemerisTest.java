@@ -0,0 +1,57 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ChebyshevEphemerisTest {
+
+  private static final double START = 2451544.5;
+  private static final double END = START + 3653;
+
+  @Test
+  public final void testEvaluate() {
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(START, END);
+    assertEquals(3653, ephemeris.getSegmentCount());
+    for (int q = 0; q < ChebyshevEphemeris.QUANTITIES; q++) {
+      assertTrue(ephemeris.getMaxError(q) < 1e-6);
+    }
+    SolarState state = new SolarState();
+    double[] result = new double[ChebyshevEphemeris.QUANTITIES];
+    double[] exact = new double[2];
+    double[] horizontal = new double[2];
+    Observer observer = new Observer(-2.17, 41.38);
+    for (int i = 0; i <= 10000; i++) {
+      double jd = START + (END - START) * i / 10000.0;
+      state.update(jd);
+      ephemeris.evaluate(jd, result);
+      assertEquals(0, Math.IEEEremainder(state.getRightAscension()
+          - result[ChebyshevEphemeris.RIGHT_ASCENSION], 360), 1e-6);
+      assertEquals(state.getDeclination(),
+          result[ChebyshevEphemeris.DECLINATION], 1e-6);
+      assertEquals(0, Math.IEEEremainder(state.getApparentSiderealTime()
+          - result[ChebyshevEphemeris.SIDEREAL_TIME], 360), 1e-6);
+      assertTrue(result[ChebyshevEphemeris.RIGHT_ASCENSION] >= 0
+          && result[ChebyshevEphemeris.RIGHT_ASCENSION] < 360);
+      state.calculateHorizontal(observer, exact);
+      ephemeris.calculateHorizontal(jd, observer, horizontal);
+      assertEquals(0, Math.IEEEremainder(exact[0] - horizontal[0], 360), 1e-5);
+      assertEquals(exact[1], horizontal[1], 1e-5);
+    }
+  }
+
+  @Test
+  public final void testOutOfRange() {
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(START, START + 10,
+        2, 4);
+    assertEquals(5, ephemeris.getSegmentCount());
+    assertTrue(ephemeris.contains(START + 10));
+    assertFalse(ephemeris.contains(START + 10.01));
+    try {
+      ephemeris.evaluate(START - 1, new double[3]);
+      fail("Out of range instant accepted");
+    } catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,47 @@
+package org.cetus.astro;
+
+/**
+ * Compression ratio and throughput of the encoding and decoding of a year of
+ * positions sampled every minute. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.CompressedSunPositionsBenchmark</code>
+ */
+public class CompressedSunPositionsBenchmark {
+
+  private static final int N = 525600;
+  private static final int ROUNDS = 10;
+
+  public static void main(String[] args) {
+    double[] jd = new double[N];
+    double[] lon = new double[N];
+    double[] lat = new double[N];
+    for (int i = 0; i < N; i++) {
+      jd[i] = 2455197.5 + i / 1440.0;
+      lon[i] = 3.7;
+      lat[i] = 40.4;
+    }
+    double[] az = new double[N];
+    double[] alt = new double[N];
+    SunPositionBatch.calculate(jd, lon, lat, az, alt, 0, N);
+    CompressedSunPositions series = null;
+    double encodeNs = 0;
+    double decodeNs = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      // first pass warms up
+      long start = System.nanoTime();
+      for (int round = 0; round < ROUNDS; round++) {
+        series = CompressedSunPositions.encode(az, alt);
+      }
+      encodeNs = (System.nanoTime() - start) / ((double) ROUNDS * N);
+      start = System.nanoTime();
+      for (int round = 0; round < ROUNDS; round++) {
+        series.decode(jd, lon);
+      }
+      decodeNs = (System.nanoTime() - start) / ((double) ROUNDS * N);
+    }
+    System.out.printf("%d bytes, %.2f bits/sample, x%.1f%n", series
+        .getEncodedSize(), 8.0 * series.getEncodedSize() / N, 16.0 * N
+        / series.getEncodedSize());
+    System.out.printf("encode %6.2f ns/sample%n", encodeNs);
+    System.out.printf("decode %6.2f ns/sample%n", decodeNs);
+  }
+}
@@ -0,0 +1,133 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class CompressedSunPositionsTest {
+
+  /**
+   * Positions every minute over the given number of days
+   */
+  private static double[][] series(double lon, double lat, int days) {
+    int n = days * 1440;
+    double[] jd = new double[n];
+    double[] lons = new double[n];
+    double[] lats = new double[n];
+    for (int i = 0; i < n; i++) {
+      jd[i] = 2455197.5 + i / 1440.0;
+      lons[i] = lon;
+      lats[i] = lat;
+    }
+    double[] az = new double[n];
+    double[] alt = new double[n];
+    SunPositionBatch.calculate(jd, lons, lats, az, alt, 0, n);
+    return new double[][] { az, alt };
+  }
+
+  @Test
+  public final void testRoundTripWithinResolution() {
+    // Tromso: the azimuth crosses the north every day
+    for (double[] site : new double[][] { { 3.7, 40.4 }, { -18.9, 69.6 },
+        { 70, -45 } }) {
+      double[][] positions = series(site[0], site[1], 30);
+      double[] az = positions[0];
+      double[] alt = positions[1];
+      CompressedSunPositions series = CompressedSunPositions.encode(az, alt);
+      assertEquals(az.length, series.size());
+      double[] decodedAz = new double[az.length];
+      double[] decodedAlt = new double[az.length];
+      series.decode(decodedAz, decodedAlt);
+      for (int i = 0; i < az.length; i++) {
+        double error = Math.abs(decodedAz[i] - az[i]);
+        assertTrue(Math.min(error, 360 - error) <= 0.0005 + 1e-9);
+        assertEquals(alt[i], decodedAlt[i], 0.0005 + 1e-9);
+      }
+      // an order of magnitude smaller than two doubles per sample
+      assertTrue(16L * az.length > 10 * series.getEncodedSize());
+    }
+  }
+
+  @Test
+  public final void testRandomAccess() {
+    double[][] positions = series(3.7, 40.4, 3);
+    CompressedSunPositions series = CompressedSunPositions.encode(
+        positions[0], positions[1], 0, 4000, 0.01, 100);
+    assertEquals(40, series.getBlockCount());
+    double[] all = new double[4000];
+    double[] allAlt = new double[4000];
+    series.decode(all, allAlt);
+    double[] az = new double[350];
+    double[] alt = new double[350];
+    series.decode(1234, az, alt, 7, 333);
+    for (int i = 0; i < 333; i++) {
+      assertEquals(all[1234 + i], az[7 + i], 0);
+      assertEquals(allAlt[1234 + i], alt[7 + i], 0);
+    }
+    double[] position = new double[2];
+    series.getPosition(3999, position);
+    assertEquals(all[3999], position[0], 0);
+    assertEquals(allAlt[3999], position[1], 0);
+    assertEquals(0.005, series.getMaxError(), 0);
+  }
+
+  @Test
+  public final void testWriteAndLoad() throws IOException {
+    double[][] positions = series(-18.9, 69.6, 2);
+    CompressedSunPositions series = CompressedSunPositions.encode(
+        positions[0], positions[1]);
+    Path path = Files.createTempFile("sun", ".pos");
+    try {
+      series.write(path);
+      CompressedSunPositions loaded = CompressedSunPositions.load(path);
+      assertEquals(series.size(), loaded.size());
+      assertEquals(series.getResolution(), loaded.getResolution(), 0);
+      double[] az = new double[series.size()];
+      double[] alt = new double[series.size()];
+      double[] loadedAz = new double[series.size()];
+      double[] loadedAlt = new double[series.size()];
+      series.decode(az, alt);
+      loaded.decode(loadedAz, loadedAlt);
+      for (int i = 0; i < az.length; i++) {
+        assertEquals(az[i], loadedAz[i], 0);
+        assertEquals(alt[i], loadedAlt[i], 0);
+      }
+      byte[] bytes = Files.readAllBytes(path);
+      bytes[bytes.length - 1] ^= 1;
+      Files.write(path, bytes);
+      try {
+        CompressedSunPositions.load(path);
+        fail("Corrupted file loaded");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("Checksum"));
+      }
+      Files.write(path, ByteBuffer.allocate(64).array());
+      try {
+        CompressedSunPositions.load(path);
+        fail("Wrong file loaded");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("magic"));
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupportedResolution() {
+    CompressedSunPositions.encode(new double[1], new double[1], 0, 1, 0.007,
+        16);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupportedRange() {
+    CompressedSunPositions series = CompressedSunPositions.encode(
+        new double[10], new double[10]);
+    series.decode(5, new double[10], new double[10], 0, 6);
+  }
+}
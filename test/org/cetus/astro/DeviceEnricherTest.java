@@ -0,0 +1,131 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class DeviceEnricherTest {
+
+  @Test
+  public final void testMatchesSolarState() {
+    DeviceEnricher enricher = new DeviceEnricher();
+    SolarState state = new SolarState();
+    double[] result = new double[2];
+    double[] expected = new double[2];
+    for (int tick = 0; tick < 10; tick++) {
+      double jd = 2455000.5 + tick / 96.0;
+      state.update(jd);
+      for (long id = 0; id < 200; id++) {
+        double lon = id * 1.7 % 360 - 180;
+        double lat = id * 0.9 % 180 - 90;
+        enricher.enrich(id * 7919, jd, lon, lat, result);
+        state.calculateHorizontal(lon, lat, expected);
+        assertEquals(expected[0], result[0], 1e-12);
+        assertEquals(expected[1], result[1], 1e-12);
+      }
+    }
+    assertEquals(200, enricher.size());
+    assertEquals(2000, enricher.getRecords());
+    // one solar state per tick, shared by every device
+    assertEquals(10, enricher.getStateUpdates());
+  }
+
+  @Test
+  public final void testRepeatedRecordAndRelocation() {
+    DeviceEnricher enricher = new DeviceEnricher();
+    double[] first = new double[2];
+    double[] second = new double[2];
+    enricher.enrich(42, 2455000.6, 3.7, 40.4, first);
+    enricher.enrich(42, 2455000.6, 3.7, 40.4, second);
+    assertEquals(1, enricher.getRepeatedRecords());
+    assertEquals(first[0], second[0], 0);
+    assertEquals(first[1], second[1], 0);
+    // a device moving is recomputed at the same instant
+    enricher.enrich(42, 2455000.6, 3.7, -40.4, second);
+    assertEquals(1, enricher.getRepeatedRecords());
+    assertTrue(Math.abs(first[1] - second[1]) > 1);
+    assertEquals(1, enricher.size());
+  }
+
+  @Test
+  public final void testEvictIdle() {
+    DeviceEnricher enricher = new DeviceEnricher(4, Trigonometry.STANDARD);
+    double[] result = new double[2];
+    for (long id = 0; id < 1000; id++) {
+      enricher.enrich(id, 2455000.5 + (id % 2), 0, 45, result);
+    }
+    assertEquals(1000, enricher.size());
+    assertEquals(500, enricher.evictIdle(2455001));
+    assertEquals(500, enricher.size());
+    for (long id = 0; id < 1000; id++) {
+      assertEquals(id % 2 == 1, enricher.contains(id));
+    }
+    assertEquals(0, enricher.evictIdle(2455001));
+  }
+
+  @Test
+  public final void testMapAgainstReference() {
+    DeviceEnricher enricher = new DeviceEnricher(16, Trigonometry.STANDARD);
+    Map<Long, Double> reference = new HashMap<Long, Double>();
+    Random random = new Random(7);
+    double[] result = new double[2];
+    for (int round = 0; round < 20; round++) {
+      double jd = 2455000.5 + round;
+      for (int i = 0; i < 2000; i++) {
+        // few distinct keys with clustered hashes exercise the deletion
+        long id = random.nextInt(5000) * 1024L;
+        enricher.enrich(id, jd, 0, 10, result);
+        reference.put(id, jd);
+      }
+      double idle = jd - random.nextInt(3);
+      int evicted = 0;
+      Iterator<Double> last = reference.values().iterator();
+      while (last.hasNext()) {
+        if (last.next() < idle) {
+          last.remove();
+          evicted++;
+        }
+      }
+      assertEquals(evicted, enricher.evictIdle(idle));
+      assertEquals(reference.size(), enricher.size());
+      for (Long id : reference.keySet()) {
+        assertTrue(enricher.contains(id));
+      }
+    }
+  }
+
+  @Test
+  public final void testUnsupportedLatitude() {
+    DeviceEnricher enricher = new DeviceEnricher();
+    double[] result = new double[2];
+    enricher.enrich(1, 2455000.5, 0, 40, result);
+    try {
+      enricher.enrich(7, 2455000.5, 0, 91, result);
+      fail("Latitude 91 accepted");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("latitude"));
+    }
+    // neither a new device is registered nor a known one moved
+    assertFalse(enricher.contains(7));
+    assertEquals(1, enricher.size());
+    try {
+      enricher.enrich(1, 2455000.6, 0, Double.NaN, result);
+      fail("Latitude NaN accepted");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("latitude"));
+    }
+    assertTrue(enricher.contains(1));
+    assertEquals(1, enricher.size());
+    enricher.enrich(7, 2455000.5, 0, 40, result);
+    assertEquals(2, enricher.size());
+    assertEquals(2, enricher.evictIdle(2455001.5));
+    assertEquals(0, enricher.size());
+    assertFalse(enricher.contains(7));
+  }
+}
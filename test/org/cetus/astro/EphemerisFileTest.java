@@ -0,0 +1,104 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class EphemerisFileTest {
+
+  @Test
+  public final void testWriteAndMap() throws IOException {
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(2455197.5,
+        2455562.5);
+    Path path = Files.createTempFile("sun", ".eph");
+    try {
+      EphemerisFile.write(ephemeris, path);
+      ChebyshevEphemeris mapped = EphemerisFile.map(path);
+      assertEquals(ephemeris.getStartJd(), mapped.getStartJd(), 0);
+      assertEquals(ephemeris.getSegmentDays(), mapped.getSegmentDays(), 0);
+      assertEquals(ephemeris.getSegmentCount(), mapped.getSegmentCount());
+      assertEquals(ephemeris.getDegree(), mapped.getDegree());
+      assertTrue(mapped.getCoefficients().isDirect());
+      double[] expected = new double[ChebyshevEphemeris.QUANTITIES];
+      double[] actual = new double[ChebyshevEphemeris.QUANTITIES];
+      for (int q = 0; q < ChebyshevEphemeris.QUANTITIES; q++) {
+        assertEquals(ephemeris.getMaxError(q), mapped.getMaxError(q), 0);
+      }
+      for (double jd = 2455197.5; jd <= 2455562.5; jd += 0.37) {
+        ephemeris.evaluate(jd, expected);
+        mapped.evaluate(jd, actual);
+        for (int q = 0; q < ChebyshevEphemeris.QUANTITIES; q++) {
+          assertEquals(expected[q], actual[q], 0);
+        }
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public final void testCorruptedFile() throws IOException {
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(2455197.5,
+        2455207.5);
+    Path path = Files.createTempFile("sun", ".eph");
+    try {
+      EphemerisFile.write(ephemeris, path);
+      try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+        file.seek(file.length() - 3);
+        file.write(0x5a);
+      }
+      try {
+        EphemerisFile.map(path);
+        fail("Corrupted file accepted");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("Checksum"));
+      }
+      // still readable without verification
+      assertEquals(10, EphemerisFile.map(path, false).getSegmentCount());
+      Files.write(path, new byte[EphemerisFile.HEADER_SIZE]);
+      try {
+        EphemerisFile.map(path);
+        fail("Wrong magic number accepted");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("magic"));
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public final void testCorruptedLayout() throws IOException {
+    ChebyshevEphemeris ephemeris = ChebyshevEphemeris.fit(2455197.5,
+        2455207.5);
+    Path path = Files.createTempFile("sun", ".eph");
+    try {
+      // degree and segment count far beyond the size of the file, whose
+      // products overflow
+      int[] offsets = { 20, 40, 20, 40 };
+      int[] values = { Integer.MAX_VALUE, Integer.MAX_VALUE, 1 << 30,
+          -1 };
+      for (int i = 0; i < offsets.length; i++) {
+        EphemerisFile.write(ephemeris, path);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(),
+            "rw")) {
+          file.seek(offsets[i]);
+          file.writeInt(Integer.reverseBytes(values[i]));
+        }
+        try {
+          EphemerisFile.map(path, false);
+          fail("Corrupted layout accepted");
+        } catch (IOException e) {
+          assertTrue(e.getMessage().contains("Inconsistent layout"));
+        }
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+}
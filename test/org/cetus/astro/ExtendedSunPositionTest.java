@@ -0,0 +1,82 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+public class ExtendedSunPositionTest {
+
+  @Test
+  public final void testMeeusExample() {
+    // Meeus, examples 25.a and 28.a: 1992 October 13.0 TD and 1992 November
+    // 3.0 TD (the difference between TD and UT is neglected)
+    ExtendedSunPosition position = new SunPositionAlgorithmLowRes(1992, 10,
+        13, 0, 0, 0, 0, 0).calculateExtendedSunPosition();
+    assertEquals(2448908.5, position.getJD(), 0);
+    assertEquals(198.38083, position.getRightAscension(), 1e-3);
+    assertEquals(-7.78507, position.getDeclination(), 1e-3);
+    assertEquals(278.99397, position.getMeanAnomaly(), 1e-3);
+    assertEquals(277.09664, position.getTrueAnomaly(), 1e-3);
+    assertEquals(0.99766, position.getRadiusVector(), 1e-5);
+    assertEquals(0.99766 * ExtendedSunPosition.ASTRONOMICAL_UNIT, position
+        .getDistance(), 2000);
+    assertEquals(-1.89732, position.getEquationOfCenter(), 1e-4);
+    ExtendedSunPosition november = new SunPositionAlgorithmLowRes(1992, 11,
+        3, 0, 0, 0, 0, 0).calculateExtendedSunPosition();
+    assertEquals(16 + 25.7 / 60, november.getEquationOfTime(), 0.05);
+  }
+
+  @Test
+  public final void testMatchesSunPosition() {
+    Logger root = Logger.getRootLogger();
+    Level level = root.getLevel();
+    root.setLevel(Level.WARN);
+    try {
+      for (int i = 0; i < 100; i++) {
+        int year = 1950 + (i * 7) % 150;
+        int month = 1 + i % 12;
+        int day = 1 + (i * 5) % 28;
+        int hour = (i * 7) % 24;
+        int minute = (i * 13) % 60;
+        double longitude = (i * 37) % 360 - 180;
+        double latitude = (i * 23) % 170 - 85;
+        SunPositionAlgorithmLowRes algorithm = new SunPositionAlgorithmLowRes(
+            year, month, day, hour, minute, 0, longitude, latitude);
+        algorithm.setRatesEnabled(i % 2 == 0);
+        SunPosition position = algorithm.calculateSunPosition();
+        ExtendedSunPosition extended = algorithm
+            .calculateExtendedSunPosition();
+        assertEquals(position.getAzimuth(), extended.getAzimuth(), 1e-9);
+        assertEquals(position.getAltitude(), extended.getAltitude(), 1e-9);
+        assertEquals(position.getAzimuthRate(), extended.getAzimuthRate(),
+            1e-9);
+        assertEquals(position.getAltitudeRate(), extended.getAltitudeRate(),
+            1e-9);
+        double hourAngle = extended.getApparentSiderealTime() - longitude
+            - extended.getRightAscension();
+        assertEquals(0, Math.IEEEremainder(hourAngle
+            - extended.getHourAngle(), 360), 1e-9);
+      }
+    } finally {
+      root.setLevel(level);
+    }
+  }
+
+  @Test
+  public final void testUnsupportedLatitude() {
+    SunPositionAlgorithmLowRes algorithm = new SunPositionAlgorithmLowRes(
+        2012, 6, 21, 12, 0, 0, 0, 95);
+    // rejected the same way with and without rates
+    for (int i = 0; i < 2; i++) {
+      algorithm.setRatesEnabled(i == 0);
+      try {
+        algorithm.calculateExtendedSunPosition();
+        fail("Latitude 95 accepted");
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains("latitude"));
+      }
+    }
+  }
+}
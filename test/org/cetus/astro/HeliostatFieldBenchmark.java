@@ -0,0 +1,70 @@
+package org.cetus.astro;
+
+import java.util.Arrays;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Aiming rate of a field of 12,000 heliostats, with and without the drive
+ * angles. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.HeliostatFieldBenchmark</code>
+ */
+public class HeliostatFieldBenchmark {
+
+  private static final int N = 12000;
+  private static final int TICKS = 2000;
+  private static final double START = 2456282.5;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    double[] x = new double[N];
+    double[] y = new double[N];
+    double[] z = new double[N];
+    for (int i = 0; i < N; i++) {
+      double r = 80 + i % 60 * 12;
+      double a = i * 0.0713;
+      x[i] = r * Math.sin(a);
+      y[i] = r * Math.cos(a);
+      z[i] = 4;
+    }
+    double[] tx = new double[N];
+    double[] ty = new double[N];
+    double[] tz = new double[N];
+    Arrays.fill(tz, 180);
+    HeliostatField[] fields = {
+        new HeliostatField(new Observer(5.3, 37.4), x, y, z, tx, ty, tz),
+        new HeliostatField(new Observer(5.3, 37.4), x, y, z, tx, ty, tz,
+            Trigonometry.FAST) };
+    String[] names = { "standard", "fast" };
+    double[] nx = new double[N];
+    double[] ny = new double[N];
+    double[] nz = new double[N];
+    double[] elevation = new double[N];
+    double[] azimuth = new double[N];
+    for (int f = 0; f < fields.length; f++) {
+      HeliostatField field = fields[f];
+      double normalsNs = 0;
+      double anglesNs = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        // first pass warms up
+        long start = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+          field.aim(START + 0.4 + tick / 17280.0, nx, ny, nz, null, null);
+        }
+        normalsNs = (System.nanoTime() - start) / (double) TICKS;
+        start = System.nanoTime();
+        for (int tick = 0; tick < TICKS; tick++) {
+          field.aim(START + 0.4 + tick / 17280.0, nx, ny, nz, elevation,
+              azimuth);
+        }
+        anglesNs = (System.nanoTime() - start) / (double) TICKS;
+      }
+      System.out.printf("%-8s normals        %8.1f us/tick  %6.2f ns/mirror"
+          + "%n", names[f], normalsNs / 1e3, normalsNs / N);
+      System.out.printf("%-8s normals+angles %8.1f us/tick  %6.2f ns/mirror"
+          + "%n", names[f], anglesNs / 1e3, anglesNs / N);
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class HeliostatFieldTest {
+
+  @Test
+  public final void testNormalsBisectSunAndReceiver() {
+    int n = 2000;
+    double[] x = new double[n];
+    double[] y = new double[n];
+    double[] z = new double[n];
+    for (int i = 0; i < n; i++) {
+      double r = 50 + i % 40 * 15;
+      double a = i * 0.137;
+      x[i] = r * Math.sin(a);
+      y[i] = r * Math.cos(a);
+      z[i] = 5;
+    }
+    Observer site = new Observer(5.3, 37.4);
+    HeliostatField field = new HeliostatField(site, x, y, z, 0, 0, 150);
+    assertEquals(n, field.size());
+    double[] nx = new double[n];
+    double[] ny = new double[n];
+    double[] nz = new double[n];
+    double[] elevation = new double[n];
+    double[] azimuth = new double[n];
+    double jd = 2456282.5 + 0.45;
+    field.aim(jd, nx, ny, nz, elevation, azimuth);
+
+    double[] position = new double[2];
+    new SolarState().update(jd).calculateHorizontal(site, position);
+    double[] sun = new double[3];
+    SunVector.fromHorizontal(position[0], position[1], sun);
+    double[] normal = new double[3];
+    for (int i = 0; i < n; i++) {
+      double tx = -x[i];
+      double ty = -y[i];
+      double tz = 150 - z[i];
+      double norm = Math.sqrt(tx * tx + ty * ty + tz * tz);
+      tx /= norm;
+      ty /= norm;
+      tz /= norm;
+      assertEquals(1, nx[i] * nx[i] + ny[i] * ny[i] + nz[i] * nz[i], 1e-12);
+      // equal angles to the sun and to the receiver
+      double toSun = nx[i] * sun[0] + ny[i] * sun[1] + nz[i] * sun[2];
+      double toTarget = nx[i] * tx + ny[i] * ty + nz[i] * tz;
+      assertEquals(toSun, toTarget, 1e-12);
+      // the reflected sun hits the receiver
+      assertEquals(tx, 2 * toSun * nx[i] - sun[0], 1e-12);
+      assertEquals(ty, 2 * toSun * ny[i] - sun[1], 1e-12);
+      assertEquals(tz, 2 * toSun * nz[i] - sun[2], 1e-12);
+      SunVector.fromHorizontal(azimuth[i], elevation[i], normal);
+      assertEquals(nx[i], normal[0], 1e-12);
+      assertEquals(ny[i], normal[1], 1e-12);
+      assertEquals(nz[i], normal[2], 1e-12);
+    }
+  }
+
+  @Test
+  public final void testFastDriveAngles() {
+    int n = 500;
+    double[] x = new double[n];
+    double[] y = new double[n];
+    double[] z = new double[n];
+    double[] target = new double[n];
+    double[] receiver = new double[n];
+    Arrays.fill(receiver, 120);
+    for (int i = 0; i < n; i++) {
+      x[i] = (i % 25) * 20 - 240;
+      y[i] = (i / 25) * 20 - 190;
+    }
+    Observer site = new Observer(-110.2, 33.1);
+    HeliostatField exact = new HeliostatField(site, x, y, z, target, target,
+        receiver);
+    HeliostatField fast = new HeliostatField(site, x, y, z, target, target,
+        receiver, Trigonometry.FAST);
+    double[] nx = new double[n];
+    double[] ny = new double[n];
+    double[] nz = new double[n];
+    double[] elevation = new double[n];
+    double[] azimuth = new double[n];
+    double[] fastElevation = new double[n];
+    double[] fastAzimuth = new double[n];
+    for (double jd = 2456282.7; jd < 2456283.2; jd += 0.05) {
+      exact.aim(jd, nx, ny, nz, elevation, azimuth);
+      fast.aim(jd, nx, ny, nz, fastElevation, fastAzimuth);
+      for (int i = 0; i < n; i++) {
+        // the position of the sun itself differs by up to 1e-5 degrees
+        assertEquals(elevation[i], fastElevation[i], 5e-5);
+        assertEquals(0, Math.IEEEremainder(azimuth[i] - fastAzimuth[i], 360),
+            5e-5);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testHeliostatAtTarget() {
+    new HeliostatField(new Observer(0, 0), new double[] { 1 },
+        new double[] { 2 }, new double[] { 3 }, 1, 2, 3);
+  }
+
+  @Test
+  public final void testShortOutputArrays() {
+    HeliostatField field = new HeliostatField(new Observer(0, 0),
+        new double[] { 10, 20, 30 }, new double[3], new double[3], 0, 0, 50);
+    double[] nx = new double[3];
+    double[] ny = new double[3];
+    double[] nz = new double[3];
+    try {
+      field.aim(0, 45, nx, ny, nz, null, new double[2]);
+      fail("Short azimuth array accepted");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("3 heliostats"));
+    }
+    // nothing written before failing
+    assertEquals(0, nx[0], 0);
+    try {
+      field.aim(2455000.5, nx, ny, new double[1], null, null);
+      fail("Short normal array accepted");
+    } catch (IllegalArgumentException e) {
+      assertTrue(e.getMessage().contains("3 heliostats"));
+    }
+    assertEquals(0, nx[0], 0);
+  }
+}
@@ -0,0 +1,134 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+
+public class PlaneOfArrayTest {
+
+  @Test
+  public final void testFixedSurfaces() {
+    int n = 1000;
+    double[] tilt = new double[n];
+    double[] surfaceAzimuth = new double[n];
+    double[] azimuth = new double[n];
+    double[] altitude = new double[n];
+    for (int i = 0; i < n; i++) {
+      tilt[i] = (i * 7) % 91;
+      surfaceAzimuth[i] = (i * 37) % 360 - 180;
+      azimuth[i] = (i * 53) % 360 - 180;
+      altitude[i] = (i * 11) % 180 - 90;
+    }
+    FixedSurfaces surfaces = new FixedSurfaces(tilt, surfaceAzimuth);
+    double[] cosIncidence = new double[n];
+    // small blocks, so that they are processed in parallel
+    new PlaneOfArray(ForkJoinPool.commonPool(), 7).calculateIncidence(
+        surfaces, azimuth, altitude, cosIncidence);
+    double[] single = new double[n];
+    new PlaneOfArray().calculateIncidence(surfaces, azimuth[3], altitude[3],
+        single);
+    for (int i = 0; i < n; i++) {
+      double t = Math.toRadians(tilt[i]);
+      double h = Math.toRadians(altitude[i]);
+      double expected = Math.cos(t) * Math.sin(h) + Math.sin(t)
+          * Math.cos(h)
+          * Math.cos(Math.toRadians(azimuth[i] - surfaceAzimuth[i]));
+      assertEquals(expected, cosIncidence[i], 1e-12);
+      h = Math.toRadians(altitude[3]);
+      expected = Math.cos(t) * Math.sin(h) + Math.sin(t) * Math.cos(h)
+          * Math.cos(Math.toRadians(azimuth[3] - surfaceAzimuth[i]));
+      assertEquals(expected, single[i], 1e-12);
+    }
+  }
+
+  @Test
+  public final void testIdealTracking() {
+    // horizontal north-south axes without limits nor backtracking, and
+    // tilted axes, which must face the projection of the sun
+    int n = 500;
+    double[] axisTilt = new double[n];
+    double[] axisAzimuth = new double[n];
+    double[] maxAngle = new double[n];
+    double[] azimuth = new double[n];
+    double[] altitude = new double[n];
+    for (int i = 0; i < n; i++) {
+      axisTilt[i] = i % 2 == 0 ? 0 : (i * 3) % 40;
+      axisAzimuth[i] = i % 2 == 0 ? 180 : (i * 37) % 360 - 180;
+      maxAngle[i] = 180;
+      azimuth[i] = (i * 53) % 360 - 180;
+      altitude[i] = 1 + (i * 11) % 89;
+    }
+    SingleAxisTrackers trackers = new SingleAxisTrackers(axisTilt,
+        axisAzimuth, maxAngle, new double[n]);
+    double[] rotation = new double[n];
+    double[] cosIncidence = new double[n];
+    new PlaneOfArray(ForkJoinPool.commonPool(), 16).calculateTracking(
+        trackers, azimuth, altitude, rotation, cosIncidence);
+    double[] sun = new double[3];
+    double[] axis = new double[3];
+    for (int i = 0; i < n; i++) {
+      SunVector.fromHorizontal(azimuth[i], altitude[i], sun);
+      SunVector.fromHorizontal(axisAzimuth[i], axisTilt[i], axis);
+      double along = sun[0] * axis[0] + sun[1] * axis[1] + sun[2] * axis[2];
+      assertEquals(Math.sqrt(1 - along * along), cosIncidence[i], 1e-9);
+      if (i % 2 == 0) {
+        double a = Math.toRadians(azimuth[i]);
+        double h = Math.toRadians(altitude[i]);
+        assertEquals(Math.toDegrees(Math.atan2(Math.cos(h) * Math.sin(a),
+            Math.sin(h))), rotation[i], 1e-9);
+      }
+    }
+  }
+
+  @Test
+  public final void testBacktracking() {
+    int n = 360;
+    double gcr = 0.4;
+    double[] axisTilt = new double[n];
+    double[] axisAzimuth = new double[n];
+    double[] maxAngle = new double[n];
+    double[] groundCoverage = new double[n];
+    double[] azimuth = new double[n];
+    double[] altitude = new double[n];
+    for (int i = 0; i < n; i++) {
+      axisAzimuth[i] = 180;
+      maxAngle[i] = i % 3 == 0 ? 50 : 90;
+      groundCoverage[i] = gcr;
+      azimuth[i] = i % 2 == 0 ? 90 : -90;
+      altitude[i] = i / 2.0 - 5;
+    }
+    SingleAxisTrackers trackers = new SingleAxisTrackers(axisTilt,
+        axisAzimuth, maxAngle, groundCoverage);
+    double[] rotation = new double[n];
+    double[] cosIncidence = new double[n];
+    new PlaneOfArray().calculateTracking(trackers, azimuth, altitude,
+        rotation, cosIncidence);
+    for (int i = 0; i < n; i++) {
+      assertTrue(Math.abs(rotation[i]) <= maxAngle[i]);
+      if (altitude[i] <= 0) {
+        assertEquals(0, rotation[i], 0);
+        continue;
+      }
+      // sun due east or west: the ideal rotation is the zenith angle
+      double ideal = Math.signum(azimuth[i]) * (90 - altitude[i]);
+      assertTrue(Math.abs(rotation[i]) <= Math.abs(ideal) + 1e-9);
+      double shading = Math.cos(Math.toRadians(ideal)) / gcr;
+      if (shading < 1 && Math.abs(rotation[i]) < maxAngle[i]) {
+        // the shadow of a row ends right at the next one
+        assertEquals(shading, Math.cos(Math.toRadians(ideal - rotation[i])),
+            1e-9);
+      } else if (shading >= 1) {
+        assertEquals(Math.max(-maxAngle[i], Math.min(maxAngle[i], ideal)),
+            rotation[i], 1e-9);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testMismatchedArrays() {
+    new PlaneOfArray().calculateIncidence(new FixedSurfaces(new double[2],
+        new double[2]), new double[2], new double[3], new double[2]);
+  }
+}
@@ -0,0 +1,57 @@
+package org.cetus.astro;
+
+/**
+ * Throughput of the refraction table against an instance of
+ * {@link AtmosphericRefraction} per sample, for a year of 10 minute weather
+ * samples. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.RefractionTableBenchmark</code>
+ */
+public class RefractionTableBenchmark {
+
+  private static final int N = 52560;
+  private static final int ROUNDS = 50;
+
+  public static void main(String[] args) {
+    double[] altitude = new double[N];
+    double[] pressure = new double[N];
+    double[] temperature = new double[N];
+    for (int i = 0; i < N; i++) {
+      altitude[i] = 60 * Math.sin(i * 2 * Math.PI / 144) - 10;
+      pressure[i] = 1000 + 20 * Math.sin(i * 0.001);
+      temperature[i] = 283 + 15 * Math.sin(i * 2 * Math.PI / 144 - 1);
+    }
+    double[] result = new double[N];
+    double formulaNs = 0;
+    double tableNs = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      // first pass warms up
+      formulaNs = runFormula(altitude, pressure, temperature, result);
+      tableNs = runTable(altitude, pressure, temperature, result);
+    }
+    System.out.printf("formula %8.2f ns/sample%n", formulaNs);
+    System.out.printf("table   %8.2f ns/sample  x%.2f%n", tableNs, formulaNs
+        / tableNs);
+  }
+
+  private static double runFormula(double[] altitude, double[] pressure,
+      double[] temperature, double[] result) {
+    long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < N; i++) {
+        result[i] = new AtmosphericRefraction(altitude[i], pressure[i],
+            temperature[i]).getApparentAltitude();
+      }
+    }
+    return (System.nanoTime() - start) / ((double) ROUNDS * N);
+  }
+
+  private static double runTable(double[] altitude, double[] pressure,
+      double[] temperature, double[] result) {
+    long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      RefractionTable.DEFAULT.calculateApparentAltitudes(altitude, pressure,
+          temperature, result);
+    }
+    return (System.nanoTime() - start) / ((double) ROUNDS * N);
+  }
+}
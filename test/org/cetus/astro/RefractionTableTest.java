@@ -0,0 +1,92 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class RefractionTableTest {
+
+  @Test
+  public final void testMatchesFormula() {
+    RefractionTable table = RefractionTable.DEFAULT;
+    double maxError = 0;
+    for (double altitude = RefractionTable.CUTOFF_ALTITUDE; altitude <= 90;
+        altitude += 0.00731) {
+      double expected = AtmosphericRefraction.calculateRefraction(altitude,
+          1010, 283, Trigonometry.STANDARD);
+      maxError = Math.max(maxError, Math.abs(expected
+          - table.calculateRefraction(altitude)));
+    }
+    assertTrue("Max error " + maxError + " arcmin", maxError < 1e-6);
+    assertEquals(new AtmosphericRefraction(12.3, 950, 300).getRefraction(),
+        table.calculateRefraction(12.3, 950, 300), 1e-6);
+    assertEquals(new AtmosphericRefraction(12.3, 950, 300)
+        .getApparentAltitude(), table.calculateApparentAltitude(12.3, 950,
+        300), 1e-8);
+  }
+
+  @Test
+  public final void testBelowHorizon() {
+    RefractionTable table = RefractionTable.DEFAULT;
+    double previous = Double.NEGATIVE_INFINITY;
+    for (double altitude = -10; altitude <= 5; altitude += 0.001) {
+      double refraction = table.calculateRefraction(altitude);
+      assertTrue(refraction >= 0 && refraction < 60);
+      double apparent = table.calculateApparentAltitude(altitude, 1010, 283);
+      assertTrue(apparent > previous);
+      previous = apparent;
+    }
+    assertEquals(0, table.calculateRefraction(-5), 0);
+    assertEquals(0, table.calculateRefraction(-90), 0);
+    assertEquals(table.calculateRefraction(-1), table
+        .calculateRefraction(-1 - 1e-12), 1e-9);
+  }
+
+  @Test
+  public final void testMaxRefractionRate() {
+    RefractionTable table = RefractionTable.DEFAULT;
+    double rate = table.getMaxRefractionRate();
+    double maxRate = Double.NEGATIVE_INFINITY;
+    double h = 1e-4;
+    for (double altitude = -10; altitude <= 90; altitude += 0.0013) {
+      maxRate = Math.max(maxRate, (table.calculateRefraction(altitude + h)
+          - table.calculateRefraction(altitude)) / h);
+    }
+    // the taper makes the apparent altitude rise faster than the true one
+    assertTrue(rate > 0);
+    assertTrue(maxRate <= rate + 1e-6);
+    assertEquals(rate, maxRate, 1e-6);
+  }
+
+  @Test
+  public final void testBatch() {
+    int n = 1000;
+    double[] altitude = new double[n];
+    double[] pressure = new double[n];
+    double[] temperature = new double[n];
+    for (int i = 0; i < n; i++) {
+      altitude[i] = -8 + i * 0.1;
+      pressure[i] = 900 + i % 150;
+      temperature[i] = 250 + i % 60;
+    }
+    RefractionTable table = new RefractionTable(0.1);
+    double[] result = new double[n];
+    table.calculateApparentAltitudes(altitude, pressure, temperature, result);
+    for (int i = 0; i < n; i++) {
+      assertEquals(table.calculateApparentAltitude(altitude[i], pressure[i],
+          temperature[i]), result[i], 1e-12);
+    }
+    table.calculateApparentAltitudes(altitude, 1010, 283, altitude);
+    for (int i = 0; i < n; i++) {
+      assertEquals(-8 + i * 0.1 + table.calculateRefraction(-8 + i * 0.1)
+          / 60, altitude[i], 1e-12);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testMismatchedWeather() {
+    RefractionTable.DEFAULT.calculateApparentAltitudes(new double[2],
+        new double[1], new double[2], new double[2]);
+  }
+}
@@ -0,0 +1,60 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class SolarStateTest {
+
+  @Test
+  public final void testEquatorialRates() {
+    SolarState state = new SolarState(Trigonometry.STANDARD);
+    double h = 0.01;
+    for (double jd = 2433282.5; jd < 2488069.5; jd += 97.3) {
+      state.update(jd + h);
+      double ra1 = state.getRightAscension();
+      double dec1 = state.getDeclination();
+      double ha1 = state.calculateHourAngle(0);
+      state.update(jd - h);
+      double ra0 = state.getRightAscension();
+      double dec0 = state.getDeclination();
+      double ha0 = state.calculateHourAngle(0);
+      state.update(jd);
+      assertEquals(Math.IEEEremainder(ra1 - ra0, 360) / (2 * h), state
+          .getRightAscensionRate(), 1e-4);
+      assertEquals((dec1 - dec0) / (2 * h), state.getDeclinationRate(), 1e-4);
+      assertEquals(Math.IEEEremainder(ha1 - ha0, 360) / (2 * h), state
+          .getHourAngleRate(), 1e-4);
+    }
+  }
+
+  @Test
+  public final void testHorizontalRates() {
+    SolarState state = new SolarState(Trigonometry.STANDARD);
+    double[] position = new double[4];
+    double[] before = new double[4];
+    double[] after = new double[4];
+    double h = 1e-4;
+    int checked = 0;
+    for (int i = 0; i < 2000; i++) {
+      double jd = 2451545.0 + i * 3.771;
+      Observer observer = new Observer((i * 37) % 360 - 180,
+          (i * 23) % 170 - 85);
+      state.update(jd).calculateHorizontalWithRates(observer, position);
+      if (position[1] < 2 || position[1] > 85) {
+        continue;
+      }
+      state.update(jd - h).calculateHorizontalWithRates(observer, before);
+      state.update(jd + h).calculateHorizontalWithRates(observer, after);
+      double azimuthRate = Math.IEEEremainder(after[0] - before[0], 360)
+          / (2 * h);
+      double altitudeRate = (after[1] - before[1]) / (2 * h);
+      assertEquals(azimuthRate, position[2], 1e-4 * Math.max(100, Math
+          .abs(azimuthRate)));
+      assertEquals(altitudeRate, position[3], 1e-2);
+      checked++;
+    }
+    assertTrue(checked > 500);
+  }
+}
@@ -0,0 +1,82 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class SolarTimeTest {
+
+  @Test
+  public final void testEquationOfTime() {
+    // Meeus, example 28.b: 1992 November 3, +16m 25.7s (TD neglected)
+    SolarTime solarTime = new SolarTime();
+    assertEquals(16 + 25.7 / 60, solarTime.calculateEquationOfTime(2448929.5),
+        0.05);
+    // interpolation between days against the exact value
+    SolarState state = new SolarState();
+    double maxError = 0;
+    for (double jd = 2451545.0; jd < 2451545.0 + 730; jd += 0.137) {
+      maxError = Math.max(maxError, Math.abs(solarTime
+          .calculateEquationOfTime(jd)
+          - state.update(jd).calculateEquationOfTime()));
+    }
+    // below 0.15 seconds
+    assertTrue("Max error " + maxError + " minutes", maxError < 0.15 / 60);
+  }
+
+  @Test
+  public final void testTrueSolarTimeMatchesHourAngle() {
+    SolarTime solarTime = new SolarTime();
+    SolarState state = new SolarState();
+    int n = 5000;
+    double[] jd = new double[n];
+    long[] millis = new long[n];
+    for (int i = 0; i < n; i++) {
+      millis[i] = -631152000000L + i * 1234567891L;
+      jd[i] = 2440587.5 + millis[i] / 86400000.0;
+    }
+    double longitude = -123.4;
+    double[] fromJd = new double[n];
+    double[] fromMillis = new double[n];
+    solarTime.calculateTrueSolarTime(jd, longitude, fromJd);
+    solarTime.calculateTrueSolarTime(millis, longitude, fromMillis);
+    for (int i = 0; i < n; i++) {
+      double expected = state.update(jd[i]).calculateHourAngle(longitude)
+          / 15 + 12;
+      // within one second, either side of midnight
+      assertEquals(0, Math.IEEEremainder(expected - fromJd[i], 24),
+          1.0 / 3600);
+      assertEquals(fromJd[i], fromMillis[i], 1e-6);
+      assertTrue(fromMillis[i] >= 0 && fromMillis[i] < 24);
+    }
+  }
+
+  @Test
+  public final void testSolarNoonMatchesTransit() {
+    SolarTime solarTime = new SolarTime();
+    SunEventSolver solver = new SunEventSolver();
+    for (int i = 0; i < 200; i++) {
+      double jd = 2451545.0 + i * 37.3;
+      double longitude = (i * 37) % 360 - 180;
+      Observer observer = new Observer(longitude, 0);
+      double noon = solarTime.calculateSolarNoon(jd, longitude);
+      double transit = solver.calculate(observer, noon, 0).getTransit();
+      assertEquals(transit, noon, 1.0 / 86400);
+      assertEquals(12, solarTime.calculateTrueSolarTime(noon, longitude),
+          1.0 / 3600);
+    }
+  }
+
+  @Test
+  public final void testCache() {
+    SolarTime solarTime = new SolarTime(4, Trigonometry.STANDARD);
+    long[] millis = new long[100000];
+    for (int i = 0; i < millis.length; i++) {
+      millis[i] = 1356048000000L + i * 60000L;
+    }
+    solarTime.calculateTrueSolarTime(millis, -10, new double[millis.length]);
+    // 70 days and the one following the last
+    assertEquals(71, solarTime.getCalculatedDays());
+  }
+}
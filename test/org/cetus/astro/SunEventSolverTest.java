@@ -0,0 +1,105 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SunEventSolverTest {
+
+  private static final double SECOND = 1.0 / 86400;
+
+  @Test
+  public final void testCalculateAgainstSampling() {
+    Observer[] observers = { new Observer(3.7, 40.4),
+        new Observer(-151.2, -33.9), new Observer(78.5, 0.2),
+        new Observer(-18.9, 69.6), new Observer(-15.6, 78.2),
+        new Observer(166.7, -77.8), new Observer(179.5, 51.0) };
+    double[] altitudes = { SunEventSolver.SUNRISE,
+        SunEventSolver.CIVIL_TWILIGHT, SunEventSolver.ASTRONOMICAL_TWILIGHT,
+        20 };
+    SunEventSolver solver = new SunEventSolver();
+    for (Observer observer : observers) {
+      for (double altitude : altitudes) {
+        for (double day = 2456293.5; day < 2456293.5 + 365; day += 23) {
+          SunEvents events = solver.calculate(observer, day + 0.3, altitude);
+          assertTrue(events.getTransit() > day - 0.01
+              && events.getTransit() < day + 1.01);
+          assertEquals(0, Math.IEEEremainder(new SolarState().update(
+              events.getTransit()).calculateHourAngle(
+              observer.getLongitude()), 360), 1e-4);
+          assertEquals(scan(observer, events.getTransit() - 0.5, events
+              .getTransit(), altitude), events.getRise(), SECOND);
+          assertEquals(scan(observer, events.getTransit(), events
+              .getTransit() + 0.5, altitude), events.getSet(), SECOND);
+        }
+      }
+    }
+  }
+
+  @Test
+  public final void testPolarDayAndNight() {
+    SunEventSolver solver = new SunEventSolver();
+    Observer svalbard = new Observer(-15.6, 78.2);
+    SunEvents summer = solver.calculate(svalbard, 2456464.5,
+        SunEventSolver.SUNRISE);
+    assertTrue(summer.isAlwaysAbove());
+    assertFalse(summer.isAlwaysBelow());
+    assertFalse(summer.hasRise() || summer.hasSet());
+    SunEvents winter = solver.calculate(svalbard, 2456647.5,
+        SunEventSolver.SUNRISE);
+    assertTrue(winter.isAlwaysBelow());
+    assertFalse(winter.isAlwaysAbove());
+    assertFalse(winter.hasRise() || winter.hasSet());
+    SunEvents twilight = solver.calculate(svalbard, 2456647.5,
+        SunEventSolver.ASTRONOMICAL_TWILIGHT);
+    assertTrue(twilight.hasRise() && twilight.hasSet());
+  }
+
+  @Test
+  public final void testFewEvaluations() {
+    SunEventSolver solver = new SunEventSolver();
+    Observer observer = new Observer(3.7, 40.4);
+    for (int i = 0; i < 100; i++) {
+      solver.calculate(observer, 2456293.5 + i, SunEventSolver.SUNRISE);
+    }
+    assertTrue(solver.getEvaluations() < 100 * 25);
+  }
+
+  /**
+   * Finds the crossing of the altitude within [a, b] sampling every 10
+   * seconds and bisecting, NaN if there is none
+   */
+  private static double scan(Observer observer, double a, double b,
+      double altitude) {
+    double step = 10 * SECOND;
+    double fa = geometricAltitude(observer, a) - altitude;
+    for (double t = a + step; t < b + step; t += step) {
+      double u = Math.min(t, b);
+      double fu = geometricAltitude(observer, u) - altitude;
+      if ((fa <= 0) != (fu <= 0)) {
+        double lo = u - step;
+        double hi = u;
+        while (hi - lo > 1e-8) {
+          double mid = (lo + hi) / 2;
+          if ((geometricAltitude(observer, mid) - altitude <= 0) == (fa <= 0)) {
+            lo = mid;
+          } else {
+            hi = mid;
+          }
+        }
+        return (lo + hi) / 2;
+      }
+      fa = fu;
+    }
+    return Double.NaN;
+  }
+
+  private static double geometricAltitude(Observer observer, double jd) {
+    SolarState state = new SolarState().update(jd);
+    double h = Math.toRadians(state.calculateHourAngle(observer
+        .getLongitude()));
+    return Math.toDegrees(Math.asin(observer.getSinLatitude()
+        * state.getSinDeclination() + observer.getCosLatitude()
+        * state.getCosDeclination() * Math.cos(h)));
+  }
+}
@@ -0,0 +1,72 @@
+package org.cetus.astro;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Throughput of a global grid of 0.05 degrees, extrapolated to a grid of 0.01
+ * degrees. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.SunGridBenchmark</code>
+ */
+public class SunGridBenchmark {
+
+  private static final double STEP = 0.05;
+  private static final int ROUNDS = 5;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    int columns = (int) Math.round(360 / STEP);
+    int rows = (int) Math.round(180 / STEP);
+    double[] lon = new double[columns];
+    double[] lat = new double[rows];
+    for (int c = 0; c < columns; c++) {
+      lon[c] = -180 + (c + 0.5) * STEP;
+    }
+    for (int r = 0; r < rows; r++) {
+      lat[r] = 90 - (r + 0.5) * STEP;
+    }
+    float[] values = new float[columns * rows];
+    float[] azimuth = new float[columns * rows];
+    System.out.printf("%d x %d cells, %d threads%n", rows, columns,
+        ForkJoinPool.commonPool().getParallelism());
+    for (Trigonometry trig : new Trigonometry[] { Trigonometry.STANDARD,
+        Trigonometry.FAST }) {
+      SunGrid grid = new SunGrid(lon, lat, trig, ForkJoinPool.commonPool(),
+          SunGrid.DEFAULT_BLOCK_SIZE);
+      double sinNs = 0;
+      double altNs = 0;
+      double horizontalNs = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        // first pass warms up
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+          grid.calculateSinAltitudes(2455197.5 + i * 0.1, values);
+        }
+        sinNs = (System.nanoTime() - start) / ((double) ROUNDS * grid.size());
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+          grid.calculateHorizontal(2455197.5 + i * 0.1, values, null);
+        }
+        altNs = (System.nanoTime() - start) / ((double) ROUNDS * grid.size());
+        start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+          grid.calculateHorizontal(2455197.5 + i * 0.1, values, azimuth);
+        }
+        horizontalNs = (System.nanoTime() - start)
+            / ((double) ROUNDS * grid.size());
+      }
+      // cells of a global grid of 0.01 degrees
+      double cells = 36000.0 * 18000;
+      System.out.println(trig == Trigonometry.FAST ? "fast" : "standard");
+      System.out.printf("  sin(alt)  %6.2f ns/cell, %6.2f s per 0.01 frame%n",
+          sinNs, sinNs * cells / 1e9);
+      System.out.printf("  alt       %6.2f ns/cell, %6.2f s per 0.01 frame%n",
+          altNs, altNs * cells / 1e9);
+      System.out.printf("  alt + az  %6.2f ns/cell, %6.2f s per 0.01 frame%n",
+          horizontalNs, horizontalNs * cells / 1e9);
+    }
+  }
+}
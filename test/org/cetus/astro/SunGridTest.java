@@ -0,0 +1,74 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class SunGridTest {
+
+  private static double[] range(double first, double step, int n) {
+    double[] values = new double[n];
+    for (int i = 0; i < n; i++) {
+      values[i] = first + i * step;
+    }
+    return values;
+  }
+
+  @Test
+  public final void testMatchesSolarState() {
+    double[] lon = range(-179.5, 7, 52);
+    double[] lat = range(-89.5, 4.5, 40);
+    // small blocks, so that rows are split across tasks
+    SunGrid grid = new SunGrid(lon, lat, Trigonometry.STANDARD,
+        ForkJoinPool.commonPool(), 100);
+    assertEquals(52 * 40, grid.size());
+    double jd = 2455197.5 + 0.37;
+    float[] sinAltitude = new float[grid.size()];
+    float[] altitude = new float[grid.size()];
+    float[] azimuth = new float[grid.size()];
+    grid.calculateSinAltitudes(jd, sinAltitude);
+    grid.calculateHorizontal(jd, altitude, azimuth);
+
+    SolarState state = new SolarState().update(jd);
+    double[] geometric = new double[2];
+    double[] apparent = new double[2];
+    for (int r = 0; r < lat.length; r++) {
+      for (int c = 0; c < lon.length; c++) {
+        int i = r * lon.length + c;
+        state.calculateGeometricHorizontal(new Observer(lon[c], lat[r]),
+            geometric);
+        state.calculateHorizontal(lon[c], lat[r], apparent);
+        assertEquals(Math.sin(Math.toRadians(geometric[1])), sinAltitude[i],
+            1e-6);
+        double error = Math.abs(geometric[0] - azimuth[i]);
+        assertTrue(Math.min(error, 360 - error) < 1e-4);
+        // the refraction table tapers differently below -1 degree
+        if (geometric[1] > -1) {
+          assertEquals(apparent[1], altitude[i], 1e-4);
+        }
+      }
+    }
+  }
+
+  @Test
+  public final void testWithoutAzimuth() {
+    SunGrid grid = new SunGrid(new double[] { 0 }, new double[] { 51.5 });
+    float[] altitude = new float[1];
+    grid.calculateHorizontal(2455197.5 + 0.5, altitude, null);
+    assertEquals(15.5, altitude[0], 0.5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testArrayTooSmall() {
+    SunGrid grid = new SunGrid(new double[10], new double[10]);
+    grid.calculateSinAltitudes(2455197.5, new float[99]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupportedLatitude() {
+    new SunGrid(new double[1], new double[] { 90.5 });
+  }
+}
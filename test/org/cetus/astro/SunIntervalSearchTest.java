@@ -0,0 +1,117 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class SunIntervalSearchTest {
+
+  private static final double SECOND = 1.0 / 86400;
+
+  @Test
+  public final void testFindAgainstSampling() {
+    Observer[] observers = { new Observer(3.7, 40.4),
+        new Observer(-151.2, -33.9), new Observer(-18.9, 69.6),
+        new Observer(-78.5, 20.0) };
+    SunPredicate[] predicates = {
+        SunPredicate.and(SunPredicate.altitudeBetween(5, 20), SunPredicate
+            .azimuthBetween(60, 100)),
+        SunPredicate.altitudeAbove(30),
+        SunPredicate.or(SunPredicate.azimuthBetween(170, -170), SunPredicate
+            .altitudeBelow(-12)),
+        SunPredicate.altitudeBetween(0, 10).negate() };
+    double start = 2461406.5;
+    double end = start + 20;
+    for (Observer observer : observers) {
+      for (SunPredicate predicate : predicates) {
+        SunIntervalSearch search = new SunIntervalSearch(observer);
+        List<TimeInterval> intervals = search.find(predicate, start, end);
+        assertAgainstSampling(observer, predicate, start, end, intervals);
+        // cost driven by the boundaries, far below the resolution sampling
+        assertTrue(search.getEvaluations() < 20 * 86400 / 100);
+      }
+    }
+  }
+
+  @Test
+  public final void testFindNearZenith() {
+    // equator at the equinox and tropic at the solstice, where the sun
+    // culminates at the zenith and the azimuth swings at noon
+    Observer[] observers = { new Observer(3.7, 0), new Observer(-78.5, 23.4) };
+    double[] starts = { 2461114.5, 2461207.5 };
+    SunPredicate[] predicates = {
+        SunPredicate.azimuthBetween(-10, 10),
+        SunPredicate.and(SunPredicate.altitudeBetween(5, 20), SunPredicate
+            .azimuthBetween(60, 100)) };
+    for (int i = 0; i < observers.length; i++) {
+      for (SunPredicate predicate : predicates) {
+        SunIntervalSearch search = new SunIntervalSearch(observers[i]);
+        List<TimeInterval> intervals = search.find(predicate, starts[i],
+            starts[i] + 10);
+        assertAgainstSampling(observers[i], predicate, starts[i],
+            starts[i] + 10, intervals);
+        // the azimuth bound only tightens for the minutes around the zenith
+        assertTrue(search.getEvaluations() < 10 * 200);
+      }
+    }
+  }
+
+  @Test
+  public final void testAzimuthRangeAcrossNorth() {
+    SunPredicate north = SunPredicate.azimuthBetween(150, -150);
+    assertTrue(north.test(180, 0));
+    assertTrue(north.test(-160, 0));
+    assertFalse(north.test(0, 0));
+    assertEquals(-10, north.margin(-140, 0), 1e-9);
+    assertEquals(20, north.margin(170, 0), 1e-9);
+  }
+
+  private static void assertAgainstSampling(Observer observer,
+      SunPredicate predicate, double start, double end,
+      List<TimeInterval> intervals) {
+    // every 30 seconds sample must agree, far enough from the boundaries
+    SolarState state = new SolarState();
+    double[] position = new double[2];
+    int index = 0;
+    for (double t = start; t <= end; t += 30 * SECOND) {
+      while (index < intervals.size()
+          && intervals.get(index).getEnd() < t - 2 * SECOND) {
+        index++;
+      }
+      state.update(t).calculateGeometricHorizontal(observer, position);
+      boolean holds = predicate.test(position[0], position[1]);
+      boolean found = index < intervals.size()
+          && intervals.get(index).getStart() <= t + 2 * SECOND;
+      if (holds != found) {
+        // only tolerated next to a boundary
+        TimeInterval interval = intervals.get(Math.min(index, intervals
+            .size() - 1));
+        assertTrue(Math.min(Math.abs(interval.getStart() - t), Math
+            .abs(interval.getEnd() - t)) <= 2 * SECOND);
+      }
+    }
+    // boundaries are refined within the resolution
+    for (TimeInterval interval : intervals) {
+      assertTrue(interval.getEnd() >= interval.getStart());
+      if (interval.getStart() > start) {
+        assertBoundary(observer, predicate, interval.getStart());
+      }
+      if (interval.getEnd() < end) {
+        assertBoundary(observer, predicate, interval.getEnd());
+      }
+    }
+  }
+
+  private static void assertBoundary(Observer observer,
+      SunPredicate predicate, double t) {
+    SolarState state = new SolarState();
+    double[] position = new double[2];
+    state.update(t - SECOND).calculateGeometricHorizontal(observer, position);
+    boolean before = predicate.test(position[0], position[1]);
+    state.update(t + SECOND).calculateGeometricHorizontal(observer, position);
+    boolean after = predicate.test(position[0], position[1]);
+    assertTrue(before != after);
+  }
+}
@@ -4,6 +4,8 @@ import static org.junit.Assert.*;
 
 import java.util.TimeZone;
 
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
 import org.junit.Test;
 
 public class SunPositionAlgorithmLowResTest {
@@ -18,4 +20,103 @@ public class SunPositionAlgorithmLowResTest {
     assertEquals(183.77, position.getAzimuth(), 0.0);
   }
 
+  @Test
+  public final void testFastMathAccuracy() {
+    // sweep dates from 1950 to 2100 and all latitudes, comparing the fast math
+    // mode against full precision by the angular separation of both positions.
+    // Below -1 degree the refraction formula nears its singularity, where any
+    // rounding difference is amplified, so only the azimuths are compared
+    Logger root = Logger.getRootLogger();
+    Level level = root.getLevel();
+    root.setLevel(Level.WARN);
+    try {
+      double maxError = 0;
+      int i = 0;
+      for (int year = 1950; year <= 2100; year++) {
+        for (int month = 1; month <= 12; month++) {
+          for (int day = 1; day <= 28; day += 9) {
+            int hour = (i * 7) % 24;
+            int minute = (i * 13) % 60;
+            double longitude = (i * 37) % 360 - 180;
+            for (int lat = -90; lat <= 90; lat += 15) {
+              SunPositionAlgorithmLowRes algorithm = new SunPositionAlgorithmLowRes(
+                  year, month, day, hour, minute, 0, longitude, lat);
+              SunPosition exact = algorithm.calculateSunPosition();
+              algorithm.setFastMath(true);
+              assertTrue(algorithm.isFastMath());
+              SunPosition fast = algorithm.calculateSunPosition();
+              if (exact.getAltitude() < -1) {
+                fast.setAltitude(exact.getAltitude());
+              }
+              maxError = Math.max(maxError, separation(exact, fast));
+            }
+            i++;
+          }
+        }
+      }
+      // well inside the 0.01 degree accuracy of the algorithm
+      assertTrue("Max error " + maxError + " degrees", maxError < 1e-5);
+    } finally {
+      root.setLevel(level);
+    }
+  }
+
+  @Test
+  public final void testRatesMatchFiniteDifferences() {
+    // central differences over one minute on either side, away from the
+    // zenith where the azimuth rate is undefined and from the horizon where
+    // the refraction changes fast
+    Logger root = Logger.getRootLogger();
+    Level level = root.getLevel();
+    root.setLevel(Level.WARN);
+    try {
+      int checked = 0;
+      for (int i = 0; i < 400; i++) {
+        int year = 1950 + (i * 7) % 150;
+        int month = 1 + i % 12;
+        int day = 1 + (i * 5) % 28;
+        int hour = (i * 7) % 24;
+        int minute = 1 + (i * 13) % 58;
+        double longitude = (i * 37) % 360 - 180;
+        double latitude = (i * 23) % 170 - 85;
+        SunPositionAlgorithmLowRes algorithm = new SunPositionAlgorithmLowRes(
+            year, month, day, hour, minute, 0, longitude, latitude);
+        assertFalse(algorithm.isRatesEnabled());
+        assertTrue(Double.isNaN(algorithm.calculateSunPosition()
+            .getAzimuthRate()));
+        algorithm.setRatesEnabled(true);
+        SunPosition position = algorithm.calculateSunPosition();
+        if (position.getAltitude() < 5 || position.getAltitude() > 80) {
+          continue;
+        }
+        SunPosition before = new SunPositionAlgorithmLowRes(year, month, day,
+            hour, minute - 1, 0, longitude, latitude).calculateSunPosition();
+        SunPosition after = new SunPositionAlgorithmLowRes(year, month, day,
+            hour, minute + 1, 0, longitude, latitude).calculateSunPosition();
+        double days = 2.0 / 1440;
+        double azimuthRate = Math.IEEEremainder(after.getAzimuth()
+            - before.getAzimuth(), 360)
+            / days;
+        double altitudeRate = (after.getAltitude() - before.getAltitude())
+            / days;
+        assertEquals(azimuthRate, position.getAzimuthRate(), 1e-3 * Math.max(
+            100, Math.abs(azimuthRate)));
+        assertEquals(altitudeRate, position.getAltitudeRate(), 0.1);
+        checked++;
+      }
+      assertTrue(checked > 50);
+    } finally {
+      root.setLevel(level);
+    }
+  }
+
+  private static double separation(SunPosition p1, SunPosition p2) {
+    double alt1 = Math.toRadians(p1.getAltitude());
+    double alt2 = Math.toRadians(p2.getAltitude());
+    double dalt = alt2 - alt1;
+    double daz = Math.toRadians(p2.getAzimuth() - p1.getAzimuth());
+    double a = Math.pow(Math.sin(dalt / 2), 2) + Math.cos(alt1)
+        * Math.cos(alt2) * Math.pow(Math.sin(daz / 2), 2);
+    return Math.toDegrees(2 * Math.asin(Math.min(1, Math.sqrt(a))));
+  }
 }
@@ -0,0 +1,51 @@
+package org.cetus.astro;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Throughput of the vectorized batch kernel against the scalar one. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.SunPositionBatchBenchmark</code>
+ */
+public class SunPositionBatchBenchmark {
+
+  private static final int N = 1 << 20;
+  private static final int ROUNDS = 10;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    double[] jd = new double[N];
+    double[] lon = new double[N];
+    double[] lat = new double[N];
+    double[] az = new double[N];
+    double[] alt = new double[N];
+    for (int i = 0; i < N; i++) {
+      jd[i] = 2451545.0 + i * 0.0123;
+      lon[i] = (i * 0.6180339887 % 1.0) * 360 - 180;
+      lat[i] = (i * 0.7548776662 % 1.0) * 180 - 90;
+    }
+    SunPositionKernel scalar = new ScalarSunPositionKernel();
+    SunPositionKernel batch = SunPositionBatch.getKernel();
+    System.out.println("Batch kernel: " + batch.getClass().getName());
+    double scalarNs = 0;
+    double batchNs = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      // first pass warms up
+      scalarNs = run(scalar, jd, lon, lat, az, alt);
+      batchNs = run(batch, jd, lon, lat, az, alt);
+    }
+    System.out.printf("scalar %8.2f ns/position  %8.2f Mpositions/s%n",
+        scalarNs, 1e3 / scalarNs);
+    System.out.printf("batch  %8.2f ns/position  %8.2f Mpositions/s  x%.2f%n",
+        batchNs, 1e3 / batchNs, scalarNs / batchNs);
+  }
+
+  private static double run(SunPositionKernel kernel, double[] jd,
+      double[] lon, double[] lat, double[] az, double[] alt) {
+    long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      kernel.calculate(jd, lon, lat, az, alt, 0, N);
+    }
+    return (System.nanoTime() - start) / ((double) ROUNDS * N);
+  }
+}
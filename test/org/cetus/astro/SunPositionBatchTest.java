@@ -0,0 +1,82 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SunPositionBatchTest {
+
+  @Test
+  public final void testScalarKernelMatchesAlgorithm() {
+    int n = 50;
+    double[] jd = new double[n];
+    double[] lon = new double[n];
+    double[] lat = new double[n];
+    SunPosition[] expected = new SunPosition[n];
+    for (int i = 0; i < n; i++) {
+      int year = 1960 + 3 * i;
+      int month = 1 + i % 12;
+      int day = 1 + (i * 5) % 28;
+      int hour = (i * 7) % 24;
+      int minute = (i * 11) % 60;
+      lon[i] = (i * 47) % 360 - 180;
+      lat[i] = (i * 23) % 180 - 90;
+      jd[i] = new JulianDay(year, month, day, hour, minute, 0, 0).getJD();
+      expected[i] = new SunPositionAlgorithmLowRes(year, month, day, hour,
+          minute, 0, lon[i], lat[i]).calculateSunPosition();
+    }
+    double[] az = new double[n];
+    double[] alt = new double[n];
+    new ScalarSunPositionKernel().calculate(jd, lon, lat, az, alt, 0, n);
+    for (int i = 0; i < n; i++) {
+      assertEquals(expected[i].getAzimuth(), az[i], 1e-9);
+      assertEquals(expected[i].getAltitude(), alt[i], 1e-9);
+    }
+  }
+
+  @Test
+  public final void testBatchMatchesScalarKernel() {
+    // odd length and offset so that vectorized kernels also process a tail
+    int n = 1003;
+    int offset = 5;
+    double[] jd = new double[n];
+    double[] lon = new double[n];
+    double[] lat = new double[n];
+    for (int i = 0; i < n; i++) {
+      jd[i] = 2433282.5 + i * 54.7891;
+      lon[i] = (i * 0.6180339887 % 1.0) * 360 - 180;
+      lat[i] = (i * 0.7548776662 % 1.0) * 180 - 90;
+    }
+    double[] az = new double[n];
+    double[] alt = new double[n];
+    double[] expectedAz = new double[n];
+    double[] expectedAlt = new double[n];
+    SunPositionBatch.calculate(jd, lon, lat, az, alt, offset, n - offset);
+    new ScalarSunPositionKernel().calculate(jd, lon, lat, expectedAz,
+        expectedAlt, offset, n - offset);
+    for (int i = 0; i < offset; i++) {
+      assertEquals(0, az[i], 0);
+      assertEquals(0, alt[i], 0);
+    }
+    for (int i = offset; i < n; i++) {
+      assertEquals(expectedAz[i], az[i], 1e-8);
+      // refraction may only amplify differences close to its singularity
+      if (expectedAlt[i] > -2) {
+        assertEquals(expectedAlt[i], alt[i], 1e-8);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testCalculateOutOfRange() {
+    double[] a = new double[4];
+    SunPositionBatch.calculate(a, a, a, a, new double[3]);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testCalculateOverflowingRange() {
+    // offset + length wraps around to a negative end
+    double[] a = new double[4];
+    SunPositionBatch.calculate(a, a, a, a, a, 2, Integer.MAX_VALUE);
+  }
+}
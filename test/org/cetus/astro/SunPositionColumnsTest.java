@@ -0,0 +1,129 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ReadOnlyBufferException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class SunPositionColumnsTest {
+
+  private static final int N = 1000;
+
+  private final double[] jd = new double[N];
+  private final double[] lon = new double[N];
+  private final double[] lat = new double[N];
+
+  public SunPositionColumnsTest() {
+    for (int i = 0; i < N; i++) {
+      jd[i] = 2455197.5 + (i / 10) / 24.0;
+      lon[i] = (i % 10) * 36 - 180;
+      lat[i] = (i % 7) * 25 - 75;
+    }
+  }
+
+  private void assertColumns(SunPositionColumns columns, long index,
+      int offset, int length) {
+    double[] az = new double[N];
+    double[] alt = new double[N];
+    SunPositionBatch.calculate(jd, lon, lat, az, alt);
+    SolarState state = new SolarState();
+    for (int i = offset; i < offset + length; i++) {
+      long k = index + i - offset;
+      // the vectorized kernel rounds the tails of the batches differently
+      assertEquals(az[i], columns.get(SunPositionColumns.AZIMUTH, k), 1e-9);
+      assertEquals(alt[i], columns.get(SunPositionColumns.ALTITUDE, k), 1e-9);
+      state.update(jd[i]);
+      assertEquals(state.getRightAscension(), columns.get(
+          SunPositionColumns.RIGHT_ASCENSION, k), 0);
+      assertEquals(state.getDeclination(), columns.get(
+          SunPositionColumns.DECLINATION, k), 0);
+      assertEquals(state.calculateHourAngle(lon[i]), columns.get(
+          SunPositionColumns.HOUR_ANGLE, k), 0);
+    }
+  }
+
+  @Test
+  public final void testDirectChunks() {
+    SunPositionColumns columns = SunPositionColumns.allocate(2000, true, 64);
+    assertFalse(columns.isMapped());
+    assertEquals(5, columns.getColumnCount());
+    assertEquals(32, columns.getChunkCount());
+    // crosses many chunk boundaries at an unaligned index
+    columns.calculate(37, jd, lon, lat, 100, 900);
+    assertColumns(columns, 37, 100, 900);
+    assertEquals(0, columns.get(SunPositionColumns.ALTITUDE, 36), 0);
+    assertEquals(0, columns.get(SunPositionColumns.ALTITUDE, 937), 0);
+
+    double[] values = new double[300];
+    columns.get(SunPositionColumns.AZIMUTH, 100, values, 10, 290);
+    for (int i = 0; i < 290; i++) {
+      assertEquals(columns.get(SunPositionColumns.AZIMUTH, 100 + i),
+          values[10 + i], 0);
+    }
+    assertEquals(64, columns.getChunk(SunPositionColumns.AZIMUTH, 1)
+        .capacity());
+    assertEquals(2000 - 31 * 64, columns.getChunk(
+        SunPositionColumns.AZIMUTH, 31).capacity());
+  }
+
+  @Test
+  public final void testMappedFile() throws IOException {
+    Path path = Files.createTempFile("sun", ".col");
+    try {
+      SunPositionColumns columns = SunPositionColumns.create(path, N, true,
+          128);
+      assertTrue(columns.isMapped());
+      columns.calculate(0, jd, lon, lat, 0, N);
+      columns.force();
+
+      SunPositionColumns mapped = SunPositionColumns.map(path, false);
+      assertEquals(N, mapped.size());
+      assertEquals(1, mapped.getChunkCount());
+      assertColumns(mapped, 0, 0, N);
+      try {
+        mapped.set(SunPositionColumns.AZIMUTH, 0, 1);
+        fail("Read-only column written");
+      } catch (ReadOnlyBufferException e) {
+        // expected
+      }
+
+      // layout read by a native tool
+      ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path)).order(
+          ByteOrder.LITTLE_ENDIAN);
+      assertEquals(SunPositionColumns.MAGIC, file.getLong(0));
+      assertEquals(N, file.getLong(16));
+      int altitudes = (int) file.getLong(24 + 8 * SunPositionColumns.ALTITUDE);
+      assertEquals(0, altitudes % 64);
+      assertEquals(mapped.get(SunPositionColumns.ALTITUDE, 500), file
+          .getDouble(altitudes + 8 * 500), 0);
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public final void testWrongFile() throws IOException {
+    Path path = Files.createTempFile("sun", ".col");
+    try {
+      Files.write(path, new byte[SunPositionColumns.HEADER_SIZE]);
+      SunPositionColumns.map(path, false);
+      fail("Wrong file mapped");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("magic"));
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testRangeExceedsColumns() {
+    SunPositionColumns columns = SunPositionColumns.allocate(N - 1, false);
+    columns.calculate(0, jd, lon, lat, 0, N);
+  }
+}
@@ -0,0 +1,73 @@
+package org.cetus.astro;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.cetus.astro.util.Trigonometry;
+
+/**
+ * Throughput of the matrix engine for 30000 sites every 5 minutes of a day,
+ * against a solar state updated per instant and converted per site. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.SunPositionMatrixBenchmark</code>
+ */
+public class SunPositionMatrixBenchmark {
+
+  private static final int SITES = 30000;
+  private static final int INSTANTS = 288;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    double[] lon = new double[SITES];
+    double[] lat = new double[SITES];
+    for (int s = 0; s < SITES; s++) {
+      lon[s] = (s * 0.6180339887 % 1.0) * 360 - 180;
+      lat[s] = (s * 0.7548776662 % 1.0) * 120 - 60;
+    }
+    double[] jd = new double[INSTANTS];
+    for (int t = 0; t < INSTANTS; t++) {
+      jd[t] = 2455197.5 + t / 288.0;
+    }
+    double[] azimuth = new double[SITES * INSTANTS];
+    double[] altitude = new double[SITES * INSTANTS];
+    double cells = (double) SITES * INSTANTS;
+    System.out.printf("%d sites x %d instants, %d threads%n", SITES,
+        INSTANTS, ForkJoinPool.commonPool().getParallelism());
+    for (Trigonometry trig : new Trigonometry[] { Trigonometry.STANDARD,
+        Trigonometry.FAST }) {
+      SunPositionMatrix matrix = new SunPositionMatrix(lon, lat, trig,
+          ForkJoinPool.commonPool(), SunPositionMatrix.DEFAULT_BLOCK_SITES,
+          SunPositionMatrix.DEFAULT_BLOCK_INSTANTS);
+      double naiveNs = 0;
+      double timeNs = 0;
+      double siteNs = 0;
+      for (int pass = 0; pass < 2; pass++) {
+        // first pass warms up
+        long start = System.nanoTime();
+        SolarState state = new SolarState(trig);
+        double[] position = new double[2];
+        for (int t = 0; t < INSTANTS; t++) {
+          state.update(jd[t]);
+          for (int s = 0; s < SITES; s++) {
+            state.calculateHorizontal(lon[s], lat[s], position);
+            azimuth[t * SITES + s] = position[0];
+            altitude[t * SITES + s] = position[1];
+          }
+        }
+        naiveNs = (System.nanoTime() - start) / cells;
+        start = System.nanoTime();
+        matrix.calculate(jd, azimuth, altitude, SunPositionMatrix.TIME_MAJOR);
+        timeNs = (System.nanoTime() - start) / cells;
+        start = System.nanoTime();
+        matrix.calculate(jd, azimuth, altitude, SunPositionMatrix.SITE_MAJOR);
+        siteNs = (System.nanoTime() - start) / cells;
+      }
+      System.out.println(trig == Trigonometry.FAST ? "fast" : "standard");
+      System.out.printf("  per site    %7.2f ns/cell%n", naiveNs);
+      System.out.printf("  time-major  %7.2f ns/cell  x%.2f%n", timeNs,
+          naiveNs / timeNs);
+      System.out.printf("  site-major  %7.2f ns/cell  x%.2f%n", siteNs,
+          naiveNs / siteNs);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class SunPositionMatrixTest {
+
+  private static final int SITES = 301;
+  private static final int INSTANTS = 37;
+
+  private final double[] lon = new double[SITES];
+  private final double[] lat = new double[SITES];
+  private final double[] jd = new double[INSTANTS];
+
+  public SunPositionMatrixTest() {
+    for (int s = 0; s < SITES; s++) {
+      lon[s] = (s * 0.6180339887 % 1.0) * 360 - 180;
+      lat[s] = (s * 0.7548776662 % 1.0) * 180 - 90;
+    }
+    for (int t = 0; t < INSTANTS; t++) {
+      jd[t] = 2455197.5 + t * 5 / 1440.0 * 7;
+    }
+  }
+
+  @Test
+  public final void testMatchesSolarState() {
+    // blocks smaller than the matrix, not dividing it
+    SunPositionMatrix matrix = new SunPositionMatrix(lon, lat,
+        Trigonometry.STANDARD, ForkJoinPool.commonPool(), 64, 5);
+    double[] azimuth = new double[SITES * INSTANTS];
+    double[] altitude = new double[SITES * INSTANTS];
+    matrix.calculate(jd, azimuth, altitude, SunPositionMatrix.TIME_MAJOR);
+    SolarState state = new SolarState();
+    double[] position = new double[2];
+    double[] geometric = new double[2];
+    int compared = 0;
+    for (int t = 0; t < INSTANTS; t++) {
+      state.update(jd[t]);
+      for (int s = 0; s < SITES; s++) {
+        int i = t * SITES + s;
+        state.calculateHorizontal(lon[s], lat[s], position);
+        state.calculateGeometricHorizontal(new Observer(lon[s], lat[s]),
+            geometric);
+        double error = Math.abs(position[0] - azimuth[i]);
+        assertTrue(Math.min(error, 360 - error) < 1e-9);
+        // the refraction table tapers differently below -1 degree of true
+        // altitude, and matches the formula above
+        if (geometric[1] > RefractionTable.CUTOFF_ALTITUDE) {
+          assertEquals(position[1], altitude[i], 1e-4);
+          compared++;
+        }
+      }
+    }
+    assertTrue(compared > 0);
+  }
+
+  @Test
+  public final void testSiteMajor() {
+    SunPositionMatrix matrix = new SunPositionMatrix(lon, lat,
+        Trigonometry.STANDARD, ForkJoinPool.commonPool(), 50, 4);
+    double[] timeMajor = new double[SITES * INSTANTS];
+    double[] siteMajor = new double[SITES * INSTANTS];
+    matrix.calculate(jd, null, timeMajor, SunPositionMatrix.TIME_MAJOR);
+    matrix.calculate(jd, null, siteMajor, SunPositionMatrix.SITE_MAJOR);
+    for (int t = 0; t < INSTANTS; t++) {
+      for (int s = 0; s < SITES; s++) {
+        assertEquals(timeMajor[t * SITES + s], siteMajor[s * INSTANTS + t],
+            0);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testArrayTooSmall() {
+    new SunPositionMatrix(lon, lat).calculate(jd, null,
+        new double[SITES * INSTANTS - 1], SunPositionMatrix.TIME_MAJOR);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupportedOrder() {
+    new SunPositionMatrix(lon, lat).calculate(jd, null,
+        new double[SITES * INSTANTS], 2);
+  }
+}
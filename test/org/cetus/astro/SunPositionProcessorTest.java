@@ -0,0 +1,250 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SunPositionProcessorTest {
+
+  @Test
+  public final void testBurstIsBatched() throws Exception {
+    SunPositionProcessor processor = new SunPositionProcessor(256, 60000,
+        ForkJoinPool.commonPool(), 1024);
+    Collector collector = new Collector(Long.MAX_VALUE);
+    processor.subscribe(collector);
+    SubmissionPublisher<SunPositionQuery> source =
+        new SubmissionPublisher<SunPositionQuery>();
+    source.subscribe(processor);
+    int n = 1000;
+    for (int i = 0; i < n; i++) {
+      source.submit(new SunPositionQuery(2456282.5 + i * 0.01, (i * 37)
+          % 360 - 180, (i * 23) % 180 - 90));
+    }
+    source.close();
+    assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+    assertNull(collector.error);
+    assertEquals(n, collector.samples.size());
+    // three full batches and the rest on completion
+    assertEquals(4, processor.getBatches());
+    assertEquals(n, processor.getSamples());
+    for (int i = 0; i < n; i++) {
+      SunPositionSample sample = collector.samples.get(i);
+      SunPositionQuery query = sample.getQuery();
+      assertEquals(2456282.5 + i * 0.01, query.getJD(), 0);
+      double[] az = new double[1];
+      double[] alt = new double[1];
+      SunPositionBatch.calculate(new double[] { query.getJD() },
+          new double[] { query.getLongitude() },
+          new double[] { query.getLatitude() }, az, alt);
+      // vectorized kernels may round the tail of a batch differently
+      assertEquals(az[0], sample.getAzimuth(), 1e-9);
+      assertEquals(alt[0], sample.getAltitude(), 1e-9);
+    }
+  }
+
+  @Test
+  public final void testLatencyBound() throws Exception {
+    SunPositionProcessor processor = new SunPositionProcessor(256, 20,
+        ForkJoinPool.commonPool(), 16);
+    Collector collector = new Collector(Long.MAX_VALUE);
+    collector.expected = new CountDownLatch(3);
+    processor.subscribe(collector);
+    SubmissionPublisher<SunPositionQuery> source =
+        new SubmissionPublisher<SunPositionQuery>();
+    source.subscribe(processor);
+    for (int i = 0; i < 3; i++) {
+      source.submit(SunPositionQuery.ofEpochMillis(1356048000000L + i
+          * 60000L, 0, 45));
+    }
+    // delivered without completing the stream nor filling the batch
+    assertTrue(collector.expected.await(5, TimeUnit.SECONDS));
+    assertEquals(1, processor.getBatches());
+    source.close();
+    assertTrue(collector.done.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public final void testBackpressure() throws Exception {
+    // a slow subscriber with a small buffer: the processor must never have
+    // more than one batch of queries requested from upstream
+    final int batchSize = 8;
+    SunPositionProcessor processor = new SunPositionProcessor(batchSize,
+        60000, ForkJoinPool.commonPool(), 2);
+    Collector collector = new Collector(1);
+    processor.subscribe(collector);
+    final long[] demand = new long[1];
+    final long[] maxDemand = new long[1];
+    processor.onSubscribe(new Flow.Subscription() {
+      @Override
+      public void request(long n) {
+        synchronized (demand) {
+          demand[0] += n;
+          maxDemand[0] = Math.max(maxDemand[0], demand[0]);
+          demand.notifyAll();
+        }
+      }
+
+      @Override
+      public void cancel() {
+      }
+    });
+    int n = 100;
+    for (int i = 0; i < n; i++) {
+      synchronized (demand) {
+        while (demand[0] == 0) {
+          demand.wait();
+        }
+        demand[0]--;
+      }
+      processor.onNext(new SunPositionQuery(2456282.5 + i, 0, 0));
+    }
+    processor.onComplete();
+    assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+    assertEquals(n, collector.samples.size());
+    assertTrue(maxDemand[0] <= batchSize);
+  }
+
+  @Test
+  public final void testSlowSubscriberDoesNotBlockQueries() throws Exception {
+    final SunPositionProcessor processor = new SunPositionProcessor(4, 10,
+        ForkJoinPool.commonPool(), 1);
+    Collector collector = new Collector(1);
+    collector.gate = new CountDownLatch(1);
+    processor.subscribe(collector);
+    processor.onSubscribe(new Upstream());
+    for (int i = 0; i < 3; i++) {
+      processor.onNext(new SunPositionQuery(2456282.5 + i, 0, 0));
+    }
+    // the deadline publishes the first batch, blocking on the full buffer
+    Thread.sleep(200);
+    Thread next = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        processor.onNext(new SunPositionQuery(2456285.5, 0, 0));
+      }
+    });
+    next.start();
+    next.join(2000);
+    assertFalse(next.isAlive());
+    collector.gate.countDown();
+    processor.onComplete();
+    assertTrue(collector.done.await(10, TimeUnit.SECONDS));
+    assertEquals(4, collector.samples.size());
+    for (int i = 0; i < 4; i++) {
+      assertEquals(2456282.5 + i, collector.samples.get(i).getQuery()
+          .getJD(), 0);
+    }
+  }
+
+  @Test
+  public final void testCloseReleasesTimer() throws Exception {
+    SunPositionProcessor processor = new SunPositionProcessor(256, 60000,
+        ForkJoinPool.commonPool(), 16);
+    Collector collector = new Collector(Long.MAX_VALUE);
+    processor.subscribe(collector);
+    Upstream upstream = new Upstream();
+    processor.onSubscribe(upstream);
+    // schedules a deadline a minute away
+    processor.onNext(new SunPositionQuery(2456282.5, 0, 0));
+    processor.close();
+    assertTrue(upstream.cancelled);
+    assertTrue(collector.done.await(5, TimeUnit.SECONDS));
+    assertTrue(collector.samples.isEmpty());
+    // queries arriving after the close are dropped
+    processor.onNext(new SunPositionQuery(2456282.5, 0, 0));
+    long end = System.currentTimeMillis() + 5000;
+    while (timerThreads() > 0 && System.currentTimeMillis() < end) {
+      Thread.sleep(10);
+    }
+    assertEquals(0, timerThreads());
+  }
+
+  private static int timerThreads() {
+    int n = 0;
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("sun-position-processor")
+          && thread.isAlive()) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  /**
+   * Subscription granting every request, remembering whether it was
+   * cancelled
+   */
+  private static final class Upstream implements Flow.Subscription {
+
+    private volatile boolean cancelled;
+
+    @Override
+    public void request(long n) {
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+    }
+  }
+
+  /**
+   * Collects the samples, requesting the given number at a time
+   */
+  private static final class Collector implements
+      Flow.Subscriber<SunPositionSample> {
+
+    private final long chunk;
+    private final List<SunPositionSample> samples =
+        new ArrayList<SunPositionSample>();
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile CountDownLatch expected = new CountDownLatch(0);
+    // released to let the subscriber consume
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile Throwable error;
+    private Flow.Subscription subscription;
+
+    Collector(long chunk) {
+      this.chunk = chunk;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+      this.subscription = subscription;
+      subscription.request(chunk);
+    }
+
+    @Override
+    public void onNext(SunPositionSample item) {
+      try {
+        gate.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      samples.add(item);
+      expected.countDown();
+      if (chunk != Long.MAX_VALUE) {
+        subscription.request(chunk);
+      }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+      error = throwable;
+      done.countDown();
+    }
+
+    @Override
+    public void onComplete() {
+      done.countDown();
+    }
+  }
+}
@@ -0,0 +1,182 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class SunPositionPublisherTest {
+
+  @Test
+  public final void testTickPublishesPositionsAndSetpoints() {
+    // 2012-12-21T19:12:12Z
+    Clock clock = Clock.fixed(Instant.ofEpochMilli(1356117132000L),
+        ZoneOffset.UTC);
+    SunPositionPublisher publisher = new SunPositionPublisher(100, 3, 60000,
+        clock);
+    Observer first = new Observer(104.7416667, 40.6027778);
+    SunPositionPublisher.Handle handle = publisher.register(first);
+    double[] result = new double[3];
+    assertFalse(handle.read(result));
+    assertNull(handle.getPosition());
+    publisher.tick();
+    SunPositionPublisher.Handle late = publisher.register(new Observer(-3.7,
+        40.4));
+    assertFalse(late.read(result));
+
+    assertTrue(handle.read(result));
+    double jd = 2440587.5 + 1356117132000L / 86400000.0;
+    assertEquals(jd, result[0], 1e-9);
+    SolarState state = new SolarState();
+    double[] expected = new double[2];
+    double[] azimuths = new double[4];
+    double[] altitudes = new double[4];
+    assertEquals(jd, handle.readSetpoints(azimuths, altitudes), 1e-9);
+    for (int k = 0; k < 4; k++) {
+      state.update(jd + k / 1440.0).calculateHorizontal(first, expected);
+      assertEquals(expected[0], azimuths[k], 1e-9);
+      assertEquals(expected[1], altitudes[k], 1e-9);
+    }
+    assertEquals(azimuths[0], result[1], 0);
+    assertEquals(altitudes[0], handle.getPosition().getAltitude(), 0);
+    publisher.tick();
+    assertTrue(late.read(result));
+  }
+
+  @Test
+  public final void testReadersSeeConsistentTicks() throws Exception {
+    // the clock moves a day per tick, readers check the setpoints of
+    // whatever snapshot they read belong to the same tick
+    final long[] millis = { 0 };
+    Clock clock = new Clock() {
+      @Override
+      public long millis() {
+        return millis[0] += 86400000L;
+      }
+
+      @Override
+      public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+      }
+
+      @Override
+      public ZoneId getZone() {
+        return ZoneOffset.UTC;
+      }
+
+      @Override
+      public Clock withZone(ZoneId zone) {
+        return this;
+      }
+    };
+    final SunPositionPublisher publisher = new SunPositionPublisher(1, 1,
+        1000, clock);
+    final SunPositionPublisher.Handle handle = publisher
+        .register(new Observer(0, 0));
+    publisher.tick();
+    final AtomicBoolean failed = new AtomicBoolean();
+    final AtomicBoolean done = new AtomicBoolean();
+    Thread reader = new Thread() {
+      @Override
+      public void run() {
+        double[] azimuths = new double[2];
+        double[] altitudes = new double[2];
+        while (!done.get()) {
+          handle.readSetpoints(azimuths, altitudes);
+          // one second apart, the altitude cannot differ by more than 0.005
+          if (Math.abs(altitudes[1] - altitudes[0]) > 0.005) {
+            failed.set(true);
+          }
+        }
+      }
+    };
+    reader.start();
+    for (int i = 0; i < 20000; i++) {
+      publisher.tick();
+    }
+    done.set(true);
+    reader.join();
+    assertFalse(failed.get());
+  }
+
+  @Test
+  public final void testScheduledTicks() throws Exception {
+    SunPositionPublisher publisher = new SunPositionPublisher(5);
+    SunPositionPublisher.Handle handle = publisher.register(new Observer(0,
+        45));
+    publisher.start();
+    try {
+      publisher.start();
+      fail("Started twice");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+    Thread.sleep(200);
+    publisher.close();
+    long ticks = publisher.getTicks();
+    assertTrue(ticks > 5);
+    assertNotNull(handle.getPosition());
+    assertTrue(publisher.getMaxJitter() >= publisher.getMeanJitter());
+    assertTrue(publisher.getLastComputeTime() > 0);
+    Thread.sleep(50);
+    assertEquals(ticks, publisher.getTicks());
+  }
+
+  @Test
+  public final void testJitterAfterFailedTicks() throws Exception {
+    // the clock fails for the first ticks, which are not published but
+    // must not make the following ones look late
+    final int[] calls = { 0 };
+    Clock clock = new Clock() {
+      @Override
+      public long millis() {
+        if (++calls[0] <= 10) {
+          throw new IllegalStateException("Clock not synchronized");
+        }
+        return 1356117132000L;
+      }
+
+      @Override
+      public Instant instant() {
+        return Instant.ofEpochMilli(millis());
+      }
+
+      @Override
+      public ZoneId getZone() {
+        return ZoneOffset.UTC;
+      }
+
+      @Override
+      public Clock withZone(ZoneId zone) {
+        return this;
+      }
+    };
+    SunPositionPublisher publisher = new SunPositionPublisher(10, 0, 10,
+        clock);
+    publisher.register(new Observer(0, 45));
+    publisher.start();
+    Thread.sleep(300);
+    publisher.close();
+    assertTrue(publisher.getTicks() > 5);
+    // each failure used to add a period, i.e. at least 100 ms
+    assertTrue(publisher.getMeanJitter() < 50e6);
+    // a restart schedules from scratch
+    long ticks = publisher.getTicks();
+    Thread.sleep(100);
+    publisher.start();
+    Thread.sleep(200);
+    publisher.close();
+    assertTrue(publisher.getTicks() > ticks + 5);
+    assertTrue(publisher.getMeanJitter() < 50e6);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testInvalidTick() {
+    new SunPositionPublisher(0);
+  }
+}
@@ -0,0 +1,61 @@
+package org.cetus.astro;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Throughput of the interpolating series engine against the exact evaluation
+ * of every sample, for a day of 1 second samples. Run with
+ * <code>ant bench -Dbench.class=org.cetus.astro.SunPositionSeriesBenchmark</code>
+ */
+public class SunPositionSeriesBenchmark {
+
+  private static final int N = 86400;
+  private static final int ROUNDS = 20;
+  private static final double START = 2456282.5;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    double[] az = new double[N];
+    double[] alt = new double[N];
+    Observer observer = new Observer(104.7416667, 40.6027778);
+    SunPositionSeries series = new SunPositionSeries(1e-4);
+    double exactNs = 0;
+    double seriesNs = 0;
+    for (int pass = 0; pass < 2; pass++) {
+      // first pass warms up
+      exactNs = runExact(observer, az, alt);
+      seriesNs = runSeries(series, observer, az, alt);
+    }
+    System.out.println("Knot spacing: " + series.getKnotSpacing() + " days");
+    System.out.printf("exact  %8.2f ns/sample  %8.2f Msamples/s%n", exactNs,
+        1e3 / exactNs);
+    System.out.printf("series %8.2f ns/sample  %8.2f Msamples/s  x%.2f%n",
+        seriesNs, 1e3 / seriesNs, exactNs / seriesNs);
+  }
+
+  private static double runExact(Observer observer, double[] az,
+      double[] alt) {
+    SolarState state = new SolarState();
+    double[] position = new double[2];
+    long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < N; i++) {
+        state.update(START + round + i / 86400.0).calculateHorizontal(
+            observer, position);
+        az[i] = position[0];
+        alt[i] = position[1];
+      }
+    }
+    return (System.nanoTime() - start) / ((double) ROUNDS * N);
+  }
+
+  private static double runSeries(SunPositionSeries series,
+      Observer observer, double[] az, double[] alt) {
+    long start = System.nanoTime();
+    for (int round = 0; round < ROUNDS; round++) {
+      series.calculate(observer, START + round, 1, N, az, alt);
+    }
+    return (System.nanoTime() - start) / ((double) ROUNDS * N);
+  }
+}
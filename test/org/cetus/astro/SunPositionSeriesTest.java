@@ -0,0 +1,62 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SunPositionSeriesTest {
+
+  @Test
+  public final void testCalculateWithinTolerance() {
+    double[] tolerances = { 1e-3, 1e-4, 1e-5 };
+    Observer[] observers = { new Observer(104.7416667, 40.6027778),
+        new Observer(-151.2, -33.9), new Observer(-18.9, 69.6) };
+    for (double tolerance : tolerances) {
+      SunPositionSeries series = new SunPositionSeries(tolerance);
+      for (Observer observer : observers) {
+        assertWithinTolerance(series, observer, 2456282.5, 37, 10000);
+        assertWithinTolerance(series, observer, 2460000.123, 3600 * 7, 400);
+      }
+    }
+  }
+
+  @Test
+  public final void testKnotsAreReused() {
+    SunPositionSeries series = new SunPositionSeries(1e-4);
+    int count = 86400 * 3;
+    double[] az = new double[count];
+    double[] alt = new double[count];
+    series.calculate(new Observer(10, 50), 2458000.5, 1, count, az, alt);
+    int knots = series.getCachedKnots();
+    assertTrue(knots > 0);
+    // overlapping window at another location reuses the cached knots
+    series.calculate(new Observer(-120, -30), 2458001.5, 1, count / 2, az,
+        alt);
+    assertEquals(knots, series.getCachedKnots());
+    // cache is bounded
+    SunPositionSeries small = new SunPositionSeries(1e-4,
+        org.cetus.astro.util.Trigonometry.STANDARD, 4);
+    small.calculate(new Observer(10, 50), 2458000.5, 3600, 24 * 60, az, alt);
+    assertTrue(small.getCachedKnots() <= 4);
+  }
+
+  private static void assertWithinTolerance(SunPositionSeries series,
+      Observer observer, double startJd, double stepSeconds, int count) {
+    double[] az = new double[count];
+    double[] alt = new double[count];
+    series.calculate(observer, startJd, stepSeconds, count, az, alt);
+    SolarState state = new SolarState();
+    double[] exact = new double[2];
+    double tolerance = series.getTolerance();
+    for (int i = 0; i < count; i++) {
+      state.update(startJd + i * stepSeconds / 86400).calculateHorizontal(
+          observer, exact);
+      if (exact[1] > -2) {
+        assertEquals(exact[1], alt[i], tolerance);
+      }
+      if (exact[1] < 88.8) {
+        assertEquals(0, Math.IEEEremainder(exact[0] - az[i], 360), tolerance);
+      }
+    }
+  }
+}
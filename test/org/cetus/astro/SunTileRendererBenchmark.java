@@ -0,0 +1,57 @@
+package org.cetus.astro;
+
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+/**
+ * Throughput in tiles per second of the tile renderer, rendering every tile
+ * of zoom level 4 at consecutive time buckets, and then from the cache. Run
+ * with
+ * <code>ant bench -Dbench.class=org.cetus.astro.SunTileRendererBenchmark</code>
+ */
+public class SunTileRendererBenchmark {
+
+  private static final int ZOOM = 4;
+  private static final int BUCKETS = 4;
+
+  public static void main(String[] args) throws IOException {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    System.out.printf("zoom %d, %d threads%n", ZOOM, ForkJoinPool
+        .commonPool().getParallelism());
+    for (int layer : new int[] { SunTileRenderer.ELEVATION,
+        SunTileRenderer.DAYLIGHT }) {
+      double renderRate = 0;
+      double cacheRate = 0;
+      SunTileRenderer renderer = null;
+      for (int pass = 0; pass < 2; pass++) {
+        // first pass warms up
+        renderer = new SunTileRenderer();
+        renderRate = run(renderer, layer);
+        cacheRate = run(renderer, layer);
+      }
+      System.out.printf("%-9s rendered %8.1f tiles/s, cached %10.1f tiles/s,"
+          + " %d KB%n", layer == SunTileRenderer.ELEVATION ? "elevation"
+          : "daylight", renderRate, cacheRate,
+          renderer.getCachedBytes() >> 10);
+    }
+  }
+
+  private static double run(SunTileRenderer renderer, int layer)
+      throws IOException {
+    int n = 1 << ZOOM;
+    long start = System.nanoTime();
+    for (int b = 0; b < BUCKETS; b++) {
+      double jd = 2455552.0 + b * SunTileRenderer.DEFAULT_BUCKET_SECONDS
+          / 86400;
+      for (int x = 0; x < n; x++) {
+        for (int y = 0; y < n; y++) {
+          renderer.getTile(layer, jd, ZOOM, x, y);
+        }
+      }
+    }
+    return BUCKETS * n * n / ((System.nanoTime() - start) / 1e9);
+  }
+}
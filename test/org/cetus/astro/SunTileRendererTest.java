@@ -0,0 +1,135 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.imageio.ImageIO;
+
+import org.cetus.astro.util.Trigonometry;
+import org.junit.Test;
+
+public class SunTileRendererTest {
+
+  // December solstice 2010, 12h UT
+  private static final double JD = 2455552.0;
+
+  @Test
+  public final void testRenderedPng() throws IOException {
+    SunTileRenderer renderer = new SunTileRenderer();
+    byte[] png = renderer.getTile(SunTileRenderer.ELEVATION, JD, 1, 0, 1);
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+    assertEquals(SunTileRenderer.TILE_SIZE, image.getWidth());
+    assertEquals(SunTileRenderer.TILE_SIZE, image.getHeight());
+    int[] pixels = renderer.render(SunTileRenderer.ELEVATION, JD, 1, 0, 1);
+    for (int i = 0; i < pixels.length; i += 97) {
+      assertEquals(pixels[i], image.getRGB(i % 256, i / 256));
+    }
+  }
+
+  @Test
+  public final void testDaylightClasses() {
+    SunTileRenderer renderer = new SunTileRenderer();
+    int[] pixels = renderer.render(SunTileRenderer.DAYLIGHT, JD, 0, 0, 0);
+    Terminator terminator = new Terminator().update(JD);
+    // pixel at the subsolar point is transparent, the antipode is night
+    int column = (int) ((180 - terminator.getSubsolarLongitude()) / 360 * 256);
+    int row = latitudeRow(terminator.getSubsolarLatitude());
+    assertEquals(0, pixels[row * 256 + column] >>> 24);
+    int night = pixels[latitudeRow(-terminator.getSubsolarLatitude()) * 256
+        + (column + 128) % 256];
+    assertEquals(0xB8, night >>> 24);
+    // winter polar night
+    assertEquals(0xB8, pixels[256 + column] >>> 24);
+  }
+
+  private static int latitudeRow(double latitude) {
+    double phi = Math.toRadians(latitude);
+    double y = (1 - Math.log(Math.tan(phi) + 1 / Math.cos(phi)) / Math.PI) / 2;
+    return (int) (y * 256);
+  }
+
+  @Test
+  public final void testCache() throws IOException {
+    SunTileRenderer renderer = new SunTileRenderer();
+    byte[] first = renderer.getTile(SunTileRenderer.ELEVATION, JD, 2, 1, 1);
+    // same time bucket
+    assertSame(first, renderer.getTile(SunTileRenderer.ELEVATION, JD + 60
+        / 86400.0, 2, 1, 1));
+    assertEquals(1, renderer.getRenders());
+    assertEquals(1, renderer.getHits());
+    assertEquals(first.length, renderer.getCachedBytes());
+    // next bucket
+    renderer.getTile(SunTileRenderer.ELEVATION, JD + 300 / 86400.0, 2, 1, 1);
+    assertEquals(2, renderer.getRenders());
+  }
+
+  @Test
+  public final void testEviction() throws IOException {
+    SunTileRenderer renderer = new SunTileRenderer(300, 20000, ForkJoinPool
+        .commonPool(), Trigonometry.STANDARD);
+    for (int x = 0; x < 4; x++) {
+      for (int y = 0; y < 4; y++) {
+        renderer.getTile(SunTileRenderer.ELEVATION, JD, 2, x, y);
+        assertTrue(renderer.getCachedBytes() <= 20000);
+      }
+    }
+    assertTrue(renderer.getCachedTiles() < 16);
+  }
+
+  @Test
+  public final void testUniformTilesShared() throws IOException {
+    SunTileRenderer renderer = new SunTileRenderer();
+    // polar night at the top of the map
+    byte[] first = renderer.getTile(SunTileRenderer.DAYLIGHT, JD, 6, 10, 0);
+    byte[] later = renderer.getTile(SunTileRenderer.DAYLIGHT, JD + 0.25, 6,
+        40, 0);
+    // told apart without rendering, and kept out of the bounded cache
+    assertEquals(0, renderer.getRenders());
+    assertEquals(2, renderer.getHits());
+    assertSame(first, later);
+    assertEquals(0, renderer.getCachedTiles());
+    assertEquals(0, renderer.getCachedBytes());
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(first));
+    int[] pixels = renderer.render(SunTileRenderer.DAYLIGHT, JD, 6, 10, 0);
+    for (int i = 0; i < pixels.length; i += 97) {
+      assertEquals(pixels[i], image.getRGB(i % 256, i / 256));
+    }
+  }
+
+  @Test
+  public final void testUniformTilesMatchRendering() throws IOException {
+    // every tile skipped as uniform is the tile that would be rendered
+    SunTileRenderer renderer = new SunTileRenderer();
+    int skipped = 0;
+    for (int layer = 0; layer < 2; layer++) {
+      for (int k = 0; k < 4; k++) {
+        double jd = JD + k * 0.3 + 91.3 * k;
+        for (int x = 0; x < 8; x++) {
+          for (int y = 0; y < 8; y++) {
+            long renders = renderer.getRenders();
+            byte[] png = renderer.getTile(layer, jd, 3, x, y);
+            if (renderer.getRenders() > renders) {
+              continue;
+            }
+            skipped++;
+            BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+            int[] pixels = renderer.render(layer, jd, 3, x, y);
+            for (int i = 0; i < pixels.length; i++) {
+              assertEquals(pixels[i], image.getRGB(i % 256, i / 256));
+            }
+          }
+        }
+      }
+    }
+    assertTrue(skipped > 0);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupportedTile() throws IOException {
+    new SunTileRenderer().getTile(SunTileRenderer.DAYLIGHT, JD, 2, 4, 0);
+  }
+}
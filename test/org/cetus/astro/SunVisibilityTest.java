@@ -0,0 +1,131 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.Test;
+
+public class SunVisibilityTest {
+
+  private static final double SECOND = 1.0 / 86400;
+
+  @Test
+  public final void testMaskInterpolation() {
+    HorizonMask mask = new HorizonMask(new float[] { 0, 10, 20, 10 });
+    assertEquals(0, mask.getElevation(0), 0);
+    assertEquals(5, mask.getElevation(45), 1e-12);
+    assertEquals(20, mask.getElevation(180), 1e-12);
+    assertEquals(20, mask.getElevation(-180), 1e-12);
+    assertEquals(5, mask.getElevation(-45), 1e-12);
+    assertEquals(5, mask.getElevation(315), 1e-12);
+    assertEquals(10.0 / 90, mask.getMaxSlope(), 1e-12);
+    assertEquals(0, mask.getMinElevation(), 0);
+    assertEquals(20, mask.getMaxElevation(), 0);
+  }
+
+  @Test
+  public final void testFileRoundTrip() throws IOException {
+    float[] elevations = new float[360];
+    for (int i = 0; i < elevations.length; i++) {
+      elevations[i] = (float) (5 + 4 * Math.sin(Math.toRadians(3 * i)));
+    }
+    Path path = Files.createTempFile("horizon", ".hzn");
+    try {
+      new HorizonMask(elevations).write(path);
+      HorizonMask mask = HorizonMask.load(path);
+      assertEquals(360, mask.getSize());
+      for (int i = 0; i < elevations.length; i++) {
+        assertEquals(elevations[i], mask.getElevation(i), 0);
+      }
+      // flip a bit of an elevation
+      byte[] bytes = Files.readAllBytes(path);
+      bytes[HorizonMask.HEADER_SIZE + 10] ^= 1;
+      Files.write(path, bytes);
+      try {
+        HorizonMask.load(path);
+        fail("Corrupted file loaded");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("Checksum"));
+      }
+      ByteBuffer header = ByteBuffer.wrap(bytes).order(
+          ByteOrder.LITTLE_ENDIAN);
+      header.putInt(12, 361);
+      Files.write(path, bytes);
+      try {
+        HorizonMask.load(path);
+        fail("Truncated file loaded");
+      } catch (IOException e) {
+        assertTrue(e.getMessage().contains("size"));
+      }
+    } finally {
+      Files.deleteIfExists(path);
+    }
+  }
+
+  @Test
+  public final void testSunlitIntervalsAgainstSampling() {
+    // a ridge to the east and a tall obstruction to the southwest
+    float[] elevations = new float[72];
+    for (int i = 0; i < elevations.length; i++) {
+      double azimuth = i * 5;
+      if (azimuth >= 220 && azimuth <= 300) {
+        elevations[i] = 12;
+      } else if (azimuth >= 20 && azimuth <= 35) {
+        elevations[i] = 60;
+      } else {
+        elevations[i] = 2;
+      }
+    }
+    Observer observer = new Observer(3.7, 40.4, new HorizonMask(elevations));
+    SunVisibility visibility = new SunVisibility(observer);
+    double start = 2461406.5;
+    double end = start + 10;
+    List<TimeInterval> intervals = visibility.findSunlitIntervals(start, end);
+    // the obstruction splits every day in two
+    assertEquals(20, intervals.size());
+    int n = (int) ((end - start) / (20 * SECOND));
+    double[] jd = new double[n];
+    for (int i = 0; i < n; i++) {
+      jd[i] = start + i * 20 * SECOND;
+    }
+    boolean[] sunlit = new boolean[n];
+    visibility.calculateSunlit(jd, sunlit);
+    int index = 0;
+    for (int i = 0; i < n; i++) {
+      while (index < intervals.size()
+          && intervals.get(index).getEnd() < jd[i]) {
+        index++;
+      }
+      boolean found = index < intervals.size()
+          && intervals.get(index).contains(jd[i]);
+      if (found != sunlit[i]) {
+        TimeInterval interval = intervals.get(Math.min(index, intervals
+            .size() - 1));
+        assertTrue(Math.min(Math.abs(interval.getStart() - jd[i]), Math
+            .abs(interval.getEnd() - jd[i])) <= 2 * SECOND);
+      }
+    }
+    // far fewer evaluations than sampling at the resolution
+    assertTrue(visibility.getEvaluations() < 5000);
+  }
+
+  @Test
+  public final void testFlatHorizon() {
+    Observer observer = new Observer(3.7, 40.4);
+    SunVisibility visibility = new SunVisibility(observer);
+    SunEvents events = new SunEventSolver().calculate(observer, 2461406.5,
+        SunEventSolver.SUNRISE + 0.2666);
+    List<TimeInterval> intervals = visibility.findSunlitIntervals(
+        2461406.5, 2461407.5);
+    assertEquals(1, intervals.size());
+    // refraction at the horizon differs from the standard 34' by seconds
+    assertEquals(events.getRise(), intervals.get(0).getStart(), 30 * SECOND);
+    assertEquals(events.getSet(), intervals.get(0).getEnd(), 30 * SECOND);
+  }
+}
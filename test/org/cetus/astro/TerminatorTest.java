@@ -0,0 +1,89 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TerminatorTest {
+
+  // December solstice 2010 and March equinox 2011, 0h UT
+  private static final double SOLSTICE = 2455551.5;
+  private static final double EQUINOX = 2455640.5;
+
+  @Test
+  public final void testSubsolarPoint() {
+    Terminator terminator = new Terminator().update(SOLSTICE + 0.5);
+    assertEquals(-23.44, terminator.getSubsolarLatitude(), 0.01);
+    // at noon UT the subsolar point is close to Greenwich
+    assertEquals(0, terminator.getSubsolarLongitude(), 1);
+    assertEquals(90, terminator.calculateAltitude(terminator
+        .getSubsolarLongitude(), terminator.getSubsolarLatitude()), 1e-6);
+    double[] vector = new double[3];
+    terminator.getSubsolarVector(vector);
+    assertEquals(1, vector[0] * vector[0] + vector[1] * vector[1] + vector[2]
+        * vector[2], 1e-12);
+
+    SolarState state = new SolarState().update(SOLSTICE + 0.5);
+    double[] position = new double[2];
+    for (int i = 0; i < 100; i++) {
+      double lon = i * 37 % 360 - 180;
+      double lat = i * 13 % 180 - 90;
+      state.calculateGeometricHorizontal(new Observer(lon, lat), position);
+      assertEquals(position[1], terminator.calculateAltitude(lon, lat), 1e-9);
+    }
+  }
+
+  @Test
+  public final void testTerminatorFollowsAltitude() {
+    Terminator terminator = new Terminator().update(SOLSTICE + 0.3);
+    for (double altitude : new double[] { SunEventSolver.SUNRISE,
+        SunEventSolver.CIVIL_TWILIGHT, SunEventSolver.ASTRONOMICAL_TWILIGHT,
+        30 }) {
+      GeoPolyline line = terminator.calculateTerminator(altitude, 0.01);
+      assertTrue(line.size() > 16);
+      for (int i = 0; i < line.size(); i++) {
+        assertEquals(altitude, terminator.calculateAltitude(line
+            .getLongitude(i), line.getLatitude(i)), 1e-6);
+        if (i > 0) {
+          assertTrue(Math.abs(line.getLongitude(i)
+              - line.getLongitude(i - 1)) < 180);
+        }
+      }
+      assertEquals(line.getLatitude(0), line.getLatitude(line.size() - 1), 0);
+    }
+  }
+
+  @Test
+  public final void testAdaptiveDensity() {
+    Terminator terminator = new Terminator().update(SOLSTICE);
+    int coarse = terminator.calculateTerminator(0, 1).size();
+    int fine = terminator.calculateTerminator(0, 0.001).size();
+    assertTrue(fine > 4 * coarse);
+  }
+
+  @Test
+  public final void testShadow() {
+    Terminator terminator = new Terminator().update(SOLSTICE);
+    // winter night at the north pole, closed along the edge of the map
+    GeoPolyline night = terminator.calculateShadow(0, 0.05);
+    assertTrue(night.isClosed());
+    int n = night.size();
+    assertEquals(90, night.getLatitude(n - 2), 0);
+    assertEquals(90, night.getLatitude(n - 3), 0);
+    assertEquals(360, Math.abs(night.getLongitude(n - 3)
+        - night.getLongitude(0)), 1e-9);
+    // the astronomical night does not reach the pole near the equinox
+    terminator.update(EQUINOX);
+    GeoPolyline dark = terminator.calculateShadow(
+        SunEventSolver.ASTRONOMICAL_TWILIGHT, 0.05);
+    assertTrue(dark.isClosed());
+    for (int i = 0; i < dark.size(); i++) {
+      assertTrue(Math.abs(dark.getLatitude(i)) < 75);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupportedShadow() {
+    new Terminator().update(SOLSTICE).calculateShadow(10, 0.05);
+  }
+}
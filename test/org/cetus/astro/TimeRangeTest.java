@@ -0,0 +1,83 @@
+package org.cetus.astro;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.DoubleConsumer;
+import java.util.stream.Collectors;
+
+import org.junit.Test;
+
+public class TimeRangeTest {
+
+  @Test
+  public final void testSize() {
+    assertEquals(288, new TimeRange(2455197.5, 2455198.5, 300).size());
+    assertEquals(289, new TimeRange(2455197.5, 2455198.501, 300).size());
+    assertEquals(0, new TimeRange(2455197.5, 2455197.5, 300).size());
+    TimeRange range = TimeRange.ofEpochMillis(1262304000000L,
+        1262304000000L + 86400000L, 300000);
+    assertEquals(288, range.size());
+    assertEquals(2455197.5, range.getJD(0), 1e-9);
+    assertEquals(1262304000000L + 300000L * 287, range.getEpochMillis(287));
+    assertEquals(300, range.getStepSeconds(), 1e-6);
+  }
+
+  @Test
+  public final void testSplitsEvenly() {
+    TimeRange range = new TimeRange(2455197.5, 2455198.5, 60);
+    Spliterator.OfDouble second = range.spliterator();
+    Spliterator.OfDouble first = second.trySplit();
+    assertEquals(720, first.estimateSize());
+    assertEquals(720, second.estimateSize());
+    assertTrue(second.hasCharacteristics(Spliterator.SUBSIZED));
+    final double[] jd = new double[1];
+    assertTrue(second.tryAdvance(new DoubleConsumer() {
+      @Override
+      public void accept(double t) {
+        jd[0] = t;
+      }
+    }));
+    assertEquals(range.getJD(720), jd[0], 0);
+
+    Spliterator.OfLong single = TimeRange.ofEpochMillis(0, 1, 1)
+        .epochMillisSpliterator();
+    assertNull(single.trySplit());
+    assertEquals(1, single.estimateSize());
+  }
+
+  @Test
+  public final void testStreams() {
+    TimeRange range = new TimeRange(2455197.5, 2455207.5, 600);
+    assertEquals(1440, range.jds(true).count());
+    assertEquals(range.getJD(1439), range.jds(true).max().getAsDouble(), 0);
+    long[] millis = range.epochMillis(true).toArray();
+    for (int i = 1; i < millis.length; i++) {
+      assertEquals(600000, millis[i] - millis[i - 1]);
+    }
+  }
+
+  @Test
+  public final void testPositions() {
+    TimeRange range = new TimeRange(2455197.5, 2455199.5, 900);
+    Observer observer = new Observer(3.7, 40.4);
+    List<SunPosition> positions = range.positions(observer, true).collect(
+        Collectors.toList());
+    double[] altitudes = range.altitudes(observer, true).toArray();
+    assertEquals(range.size(), positions.size());
+    SolarState state = new SolarState();
+    double[] expected = new double[2];
+    for (int i = 0; i < positions.size(); i++) {
+      state.update(range.getJD(i)).calculateHorizontal(observer, expected);
+      assertEquals(expected[0], positions.get(i).getAzimuth(), 0);
+      assertEquals(expected[1], positions.get(i).getAltitude(), 0);
+      assertEquals(expected[1], altitudes[i], 0);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public final void testUnsupportedStep() {
+    new TimeRange(2455197.5, 2455198.5, 0);
+  }
+}
@@ -0,0 +1,95 @@
+package org.cetus.astro.util;
+
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+import org.cetus.astro.SunPositionAlgorithmLowRes;
+
+/**
+ * Throughput of the fast math mode against full precision, both for the
+ * trigonometric functions alone and for the whole low accuracy algorithm. Run
+ * with <code>ant bench -Dbench.class=org.cetus.astro.util.FastMathBenchmark</code>
+ */
+public class FastMathBenchmark {
+
+  private static final int N = 1 << 16;
+  private static final int ROUNDS = 200;
+
+  private static double sink;
+
+  public static void main(String[] args) {
+    Logger.getRootLogger().setLevel(Level.WARN);
+    double[] angles = new double[N];
+    double[] values = new double[N];
+    for (int i = 0; i < N; i++) {
+      angles[i] = (i * 0.6180339887 % 1.0) * 4 * Math.PI - 2 * Math.PI;
+      values[i] = (i * 0.6180339887 % 1.0) * 2 - 1;
+    }
+    for (int pass = 0; pass < 2; pass++) {
+      boolean report = pass == 1; // first pass warms up
+      compare("sin", kernel(angles, Trigonometry.STANDARD, 0),
+          kernel(angles, Trigonometry.FAST, 0), report);
+      compare("cos", kernel(angles, Trigonometry.STANDARD, 1),
+          kernel(angles, Trigonometry.FAST, 1), report);
+      compare("tan", kernel(angles, Trigonometry.STANDARD, 2),
+          kernel(angles, Trigonometry.FAST, 2), report);
+      compare("asin", kernel(values, Trigonometry.STANDARD, 3),
+          kernel(values, Trigonometry.FAST, 3), report);
+      compare("atan2", kernel(values, Trigonometry.STANDARD, 4),
+          kernel(values, Trigonometry.FAST, 4), report);
+      compare("calculateSunPosition", algorithm(false), algorithm(true),
+          report);
+    }
+    System.out.println("(sink " + sink + ")");
+  }
+
+  private static void compare(String name, double standardNs, double fastNs,
+      boolean report) {
+    if (report) {
+      System.out.printf("%-22s standard %9.2f ns/op  fast %9.2f ns/op  x%.2f%n",
+          name, standardNs, fastNs, standardNs / fastNs);
+    }
+  }
+
+  private static double kernel(double[] x, Trigonometry trig, int function) {
+    long start = System.nanoTime();
+    double acc = 0;
+    for (int round = 0; round < ROUNDS; round++) {
+      for (int i = 0; i < N; i++) {
+        switch (function) {
+        case 0:
+          acc += trig.sin(x[i]);
+          break;
+        case 1:
+          acc += trig.cos(x[i]);
+          break;
+        case 2:
+          acc += trig.tan(x[i]);
+          break;
+        case 3:
+          acc += trig.asin(x[i]);
+          break;
+        default:
+          acc += trig.atan2(x[i], 0.5);
+          break;
+        }
+      }
+    }
+    sink += acc;
+    return (System.nanoTime() - start) / ((double) ROUNDS * N);
+  }
+
+  private static double algorithm(boolean fastMath) {
+    int n = 50000;
+    long start = System.nanoTime();
+    double acc = 0;
+    for (int i = 0; i < n; i++) {
+      SunPositionAlgorithmLowRes algorithm = new SunPositionAlgorithmLowRes(
+          2000 + i % 100, 1 + i % 12, 1 + i % 28, i % 24, i % 60, 0,
+          i % 360 - 180, i % 180 - 90);
+      algorithm.setFastMath(fastMath);
+      acc += algorithm.calculateSunPosition().getAltitude();
+    }
+    sink += acc;
+    return (System.nanoTime() - start) / (double) n;
+  }
+}
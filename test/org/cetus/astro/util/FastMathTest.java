@@ -0,0 +1,74 @@
+package org.cetus.astro.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class FastMathTest {
+
+  private static final int SAMPLES = 2000000;
+
+  @Test
+  public final void testSinCos() {
+    // cover several turns as well as the large arguments used by nutation
+    double[] ranges = { 2 * Math.PI, 100, 10000, FastMath.MAX_REDUCIBLE };
+    for (double range : ranges) {
+      double step = 2 * range / SAMPLES;
+      for (int i = 0; i <= SAMPLES; i++) {
+        double a = -range + i * step;
+        assertEquals(Math.sin(a), FastMath.sin(a), FastMath.MAX_ERROR);
+        assertEquals(Math.cos(a), FastMath.cos(a), FastMath.MAX_ERROR);
+      }
+    }
+  }
+
+  @Test
+  public final void testTan() {
+    double step = 2 * Math.PI / SAMPLES;
+    for (int i = 0; i <= SAMPLES; i++) {
+      double a = -Math.PI + i * step;
+      double expected = Math.tan(a);
+      assertEquals(expected, FastMath.tan(a), FastMath.MAX_ERROR
+          * Math.max(1, Math.abs(expected)));
+    }
+  }
+
+  @Test
+  public final void testAsinAcos() {
+    double step = 2.0 / SAMPLES;
+    for (int i = 0; i <= SAMPLES; i++) {
+      double x = -1 + i * step;
+      assertEquals(Math.asin(x), FastMath.asin(x), FastMath.MAX_ERROR);
+      assertEquals(Math.acos(x), FastMath.acos(x), FastMath.MAX_ERROR);
+    }
+    assertTrue(Double.isNaN(FastMath.asin(1.0001)));
+  }
+
+  @Test
+  public final void testAtan2() {
+    int n = 2000;
+    for (int i = 0; i < n; i++) {
+      double theta = -Math.PI + 2 * Math.PI * i / n;
+      for (double r = 1e-3; r < 1e4; r *= 7) {
+        double y = r * Math.sin(theta);
+        double x = r * Math.cos(theta);
+        assertEquals(Math.atan2(y, x), FastMath.atan2(y, x),
+            FastMath.MAX_ERROR);
+      }
+    }
+    assertEquals(Math.atan2(1, 0), FastMath.atan2(1, 0), 0);
+    assertEquals(Math.atan2(-1, 0), FastMath.atan2(-1, 0), 0);
+    assertEquals(Math.atan2(0, 0), FastMath.atan2(0, 0), 0);
+  }
+
+  @Test
+  public final void testAtan() {
+    double step = 200.0 / SAMPLES;
+    for (int i = 0; i <= SAMPLES; i++) {
+      double x = -100 + i * step;
+      assertEquals(Math.atan(x), FastMath.atan(x), FastMath.MAX_ERROR);
+    }
+    assertEquals(Math.PI / 2, FastMath.atan(Double.POSITIVE_INFINITY), 0);
+    assertTrue(Double.isNaN(FastMath.atan(Double.NaN)));
+  }
+}